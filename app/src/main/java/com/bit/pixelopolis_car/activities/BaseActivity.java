@@ -30,6 +30,8 @@ import com.bit.pixelopolis_car.enums.WarningStatus;
 import com.bit.pixelopolis_car.services.BaseListener;
 import com.bit.pixelopolis_car.R;
 import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.LogcatSink;
 import com.bit.pixelopolis_car.utils.Analytics;
 
 // Here is the base activity for every activities, which provides fundamental stuffs that needed in every activities
@@ -44,6 +46,8 @@ public class BaseActivity  extends AppCompatActivity implements BaseListener {
     protected View spinnerLayout;
     View root;
 
+    private static final LogcatSink LOGCAT_SINK = new LogcatSink();
+
     private static int ERROR_CANNOT_COMMUNICATE_WITH_CONTROLLER_BOARD_IMAGE = R.drawable.error_302;
     private static int ERROR_CANNOT_COMMUNICATE_WITH_SERVER_IMAGE = R.drawable.error_301;
 
@@ -56,6 +60,7 @@ public class BaseActivity  extends AppCompatActivity implements BaseListener {
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        LogService.getInstance().setSink(LOGCAT_SINK);
     }
 
     protected void setStateTextView(String text) {
@@ -23,7 +23,6 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.CountDownTimer;
 import android.util.Log;
-import android.util.Pair;
 import android.view.MotionEvent;
 import android.view.View;
 import android.widget.LinearLayout;
@@ -33,10 +32,18 @@ import android.widget.Toast;
 import com.bit.pixelopolis_car.enums.ErrorStatus;
 import com.bit.pixelopolis_car.services.CarController;
 import com.bit.pixelopolis_car.services.camera.PixelCamera;
+import com.bit.pixelopolis_car.services.camera.PixelCameraFactory;
 import com.bit.pixelopolis_car.R;
 import com.bit.pixelopolis_car.services.CarInformation;
+import com.bit.pixelopolis_car.services.StatusSnapshot;
+import com.bit.pixelopolis_car.services.config.AttractionPlace;
 import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.config.RecorderInfo;
+import com.bit.pixelopolis_car.services.recorder.DriveRecorder;
 import com.bit.pixelopolis_car.services.serial.SerialCommunicator;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+import com.bit.pixelopolis_car.services.tracing.LatencyTracer;
 import com.bit.pixelopolis_car.services.carvision.CarVision;
 
 import org.opencv.android.JavaCameraView;
@@ -44,6 +51,10 @@ import org.opencv.android.JavaCameraView;
 import com.bit.pixelopolis_car.services.streaming.CameraStreamer;
 import com.airbnb.lottie.LottieAnimationView;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 public class NavigateActivity extends BaseActivity implements CarController.CarControllerListener, SerialCommunicator.SerialCommunicatorListener, PixelCamera.CameraStateCallback {
@@ -51,10 +62,13 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
     private static final String FILE_PATH_SELECT_DESTINATION = "select_destination_bg.zip";
     private static final String FILE_PATH_JOURNEY_STARTS = "journey_start_bg.zip";
     private static final String FILE_PATH_STANDBY_VIDEO = "standby_bg.zip";
+    private static final String DRIVE_RECORDER_FILE = "drive_recorder.bin";
+    private static final String RECORDER_CONTENT_TYPE = "application/octet-stream";
+    private static final String LATENCY_CONTENT_TYPE = "application/json";
 
     private static final String[] arriveDestinationPaths = {"car_arrival_portrait_bg.zip", "car_arrival_super_zoom_bg.zip", "car_arrival_night_sight_bg.zip", "car_arrival_google_len_bg.zip","car_arrival_dual_ev_bg.zip"};
     private static final String[] backgroundPaths = {"portrait_bg.zip", "super_zoom_bg.zip", "night_sight_bg.zip", "google_len_bg.zip","dual_ev_bg.zip"};
-    private static ArrayList<Pair<Integer, Integer>> attractionPlaceIds;
+    private static ArrayList<AttractionPlace> attractionPlaceIds;
 
     CarVision carVision;
     PixelCamera camera;
@@ -69,6 +83,8 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
     private static String TAG = "NavigateActivity";
     JavaCameraView javaCameraView;
     CameraStreamer cameraStreamer;
+    DriveRecorder driveRecorder;
+    LatencyTracer latencyTracer;
     View root;
     String currentAnimationPath = "";
     int animationIndex = 0;
@@ -83,6 +99,21 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
     private static int HOLD_TIME_SECOND = 5;
     CountDownTimer countDownTimer;
 
+    // the control loop keeps its status in place, the state view renders it at 5 Hz
+    private static final long STATUS_REFRESH_INTERVAL_MS = 200;
+    private final StatusSnapshot statusCopy = new StatusSnapshot();
+    private final StringBuilder statusText = new StringBuilder();
+    private final Runnable statusRefresher = new Runnable() {
+        @Override
+        public void run() {
+            if(carController != null) {
+                carController.renderStatus(statusCopy, statusText);
+                stateTextView.setText(statusText);
+            }
+            stateTextView.postDelayed(this, STATUS_REFRESH_INTERVAL_MS);
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -138,13 +169,41 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
 
     private void initiateCameraRelatedObjects()
     {
-        if(camera == null)
-            camera = new PixelCamera(this.javaCameraView,this,this);
-        if(carVision == null)
+        if(camera == null) {
+            camera = PixelCameraFactory.create(Config.getInstance().getCameraInfo(), this.javaCameraView, this, this);
+            camera.setPreviewOverlayEnable(Config.getInstance().isInDebugMode());
+        }
+        if(latencyTracer == null) {
+            latencyTracer = new LatencyTracer();
+            serialCommunicator.setLatencyTracer(latencyTracer);
+        }
+        if(carVision == null) {
             carVision = new CarVision(camera, getAssets(),this);
+            carVision.setLatencyTracer(latencyTracer);
+        }
         if(carController == null) {
             carController = new CarController(carVision, this);
             carController.setBaseListener(this);
+            carController.setSerialLinkMonitor(serialCommunicator.getLinkMonitor());
+            carController.setLatencyTracer(latencyTracer);
+        }
+        if(driveRecorder == null)
+            startDriveRecorder();
+    }
+
+    private void startDriveRecorder() {
+        RecorderInfo recorderInfo = Config.getInstance().getRecorderInfo();
+        if(recorderInfo == null)
+            recorderInfo = new RecorderInfo();
+        if(!recorderInfo.isEnable())
+            return;
+        try {
+            driveRecorder = new DriveRecorder(new File(getFilesDir(), DRIVE_RECORDER_FILE), recorderInfo.getSizeMb() * 1024 * 1024,
+                    recorderInfo.getFrameIntervalMs(), recorderInfo.getFrameDownscale(), recorderInfo.getFrameQuality());
+            carVision.setDriveRecorder(driveRecorder);
+            carController.setDriveRecorder(driveRecorder);
+        } catch (IOException e) {
+            Log.e(TAG, "Drive recorder is off", e);
         }
     }
 
@@ -163,6 +222,8 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
         serialCommunicator.resume();
         if(carController != null)
             carController.resume();
+        if(Config.getInstance().isInDebugMode())
+            stateTextView.post(statusRefresher);
     }
 
     @Override
@@ -172,6 +233,7 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
         serialCommunicator.pause();
         if(carController != null)
             carController.pause();
+        stateTextView.removeCallbacks(statusRefresher);
         super.onPause();
     }
 
@@ -187,6 +249,8 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
             carController.destroy();
         if(camera != null)
             camera.destroy();
+        if(driveRecorder != null)
+            driveRecorder.close();
         serialCommunicator.destroy();
         super.onDestroy();
     }
@@ -212,7 +276,7 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
         this.destinationNodeId = destinationNodeId;
 
         for(int i = 0; i < attractionPlaceIds.size(); i++){
-            if(destinationNodeId == attractionPlaceIds.get(i).first){
+            if(destinationNodeId == attractionPlaceIds.get(i).getNodeId()){
                 playAnimation(arriveDestinationPaths[i],false);
                 Log.d(TAG, ""+destinationNodeId);
                 animationIndex = i;
@@ -264,9 +328,12 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
 
     // SERIAL LISTENER //
     @Override
-    public void onReceive(String text) {
-        runOnUiThread(()->readMonitorView.setText(text));
-        carController.receiveSerialMessage(text);
+    public void onReceive(byte[] line, int offset, int length) {
+        if(Config.getInstance().isInDebugMode()) {
+            String text = new String(line, offset, length);
+            runOnUiThread(() -> readMonitorView.setText(text));
+        }
+        carController.receiveSerialMessage(line, offset, length);
         if(currentError == ErrorStatus.CANNOT_COMMUNICATE_WITH_CONTROLLER_BOARD){
             currentError = ErrorStatus.NONE;
             showError(currentError);
@@ -333,7 +400,21 @@ public class NavigateActivity extends BaseActivity implements CarController.CarC
     private void StartStreaming() {
         StopStreaming();
         if(camera != null && camera.isStarted()) {
-            this.cameraStreamer = new CameraStreamer(8080, 40, camera);
+            this.cameraStreamer = new CameraStreamer(8080, Config.getInstance().getStreamingInfo(), camera, carVision, getAssets());
+            DriveRecorder recorder = driveRecorder;
+            if(recorder != null) {
+                this.cameraStreamer.addDownload("/recorder", RECORDER_CONTENT_TYPE, recorder::openDump);
+                this.cameraStreamer.addDownload("/recorder/previous", RECORDER_CONTENT_TYPE, () -> DriveRecorder.openDump(DriveRecorder.getPreviousFile(recorder.getFile())));
+            }
+            LatencyTracer tracer = latencyTracer;
+            if(tracer != null)
+                this.cameraStreamer.addEndpoint("/latency", LATENCY_CONTENT_TYPE, () -> {
+                    StringBuilder json = new StringBuilder();
+                    tracer.appendJson(json, System.nanoTime());
+                    return ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.UTF_8));
+                });
+            this.cameraStreamer.addEndpoint("/metrics", MetricsRegistry.CONTENT_TYPE, () -> ByteBuffer.wrap(MetricsRegistry.getInstance().scrape()));
+            this.cameraStreamer.addEndpoint("/logs", LogService.CONTENT_TYPE, () -> ByteBuffer.wrap(LogService.getInstance().dump()));
             this.cameraStreamer.start();
         }
     }
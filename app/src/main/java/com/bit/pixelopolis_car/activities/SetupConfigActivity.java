@@ -27,8 +27,6 @@ import android.content.SharedPreferences;
 import android.content.pm.PackageManager;
 import android.os.Bundle;
 import android.provider.Settings;
-import android.util.Log;
-import android.util.Pair;
 import android.view.View;
 import android.widget.CheckBox;
 import android.widget.EditText;
@@ -48,17 +46,27 @@ import retrofit2.Response;
 
 import com.bit.pixelopolis_car.services.CarInformation;
 import com.bit.pixelopolis_car.services.config.AreaThreshold;
+import com.bit.pixelopolis_car.services.config.AttractionPlace;
 import com.bit.pixelopolis_car.services.config.CarArea;
 import com.bit.pixelopolis_car.services.config.CommandTime;
+import com.bit.pixelopolis_car.services.config.CameraInfo;
 import com.bit.pixelopolis_car.services.config.Config;
 import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+import com.bit.pixelopolis_car.services.config.LoggingInfo;
+import com.bit.pixelopolis_car.services.config.RecorderInfo;
+import com.bit.pixelopolis_car.services.config.SerialLinkInfo;
 import com.bit.pixelopolis_car.services.config.SpawnLocation;
+import com.bit.pixelopolis_car.services.config.StreamingInfo;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+import com.bit.pixelopolis_car.services.startup.StartupOrchestrator;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
 
 // Load and save configs (id, server url, ..) , request permission, then connect to server
@@ -66,6 +74,7 @@ import java.util.List;
 public class SetupConfigActivity extends BaseActivity {
 
     private static final int PERMISSION_REQUEST_CODE = 200;
+    private static final Logger API_LOG = LogService.getInstance().getLogger("API_CALL");
     TextView versionTextView;
     EditText stationIdView;
     EditText serverUrlView;
@@ -79,6 +88,8 @@ public class SetupConfigActivity extends BaseActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_setup_config);
+        // OpenCV and the models load while the station handshake runs
+        StartupOrchestrator.getInstance().prewarm(getAssets());
         versionTextView = findViewById(R.id.version_text_view);
         stationIdView = findViewById(R.id.station_id_textbox);
         serverUrlView = findViewById(R.id.server_url_textbox);
@@ -159,7 +170,7 @@ public class SetupConfigActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if (response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("connectCar response : %s", response.body());
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
                         if (returnObject.getBoolean("success")) {
@@ -174,7 +185,7 @@ public class SetupConfigActivity extends BaseActivity {
 
             @Override
             public void onFailure(Call<String> call, Throwable t) {
-                Log.d("API_CALL", t.getMessage());
+                API_LOG.w("connectCar failed", t);
                 baseListener.hideSpinner();
                 showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
             }
@@ -204,7 +215,7 @@ public class SetupConfigActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if (response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("getConfig response : %s", response.body());
 
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
@@ -339,15 +350,14 @@ public class SetupConfigActivity extends BaseActivity {
                                     Toast.makeText(getBaseContext(), "Error reading 'look_into_past' config", Toast.LENGTH_LONG ).show();
                                 }
 
-                                ArrayList<Pair<Integer, Integer>> attractionNodeAndPathIds = new ArrayList<Pair<Integer, Integer>>();
+                                ArrayList<AttractionPlace> attractionNodeAndPathIds = new ArrayList<AttractionPlace>();
                                 try {
                                     JSONArray attractionNodeIdsJsonArray = configObject.getJSONArray("attraction_node_ids");
                                     for(int i = 0; i < attractionNodeIdsJsonArray.length(); i++){
                                         JSONObject attractionObject = attractionNodeIdsJsonArray.getJSONObject(i);
                                         int nodeId = attractionObject.getInt("node_id");
                                         int pathId = attractionObject.getInt("path_id");
-                                        Pair<Integer, Integer> pair = new Pair<Integer, Integer>(nodeId, pathId);
-                                        attractionNodeAndPathIds.add(pair);
+                                        attractionNodeAndPathIds.add(new AttractionPlace(nodeId, pathId));
                                     }
                                 }
                                 catch (JSONException e) {
@@ -388,6 +398,21 @@ public class SetupConfigActivity extends BaseActivity {
                                     if(fixHittingWallObj.has("frame_counter_threshold")){
                                         fixHittingWallInfo.setFrameCounterThreshold(fixHittingWallObj.getInt("frame_counter_threshold"));
                                     }
+                                    if(fixHittingWallObj.has("debounce_duration")){
+                                        fixHittingWallInfo.setDebounceDuration(fixHittingWallObj.getInt("debounce_duration"));
+                                    }
+                                    else{
+                                        fixHittingWallInfo.setDebounceDuration(fixHittingWallInfo.getFrameCounterThreshold() * FixHittingWallInfo.FRAME_COUNTER_INTERVAL);
+                                    }
+                                    if(fixHittingWallObj.has("median_window")){
+                                        fixHittingWallInfo.setMedianWindowSize(fixHittingWallObj.getInt("median_window"));
+                                    }
+                                    if(fixHittingWallObj.has("smoothing_factor")){
+                                        fixHittingWallInfo.setSmoothingFactor(fixHittingWallObj.getDouble("smoothing_factor"));
+                                    }
+                                    if(fixHittingWallObj.has("sample_rate_smoothing_factor")){
+                                        fixHittingWallInfo.setSampleRateSmoothingFactor(fixHittingWallObj.getDouble("sample_rate_smoothing_factor"));
+                                    }
                                     if(fixHittingWallObj.has("go_back_duration")){
                                         fixHittingWallInfo.setGoBackDuration(fixHittingWallObj.getInt("go_back_duration"));
                                     }
@@ -400,6 +425,7 @@ public class SetupConfigActivity extends BaseActivity {
                                 }
                                 catch (JSONException e) {
                                     fixHittingWallInfo.setFrameCounterThreshold(18);
+                                    fixHittingWallInfo.setDebounceDuration(18 * FixHittingWallInfo.FRAME_COUNTER_INTERVAL);
                                     fixHittingWallInfo.setSensorMinThreshold(175);
                                     fixHittingWallInfo.setSensorMaxThreshold(420);
                                     fixHittingWallInfo.setGoBackDuration(2000);
@@ -408,6 +434,164 @@ public class SetupConfigActivity extends BaseActivity {
                                     Toast.makeText(getBaseContext(), "Error reading 'fix_hitting_wall' config", Toast.LENGTH_LONG ).show();
                                 }
 
+                                SerialLinkInfo serialLinkInfo = new SerialLinkInfo();
+                                try {
+                                    JSONObject serialLinkObj = configObject.getJSONObject("serial_link");
+                                    if(serialLinkObj.has("enable_ping")){
+                                        serialLinkInfo.setPingEnable(serialLinkObj.getBoolean("enable_ping"));
+                                    }
+                                    if(serialLinkObj.has("ping_interval")){
+                                        serialLinkInfo.setPingInterval(serialLinkObj.getInt("ping_interval"));
+                                    }
+                                    if(serialLinkObj.has("ping_timeout")){
+                                        serialLinkInfo.setPingTimeout(serialLinkObj.getInt("ping_timeout"));
+                                    }
+                                    if(serialLinkObj.has("degraded_latency")){
+                                        serialLinkInfo.setDegradedLatency(serialLinkObj.getInt("degraded_latency"));
+                                    }
+                                    if(serialLinkObj.has("degraded_loss_rate")){
+                                        serialLinkInfo.setDegradedLossRate(serialLinkObj.getDouble("degraded_loss_rate"));
+                                    }
+                                    if(serialLinkObj.has("degraded_speed_scale")){
+                                        serialLinkInfo.setDegradedSpeedScale(serialLinkObj.getDouble("degraded_speed_scale"));
+                                    }
+                                }
+                                catch (JSONException e) {
+                                    // optional, older station configs have no serial_link entry
+                                    serialLinkInfo = new SerialLinkInfo();
+                                }
+
+                                StreamingInfo streamingInfo = new StreamingInfo();
+                                try {
+                                    JSONObject streamingObj = configObject.getJSONObject("streaming");
+                                    if(streamingObj.has("adaptive")){
+                                        streamingInfo.setAdaptive(streamingObj.getBoolean("adaptive"));
+                                    }
+                                    if(streamingObj.has("jpeg_quality")){
+                                        streamingInfo.setJpegQuality(streamingObj.getInt("jpeg_quality"));
+                                    }
+                                    if(streamingObj.has("min_jpeg_quality")){
+                                        streamingInfo.setMinJpegQuality(streamingObj.getInt("min_jpeg_quality"));
+                                    }
+                                    if(streamingObj.has("max_jpeg_quality")){
+                                        streamingInfo.setMaxJpegQuality(streamingObj.getInt("max_jpeg_quality"));
+                                    }
+                                    if(streamingObj.has("max_downscale")){
+                                        streamingInfo.setMaxDownscale(streamingObj.getInt("max_downscale"));
+                                    }
+                                    if(streamingObj.has("max_frame_rate")){
+                                        streamingInfo.setMaxFrameRate(streamingObj.getInt("max_frame_rate"));
+                                    }
+                                    if(streamingObj.has("min_frame_rate")){
+                                        streamingInfo.setMinFrameRate(streamingObj.getInt("min_frame_rate"));
+                                    }
+                                    if(streamingObj.has("latency_budget")){
+                                        streamingInfo.setLatencyBudget(streamingObj.getInt("latency_budget"));
+                                    }
+                                    if(streamingObj.has("vision_busy_threshold")){
+                                        streamingInfo.setVisionBusyThreshold(streamingObj.getInt("vision_busy_threshold"));
+                                    }
+                                    if(streamingObj.has("delta_enable")){
+                                        streamingInfo.setDeltaEnable(streamingObj.getBoolean("delta_enable"));
+                                    }
+                                    if(streamingObj.has("delta_tile_threshold")){
+                                        streamingInfo.setDeltaTileThreshold(streamingObj.getInt("delta_tile_threshold"));
+                                    }
+                                    if(streamingObj.has("keyframe_interval")){
+                                        streamingInfo.setKeyframeInterval(streamingObj.getInt("keyframe_interval"));
+                                    }
+                                }
+                                catch (JSONException e) {
+                                    // optional, older station configs have no streaming entry
+                                    streamingInfo = new StreamingInfo();
+                                }
+
+                                CameraInfo cameraInfo = new CameraInfo();
+                                try {
+                                    JSONObject cameraObj = configObject.getJSONObject("camera");
+                                    if(cameraObj.has("backend")){
+                                        cameraInfo.setBackend(cameraObj.getString("backend"));
+                                    }
+                                    if(cameraObj.has("max_frame_width")){
+                                        cameraInfo.setMaxFrameWidth(cameraObj.getInt("max_frame_width"));
+                                    }
+                                    if(cameraObj.has("max_frame_height")){
+                                        cameraInfo.setMaxFrameHeight(cameraObj.getInt("max_frame_height"));
+                                    }
+                                    if(cameraObj.has("replay_file")){
+                                        cameraInfo.setReplayFile(cameraObj.getString("replay_file"));
+                                    }
+                                    if(cameraObj.has("replay_format")){
+                                        cameraInfo.setReplayFormat(cameraObj.getString("replay_format"));
+                                    }
+                                    if(cameraObj.has("replay_width")){
+                                        cameraInfo.setReplayWidth(cameraObj.getInt("replay_width"));
+                                    }
+                                    if(cameraObj.has("replay_height")){
+                                        cameraInfo.setReplayHeight(cameraObj.getInt("replay_height"));
+                                    }
+                                    if(cameraObj.has("replay_frame_rate")){
+                                        cameraInfo.setReplayFrameRate(cameraObj.getInt("replay_frame_rate"));
+                                    }
+                                }
+                                catch (JSONException e) {
+                                    // optional, older station configs have no camera entry
+                                    cameraInfo = new CameraInfo();
+                                }
+
+                                RecorderInfo recorderInfo = new RecorderInfo();
+                                try {
+                                    JSONObject recorderObj = configObject.getJSONObject("recorder");
+                                    if(recorderObj.has("enable")){
+                                        recorderInfo.setEnable(recorderObj.getBoolean("enable"));
+                                    }
+                                    if(recorderObj.has("size_mb")){
+                                        recorderInfo.setSizeMb(recorderObj.getInt("size_mb"));
+                                    }
+                                    if(recorderObj.has("frame_interval_ms")){
+                                        recorderInfo.setFrameIntervalMs(recorderObj.getInt("frame_interval_ms"));
+                                    }
+                                    if(recorderObj.has("frame_downscale")){
+                                        recorderInfo.setFrameDownscale(recorderObj.getInt("frame_downscale"));
+                                    }
+                                    if(recorderObj.has("frame_quality")){
+                                        recorderInfo.setFrameQuality(recorderObj.getInt("frame_quality"));
+                                    }
+                                }
+                                catch (JSONException e) {
+                                    // optional, older station configs have no recorder entry
+                                    recorderInfo = new RecorderInfo();
+                                }
+
+                                LoggingInfo loggingInfo = new LoggingInfo();
+                                try {
+                                    JSONObject loggingObj = configObject.getJSONObject("logging");
+                                    if(loggingObj.has("default_level")){
+                                        loggingInfo.setDefaultLevel(loggingObj.getString("default_level"));
+                                    }
+                                    if(loggingObj.has("tag_levels")){
+                                        JSONObject tagLevelsObj = loggingObj.getJSONObject("tag_levels");
+                                        Iterator<String> tags = tagLevelsObj.keys();
+                                        while(tags.hasNext()){
+                                            String tag = tags.next();
+                                            loggingInfo.getTagLevels().put(tag, tagLevelsObj.getString(tag));
+                                        }
+                                    }
+                                    if(loggingObj.has("rate_per_second")){
+                                        loggingInfo.setRatePerSecond(loggingObj.getDouble("rate_per_second"));
+                                    }
+                                    if(loggingObj.has("burst")){
+                                        loggingInfo.setBurst(loggingObj.getInt("burst"));
+                                    }
+                                    if(loggingObj.has("logcat")){
+                                        loggingInfo.setLogcat(loggingObj.getBoolean("logcat"));
+                                    }
+                                }
+                                catch (JSONException e) {
+                                    // optional, older station configs have no logging entry
+                                    loggingInfo = new LoggingInfo();
+                                }
+
                                 Config config = Config.getInstance();
                                 config.setCommandTime(commandTime);
                                 config.setSpawnLocation(spawnLocation);
@@ -424,6 +608,12 @@ public class SetupConfigActivity extends BaseActivity {
                                 config.setDefaultWheelSpeed(defaultWheelSpeed);
                                 config.setSlowWheelSpeed(slowWheelSpeed);
                                 config.setFixHittingWallInfo(fixHittingWallInfo);
+                                config.setSerialLinkInfo(serialLinkInfo);
+                                config.setStreamingInfo(streamingInfo);
+                                config.setCameraInfo(cameraInfo);
+                                config.setRecorderInfo(recorderInfo);
+                                config.setLoggingInfo(loggingInfo);
+                                LogService.getInstance().configure(loggingInfo);
                                 config.setBatteryLowThreshold(batteryLowThreshold);
                                 config.setBatteryVeryLowThreshold(batteryVeryLowThreshold);
                             }
@@ -440,7 +630,7 @@ public class SetupConfigActivity extends BaseActivity {
 
             @Override
             public void onFailure(Call<String> call, Throwable t) {
-                Log.d("API_CALL", t.getMessage());
+                API_LOG.w("getConfig failed", t);
                 baseListener.hideSpinner();
                 showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
             }
@@ -452,7 +642,7 @@ public class SetupConfigActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if(response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("getAllNodeData response : %s", response.body());
 
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
@@ -502,7 +692,7 @@ public class SetupConfigActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if(response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("waitForConnectStation response : %s", response.body());
 
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
@@ -20,12 +20,13 @@ import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
-import android.util.Log;
 import android.view.View;
 import android.widget.TextView;
 
 import com.bit.pixelopolis_car.services.BaseListener;
 import com.bit.pixelopolis_car.services.api.ApiCommunicator;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
 import com.bit.pixelopolis_car.R;
 import com.bit.pixelopolis_car.enums.ErrorStatus;
 import com.bit.pixelopolis_car.services.CarInformation;
@@ -41,6 +42,7 @@ import retrofit2.Response;
 // notify user if the app is outdated
 
 public class UpdateAppActivity extends BaseActivity {
+    private static final Logger API_LOG = LogService.getInstance().getLogger("API_CALL");
 
     TextView versionView;
     BaseListener baseListener;
@@ -82,7 +84,7 @@ public class UpdateAppActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if (response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("connectCar response : %s", response.body());
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
                         if (returnObject.getBoolean("success")) {
@@ -97,7 +99,7 @@ public class UpdateAppActivity extends BaseActivity {
 
             @Override
             public void onFailure(Call<String> call, Throwable t) {
-                Log.d("API_CALL", t.getMessage());
+                API_LOG.w("connectCar failed", t);
                 baseListener.hideSpinner();
                 showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
             }
@@ -109,7 +111,7 @@ public class UpdateAppActivity extends BaseActivity {
             @Override
             public void onResponse(Call<String> call, Response<String> response) {
                 if(response != null && response.body() != null) {
-                    Log.d("API_CALL", response.body());
+                    API_LOG.d("waitForConnectStation response : %s", response.body());
 
                     try {
                         JSONObject returnObject = new JSONObject(response.body());
@@ -16,7 +16,6 @@
 
 package com.bit.pixelopolis_car.data;
 
-import android.graphics.RectF;
 import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
 import com.bit.pixelopolis_car.services.config.Config;
 
@@ -54,8 +53,7 @@ public class NodeInfo {
                     JSONObject boundobj = obji.getJSONObject("bound_size");
                     float width = (float)boundobj.getDouble("width");
                     float height = (float)boundobj.getDouble("height");
-                    RectF bound = new RectF(0,0, width, height);
-                    ObjectDetector.DetectedObject detectedObject = new ObjectDetector.DetectedObject("", title, confidence, bound);
+                    ObjectDetector.DetectedObject detectedObject = new ObjectDetector.DetectedObject("", title, confidence, 0, 0, width, height);
                     addObject(detectedObject);
                 }
             }
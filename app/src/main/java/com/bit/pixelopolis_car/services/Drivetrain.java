@@ -0,0 +1,37 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services;
+
+import com.bit.pixelopolis_car.enums.CMD;
+
+/**
+ * What the navigation state machine asks of the wheels. {@link WheelController} turns these into
+ * motor speeds from the lane angle, the simulator turns them into virtual serial commands.
+ */
+public interface Drivetrain {
+    void driveInLaneKeepingMode();
+
+    void driveInScriptMode(CMD mode);
+
+    void park();
+
+    // milliseconds the scripted move takes
+    int getScriptDuration(CMD mode);
+
+    // lane keeping speed multiplier
+    void setSpeedScale(float speedScale);
+}
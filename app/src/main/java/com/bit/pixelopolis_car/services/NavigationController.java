@@ -0,0 +1,1323 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services;
+
+import com.bit.pixelopolis_car.data.NavigationCommand;
+import com.bit.pixelopolis_car.data.NodeInfo;
+import com.bit.pixelopolis_car.enums.AppStatus;
+import com.bit.pixelopolis_car.enums.CMD;
+import com.bit.pixelopolis_car.enums.ErrorStatus;
+import com.bit.pixelopolis_car.enums.WarningStatus;
+import com.bit.pixelopolis_car.services.api.StationApi;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+import com.bit.pixelopolis_car.services.config.AreaThreshold;
+import com.bit.pixelopolis_car.services.config.CarArea;
+import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+import com.bit.pixelopolis_car.services.serial.SerialLinkMonitor;
+import com.bit.pixelopolis_car.services.telemetry.IrSensorFilter;
+import com.bit.pixelopolis_car.services.telemetry.TelemetryDecoder;
+import com.bit.pixelopolis_car.services.telemetry.TelemetrySample;
+import com.bit.pixelopolis_car.services.tracing.LatencyTracer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * The car's navigation state machine, without anything Android. One {@link #tick()} is one pass of the
+ * control loop; the station, the wheels, the detections, the phone battery and the clock all come in
+ * through {@link StationApi}, {@link Drivetrain} and the abstract and protected methods below.
+ * {@link CarController} runs it on the phone, the simulator module runs it on a virtual clock.
+ */
+public abstract class NavigationController {
+
+    static final int UPDATE_INTERVAL = 10;
+    static final int SEND_ALIVE_INTERVAL = 1000;
+    private static final int UNKNOWN_MOTOR_BATTERY_PERCENTAGE = 999;
+    private static final int DEFAULT_IR_SENSOR_VALUE = 300;
+    // the detection comparisons run for every detection against every node object each tick, their
+    // logging is compiled out unless this is flipped for a debugging session
+    private static final boolean LOG_DETECTIONS = false;
+
+    public enum DebugSound {
+        STOP,
+        ARRIVE_AT_NODE,
+        ARRIVE_WRONG_NODE,
+        ARRIVE_AT_DESTINATION
+    }
+
+    public interface NavigationListener {
+        void displayStandby();
+        void displayWaitJourney();
+        void goToSetupActivity();
+
+        void placeSelected();
+        void arriveAtDestination(Integer destinationNodeId);
+    }
+
+    boolean isFinished = false;
+    boolean isWaitingForPlaceSelection = true;
+    boolean isWaitingForManualTurnThenCancelNavigationCommand = false;
+    boolean isArriveWrongNode = false;
+
+    AppStatus appStatus;
+    ErrorStatus errorStatus = ErrorStatus.NONE;
+    WarningStatus warningStatus = WarningStatus.NONE;
+
+    ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // requests the control loop repeats every tick that are still waiting for their answer, added on the
+    // control thread and removed on the callback thread
+    private final Set<String> pendingRequests = ConcurrentHashMap.newKeySet();
+
+    protected StationApi stationApi;
+    protected Drivetrain drivetrain;
+    protected NavigationListener listener = null;
+    protected BaseListener baseListener;
+    private final StatusSnapshot statusSnapshot = new StatusSnapshot();
+
+    List<NodeInfo> allNodeInfos;
+    public NodeInfo currentDestinationNodeInfo;
+    int currentDestinationPathId;
+    NavigationCommand currentNavigationCommand;
+    List<NavigationCommand> routeToDestination;
+    ObjectDetector.DetectedObject otherCarMarker;
+    ObjectDetector.DetectedObject prevNodeObject = null;
+    AppStatus stateBeforeHittingWall;
+    boolean shouldPlayDebugSound = false;
+
+    long previousFrameTimeStamp = 0;
+    long scriptTurnElapsedTime = 0;
+    long arriveAtDestinationTimeStamp = 0;
+    int sendAliveTimer = 0;
+    TelemetryDecoder telemetryDecoder = new TelemetryDecoder(UNKNOWN_MOTOR_BATTERY_PERCENTAGE, DEFAULT_IR_SENSOR_VALUE);
+    // read once per control tick so every check in the tick sees the same values
+    TelemetrySample telemetry = telemetryDecoder.getSample();
+    long hittingWallScriptTurnElapsedTime = 0;
+    long hittingWallPreviousFrameTimeStamp = 0;
+    long hittingWallGoBackwardPreviousFrameTimeStamp = 0;
+    long hittingWallGoBackwardElapsedTime = 0;
+    FixHittingWallInfo fixHittingWallInfo;
+    IrSensorFilter irSensorFilter;
+    SerialLinkMonitor serialLinkMonitor;
+    LatencyTracer latencyTracer;
+    AreaThreshold areaThreshold;
+    CarArea carArea;
+
+    public ObjectHistory<ObjectDetector.DetectedObject> objectsHistory = new ObjectHistory<>(ObjectDetector.DetectedObject::getTitle);
+
+    protected NavigationController(StationApi stationApi)
+    {
+        this.stationApi = stationApi;
+        setAppStatus(AppStatus.IDLE);
+
+        Config config = Config.getInstance();
+
+        shouldPlayDebugSound = config.isInDebugMode();
+
+        areaThreshold = config.getAreaThreshold();
+        allNodeInfos = config.getAllNodeInfos();
+
+        fixHittingWallInfo = config.getFixHittingWallInfo();
+        irSensorFilter = new IrSensorFilter(fixHittingWallInfo);
+        telemetryDecoder.setIrSensorFilter(irSensorFilter);
+
+        currentNavigationCommand = new NavigationCommand();
+        currentNavigationCommand.command = CMD.DO_NOTHING;
+        int spawnNodeId = config.getSpawnLocation().getNodeId();
+        for(int i = 0; i < allNodeInfos.size(); i++){
+            NodeInfo nif = allNodeInfos.get(i);
+            if(Integer.parseInt(nif.getNodeId()) == spawnNodeId){
+                currentNavigationCommand.nodeInfo = nif;
+                break;
+            }
+        }
+
+        carArea = config.getCarArea();
+        String title = carArea.getTitle();
+        float width = (float)carArea.getWidth();
+        float height = (float)carArea.getHeight();
+        float confidence = (float) carArea.getConfidence();
+        otherCarMarker = new ObjectDetector.DetectedObject("1", title, confidence, 0.0f, 0.0f, width, height);
+    }
+
+    // latest detections from the car's camera, null before the first frame
+    protected abstract List<ObjectDetector.DetectedObject> getObjectFound();
+
+    protected abstract int getPhoneBatteryPercentage();
+
+    // only called while debug sounds are on
+    protected void playSound(DebugSound sound) {
+    }
+
+    protected void debug(String message) {
+    }
+
+    // a station request that got no answer, kept apart from debug() so the routine answers never hide it
+    protected void onRequestFailed(Call<?> call, Throwable t) {
+    }
+
+    // the control loop's clock, the simulator runs it on virtual time
+    protected long nanoTime() {
+        return System.nanoTime();
+    }
+
+    protected void onAppStatusChanged(AppStatus previousStatus, AppStatus status) {
+    }
+
+    protected void onTelemetry(TelemetrySample sample) {
+    }
+
+    private long currentTimeMillis() {
+        return nanoTime() / 1000000L;
+    }
+
+    private void playDebugSound(DebugSound sound) {
+        if(shouldPlayDebugSound)
+            playSound(sound);
+    }
+
+    // one pass of the control loop, the caller runs it every UPDATE_INTERVAL ms
+    public void tick() {
+        long now = nanoTime();
+        telemetry = telemetryDecoder.getSample();
+        if(serialLinkMonitor != null && drivetrain != null)
+            drivetrain.setSpeedScale(serialLinkMonitor.getSpeedScale(now));
+
+        // send alive signal to server
+        if(sendAliveTimer >= SEND_ALIVE_INTERVAL) {
+            sendAlive();
+        }
+
+        if(listener != null) {
+            updateStatusSnapshot(now);
+            checkWarnings();
+        }
+
+        if(isWaitingForPlaceSelection) {
+            waitForPlaceSelection();
+        }
+        else{
+            waitForCancelPlace();
+        }
+
+        // try fixing crashing wall situation
+        if(fixHittingWallInfo.isEnable()) {
+            if (irSensorFilter.isOutOfRange(now)) {
+                setCarStatus(AppStatus.HITTING_WALL);
+            }
+        }
+
+        update();
+
+        AppStatus s = getAppStatus();
+        if( s != null && s != AppStatus.PREPARE_TO_DISCONNECT && s!= AppStatus.DISCONNECT)
+            waitForStationDisconnect();
+
+        sendAliveTimer += UPDATE_INTERVAL;
+    }
+
+    public boolean isFinished() {
+        return isFinished;
+    }
+
+    // runs every tick, so it only stores references and primitives, the text is built in renderStatus
+    private void updateStatusSnapshot(long now){
+        NavigationCommand command = currentNavigationCommand;
+        statusSnapshot.update(now, isWaitingForPlaceSelection, getAppStatus(),
+                command != null ? command.command : null,
+                command != null ? command.nodeInfo.getNodeId() : null,
+                prevNodeObject != null ? prevNodeObject.getTitle() : null,
+                currentDestinationNodeInfo != null ? currentDestinationNodeInfo.getNodeId() : null);
+        statusSnapshot.updateTelemetry(telemetry.getMotorBatteryPercentage(), telemetry.getIrSensorValue(),
+                irSensorFilter.getFilteredValue(), irSensorFilter.getSampleRateHz());
+    }
+
+    // renders the latest status into out, called by the UI at its own refresh rate; copy is the caller's scratch snapshot
+    public void renderStatus(StatusSnapshot copy, StringBuilder out) {
+        copy.copyFrom(statusSnapshot);
+        out.setLength(0);
+        copy.appendTo(out);
+        if(serialLinkMonitor != null)
+            out.append('\n').append(serialLinkMonitor.getSummary(nanoTime()));
+    }
+
+    private void checkWarnings() {
+        int carBattery = getPhoneBatteryPercentage();
+        int motorBatteryPercentage = telemetry.getMotorBatteryPercentage();
+
+        WarningStatus newWarningStatus;
+
+        if (motorBatteryPercentage <= Config.getInstance().getBatteryVeryLowThreshold()){
+            newWarningStatus = WarningStatus.MOTOR_VERY_LOW_BATTERY;
+        }
+        else if(motorBatteryPercentage <= Config.getInstance().getBatteryLowThreshold()){
+            newWarningStatus = WarningStatus.MOTOR_LOW_BATTERY;
+        }
+        else if(carBattery <= 10){
+            newWarningStatus = WarningStatus.CAR_PHONE_VERY_LOW_BATTERY;
+        }
+        else if(carBattery <= 20){
+            newWarningStatus = WarningStatus.CAR_PHONE_LOW_BATTERY;
+        }
+        else if(appStatus == AppStatus.LOST){
+            newWarningStatus = WarningStatus.LOST;
+        }
+        else{
+            newWarningStatus = WarningStatus.NONE;
+        }
+
+        if (warningStatus != newWarningStatus) {
+            warningStatus = newWarningStatus;
+            baseListener.showWarning(warningStatus);
+        }
+    }
+
+    private void update() {
+        if(drivetrain == null)
+            return;
+
+        switch (appStatus){
+            case WAIT_TO_CONNECT:
+                break;
+            case IDLE:
+                if(isWaitingForPlaceSelection)
+                    setCarStatus(AppStatus.REQUEST_RANDOM_ROUTE);
+                break;
+            case REQUEST_RANDOM_ROUTE:
+
+                break;
+            case REQUEST_ROUTE_TO_DESTINATION:
+                break;
+            case RECEIVED_ROUTE_TO_DESTINATION:
+                setCarStatus(AppStatus.GET_NEXT_NAVIGATION_COMMAND);
+                break;
+            case GET_NEXT_NAVIGATION_COMMAND:
+                if(routeToDestination.size() != 0) {
+                    currentNavigationCommand = routeToDestination.get(0);
+                    routeToDestination.remove(0);
+                    setCarStatus(AppStatus.ON_ROUTE_TO_NODE);
+                }
+                else{
+                    setCarStatus(AppStatus.ARRIVE_AT_DESTINATION);
+                    arriveAtDestinationTimeStamp = currentTimeMillis();
+                }
+                break;
+            case ON_ROUTE_TO_NODE:
+                if(isArriveWrongNode) {
+                    setCarStatus(AppStatus.ARRIVE_AT_NODE);
+                    isArriveWrongNode = false;
+                }
+
+                if(detectOtherCar()) {
+                    drivetrain.park();
+                    playDebugSound(DebugSound.STOP);
+                }
+                else if(objectDetect(currentNavigationCommand.nodeInfo)){
+                    //drivetrain.park();
+                    drivetrain.driveInLaneKeepingMode();
+                }else{
+                    // don't find anything
+                    drivetrain.driveInLaneKeepingMode();
+                }
+                break;
+            case LOST:
+                break;
+            case ARRIVE_AT_NODE:
+                arriveAtNode(Integer.parseInt(currentNavigationCommand.nodeInfo.getNodeId()));
+                break;
+            case WAIT_FOR_TRAFFIC:
+                //drivetrain.park();
+                waitForTraffic(Integer.parseInt(currentNavigationCommand.nodeInfo.getNodeId()));
+                break;
+            case START_AUTO_TURN_COMMAND:
+                drivetrain.driveInScriptMode(currentNavigationCommand.command);
+                previousFrameTimeStamp = currentTimeMillis();
+                scriptTurnElapsedTime = 0;
+                setCarStatus(AppStatus.WORKING_ON_AUTO_TURN_COMMAND);
+                break;
+            case WORKING_ON_AUTO_TURN_COMMAND:
+                // prevent crash
+                if(detectOtherCar()) {
+                    drivetrain.park();
+                }
+                else{
+                    // check if script is done
+                    long currentTimeStamp = currentTimeMillis();
+                    scriptTurnElapsedTime += (currentTimeStamp - previousFrameTimeStamp);
+                    previousFrameTimeStamp = currentTimeStamp;
+                    if( scriptTurnElapsedTime >= drivetrain.getScriptDuration(currentNavigationCommand.command)){
+                        drivetrain.driveInLaneKeepingMode();
+                        setCarStatus(AppStatus.FINISH_AUTO_TURN_COMMAND);
+                    }
+                }
+                break;
+            case FINISH_AUTO_TURN_COMMAND:
+                drivetrain.driveInLaneKeepingMode();
+                finishAutoTurnCommand(Integer.parseInt(currentNavigationCommand.nodeInfo.getNodeId()));
+                break;
+            case NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION:
+                drivetrain.park();
+                if(routeToDestination != null) {
+                    routeToDestination.clear();
+                }
+                setCarStatus(AppStatus.REQUEST_ROUTE_TO_DESTINATION);
+                isWaitingForManualTurnThenCancelNavigationCommand = false;
+                break;
+            case ARRIVE_AT_DESTINATION:
+                //drivetrain.park();
+                arriveAtDestination(Integer.parseInt(currentDestinationNodeInfo.getNodeId()));
+                prevNodeObject = null;
+                if(!isWaitingForPlaceSelection) {
+                    setCarStatus(AppStatus.STAY_AT_DESTINATION);
+                    drivetrain.park();
+                    listener.arriveAtDestination(Integer.parseInt(currentDestinationNodeInfo.getNodeId()));
+                }
+                else{
+                    drivetrain.driveInLaneKeepingMode();
+                    setCarStatus(AppStatus.IDLE);
+                }
+                currentDestinationNodeInfo = null;
+                routeToDestination.clear();
+                break;
+            case STAY_AT_DESTINATION:
+                checkStationVideoStatus();
+                break;
+            case CANCEL_PLACE:
+                drivetrain.park();
+                if(routeToDestination != null) {
+                    routeToDestination.clear();
+                }
+                isWaitingForPlaceSelection = true;
+                isWaitingForManualTurnThenCancelNavigationCommand = false;
+                setCarStatus(AppStatus.IDLE);
+                break;
+            case HITTING_WALL:
+                long now = nanoTime();
+                if(!irSensorFilter.isOutOfRange(now)){
+                    setAppStatus(stateBeforeHittingWall);
+                }
+                else if(irSensorFilter.isHittingWall(now)) {
+                    setCarStatus(AppStatus.FIX_HITTING_WALL_GO_BACKWARD);
+                    drivetrain.driveInScriptMode(CMD.GO_BACKWARD);
+                    playDebugSound(DebugSound.STOP);
+
+                    hittingWallGoBackwardPreviousFrameTimeStamp = currentTimeMillis();
+                    hittingWallGoBackwardElapsedTime = 0;
+                }
+                break;
+            case FIX_HITTING_WALL_GO_BACKWARD:
+                long currentHittingWallGoBackwardTimestamp = currentTimeMillis();
+                hittingWallGoBackwardElapsedTime += currentHittingWallGoBackwardTimestamp - hittingWallGoBackwardPreviousFrameTimeStamp;
+                hittingWallGoBackwardPreviousFrameTimeStamp = currentHittingWallGoBackwardTimestamp;
+
+                if(hittingWallGoBackwardElapsedTime >= fixHittingWallInfo.getGoBackDuration()){
+                    setCarStatus(AppStatus.FIX_HITTING_WALL_SCRIPT_TURN_LEFT);
+                    drivetrain.driveInScriptMode(CMD.FIX_HITTING_WALL_TURN_LEFT);
+
+                    hittingWallPreviousFrameTimeStamp = currentTimeMillis();
+                    hittingWallScriptTurnElapsedTime = 0;
+                    setCarStatus(AppStatus.FIX_HITTING_WALL_SCRIPT_TURN_LEFT);
+                }
+                break;
+            case FIX_HITTING_WALL_SCRIPT_TURN_LEFT:
+                if(detectOtherCar()) {
+                    drivetrain.park();
+                }
+                else {
+                    long currentFixHittingWallTimeStamp = currentTimeMillis();
+                    hittingWallScriptTurnElapsedTime += (currentFixHittingWallTimeStamp - hittingWallPreviousFrameTimeStamp);
+                    hittingWallPreviousFrameTimeStamp = currentFixHittingWallTimeStamp;
+
+                    if (hittingWallScriptTurnElapsedTime >= drivetrain.getScriptDuration(CMD.FIX_HITTING_WALL_TURN_LEFT)) {
+                        setCarStatus(AppStatus.FINISH_FIX_HITTING_WALL);
+                    }
+                }
+                break;
+            case FINISH_FIX_HITTING_WALL:
+                setAppStatus(stateBeforeHittingWall);
+                break;
+            case PREPARE_TO_DISCONNECT:
+                drivetrain.park();
+                setCarStatus(AppStatus.DISCONNECT);
+                break;
+            case DISCONNECT:
+                listener.goToSetupActivity();
+                setCarStatus(AppStatus.WAIT_TO_CONNECT);
+                destroy();
+                break;
+            default:
+                break;
+        }
+    }
+
+    public void setSerialLinkMonitor(SerialLinkMonitor serialLinkMonitor) {
+        this.serialLinkMonitor = serialLinkMonitor;
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
+    public void receiveSerialMessage(byte[] line, int offset, int length){
+        TelemetrySample previousSample = telemetryDecoder.getSample();
+        telemetryDecoder.decode(line, offset, length, nanoTime());
+        TelemetrySample sample = telemetryDecoder.getSample();
+        if(sample != previousSample)
+            onTelemetry(sample);
+    }
+
+    public void setCarStatus(AppStatus status) {
+        AppStatus previousStatus = getAppStatus();
+
+        switch (status){
+            case WAIT_TO_CONNECT:
+                setAppStatus(AppStatus.WAIT_TO_CONNECT);
+                break;
+            case IDLE:
+                if(previousStatus == AppStatus.ARRIVE_AT_DESTINATION || previousStatus == AppStatus.STAY_AT_DESTINATION || previousStatus == AppStatus.CANCEL_PLACE) {
+                    setAppStatus(AppStatus.IDLE);
+                }
+                break;
+            case REQUEST_RANDOM_ROUTE:
+                if(previousStatus == AppStatus.IDLE || previousStatus == AppStatus.LOST) {
+                    setAppStatus(AppStatus.REQUEST_RANDOM_ROUTE);
+                    requestRouteToRandomDestination(Integer.parseInt(currentNavigationCommand.nodeInfo.getNodeId()), null);
+                }
+                break;
+            case REQUEST_ROUTE_TO_DESTINATION:
+                if(previousStatus == AppStatus.IDLE || previousStatus == AppStatus.LOST || previousStatus == AppStatus.NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION) {
+                    setAppStatus(AppStatus.REQUEST_ROUTE_TO_DESTINATION);
+                    requestRouteToDestination(Integer.parseInt(currentNavigationCommand.nodeInfo.getNodeId()), Integer.parseInt(currentDestinationNodeInfo.getNodeId()), currentDestinationPathId, null);
+                }
+                break;
+            case RECEIVED_ROUTE_TO_DESTINATION:
+                if(previousStatus == AppStatus.REQUEST_RANDOM_ROUTE || previousStatus == AppStatus.REQUEST_ROUTE_TO_DESTINATION) {
+                    setAppStatus(AppStatus.RECEIVED_ROUTE_TO_DESTINATION);
+                }
+                break;
+            case GET_NEXT_NAVIGATION_COMMAND:
+                if(previousStatus == AppStatus.FINISH_AUTO_TURN_COMMAND || previousStatus == AppStatus.RECEIVED_ROUTE_TO_DESTINATION){
+                    setAppStatus(AppStatus.GET_NEXT_NAVIGATION_COMMAND);
+                }
+                break;
+            case ON_ROUTE_TO_NODE:
+                if(previousStatus == AppStatus.GET_NEXT_NAVIGATION_COMMAND) {
+                    setAppStatus(AppStatus.ON_ROUTE_TO_NODE);
+                }
+                break;
+            case LOST:
+                if(previousStatus == AppStatus.ON_ROUTE_TO_NODE) {
+                    setAppStatus(AppStatus.LOST);
+                }
+                break;
+            case ARRIVE_AT_NODE:
+                if(previousStatus == AppStatus.ON_ROUTE_TO_NODE){
+                    setAppStatus(AppStatus.ARRIVE_AT_NODE);
+                }
+                break;
+            case WAIT_FOR_TRAFFIC:
+                if(previousStatus == AppStatus.ARRIVE_AT_NODE){
+                    setAppStatus(AppStatus.WAIT_FOR_TRAFFIC);
+                }
+                break;
+            case START_AUTO_TURN_COMMAND:
+                if(previousStatus == AppStatus.WAIT_FOR_TRAFFIC){
+                    setAppStatus(AppStatus.START_AUTO_TURN_COMMAND);
+                }
+                break;
+            case WORKING_ON_AUTO_TURN_COMMAND:
+                if(previousStatus == AppStatus.START_AUTO_TURN_COMMAND){
+                    setAppStatus(AppStatus.WORKING_ON_AUTO_TURN_COMMAND);
+                }
+                break;
+            case FINISH_AUTO_TURN_COMMAND:
+                if(previousStatus == AppStatus.WORKING_ON_AUTO_TURN_COMMAND){
+                    setAppStatus(AppStatus.FINISH_AUTO_TURN_COMMAND);
+                }
+                break;
+            case NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION:
+                setAppStatus(AppStatus.NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION);
+                break;
+            case ARRIVE_AT_DESTINATION:
+                if(previousStatus == AppStatus.GET_NEXT_NAVIGATION_COMMAND) {
+                    setAppStatus(AppStatus.ARRIVE_AT_DESTINATION);
+                }
+                break;
+            case STAY_AT_DESTINATION:
+                if(previousStatus == AppStatus.ARRIVE_AT_DESTINATION) {
+                    setAppStatus(AppStatus.STAY_AT_DESTINATION);
+                }
+                break;
+            case CANCEL_PLACE:
+                setAppStatus(AppStatus.CANCEL_PLACE);
+                break;
+            case HITTING_WALL:
+                if(previousStatus != AppStatus.WAIT_TO_CONNECT && previousStatus != AppStatus.PREPARE_TO_DISCONNECT && previousStatus != AppStatus.DISCONNECT
+                        && previousStatus != AppStatus.HITTING_WALL && previousStatus != AppStatus.FIX_HITTING_WALL_GO_BACKWARD && previousStatus != AppStatus.FIX_HITTING_WALL_SCRIPT_TURN_LEFT && previousStatus != AppStatus.FINISH_FIX_HITTING_WALL){
+                    stateBeforeHittingWall = appStatus;
+                    setAppStatus(AppStatus.HITTING_WALL);
+                }
+                break;
+            case FIX_HITTING_WALL_GO_BACKWARD:
+                if(previousStatus == AppStatus.HITTING_WALL) {
+                    setAppStatus(AppStatus.FIX_HITTING_WALL_GO_BACKWARD);
+                }
+                break;
+            case FIX_HITTING_WALL_SCRIPT_TURN_LEFT:
+                if(previousStatus == AppStatus.FIX_HITTING_WALL_GO_BACKWARD) {
+                    setAppStatus(AppStatus.FIX_HITTING_WALL_SCRIPT_TURN_LEFT);
+                }
+                break;
+            case FINISH_FIX_HITTING_WALL:
+                if(previousStatus == AppStatus.FIX_HITTING_WALL_SCRIPT_TURN_LEFT) {
+                    setAppStatus(AppStatus.FINISH_FIX_HITTING_WALL);
+                }
+                break;
+            case PREPARE_TO_DISCONNECT:
+                setAppStatus(AppStatus.PREPARE_TO_DISCONNECT);
+                break;
+            case DISCONNECT:
+                if(previousStatus == AppStatus.PREPARE_TO_DISCONNECT) {
+                    setAppStatus(AppStatus.DISCONNECT);
+                }
+            default:
+                break;
+        }
+        sendAlive();
+    }
+
+    // flow //
+    public void destroy() {
+        isFinished = true;
+        drivetrain.park();
+    }
+
+    protected void setAppStatus(AppStatus status) {
+        lock.writeLock().lock();
+        AppStatus previousStatus = appStatus;
+        appStatus = status;
+        lock.writeLock().unlock();
+        if(previousStatus != status)
+            onAppStatusChanged(previousStatus, status);
+    }
+
+    public AppStatus getAppStatus() {
+        AppStatus currentStatus;
+        lock.readLock().lock();
+        currentStatus = appStatus;
+        lock.readLock().unlock();
+        return currentStatus;
+    }
+
+    protected boolean compareDetectedObject(ObjectDetector.DetectedObject detectedObj, ObjectDetector.DetectedObject targetObj){
+        String targetTitle = targetObj.getTitle();
+        String detectedTitle = detectedObj.getTitle();
+        if(detectedObj.getConfidence() >= targetObj.getConfidence()) {
+            if (targetTitle.equals(detectedTitle)) {
+                float targetArea = targetObj.getWidth() * targetObj.getHeight();
+                float detectedArea = detectedObj.getWidth() * detectedObj.getHeight();
+
+                if(LOG_DETECTIONS)
+                    debug("width = " + detectedObj.getWidth() + " // height = " + detectedObj.getHeight());
+                if ((detectedArea >= targetArea * areaThreshold.getMin()) && (detectedArea <= targetArea * areaThreshold.getMax())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected boolean compareDetectedCarObject(ObjectDetector.DetectedObject detectedObj, ObjectDetector.DetectedObject targetObj){
+        String targetTitle = targetObj.getTitle();
+        String detectedTitle = detectedObj.getTitle();
+        if(detectedObj.getConfidence() >= targetObj.getConfidence()) {
+            if (targetTitle.equals(detectedTitle)) {
+                if(LOG_DETECTIONS)
+                    debug("width = " + detectedObj.getWidth() + " // height = " + detectedObj.getHeight());
+
+                if(detectedObj.getBottom() >= carArea.getMin_y()){
+                    statusSnapshot.setOtherCarBottom(detectedObj.getBottom(), nanoTime());
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    protected boolean detectOtherCar(){
+        List<ObjectDetector.DetectedObject> detectedObjects = getObjectFound();
+        if(detectedObjects == null){
+            return false;
+        }
+
+        for(int iDetected = 0; iDetected < detectedObjects.size(); iDetected++) {
+            ObjectDetector.DetectedObject detectedObj = detectedObjects.get(iDetected);
+            if(compareDetectedCarObject(detectedObj, otherCarMarker)){
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    protected boolean fetchHistory(ObjectHistory<ObjectDetector.DetectedObject> objectsHistory, ObjectDetector.DetectedObject detectedObj) {
+        return objectsHistory.getSeenCount(detectedObj.getTitle()) >= Config.getInstance().getSeenCountTrigger();
+    }
+
+    protected boolean shouldIgnoreWeirdNodes(ObjectDetector.DetectedObject detectedObject, ObjectDetector.DetectedObject prevNodeObject){
+        String detectedTitle = detectedObject.getTitle();
+        String previousTitle = prevNodeObject.getTitle();
+
+        if((previousTitle.equals("Traffic_light") && detectedTitle.equals("Korean")) || (previousTitle.equals("Planetarium") && detectedTitle.equals("Left"))
+                || (previousTitle.equals("No_parking") && detectedTitle.equals("Tokyo_tower")) || previousTitle.equals("Left_or_through") && detectedTitle.equals("Museum")
+                || previousTitle.equals("Left_or_through") && detectedTitle.equals("No_parking") || previousTitle.equals("Left") && detectedTitle.equals("Tokyo_tower")) {
+            return true;
+        }
+
+        return false;
+    }
+
+    protected boolean objectDetect(NodeInfo pif){
+        List<ObjectDetector.DetectedObject> detectedObjects = getObjectFound();
+
+        if(detectedObjects == null || detectedObjects.size() == 0 || allNodeInfos == null || allNodeInfos.size() == 0){
+            return false;
+        }
+
+        boolean foundObject = false;
+
+        //add found objects in history
+        objectsHistory.add(detectedObjects, Config.getInstance().getMaxFrameHistory());
+
+        for(int iDetected = 0; iDetected < detectedObjects.size(); iDetected++) {
+            ObjectDetector.DetectedObject detectedObj = detectedObjects.get(iDetected);
+
+            // check detected objects with every node object
+            for (int iNode = 0; iNode < allNodeInfos.size(); iNode++) {
+                List<ObjectDetector.DetectedObject> nodeObjects = allNodeInfos.get(iNode).getObjectList();
+                for (int iObj = 0; iObj < nodeObjects.size(); iObj++) {
+                    ObjectDetector.DetectedObject nodeObj = nodeObjects.get(iObj);
+                    if(prevNodeObject != null && detectedObj.getTitle().equals(prevNodeObject.getTitle())) {
+                        foundObject = true;
+                        continue;
+                    }
+
+                    if (compareDetectedObject(detectedObj, nodeObj)) {
+                        // found a nodes
+                        // re-check in the history, if found many times,
+                        if(fetchHistory(objectsHistory, detectedObj)){
+                            if(prevNodeObject != null && shouldIgnoreWeirdNodes(detectedObj, prevNodeObject)){
+                                return false;
+                            }
+
+                            prevNodeObject = nodeObj;
+                            //check if the found object is our target object or not
+                            if(detectedObj.getTitle().equals(pif.getObjectList().get(0).getTitle())){
+                                setCarStatus(AppStatus.ARRIVE_AT_NODE);
+                            }
+                            else{
+                                setCarStatus(AppStatus.LOST);
+                                arriveWrongNode(Integer.parseInt(allNodeInfos.get(iNode).getNodeId()), nodeObj.getTitle());
+                            }
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return foundObject;
+    }
+
+
+
+
+
+    ////////////////////////////////////////////////////////////API/////////////////////////////////////////////////////////////////////
+    // a polled request goes out again only once the previous one is answered, sending it every tick
+    // regardless queues requests in the HTTP client faster than a station a few tens of ms away answers.
+    // Requests about a node carry its id, so one for the next node never waits on the one before it
+    private boolean isRequestAllowed(String request) {
+        return pendingRequests.add(request);
+    }
+
+    private Callback<String> whenAnswered(String request, Callback<String> callback) {
+        return new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                pendingRequests.remove(request);
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                pendingRequests.remove(request);
+                callback.onFailure(call, t);
+            }
+        };
+    }
+
+    public void waitForStart() {
+        stationApi.waitForStart(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if (response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            listener.displayWaitJourney();
+                        } else {
+                            waitForStart();
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+
+            }
+        });
+    }
+
+    private JSONObject getDiagnostics(){
+        if(serialLinkMonitor == null && latencyTracer == null)
+            return null;
+        long now = nanoTime();
+        JSONObject diagnosticsObject = new JSONObject();
+        try {
+            if(latencyTracer != null)
+                diagnosticsObject.put("latency", getLatencyDiagnostics(now));
+            if(serialLinkMonitor == null)
+                return diagnosticsObject;
+            JSONObject serialLinkObject = new JSONObject();
+            serialLinkObject.put("tx_bytes_per_second", serialLinkMonitor.getTxBytesPerSecond(now));
+            serialLinkObject.put("rx_bytes_per_second", serialLinkMonitor.getRxBytesPerSecond(now));
+            serialLinkObject.put("error_count", serialLinkMonitor.getErrorCount());
+            if(serialLinkMonitor.isPingEnable()) {
+                serialLinkObject.put("rtt_p50_ms", serialLinkMonitor.getLatencyMillis(50, now));
+                serialLinkObject.put("rtt_p95_ms", serialLinkMonitor.getLatencyMillis(95, now));
+                serialLinkObject.put("rtt_p99_ms", serialLinkMonitor.getLatencyMillis(99, now));
+                serialLinkObject.put("ping_count", serialLinkMonitor.getPingCount());
+                serialLinkObject.put("lost_ping_count", serialLinkMonitor.getLostPingCount());
+                serialLinkObject.put("loss_rate", serialLinkMonitor.getLossRate(now));
+                serialLinkObject.put("degraded", serialLinkMonitor.isDegraded(now));
+            }
+            diagnosticsObject.put("serial_link", serialLinkObject);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return diagnosticsObject;
+    }
+
+    // frame age in ms at each stage from camera to motors
+    private JSONObject getLatencyDiagnostics(long now) throws JSONException {
+        JSONObject latencyObject = new JSONObject();
+        for(int stage = 0; stage < LatencyTracer.STAGE_COUNT; stage++) {
+            JSONObject stageObject = new JSONObject();
+            stageObject.put("count", latencyTracer.getCount(stage, now));
+            stageObject.put("p50_ms", latencyTracer.getPercentileMillis(stage, 50, now));
+            stageObject.put("p95_ms", latencyTracer.getPercentileMillis(stage, 95, now));
+            stageObject.put("p99_ms", latencyTracer.getPercentileMillis(stage, 99, now));
+            latencyObject.put(LatencyTracer.getStageName(stage), stageObject);
+        }
+        return latencyObject;
+    }
+
+    protected void sendAlive(){
+        AppStatus currentStatus = getAppStatus();
+        if(currentStatus != null && currentStatus != AppStatus.DISCONNECT) {
+            sendAliveAPI(currentStatus.toString());
+        }
+        sendAliveTimer = 0;
+    }
+
+    // apis //
+    protected void sendAliveAPI(String appStatus){
+        stationApi.alive(appStatus, getPhoneBatteryPercentage(), warningStatus, errorStatus, getDiagnostics(), new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                // do nothing
+                if (response != null && response.body() != null) {
+
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            // do nothing
+                        }
+                    } catch(JSONException e){
+                        e.printStackTrace();
+                    }
+
+                }
+            }
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                // do nothing
+            }
+        });
+    }
+
+    public void CHEAT_arriveAtNode(){
+        drivetrain.park();
+        setCarStatus(AppStatus.ARRIVE_AT_NODE);
+    }
+
+    protected void requestRouteToRandomDestination(int currentCarNodeId, List<Integer> obstacleNodeIds) {
+        stationApi.requestRouteToRandomDestination(currentCarNodeId, obstacleNodeIds, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+
+                            JSONArray nodeArray = returnObject.getJSONArray("route_path");
+
+                            if(routeToDestination == null) {
+                                routeToDestination = new ArrayList<NavigationCommand>();
+                            }
+                            else {
+                                routeToDestination.clear();
+                            }
+
+                            for (int i = 0; i < nodeArray.length(); i++) {
+                                JSONObject navObj = nodeArray.getJSONObject(i);
+                                NavigationCommand nav = new NavigationCommand();
+                                String navCommandString = navObj.getString("command");
+                                nav.command = CMD.valueOf(navCommandString);
+                                nav.nodeInfo = new NodeInfo(navObj);
+                                routeToDestination.add(nav);
+                            }
+
+                            if(routeToDestination.size() != 0) {
+                                currentDestinationNodeInfo = routeToDestination.get(routeToDestination.size() - 1).nodeInfo;
+                                receivedRouteToDestination();
+                            }
+                            else{
+                                setAppStatus(AppStatus.IDLE);
+                            }
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        });
+    }
+
+    protected void requestRouteToDestination(int currentCarNodeId, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds) {
+        stationApi.requestRouteToDestination(currentCarNodeId, destinationNodeId, destinationPathId, obstacleNodeIds, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+
+                            JSONArray nodeArray = returnObject.getJSONArray("route_path");
+
+                            if(routeToDestination == null) {
+                                routeToDestination = new ArrayList<NavigationCommand>();
+                            }
+                            else {
+                                routeToDestination.clear();
+                            }
+
+                            for (int i = 0; i < nodeArray.length(); i++) {
+                                JSONObject navObj = nodeArray.getJSONObject(i);
+                                NavigationCommand nav = new NavigationCommand();
+                                if(navObj.has("command")) {
+                                    String navCommandString = navObj.getString("command");
+                                    nav.command = CMD.valueOf(navCommandString);
+                                }
+                                else{
+                                    nav.command = CMD.DO_NOTHING;
+                                }
+                                nav.nodeInfo = new NodeInfo(navObj);
+                                routeToDestination.add(nav);
+                            }
+
+                            receivedRouteToDestination();
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        });
+    }
+
+    protected void receivedRouteToDestination()
+    {
+        setCarStatus(AppStatus.RECEIVED_ROUTE_TO_DESTINATION);
+    }
+
+
+    protected void selectPlace(NodeInfo destinationNodeInfo, int destinationPathId)
+    {
+        currentDestinationNodeInfo = destinationNodeInfo;
+        currentDestinationPathId = destinationPathId;
+        listener.placeSelected();
+        if(routeToDestination != null){
+            routeToDestination.clear();
+        }
+        isWaitingForPlaceSelection = false;
+        if(appStatus != AppStatus.START_AUTO_TURN_COMMAND &&
+        appStatus != AppStatus.WORKING_ON_AUTO_TURN_COMMAND &&
+        appStatus != AppStatus.FINISH_AUTO_TURN_COMMAND){
+            setCarStatus(AppStatus.NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION);
+        }
+        else{
+            setCarStatus(AppStatus.REQUEST_ROUTE_TO_DESTINATION);
+            isWaitingForManualTurnThenCancelNavigationCommand = true;
+        }
+    }
+
+    protected void waitForPlaceSelection() {
+        if(!isRequestAllowed("wait_for_place_selection"))
+            return;
+        stationApi.waitForPlaceSelection( whenAnswered("wait_for_place_selection", new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            if(returnObject.has("destination_place_info")) {
+
+                                JSONObject destinationObject = returnObject.getJSONObject("destination_place_info");
+                                NodeInfo info = new NodeInfo(destinationObject);
+
+                                int destinationPathId = returnObject.getInt("destination_path_id");
+                                selectPlace(info, destinationPathId);
+                            }
+
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+            }
+        }));
+    }
+
+    protected void waitForCancelPlace() {
+        if(!isRequestAllowed("wait_for_cancel_place"))
+            return;
+        stationApi.waitForCancelPlace( whenAnswered("wait_for_cancel_place", new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            String serverTrigger = returnObject.getString("server_trigger");
+                            if (serverTrigger.equals("CANCEL_PLACE")) {
+                                setCarStatus(AppStatus.CANCEL_PLACE);
+                            }
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+            }
+        }));
+    }
+
+    protected void arriveAtNode(int nodeId) {
+        String request = "arrive_at_node " + nodeId;
+        if(!isRequestAllowed(request))
+            return;
+        stationApi.arriveAtNode(nodeId, whenAnswered(request, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            setCarStatus(AppStatus.WAIT_FOR_TRAFFIC);
+                            playDebugSound(DebugSound.ARRIVE_AT_NODE);
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        }));
+    }
+
+
+    private void requestNewRouteWhenLost() {
+        isArriveWrongNode = true;
+        if(isWaitingForPlaceSelection)
+            setCarStatus(AppStatus.REQUEST_RANDOM_ROUTE);
+        else
+            setCarStatus(AppStatus.REQUEST_ROUTE_TO_DESTINATION);
+    }
+
+    protected void arriveWrongNode(int nodeId, String objectClass) {
+        stationApi.arriveWrongNode(nodeId, objectClass, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            requestNewRouteWhenLost();
+                            playDebugSound(DebugSound.ARRIVE_WRONG_NODE);
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        });
+    }
+
+    protected void waitForTraffic(int nodeId) {
+        String request = "wait_for_traffic " + nodeId;
+        if(!isRequestAllowed(request))
+            return;
+        stationApi.waitForTraffic(nodeId, whenAnswered(request, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            if(returnObject.has("can_go")) {
+                                if(returnObject.getBoolean("can_go"))
+                                    setCarStatus(AppStatus.START_AUTO_TURN_COMMAND);
+                                else
+                                    drivetrain.park();
+                            }
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+            }
+        }));
+    }
+
+    protected void finishAutoTurnCommand(int nodeId) {
+        String request = "finish_auto_turn_command " + nodeId;
+        if(!isRequestAllowed(request))
+            return;
+        stationApi.finishAutoTurnCommand(nodeId, whenAnswered(request, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            if(isWaitingForManualTurnThenCancelNavigationCommand){
+                                setCarStatus(AppStatus.NAVIGATION_COMMAND_CANCELLED_DUE_TO_PLACE_SELECTION);
+                            }
+                            else{
+                                setCarStatus(AppStatus.GET_NEXT_NAVIGATION_COMMAND);
+                            }
+                        }
+
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        }));
+    }
+
+    protected void arriveAtDestination(int destinationNodeId) {
+        stationApi.arriveAtDestination(destinationNodeId, new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            playDebugSound(DebugSound.ARRIVE_AT_DESTINATION);
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        });
+    }
+
+    protected void waitForStationDisconnect() {
+        if(!isRequestAllowed("wait_for_station_disconnect"))
+            return;
+        stationApi.waitForStationDisconnect( whenAnswered("wait_for_station_disconnect", new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            setCarStatus(AppStatus.PREPARE_TO_DISCONNECT);
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+            }
+        }));
+    }
+
+    public void disconnect() {
+        stationApi.disconnectCar(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            setCarStatus(AppStatus.PREPARE_TO_DISCONNECT);
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+                baseListener.showError(ErrorStatus.CANNOT_COMMUNICATE_WITH_SERVER);
+            }
+        });
+    }
+
+
+    public void checkStationVideoStatus(){
+        if(!isRequestAllowed("video_status"))
+            return;
+        stationApi.videoStatus(whenAnswered("video_status", new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                if(response != null && response.body() != null) {
+                    debug(response.body());
+                    try {
+                        JSONObject returnObject = new JSONObject(response.body());
+                        if (returnObject.getBoolean("success")) {
+                            String videoStatus = returnObject.getString("video_status");
+                            if (videoStatus.equals("NOT_PLAY")) {
+                                listener.displayStandby();
+                                setCarStatus(AppStatus.IDLE);
+                                isWaitingForPlaceSelection = true;
+                            }
+                        }
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                onRequestFailed(call, t);
+            }
+        }));
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * The detections of the last few control ticks, with a running count per title. Confirming a node
+ * used to rescan every stored frame for every candidate, now it is one map lookup, and the counts
+ * are only touched when a frame comes in or falls out.
+ * Not thread safe, use it on the control thread.
+ */
+public class ObjectHistory<T> {
+    private final Function<T, String> titleOf;
+    private final ArrayDeque<List<T>> frames = new ArrayDeque<>();
+    // one counter per title ever seen, the label set is small and fixed
+    private final HashMap<String, int[]> seenCounts = new HashMap<>();
+
+    public ObjectHistory(Function<T, String> titleOf) {
+        this.titleOf = titleOf;
+    }
+
+    // drops the oldest frames so that frame is the maxFrames-th
+    public void add(List<T> frame, int maxFrames) {
+        while (!frames.isEmpty() && frames.size() >= maxFrames) {
+            count(frames.removeFirst(), -1);
+        }
+        frames.addLast(frame);
+        count(frame, 1);
+    }
+
+    // how often title appears in the stored frames
+    public int getSeenCount(String title) {
+        int[] seenCount = seenCounts.get(title);
+        return seenCount != null ? seenCount[0] : 0;
+    }
+
+    public int size() {
+        return frames.size();
+    }
+
+    public void clear() {
+        frames.clear();
+        seenCounts.clear();
+    }
+
+    private void count(List<T> frame, int delta) {
+        for (int index = 0; index < frame.size(); index++) {
+            String title = titleOf.apply(frame.get(index));
+            int[] seenCount = seenCounts.get(title);
+            if (seenCount == null) {
+                seenCount = new int[1];
+                seenCounts.put(title, seenCount);
+            }
+            seenCount[0] += delta;
+        }
+    }
+}
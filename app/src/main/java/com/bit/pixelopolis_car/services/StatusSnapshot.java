@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services;
+
+import com.bit.pixelopolis_car.enums.AppStatus;
+import com.bit.pixelopolis_car.enums.CMD;
+
+/**
+ * What the debug state view shows, kept as plain fields. The control thread writes it in place every
+ * tick without allocating, the UI copies it out at its own refresh rate and only then turns it into text.
+ */
+public class StatusSnapshot {
+    // the other car stays on the view this long after it was last seen
+    static final long OTHER_CAR_EXPIRY_NANOS = 1000000000L;
+
+    private boolean waitingForPlaceSelection;
+    private AppStatus appStatus;
+    private CMD command;
+    private String goingToNodeId;
+    private String previousNodeTitle;
+    private String destinationNodeId;
+    private int motorBatteryPercentage;
+    private int irSensorValue;
+    private int filteredIrSensorValue;
+    private float irSampleRateHz;
+    private boolean otherCarDetected;
+    private float otherCarBottom;
+    private long otherCarNanos;
+
+    // the strings are references to the node infos' own ids and titles, nothing is built here
+    public synchronized void update(long nowNanos, boolean waitingForPlaceSelection, AppStatus appStatus, CMD command, String goingToNodeId,
+                                    String previousNodeTitle, String destinationNodeId) {
+        if (otherCarDetected && nowNanos - otherCarNanos > OTHER_CAR_EXPIRY_NANOS)
+            otherCarDetected = false;
+        this.waitingForPlaceSelection = waitingForPlaceSelection;
+        this.appStatus = appStatus;
+        this.command = command;
+        this.goingToNodeId = goingToNodeId;
+        this.previousNodeTitle = previousNodeTitle;
+        this.destinationNodeId = destinationNodeId;
+    }
+
+    public synchronized void updateTelemetry(int motorBatteryPercentage, int irSensorValue, int filteredIrSensorValue, float irSampleRateHz) {
+        this.motorBatteryPercentage = motorBatteryPercentage;
+        this.irSensorValue = irSensorValue;
+        this.filteredIrSensorValue = filteredIrSensorValue;
+        this.irSampleRateHz = irSampleRateHz;
+    }
+
+    public synchronized void setOtherCarBottom(float bottom, long nowNanos) {
+        otherCarDetected = true;
+        otherCarBottom = bottom;
+        otherCarNanos = nowNanos;
+    }
+
+    // takes a consistent copy of source, the UI renders the copy without holding the writer up
+    public void copyFrom(StatusSnapshot source) {
+        synchronized (source) {
+            waitingForPlaceSelection = source.waitingForPlaceSelection;
+            appStatus = source.appStatus;
+            command = source.command;
+            goingToNodeId = source.goingToNodeId;
+            previousNodeTitle = source.previousNodeTitle;
+            destinationNodeId = source.destinationNodeId;
+            motorBatteryPercentage = source.motorBatteryPercentage;
+            irSensorValue = source.irSensorValue;
+            filteredIrSensorValue = source.filteredIrSensorValue;
+            irSampleRateHz = source.irSampleRateHz;
+            otherCarDetected = source.otherCarDetected;
+            otherCarBottom = source.otherCarBottom;
+        }
+    }
+
+    // same layout the control loop used to build on every tick
+    public void appendTo(StringBuilder out) {
+        out.append(waitingForPlaceSelection ? "IDLE MODE - " : "GO TO DESTINATION MODE - ").append(appStatus);
+        if(command != null && appStatus == AppStatus.WORKING_ON_AUTO_TURN_COMMAND)
+            out.append('\n').append(command);
+        if(goingToNodeId != null)
+            out.append("\nGOING TO NODE = ").append(goingToNodeId);
+        if(previousNodeTitle != null)
+            out.append("   (prev node = ").append(previousNodeTitle).append(')');
+        if(destinationNodeId != null)
+            out.append("\nDESTINATION NODE ID = ").append(destinationNodeId);
+        out.append("\nmotor % : ").append(motorBatteryPercentage)
+                .append(" /// ir sensor value : ").append(irSensorValue)
+                .append(" (filtered ").append(filteredIrSensorValue)
+                .append(" @ ").append(Math.round(irSampleRateHz)).append(" Hz)");
+        if(otherCarDetected)
+            out.append("\ndetected car / bottom = ").append(otherCarBottom);
+    }
+}
@@ -21,13 +21,19 @@ import com.bit.pixelopolis_car.enums.CMD;
 import com.bit.pixelopolis_car.services.carvision.CarVision;
 import com.bit.pixelopolis_car.services.config.CommandTime;
 import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.metrics.Histogram;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+import com.bit.pixelopolis_car.services.startup.StartupOrchestrator;
+import com.bit.pixelopolis_car.services.tracing.LatencyTracer;
 
 
-public class WheelController {
+public class WheelController implements Drivetrain {
     private static final String TAG = "WheelController";
     private static final int DEFAULT_CAR_TIME = 800;
     private static int UPDATE_INTERVAL = 40;
     private static final int BREAK_SPEED = 0;
+    // fine around the period, the serial write sleeps too so a tick takes longer than UPDATE_INTERVAL
+    private static final double[] TICK_BOUNDS = {0.040, 0.045, 0.050, 0.060, 0.070, 0.080, 0.090, 0.100, 0.125, 0.150, 0.200, 0.300, 0.500};
 
     // Dynamixels Parameters
     private static final float XL430_RPM_PER_UNIT = 0.229f; //RPM per unit
@@ -45,6 +51,12 @@ public class WheelController {
     boolean isPause = false;
     boolean isDriving = false;
     boolean isLaneKeeping = true;
+    // lane keeping speed multiplier, lowered while the serial link is degraded
+    volatile float speedScale = 1.0f;
+    volatile LatencyTracer latencyTracer = null;
+    // the spread of the interval is the tick's jitter
+    final Histogram tickInterval = MetricsRegistry.getInstance().histogram("wheel_tick_interval_seconds",
+            "Time between the starts of two wheel control ticks", TICK_BOUNDS);
 
     int defaultWheelSpeed = 195;
     int defaultWheelSlowSpeed = 65;
@@ -67,7 +79,6 @@ public class WheelController {
     public WheelController(CarVision carVision, WheelControllerListener listener)
     {
         wheelControllerThread = new Thread(new WheelController.WheelControllerThread());
-        wheelControllerThread.start();
 
         this.carVision = carVision;
         this.listener = listener;
@@ -76,6 +87,8 @@ public class WheelController {
         defaultWheelSpeed = Config.getInstance().getDefaultWheelSpeed();
         defaultWheelSlowSpeed = Config.getInstance().getSlowWheelSpeed();
 
+        // the thread reads the fields above
+        wheelControllerThread.start();
     }
 
     public void destroy() {
@@ -83,21 +96,25 @@ public class WheelController {
         Log.e(TAG, "wheel controller thread is destroyed");
     }
 
+    @Override
     public void driveInLaneKeepingMode() {
         isDriving = true;
         isLaneKeeping = true;
     }
 
+    @Override
     public void driveInScriptMode(CMD mode){
         isDriving = true;
         isLaneKeeping = false;
         scriptMode = mode;
     }
 
+    @Override
     public void park() {
         isDriving = false;
     }
 
+    @Override
     public int getScriptDuration(CMD mode){
         int duration = 0;
         switch (mode) {
@@ -146,6 +163,15 @@ public class WheelController {
         return(float)((deg * Math.PI) / 180.0f);
     }
 
+    @Override
+    public void setSpeedScale(float speedScale) {
+        this.speedScale = speedScale;
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
     public void pause() {
         isPause = true;
     }
@@ -159,12 +185,20 @@ public class WheelController {
     public class WheelControllerThread implements Runnable{
 
         boolean hasScriptStarted = false;
+        // start of the previous tick, 0 when there was none to compare with
+        long lastTickNanos = 0;
 
         public void run(){
+            // no steering before the lane model answers
+            carVision.getReadiness().join();
             while (!isFinished) {
                 if(!isPause) {
+                    recordTick(System.nanoTime());
                     update();
                 }
+                else {
+                    lastTickNanos = 0;
+                }
             }
             listener.sendSerialMessage(BREAK_SPEED, BREAK_SPEED);
         }
@@ -191,9 +225,19 @@ public class WheelController {
             }
         }
 
+        private void recordTick(long now) {
+            if(lastTickNanos != 0)
+                tickInterval.observeNanos(now - lastTickNanos);
+            lastTickNanos = now;
+        }
+
         private void laneKeep() {
             float angle = carVision.getSteeringAngle();
+            LatencyTracer tracer = latencyTracer;
+            if(tracer != null)
+                tracer.onControllerRead(System.nanoTime());
             setCarWheelSpeed(defaultWheelSpeed, (int)angle);
+            StartupOrchestrator.getInstance().onSteeringCommand();
         }
 
         private void driveByScript(){ // helps when lane is not visible, and when receive command from server
@@ -268,6 +312,10 @@ public class WheelController {
                 rSpeed = (int) calculateTurnVelocity(Math.abs(angle),time);
             }
 
+            // scale both wheels so the turning radius stays the same
+            lSpeed = Math.round(lSpeed * speedScale);
+            rSpeed = Math.round(rSpeed * speedScale);
+
             if (rSpeed == 0 && lSpeed!=0){
                 rSpeed = 1;
             }
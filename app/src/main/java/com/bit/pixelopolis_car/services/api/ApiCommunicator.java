@@ -16,25 +16,30 @@
 
 package com.bit.pixelopolis_car.services.api;
 
-import android.util.Log;
-
 import com.bit.pixelopolis_car.enums.ErrorStatus;
 import com.bit.pixelopolis_car.enums.WarningStatus;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
 
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.List;
+import java.util.concurrent.Executor;
 
+import okhttp3.OkHttpClient;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Retrofit;
 import retrofit2.converter.gson.GsonConverterFactory;
 import retrofit2.converter.scalars.ScalarsConverterFactory;
 
-public class ApiCommunicator {
+public class ApiCommunicator implements StationApi {
     private static final ApiCommunicator ourInstance = new ApiCommunicator();
+    // request bodies at debug, the station config can raise the level or the rate limit per call site keeps them down
+    private static final Logger API_LOG = LogService.getInstance().getLogger("API_CALL");
 
     public static ApiCommunicator getInstance() {
         return ourInstance;
@@ -49,7 +54,8 @@ public class ApiCommunicator {
 
     private final String appType = "car";
 
-    private ApiCommunicator()
+    // the app uses getInstance(), load tests make one per simulated car
+    public ApiCommunicator()
     {
 
     }
@@ -60,17 +66,31 @@ public class ApiCommunicator {
     }
 
     public void initialRetrofit(String serverUrl, String deviceId, String carId, String ipAddress)
+    {
+        initialRetrofit(serverUrl, deviceId, carId, ipAddress, null);
+    }
+
+    /**
+     * @param callbackExecutor runs the callbacks, null for Retrofit's default (the main thread on Android)
+     */
+    public void initialRetrofit(String serverUrl, String deviceId, String carId, String ipAddress, Executor callbackExecutor)
     {
         this.deviceId = deviceId;
         this.carId = carId;
         this.serverUrl = serverUrl;
         this.ipAddress = ipAddress;
 
-        retrofit = new Retrofit.Builder()
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(new CallMetricsInterceptor(MetricsRegistry.getInstance()))
+                .build();
+        Retrofit.Builder builder = new Retrofit.Builder()
                 .baseUrl(serverUrl)
+                .client(client)
                 .addConverterFactory(ScalarsConverterFactory.create())
-                .addConverterFactory(GsonConverterFactory.create())
-                .build();
+                .addConverterFactory(GsonConverterFactory.create());
+        if(callbackExecutor != null)
+            builder.callbackExecutor(callbackExecutor);
+        retrofit = builder.build();
     }
 
     public void connectCar(final Callback<String> callback)
@@ -84,7 +104,7 @@ public class ApiCommunicator {
             paramObject.put("ip_address", ipAddress);
             Call<String> call = service.connectCar(paramObject.toString());
 
-            Log.d("API_CALL", "connectCar : " + paramObject.toString());
+            API_LOG.d("connectCar : %s", paramObject);
             call.enqueue(callback);
         } catch (JSONException e) {
             e.printStackTrace();
@@ -102,7 +122,7 @@ public class ApiCommunicator {
             paramObject.put("car_id", carId);
             Call<String> call = service.waitForConnectStation(paramObject.toString());
 
-            Log.d("API_CALL", "waitForConnectStation : " + paramObject.toString());
+            API_LOG.d("waitForConnectStation : %s", paramObject);
             //APIHelper.enqueueWithRetry(call, callback);
             call.enqueue(callback);
         } catch (JSONException e) {
@@ -114,11 +134,12 @@ public class ApiCommunicator {
     {
         CallWebService service = retrofit.create(CallWebService.class);
         Call<String> call = service.getAllNodeData();
-        Log.d("API_CALL", "getAllNodeData" );
+        API_LOG.d("getAllNodeData");
         call.enqueue(callback);
     }
 
-    public void waitForStart(final Callback<String> callback)
+    @Override
+    public void waitForStart(Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
         JSONObject paramObject = new JSONObject();
@@ -128,7 +149,7 @@ public class ApiCommunicator {
             paramObject.put("car_id", carId);
             Call<String> call = service.waitForStart(paramObject.toString());
 
-            Log.d("API_CALL", "waitForStart : " + paramObject.toString());
+            API_LOG.d("waitForStart : %s", paramObject);
             //APIHelper.enqueueWithRetry(call, callback);
             call.enqueue(callback);
         } catch (JSONException e) {
@@ -137,7 +158,8 @@ public class ApiCommunicator {
 
     }
 
-    public void alive(String appStatus, int batteryPercentage, WarningStatus warning, ErrorStatus error, Callback<String> callback)
+    @Override
+    public void alive(String appStatus, int batteryPercentage, WarningStatus warning, ErrorStatus error, JSONObject diagnostics, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
         JSONObject deviceInfoObject = new JSONObject();
@@ -152,17 +174,20 @@ public class ApiCommunicator {
             paramObject.put("app_status", appStatus);
             paramObject.put("warning", warning.toString());
             paramObject.put("error", error.toString());
+            if(diagnostics != null)
+                paramObject.put("diagnostics", diagnostics);
 
             Call<String> call = service.alive(paramObject.toString());
 
-            Log.e("API_CALL", "alive : " + paramObject.toString());
+            API_LOG.d("alive : %s", paramObject);
             call.enqueue(callback);
         } catch (JSONException e) {
             e.printStackTrace();
         }
     }
 
-    public void requestRouteToRandomDestination(int currentCarLocation, List<Integer> obstacleNodeIds, Callback callback)
+    @Override
+    public void requestRouteToRandomDestination(int currentCarLocation, List<Integer> obstacleNodeIds, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -185,7 +210,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.requestRouteToRandomDestination(paramObject.toString());
 
-            Log.e("API_CALL", "requestRouteToRandomDestination : " + paramObject.toString());
+            API_LOG.d("requestRouteToRandomDestination : %s", paramObject);
             //APIHelper.enqueueWithRetry(call, callback);
             call.enqueue(callback);
 
@@ -194,7 +219,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void requestRouteToDestination(int currentCarLocation, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds, Callback callback)
+    @Override
+    public void requestRouteToDestination(int currentCarLocation, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -219,7 +245,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.requestRouteToDestination(paramObject.toString());
 
-            Log.e("API_CALL", "requestRouteToDestination : " + paramObject.toString());
+            API_LOG.d("requestRouteToDestination : %s", paramObject);
             call.enqueue(callback);
 
 
@@ -229,7 +255,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void waitForPlaceSelection(Callback callback) {
+    @Override
+    public void waitForPlaceSelection(Callback<String> callback) {
         CallWebService service = retrofit.create(CallWebService.class);
 
         JSONObject paramObject = new JSONObject();
@@ -240,7 +267,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.waitForPlaceSelection(paramObject.toString());
 
-            Log.d("API_CALL", "waitForPlaceSelection : " + paramObject.toString());
+            API_LOG.d("waitForPlaceSelection : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -248,7 +275,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void waitForCancelPlace(Callback callback) {
+    @Override
+    public void waitForCancelPlace(Callback<String> callback) {
         CallWebService service = retrofit.create(CallWebService.class);
 
         JSONObject paramObject = new JSONObject();
@@ -259,7 +287,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.waitForCancelPlace(paramObject.toString());
 
-            Log.d("API_CALL", "waitForPlaceSelection : " + paramObject.toString());
+            API_LOG.d("waitForCancelPlace : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -267,7 +295,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void arriveAtNode(int nodeId, Callback callback)
+    @Override
+    public void arriveAtNode(int nodeId, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -280,7 +309,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.arriveAtNode(paramObject.toString());
 
-            Log.d("API_CALL", "arriveAtNode: " + paramObject.toString());
+            API_LOG.d("arriveAtNode : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -288,7 +317,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void arriveWrongNode(int nodeId, String objectClass, Callback callback)
+    @Override
+    public void arriveWrongNode(int nodeId, String objectClass, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -302,7 +332,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.arriveWrongNode(paramObject.toString());
 
-            Log.e("API_CALL", "arriveWrongNode: " + paramObject.toString());
+            API_LOG.d("arriveWrongNode : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -310,7 +340,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void waitForTraffic(int nodeId, Callback callback)
+    @Override
+    public void waitForTraffic(int nodeId, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -323,7 +354,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.waitForTraffic(paramObject.toString());
 
-            Log.d("API_CALL", "waitForTraffic: " + paramObject.toString());
+            API_LOG.d("waitForTraffic : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -331,7 +362,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void finishAutoTurnCommand(int nodeId, Callback callback)
+    @Override
+    public void finishAutoTurnCommand(int nodeId, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -344,7 +376,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.finishAutoTurnCommand(paramObject.toString());
 
-            Log.d("API_CALL", "finishAutoTurnCommand: " + paramObject.toString());
+            API_LOG.d("finishAutoTurnCommand : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -352,7 +384,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void arriveAtDestination(int destinationNodeId, Callback callback)
+    @Override
+    public void arriveAtDestination(int destinationNodeId, Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -365,7 +398,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.arriveAtDestination(paramObject.toString());
 
-            Log.d("API_CALL", "arriveAtDestination : " + paramObject.toString());
+            API_LOG.d("arriveAtDestination : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -373,7 +406,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void waitForStationDisconnect(Callback callback)
+    @Override
+    public void waitForStationDisconnect(Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -385,7 +419,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.waitForStationDisconnect(paramObject.toString());
 
-            Log.d("API_CALL", "waitForStationDisconnect : " + paramObject.toString());
+            API_LOG.d("waitForStationDisconnect : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -393,7 +427,8 @@ public class ApiCommunicator {
         }
     }
 
-    public void disconnectCar(Callback callback)
+    @Override
+    public void disconnectCar(Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
 
@@ -405,7 +440,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.disconnectCar(paramObject.toString());
 
-            Log.d("API_CALL", "disconnectCar : " + paramObject.toString());
+            API_LOG.d("disconnectCar : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
@@ -421,6 +456,7 @@ public class ApiCommunicator {
         call.enqueue(callback);
     }
 
+    @Override
     public void videoStatus(Callback<String> callback)
     {
         CallWebService service = retrofit.create(CallWebService.class);
@@ -432,7 +468,7 @@ public class ApiCommunicator {
 
             Call<String> call = service.videoStatus(paramObject.toString());
 
-            Log.d("API_CALL", "videoStatus : " + paramObject.toString());
+            API_LOG.d("videoStatus : %s", paramObject);
             call.enqueue(callback);
 
         } catch (JSONException e) {
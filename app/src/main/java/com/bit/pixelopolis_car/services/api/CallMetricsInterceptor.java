@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.api;
+
+import com.bit.pixelopolis_car.services.metrics.Counter;
+import com.bit.pixelopolis_car.services.metrics.Histogram;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import okhttp3.Interceptor;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Times every station request per endpoint, from the request leaving the HTTP client's queue to the
+ * response headers, and counts the ones that failed or were not answered with a 2xx.
+ */
+class CallMetricsInterceptor implements Interceptor {
+    // 5 ms to about 10 s
+    private static final double[] LATENCY_BOUNDS = Histogram.exponentialBounds(0.005, 2, 12);
+
+    private final MetricsRegistry registry;
+    // the endpoint's metrics, looked up once per endpoint
+    private final Map<String, Histogram> latencies = new ConcurrentHashMap<>();
+    private final Map<String, Counter> errors = new ConcurrentHashMap<>();
+
+    CallMetricsInterceptor(MetricsRegistry registry) {
+        this.registry = registry;
+    }
+
+    @Override
+    public Response intercept(Chain chain) throws IOException {
+        Request request = chain.request();
+        String endpoint = request.url().encodedPath().substring(1);
+        long start = System.nanoTime();
+        Response response;
+        try {
+            response = chain.proceed(request);
+        } catch (IOException e) {
+            getErrors(endpoint).inc();
+            throw e;
+        }
+        getLatency(endpoint).observeNanos(System.nanoTime() - start);
+        if (!response.isSuccessful())
+            getErrors(endpoint).inc();
+        return response;
+    }
+
+    private Histogram getLatency(String endpoint) {
+        return latencies.computeIfAbsent(endpoint, name -> registry.histogram("station_request_seconds",
+                "Station request time per endpoint", LATENCY_BOUNDS, "endpoint", name));
+    }
+
+    private Counter getErrors(String endpoint) {
+        return errors.computeIfAbsent(endpoint, name -> registry.counter("station_request_errors_total",
+                "Station requests that failed or were not answered with a 2xx", "endpoint", name));
+    }
+}
@@ -16,13 +16,15 @@
 
 package com.bit.pixelopolis_car.services.api;
 
-import android.util.Log;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
 
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
 
 public abstract class RetryableCallback<T> implements Callback<T> {
+    private static final Logger API_LOG = LogService.getInstance().getLogger("API_CALL");
     private int totalRetries = 3;
     private final Call<T> call;
     private int retryCount = 0;
@@ -36,7 +38,7 @@ public abstract class RetryableCallback<T> implements Callback<T> {
     public void onResponse(Call<T> call, Response<T> response) {
         if (!APIHelper.isCallSuccess(response)) {
             if (retryCount++ < totalRetries) {
-                Log.e("Retry to request", String.valueOf(retryCount));
+                API_LOG.w("Retry to request %d", retryCount);
                 retry();
             } else {
                 onResponse(call, response);
@@ -50,7 +52,7 @@ public abstract class RetryableCallback<T> implements Callback<T> {
     @Override
     public void onFailure(Call<T> call, Throwable t) {
         if (retryCount++ < totalRetries) {
-            Log.e("Retry to request failure", String.valueOf(retryCount));
+            API_LOG.w("Retry to request failure %d", retryCount);
             retry();
         } else {
             onFinalFailure(call, t);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.api;
+
+import com.bit.pixelopolis_car.enums.ErrorStatus;
+import com.bit.pixelopolis_car.enums.WarningStatus;
+
+import org.json.JSONObject;
+
+import java.util.List;
+
+import retrofit2.Callback;
+
+/**
+ * The station calls a car makes while it drives, see {@link ApiCommunicator} for the request bodies.
+ * Responses are the raw JSON strings, delivered to the callback on whatever thread the implementation uses.
+ */
+public interface StationApi {
+    void waitForStart(Callback<String> callback);
+
+    void alive(String appStatus, int batteryPercentage, WarningStatus warning, ErrorStatus error, JSONObject diagnostics, Callback<String> callback);
+
+    void requestRouteToRandomDestination(int currentCarLocation, List<Integer> obstacleNodeIds, Callback<String> callback);
+
+    void requestRouteToDestination(int currentCarLocation, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds, Callback<String> callback);
+
+    void waitForPlaceSelection(Callback<String> callback);
+
+    void waitForCancelPlace(Callback<String> callback);
+
+    void arriveAtNode(int nodeId, Callback<String> callback);
+
+    void arriveWrongNode(int nodeId, String objectClass, Callback<String> callback);
+
+    void waitForTraffic(int nodeId, Callback<String> callback);
+
+    void finishAutoTurnCommand(int nodeId, Callback<String> callback);
+
+    void arriveAtDestination(int destinationNodeId, Callback<String> callback);
+
+    void waitForStationDisconnect(Callback<String> callback);
+
+    void disconnectCar(Callback<String> callback);
+
+    void videoStatus(Callback<String> callback);
+}
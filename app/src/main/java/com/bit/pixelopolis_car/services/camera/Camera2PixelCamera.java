@@ -0,0 +1,338 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.camera;
+
+import android.content.Context;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+import com.bit.pixelopolis_car.services.startup.StartupOrchestrator;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Collections;
+
+/**
+ * PixelCamera on Camera2 with YUV_420_888 frames from an ImageReader, skipping JavaCameraView's
+ * RGBA conversion. The planes are packed into a YuvFrameProcessor, which gives vision its RGB
+ * frame in one conversion and the lane model its YUV input without RGB at all.
+ * Nothing is drawn on screen, the camera view is hidden while this backend runs.
+ */
+public class Camera2PixelCamera implements PixelCamera {
+    private static final String TAG = "Camera2PixelCamera";
+    private static final Logger LOG = LogService.getInstance().getLogger(TAG);
+    private static final int MAX_IMAGES = 2;
+
+    private final Context context;
+    private final CameraStateCallback cameraStateCallback;
+    private final PixelCameraOverlayDrawer cameraOverlayDrawer = new PixelCameraOverlayDrawer();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final int maxWidth;
+    private final int maxHeight;
+    private final HandlerThread cameraThread;
+    private final Handler cameraHandler;
+    private CameraDevice cameraDevice = null;
+    private CameraCaptureSession captureSession = null;
+    private ImageReader imageReader = null;
+    // created with the first image, once the chroma layout is known
+    private YuvFrameProcessor processor = null;
+    private Mat cameraFrame = null;
+    private byte[] uRow = null;
+    private byte[] vRow = null;
+    private volatile StreamFrameCallback streamCallback = null;
+    private volatile boolean isStarted = false;
+    private volatile long frameTimestampNanos = 0;
+    // image timestamps share the elapsedRealtime clock, otherwise their base is unknown
+    private boolean isRealtimeTimestamp = false;
+
+    public Camera2PixelCamera(Context context, int maxWidth, int maxHeight, CameraStateCallback cameraStateCallback) {
+        this.context = context;
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.cameraStateCallback = cameraStateCallback;
+        if (!StartupOrchestrator.getInstance().loadOpenCv())
+            LOG.e("Unable to load OpenCV");
+        this.cameraThread = new HandlerThread(TAG);
+        this.cameraThread.start();
+        this.cameraHandler = new Handler(this.cameraThread.getLooper());
+        this.cameraHandler.post(this::open);
+    }
+
+    @Override
+    public void setStreamFrameCallback(StreamFrameCallback streamCallback) {
+        this.streamCallback = streamCallback;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return this.isStarted;
+    }
+
+    @Override
+    public Mat getCameraFrame() {
+        return this.cameraFrame;
+    }
+
+    @Override
+    public long getFrameTimestampNanos() {
+        return this.frameTimestampNanos;
+    }
+
+    @Override
+    public PixelCameraOverlayDrawer getCameraOverlayDrawer() {
+        return this.cameraOverlayDrawer;
+    }
+
+    // no preview to draw on
+    @Override
+    public void setPreviewOverlayEnable(boolean isPreviewOverlayEnable) {
+    }
+
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        YuvFrameProcessor processor = this.processor;
+        if (!this.isStarted || processor == null) {
+            return false;
+        }
+        processor.writeLaneInput(target, width, height);
+        return true;
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public void resume() {
+    }
+
+    @Override
+    public void destroy() {
+        this.cameraHandler.post(() -> {
+            close();
+            this.cameraThread.quitSafely();
+        });
+    }
+
+    private void open() {
+        CameraManager manager = (CameraManager) this.context.getSystemService(Context.CAMERA_SERVICE);
+        try {
+            String cameraId = selectCamera(manager);
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            Size size = selectSize(characteristics);
+            Integer timestampSource = characteristics.get(CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE);
+            this.isRealtimeTimestamp = timestampSource != null && timestampSource == CameraCharacteristics.SENSOR_INFO_TIMESTAMP_SOURCE_REALTIME;
+            LOG.d("Opening camera %s at %s", cameraId, size);
+            this.imageReader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, MAX_IMAGES);
+            this.imageReader.setOnImageAvailableListener(this::onImageAvailable, this.cameraHandler);
+            manager.openCamera(cameraId, this.deviceCallback, this.cameraHandler);
+        } catch (CameraAccessException | SecurityException | IllegalArgumentException e) {
+            LOG.e("Failed to open camera", e);
+        }
+    }
+
+    private void close() {
+        if (this.captureSession != null) {
+            this.captureSession.close();
+            this.captureSession = null;
+        }
+        if (this.cameraDevice != null) {
+            this.cameraDevice.close();
+            this.cameraDevice = null;
+        }
+        if (this.imageReader != null) {
+            this.imageReader.close();
+            this.imageReader = null;
+        }
+        if (this.isStarted) {
+            this.isStarted = false;
+            this.mainHandler.post(this.cameraStateCallback::onCameraStopped);
+        }
+    }
+
+    // the front camera, like JavaCameraView index 1, or else the first one
+    private static String selectCamera(CameraManager manager) throws CameraAccessException {
+        String[] cameraIds = manager.getCameraIdList();
+        for (String cameraId : cameraIds) {
+            Integer facing = manager.getCameraCharacteristics(cameraId).get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_FRONT)
+                return cameraId;
+        }
+        if (cameraIds.length == 0)
+            throw new IllegalArgumentException("no camera");
+        return cameraIds[0];
+    }
+
+    // largest YUV size within the limit that YuvFrameProcessor can split, or the smallest one
+    private Size selectSize(CameraCharacteristics characteristics) {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map.getOutputSizes(ImageFormat.YUV_420_888);
+        Size best = null;
+        Size smallest = sizes[0];
+        for (Size size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if (area < (long) smallest.getWidth() * smallest.getHeight())
+                smallest = size;
+            if (size.getWidth() > this.maxWidth || size.getHeight() > this.maxHeight || size.getWidth() % 8 != 0 || size.getHeight() % 4 != 0)
+                continue;
+            if (best == null || area > (long) best.getWidth() * best.getHeight())
+                best = size;
+        }
+        return best != null ? best : smallest;
+    }
+
+    private final CameraDevice.StateCallback deviceCallback = new CameraDevice.StateCallback() {
+        @Override
+        public void onOpened(@NonNull CameraDevice camera) {
+            cameraDevice = camera;
+            try {
+                camera.createCaptureSession(Collections.singletonList(imageReader.getSurface()), sessionCallback, cameraHandler);
+            } catch (CameraAccessException e) {
+                LOG.e("Failed to create capture session", e);
+            }
+        }
+
+        @Override
+        public void onDisconnected(@NonNull CameraDevice camera) {
+            close();
+        }
+
+        @Override
+        public void onError(@NonNull CameraDevice camera, int error) {
+            LOG.e("Camera error %d", error);
+            close();
+        }
+    };
+
+    private final CameraCaptureSession.StateCallback sessionCallback = new CameraCaptureSession.StateCallback() {
+        @Override
+        public void onConfigured(@NonNull CameraCaptureSession session) {
+            if (cameraDevice == null)
+                return;
+            captureSession = session;
+            try {
+                CaptureRequest.Builder builder = cameraDevice.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+                builder.addTarget(imageReader.getSurface());
+                session.setRepeatingRequest(builder.build(), null, cameraHandler);
+            } catch (CameraAccessException e) {
+                LOG.e("Failed to start capture", e);
+            }
+        }
+
+        @Override
+        public void onConfigureFailed(@NonNull CameraCaptureSession session) {
+            LOG.e("Capture session configuration failed");
+        }
+    };
+
+    private void onImageAvailable(ImageReader reader) {
+        Image image = reader.acquireLatestImage();
+        if (image == null)
+            return;
+        long captureNanos = System.nanoTime();
+        try {
+            if (this.isRealtimeTimestamp)
+                captureNanos -= SystemClock.elapsedRealtimeNanos() - image.getTimestamp();
+            pack(image);
+        } finally {
+            image.close();
+        }
+        this.processor.update();
+        this.processor.toUpright(this.cameraFrame);
+        this.frameTimestampNanos = captureNanos;
+        if (!this.isStarted) {
+            this.isStarted = true;
+            int width = this.processor.getWidth();
+            int height = this.processor.getHeight();
+            this.mainHandler.post(() -> this.cameraStateCallback.onCameraStarted(width, height));
+        }
+        StreamFrameCallback callback = this.streamCallback;
+        if (callback != null)
+            callback.onStreamFrame(this.cameraFrame, this);
+    }
+
+    // copies the planes into the processor's packed buffer, honouring row and pixel strides
+    private void pack(Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        if (this.processor == null) {
+            int format = planes[1].getPixelStride() == 2 ? YuvFrameProcessor.FORMAT_NV21 : YuvFrameProcessor.FORMAT_I420;
+            this.processor = new YuvFrameProcessor(width, height, format);
+            this.cameraFrame = new Mat(width, height, CvType.CV_8UC3);
+            this.uRow = new byte[width];
+            this.vRow = new byte[width];
+        }
+        byte[] packed = this.processor.getBuffer();
+        copyPlane(planes[0], width, height, packed, 0);
+        int chromaWidth = width / 2;
+        int chromaHeight = height / 2;
+        int offset = width * height;
+        if (this.processor.getFormat() == YuvFrameProcessor.FORMAT_I420) {
+            copyPlane(planes[1], chromaWidth, chromaHeight, packed, offset);
+            copyPlane(planes[2], chromaWidth, chromaHeight, packed, offset + chromaWidth * chromaHeight);
+            return;
+        }
+        ByteBuffer u = planes[1].getBuffer();
+        ByteBuffer v = planes[2].getBuffer();
+        int uRowStride = planes[1].getRowStride();
+        int vRowStride = planes[2].getRowStride();
+        // the last chroma sample of a row has no padding byte after it
+        int rowLength = 2 * chromaWidth - 1;
+        for (int row = 0; row < chromaHeight; row++) {
+            u.position(row * uRowStride);
+            u.get(this.uRow, 0, rowLength);
+            v.position(row * vRowStride);
+            v.get(this.vRow, 0, rowLength);
+            int rowOffset = offset + row * width;
+            for (int column = 0; column < chromaWidth; column++) {
+                packed[rowOffset + 2 * column] = this.vRow[2 * column];
+                packed[rowOffset + 2 * column + 1] = this.uRow[2 * column];
+            }
+        }
+    }
+
+    private static void copyPlane(Image.Plane plane, int width, int height, byte[] packed, int offset) {
+        ByteBuffer buffer = plane.getBuffer();
+        int rowStride = plane.getRowStride();
+        for (int row = 0; row < height; row++) {
+            buffer.position(row * rowStride);
+            buffer.get(packed, offset + row * width, width);
+        }
+    }
+}
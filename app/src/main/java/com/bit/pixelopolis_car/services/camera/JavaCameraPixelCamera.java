@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.camera;
+
+import android.content.Context;
+import android.util.Log;
+import android.view.SurfaceView;
+
+import com.bit.pixelopolis_car.services.startup.StartupOrchestrator;
+
+import org.opencv.android.BaseLoaderCallback;
+import org.opencv.android.CameraBridgeViewBase;
+import org.opencv.android.JavaCameraView;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+
+/**
+ * PixelCamera on OpenCV's JavaCameraView, which converts the camera's NV21 to RGBA before
+ * onCameraFrame and also draws the preview.
+ */
+public class JavaCameraPixelCamera implements PixelCamera, CameraBridgeViewBase.CvCameraViewListener2{
+
+    private CameraBridgeViewBase cameraBridgeViewBase;
+    private BaseLoaderCallback baseLoaderCallback;
+    private Mat dst;
+    private Mat temp3c;
+    private Mat preview;
+    private final FrameNormalizer frameNormalizer = new FrameNormalizer();
+    private Context context;
+    private PixelCameraOverlayDrawer cameraOverlayDrawer;
+    private StreamFrameCallback streamCallback = null;
+    private CameraStateCallback cameraStateCallback;
+    private boolean isStarted = false;
+    private volatile long frameTimestampNanos = 0;
+    private volatile boolean isPreviewOverlayEnable = false;
+    public JavaCameraPixelCamera(JavaCameraView javaCameraView, Context context, CameraStateCallback cameraStateCallback){
+        this.cameraBridgeViewBase = javaCameraView;
+        this.context = context;
+        this.cameraStateCallback = cameraStateCallback;
+        cameraBridgeViewBase.setCameraIndex(1);
+        cameraBridgeViewBase.setVisibility(SurfaceView.VISIBLE);
+        cameraBridgeViewBase.setScaleX(0.5625f * 1.35f);
+        cameraBridgeViewBase.setScaleY(1.0f * 1.35f);
+
+        cameraBridgeViewBase.setMaxFrameSize(800,600);
+        cameraBridgeViewBase.setCvCameraViewListener(this);
+        cameraBridgeViewBase.setKeepScreenOn(true);
+        cameraBridgeViewBase.getHolder().lockCanvas();
+
+        baseLoaderCallback = new BaseLoaderCallback(context) {
+            @Override
+            public void onManagerConnected(int status) {
+                super.onManagerConnected(status);
+
+                switch(status){
+
+                    case BaseLoaderCallback.SUCCESS:
+                        cameraBridgeViewBase.enableView();
+                        Log.d("PixelCamera","enableView");
+                        break;
+                    default:
+                        super.onManagerConnected(status);
+                        Log.d("PixelCamera","status: "+status);
+                        break;
+                }
+            }
+        };
+        if (!StartupOrchestrator.getInstance().loadOpenCv())
+            Log.e("PixelCamera", "Unable to load OpenCV");
+        else {
+            Log.d("PixelCamera", "OpenCV loaded");
+            cameraBridgeViewBase.enableView();
+        }
+
+        cameraOverlayDrawer = new PixelCameraOverlayDrawer();
+    }
+
+    @Override
+    public void setStreamFrameCallback(StreamFrameCallback streamCallback){this.streamCallback =  streamCallback; }
+    @Override
+    public boolean isStarted(){
+        return this.isStarted;
+    }
+    @Override
+    public Mat getCameraFrame()
+    {
+        return dst;
+    }
+
+    // JavaCameraView has no capture time, this is when the RGBA frame reached onCameraFrame
+    @Override
+    public long getFrameTimestampNanos() {
+        return frameTimestampNanos;
+    }
+
+    @Override
+    public PixelCameraOverlayDrawer getCameraOverlayDrawer(){return cameraOverlayDrawer;}
+
+    @Override
+    public void setPreviewOverlayEnable(boolean isPreviewOverlayEnable){this.isPreviewOverlayEnable = isPreviewOverlayEnable; }
+
+    // only RGBA frames come out of JavaCameraView
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        return false;
+    }
+
+    @Override
+    public Mat onCameraFrame(CameraBridgeViewBase.CvCameraViewFrame inputFrame) {
+        Mat rgba = inputFrame.rgba();
+        long timestampNanos = System.nanoTime();
+
+        frameNormalizer.normalize(rgba, dst);
+        frameTimestampNanos = timestampNanos;
+        // the stream gets the clean frame and draws the overlay on its encoder thread
+        if(streamCallback != null)
+            streamCallback.onStreamFrame(dst,this);
+
+        Mat upright = dst;
+        if(isPreviewOverlayEnable && cameraOverlayDrawer.hasDetectedObjects()) {
+            dst.copyTo(temp3c);
+            cameraOverlayDrawer.drawOn(temp3c);
+            upright = temp3c;
+        }
+        frameNormalizer.toPreview(upright, preview, rgba.width(), rgba.height());
+
+        return preview;
+    }
+
+
+    @Override
+    public void onCameraViewStarted(int width, int height) {
+        dst = new Mat(width,height, CvType.CV_8UC3);
+        temp3c = new Mat(width,height, CvType.CV_8UC3);
+        preview = new Mat(height,width, CvType.CV_8UC3);
+        isStarted = true;
+        cameraStateCallback.onCameraStarted(width,height);
+        Log.d("PixelCamera","onCameraViewStarted");
+    }
+
+
+    @Override
+    public void onCameraViewStopped() {
+        cameraStateCallback.onCameraStopped();
+        isStarted = false;
+    }
+
+    @Override
+    public void destroy() {
+        if (cameraBridgeViewBase!=null){
+            cameraBridgeViewBase.disableView();
+        }
+        isStarted = false;
+    }
+
+    @Override
+    public void pause() {
+        if(cameraBridgeViewBase!=null){
+            //cameraBridgeViewBase.disableView();
+        }
+
+    }
+
+    @Override
+    public void resume() {
+
+        if (!StartupOrchestrator.getInstance().loadOpenCv()){
+            Log.e("PixelCamera", "Unable to load OpenCV");
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.camera;
+
+import android.content.Context;
+import android.view.View;
+
+import com.bit.pixelopolis_car.services.config.CameraInfo;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+
+import org.opencv.android.JavaCameraView;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Picks the PixelCamera backend named in the camera config entry, JavaCameraView by default.
+ */
+public final class PixelCameraFactory {
+    private static final Logger LOG = LogService.getInstance().getLogger("PixelCameraFactory");
+
+    private PixelCameraFactory() {}
+
+    public static PixelCamera create(CameraInfo cameraInfo, JavaCameraView javaCameraView, Context context, PixelCamera.CameraStateCallback cameraStateCallback) {
+        if (cameraInfo == null)
+            cameraInfo = new CameraInfo();
+        switch (cameraInfo.getBackend()) {
+            case CameraInfo.BACKEND_CAMERA2:
+                javaCameraView.setVisibility(View.GONE);
+                return new Camera2PixelCamera(context, cameraInfo.getMaxFrameWidth(), cameraInfo.getMaxFrameHeight(), cameraStateCallback);
+            case CameraInfo.BACKEND_REPLAY:
+                File file = new File(cameraInfo.getReplayFile());
+                if (!file.isAbsolute())
+                    file = new File(context.getExternalFilesDir(null), cameraInfo.getReplayFile());
+                int format = CameraInfo.FORMAT_I420.equals(cameraInfo.getReplayFormat()) ? YuvFrameProcessor.FORMAT_I420 : YuvFrameProcessor.FORMAT_NV21;
+                try {
+                    PixelCamera camera = new YuvReplayPixelCamera(file, cameraInfo.getReplayWidth(), cameraInfo.getReplayHeight(), format, cameraInfo.getReplayFrameRate(), cameraStateCallback);
+                    javaCameraView.setVisibility(View.GONE);
+                    return camera;
+                } catch (IOException e) {
+                    LOG.e("Cannot replay the frame file, using the camera", e);
+                }
+                break;
+            default:
+                break;
+        }
+        return new JavaCameraPixelCamera(javaCameraView, context, cameraStateCallback);
+    }
+}
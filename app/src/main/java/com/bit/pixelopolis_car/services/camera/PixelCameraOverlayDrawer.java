@@ -16,6 +16,8 @@
 
 package com.bit.pixelopolis_car.services.camera;
 
+import android.graphics.RectF;
+
 import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
 
 import org.opencv.core.Mat;
@@ -26,34 +28,83 @@ import org.opencv.imgproc.Imgproc;
 
 import java.util.List;
 
+/**
+ * Draws the detected objects on a frame for whoever shows it, the vision input is never drawn on.
+ * The vision loop only hands over the detections; label text is formatted and measured the first
+ * time a label is drawn and kept with it, so nothing is spent while no one is watching.
+ */
 public class PixelCameraOverlayDrawer {
-    private List<ObjectDetector.DetectedObject> detectedObjects;
+    private static final Label[] NO_LABELS = new Label[0];
+    private static final Scalar BOX_COLOR = new Scalar(0, 0, 255);
+    private static final Scalar TEXT_BACKGROUND_COLOR = new Scalar(255, 255, 255);
+    private static final Scalar TEXT_COLOR = new Scalar(0, 0, 0);
+    private static final int FONT_FACE = 1;
+    private static final double FONT_SCALE = 2;
+    private static final int FONT_THICKNESS = 2;
+
+    private static final class Label {
+        private final String title;
+        private final float confidence;
+        private final RectF location;
+        // made on the first draw, two threads drawing at once may both make them, which is harmless
+        private String topText;
+        private Size topTextSize;
+        private String bottomText;
+        private Size bottomTextSize;
+
+        Label(ObjectDetector.DetectedObject detectedObject) {
+            this.title = detectedObject.getTitle();
+            this.confidence = detectedObject.getConfidence();
+            this.location = new RectF(detectedObject.getLeft(), detectedObject.getTop(), detectedObject.getRight(), detectedObject.getBottom());
+        }
+
+        void draw(Mat inOutMat, float scaleX, float scaleY) {
+            if (bottomTextSize == null) {
+                topText = String.format("%s: %.3f", title, confidence);
+                topTextSize = Imgproc.getTextSize(topText, FONT_FACE, FONT_SCALE, FONT_THICKNESS, null);
+                bottomText = String.format("w=%.3f,h=%.3f,a=%.3f", location.width(), location.height(), location.width() * location.height());
+                bottomTextSize = Imgproc.getTextSize(bottomText, FONT_FACE, FONT_SCALE, FONT_THICKNESS, null);
+            }
+            Point topLeft = new Point(location.left * scaleX, location.top * scaleY);
+            Point bottomRight = new Point(location.right * scaleX, location.bottom * scaleY);
+            Point bottomLeft = new Point(location.left * scaleX, location.bottom * scaleY);
+            Imgproc.rectangle(inOutMat, topLeft, bottomRight, BOX_COLOR, 5);
+            drawText(inOutMat, topText, topTextSize, topLeft);
+            drawText(inOutMat, bottomText, bottomTextSize, bottomLeft);
+        }
+
+        private static void drawText(Mat inOutMat, String text, Size textSize, Point origin) {
+            Imgproc.rectangle(inOutMat, new Point(origin.x - 3, origin.y - textSize.height - 5), new Point(origin.x + textSize.width + 3, origin.y + 3), TEXT_BACKGROUND_COLOR, -1);
+            Imgproc.putText(inOutMat, text, origin, FONT_FACE, FONT_SCALE, TEXT_COLOR, FONT_THICKNESS, 8, false);
+        }
+    }
+
+    private volatile Label[] labels = NO_LABELS;
 
     public void setDetectedObjects(List<ObjectDetector.DetectedObject> detectedObjects) {
-        this.detectedObjects = detectedObjects;
+        if (detectedObjects == null || detectedObjects.isEmpty()) {
+            labels = NO_LABELS;
+            return;
+        }
+        Label[] next = new Label[detectedObjects.size()];
+        for (int i = 0; i < next.length; i++) {
+            next[i] = new Label(detectedObjects.get(i));
+        }
+        labels = next;
     }
 
+    public boolean hasDetectedObjects() {
+        return labels.length > 0;
+    }
 
     public void drawOn(Mat inOutMat){
-        if(detectedObjects !=null ) {
-            float scaleX = (float)inOutMat.size().width;
-            float scaleY = (float)inOutMat.size().height;
-            for(ObjectDetector.DetectedObject detectedObject : detectedObjects){
-                Point topLeft = new Point(detectedObject.getLocation().left * scaleX, detectedObject.getLocation().top * scaleY);
-                Point bottomRight = new Point(detectedObject.getLocation().right * scaleX, detectedObject.getLocation().bottom * scaleY);
-                Point bottomLeft = new Point(detectedObject.getLocation().left * scaleX, detectedObject.getLocation().bottom * scaleY);
-                Imgproc.rectangle(inOutMat, topLeft, bottomRight, new Scalar(0, 0, 255),5);
-                String topText =  String.format("%s: %.3f",detectedObject.getTitle() ,detectedObject.getConfidence(),detectedObject.getLocation().width() * detectedObject.getLocation().height());
-                Size topTextSize = Imgproc.getTextSize(topText, 1, 2, 2,null);
-                Imgproc.rectangle(inOutMat,new Point(topLeft.x - 3 , topLeft.y - topTextSize.height - 5) , new Point(topLeft.x + topTextSize.width + 3 , topLeft.y + 3) , new Scalar(255, 255,255),-1);
-                Imgproc.putText(inOutMat,topText ,topLeft , 1, 2, new Scalar(0, 0, 0), 2,8,false);
-
-                String bottomText =  String.format("w=%.3f,h=%.3f,a=%.3f",detectedObject.getLocation().width() , detectedObject.getLocation().height(),detectedObject.getLocation().width() * detectedObject.getLocation().height());
-                Size bottomTextSize = Imgproc.getTextSize(bottomText, 1, 2, 2,null);
-                Imgproc.rectangle(inOutMat,new Point(bottomLeft.x - 3 , bottomLeft.y - bottomTextSize.height - 5) , new Point(bottomLeft.x + bottomTextSize.width + 3 , bottomLeft.y + 3) , new Scalar(255, 255,255),-1);
-                Imgproc.putText(inOutMat,bottomText ,bottomLeft , 1, 2, new Scalar(0, 0, 0), 2,8,false);
-
-            }
+        Label[] labels = this.labels;
+        if (labels.length == 0)
+            return;
+        float scaleX = (float) inOutMat.cols();
+        float scaleY = (float) inOutMat.rows();
+        for (Label label : labels) {
+            label.draw(inOutMat, scaleX, scaleY);
         }
     }
 }
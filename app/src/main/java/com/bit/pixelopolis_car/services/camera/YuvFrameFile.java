@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.camera;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only, memory mapped file of raw landscape YUV 4:2:0 frames back to back, e.g. recorded with
+ * ffmpeg -pix_fmt nv21. Not thread safe, the mapping's position is shared.
+ */
+public class YuvFrameFile {
+    private final MappedByteBuffer frames;
+    private final int frameSize;
+    private final int frameCount;
+
+    public YuvFrameFile(File file, int width, int height) throws IOException {
+        this.frameSize = width * height * 3 / 2;
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            // one mapping is limited to 2GB, longer recordings are cut there
+            long length = Math.min(input.length(), (long) (Integer.MAX_VALUE / this.frameSize) * this.frameSize);
+            this.frameCount = (int) (length / this.frameSize);
+            if (this.frameCount == 0) {
+                throw new IOException(file + " is shorter than one " + width + "x" + height + " frame");
+            }
+            this.frames = input.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, (long) this.frameCount * this.frameSize);
+        }
+    }
+
+    public int getFrameCount() {
+        return this.frameCount;
+    }
+
+    public int getFrameSize() {
+        return this.frameSize;
+    }
+
+    // target must hold getFrameSize() bytes, e.g. YuvFrameProcessor.getBuffer()
+    public void read(int index, byte[] target) {
+        this.frames.position(index * this.frameSize);
+        this.frames.get(target, 0, this.frameSize);
+    }
+}
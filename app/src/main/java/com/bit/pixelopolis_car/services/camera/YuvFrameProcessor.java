@@ -0,0 +1,191 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.camera;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Holds the newest landscape YUV 4:2:0 camera frame and makes what vision needs from it:
+ * the upright, mirrored RGB frame in one conversion plus a rotation, and the lane model input
+ * straight from the Y and chroma planes of the road part, without going through RGB.
+ * <p>
+ * The lane input has to match what LanePreprocessor makes from the RGB frame, which OpenCV
+ * converted from the camera's YUV as video range BT.601. Each plane of that round trip is an
+ * affine map, so it is applied to the small resized planes instead, and the result matches the
+ * RGB path up to rounding and the clipping of very saturated colours.
+ * <p>
+ * The camera thread fills getBuffer() and calls update() and toUpright(), the vision thread calls
+ * writeLaneInput().
+ */
+public class YuvFrameProcessor {
+    // Y plane, then V and U interleaved, as Camera2 delivers with a chroma pixel stride of 2
+    public static final int FORMAT_NV21 = 0;
+    // Y plane, then the U plane and the V plane, as with a chroma pixel stride of 1
+    public static final int FORMAT_I420 = 1;
+
+    // OpenCV's video range BT.601 YUV to RGB
+    private static final double Y_SCALE = 1.164;
+    private static final double CB_TO_B = 2.018;
+    private static final double CR_TO_R = 1.596;
+    // OpenCV's RGB to YUV chroma scales
+    private static final double B_TO_U = 0.492111;
+    private static final double R_TO_V = 0.877283;
+    // the road is the lower quarter of the upright frame, the left quarter of the landscape one
+    private static final int ROAD_SHARE_DIVISOR = 4;
+
+    private final int width;
+    private final int height;
+    private final int format;
+    private final byte[] buffer;
+    private final Mat packed;
+    private final Mat yRoad;
+    private final Mat chromaRoad;
+    private final Mat uRoad;
+    private final Mat vRoad;
+    private final Mat rgb = new Mat();
+    private final Mat ySmall = new Mat();
+    private final Mat uSmall = new Mat();
+    private final Mat vSmall = new Mat();
+    private final Mat chromaSmall = new Mat();
+    private final Mat yuvSmall = new Mat();
+    private final Mat yuvUpright = new Mat();
+    private final Mat yuvFloat = new Mat();
+    private final List<Mat> yuvPlanes = new ArrayList<>();
+    private Size laneSize = null;
+    private float[] values = new float[0];
+
+    public YuvFrameProcessor(int width, int height, int format) {
+        if (width % 8 != 0 || height % 4 != 0) {
+            throw new IllegalArgumentException("frame size must be a multiple of 8x4");
+        }
+        this.width = width;
+        this.height = height;
+        this.format = format;
+        this.buffer = new byte[width * height * 3 / 2];
+        this.packed = new Mat(height * 3 / 2, width, CvType.CV_8UC1);
+
+        int roadWidth = width / ROAD_SHARE_DIVISOR;
+        this.yRoad = this.packed.submat(0, height, 0, roadWidth);
+        if (format == FORMAT_NV21) {
+            Mat chroma = this.packed.submat(height, height * 3 / 2, 0, width).reshape(2, height / 2);
+            this.chromaRoad = chroma.submat(0, height / 2, 0, roadWidth / 2);
+            this.uRoad = null;
+            this.vRoad = null;
+        } else if (format == FORMAT_I420) {
+            Mat u = this.packed.submat(height, height * 5 / 4, 0, width).reshape(1, height / 2);
+            Mat v = this.packed.submat(height * 5 / 4, height * 3 / 2, 0, width).reshape(1, height / 2);
+            this.chromaRoad = null;
+            this.uRoad = u.submat(0, height / 2, 0, roadWidth / 2);
+            this.vRoad = v.submat(0, height / 2, 0, roadWidth / 2);
+        } else {
+            throw new IllegalArgumentException("unknown YUV format " + format);
+        }
+    }
+
+    public int getWidth() {
+        return this.width;
+    }
+
+    public int getHeight() {
+        return this.height;
+    }
+
+    public int getFormat() {
+        return this.format;
+    }
+
+    // packed frame to fill in, width * height * 3 / 2 bytes in the processor's format
+    public byte[] getBuffer() {
+        return this.buffer;
+    }
+
+    public synchronized void update() {
+        this.packed.put(0, 0, this.buffer);
+    }
+
+    /**
+     * @param uprightFrame receives the 3 channel RGB frame, width and height swapped
+     */
+    public void toUpright(Mat uprightFrame) {
+        Imgproc.cvtColor(this.packed, this.rgb, this.format == FORMAT_NV21 ? Imgproc.COLOR_YUV2RGB_NV21 : Imgproc.COLOR_YUV2RGB_I420);
+        // same mirror and transpose JavaCameraPixelCamera does
+        Core.rotate(this.rgb, uprightFrame, Core.ROTATE_90_COUNTERCLOCKWISE);
+    }
+
+    /**
+     * Writes the lane model input for an upright width x height input to target from its start,
+     * as interleaved YUV floats.
+     */
+    public synchronized void writeLaneInput(FloatBuffer target, int width, int height) {
+        // still landscape here, rotated once the planes are merged
+        if (this.laneSize == null || this.laneSize.width != height || this.laneSize.height != width) {
+            this.laneSize = new Size(height, width);
+        }
+        Imgproc.resize(this.yRoad, this.ySmall, this.laneSize);
+        if (this.format == FORMAT_NV21) {
+            Imgproc.resize(this.chromaRoad, this.chromaSmall, this.laneSize);
+            Core.extractChannel(this.chromaSmall, this.vSmall, 0);
+            Core.extractChannel(this.chromaSmall, this.uSmall, 1);
+        } else {
+            Imgproc.resize(this.uRoad, this.uSmall, this.laneSize);
+            Imgproc.resize(this.vRoad, this.vSmall, this.laneSize);
+        }
+
+        this.ySmall.convertTo(this.ySmall, -1, Y_SCALE, -16 * Y_SCALE);
+        double uScale = B_TO_U * CB_TO_B;
+        this.uSmall.convertTo(this.uSmall, -1, uScale, 128 * (1 - uScale));
+        double vScale = R_TO_V * CR_TO_R;
+        this.vSmall.convertTo(this.vSmall, -1, vScale, 128 * (1 - vScale));
+
+        this.yuvPlanes.clear();
+        this.yuvPlanes.add(this.ySmall);
+        this.yuvPlanes.add(this.uSmall);
+        this.yuvPlanes.add(this.vSmall);
+        Core.merge(this.yuvPlanes, this.yuvSmall);
+        Core.rotate(this.yuvSmall, this.yuvUpright, Core.ROTATE_90_COUNTERCLOCKWISE);
+        this.yuvUpright.convertTo(this.yuvFloat, CvType.CV_32FC3);
+
+        int count = width * height * 3;
+        if (this.values.length != count) {
+            this.values = new float[count];
+        }
+        this.yuvFloat.get(0, 0, this.values);
+        target.clear();
+        target.put(this.values);
+    }
+
+    public void release() {
+        this.packed.release();
+        this.rgb.release();
+        this.ySmall.release();
+        this.uSmall.release();
+        this.vSmall.release();
+        this.chromaSmall.release();
+        this.yuvSmall.release();
+        this.yuvUpright.release();
+        this.yuvFloat.release();
+    }
+}
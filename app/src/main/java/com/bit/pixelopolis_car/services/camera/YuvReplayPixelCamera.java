@@ -0,0 +1,171 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.camera;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * Stand-in camera that loops over raw landscape YUV 4:2:0 frames from a file at a fixed rate,
+ * e.g. recorded with ffmpeg -pix_fmt nv21. Uses no Android API, so vision and streaming can be
+ * driven from recordings on a plain JVM. Frames go through the same YuvFrameProcessor as the
+ * Camera2 backend. There is no on screen preview.
+ */
+public class YuvReplayPixelCamera implements PixelCamera {
+    private static final String TAG = YuvReplayPixelCamera.class.getSimpleName();
+
+    private final PixelCameraOverlayDrawer cameraOverlayDrawer = new PixelCameraOverlayDrawer();
+    private final YuvFrameProcessor processor;
+    private final YuvFrameFile frames;
+    private final long frameIntervalNanos;
+    private final CameraStateCallback cameraStateCallback;
+    private final Mat cameraFrame;
+    private final Thread thread;
+    private volatile StreamFrameCallback streamCallback = null;
+    private volatile boolean isStarted = false;
+    private volatile boolean isPaused = false;
+    private volatile boolean isFinished = false;
+    private volatile long frameTimestampNanos = 0;
+    private long replayedFrames = 0;
+
+    /**
+     * @param format YuvFrameProcessor.FORMAT_NV21 or FORMAT_I420
+     */
+    public YuvReplayPixelCamera(File file, int width, int height, int format, int frameRate, CameraStateCallback cameraStateCallback) throws IOException {
+        this.processor = new YuvFrameProcessor(width, height, format);
+        this.frames = new YuvFrameFile(file, width, height);
+        this.frameIntervalNanos = 1000000000L / Math.max(1, frameRate);
+        this.cameraStateCallback = cameraStateCallback;
+        this.cameraFrame = new Mat(width, height, CvType.CV_8UC3);
+        this.thread = new Thread(this::replayRun, TAG);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    public int getFrameCount() {
+        return this.frames.getFrameCount();
+    }
+
+    // frames handed out so far, the file loops
+    public long getReplayedFrames() {
+        return this.replayedFrames;
+    }
+
+    @Override
+    public void setStreamFrameCallback(StreamFrameCallback streamCallback) {
+        this.streamCallback = streamCallback;
+    }
+
+    @Override
+    public boolean isStarted() {
+        return this.isStarted;
+    }
+
+    @Override
+    public Mat getCameraFrame() {
+        return this.cameraFrame;
+    }
+
+    // when the frame was read from the file
+    @Override
+    public long getFrameTimestampNanos() {
+        return this.frameTimestampNanos;
+    }
+
+    @Override
+    public PixelCameraOverlayDrawer getCameraOverlayDrawer() {
+        return this.cameraOverlayDrawer;
+    }
+
+    // no preview to draw on
+    @Override
+    public void setPreviewOverlayEnable(boolean isPreviewOverlayEnable) {
+    }
+
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        if (!this.isStarted) {
+            return false;
+        }
+        this.processor.writeLaneInput(target, width, height);
+        return true;
+    }
+
+    @Override
+    public void pause() {
+        this.isPaused = true;
+    }
+
+    @Override
+    public void resume() {
+        this.isPaused = false;
+    }
+
+    @Override
+    public void destroy() {
+        this.isFinished = true;
+        this.thread.interrupt();
+    }
+
+    private void replayRun() {
+        long nextFrameNanos = System.nanoTime();
+        try {
+            while (!this.isFinished) {
+                if (!this.isPaused) {
+                    replayFrame();
+                }
+                nextFrameNanos += this.frameIntervalNanos;
+                long sleepNanos = nextFrameNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+                } else {
+                    // running late, do not try to catch up
+                    nextFrameNanos = System.nanoTime();
+                }
+            }
+        } catch (InterruptedException ignored) {
+        }
+        this.isStarted = false;
+        if (this.cameraStateCallback != null) {
+            this.cameraStateCallback.onCameraStopped();
+        }
+    }
+
+    private void replayFrame() {
+        long timestampNanos = System.nanoTime();
+        this.frames.read((int) (this.replayedFrames % this.frames.getFrameCount()), this.processor.getBuffer());
+        this.processor.update();
+        this.processor.toUpright(this.cameraFrame);
+        this.frameTimestampNanos = timestampNanos;
+        this.replayedFrames++;
+        if (!this.isStarted) {
+            this.isStarted = true;
+            if (this.cameraStateCallback != null) {
+                this.cameraStateCallback.onCameraStarted(this.processor.getWidth(), this.processor.getHeight());
+            }
+        }
+        StreamFrameCallback callback = this.streamCallback;
+        if (callback != null) {
+            callback.onStreamFrame(this.cameraFrame, this);
+        }
+    }
+}
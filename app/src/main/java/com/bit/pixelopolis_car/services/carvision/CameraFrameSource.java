@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import com.bit.pixelopolis_car.services.camera.PixelCamera;
+
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Live frames from a PixelCamera. The camera keeps overwriting its frame, so vision takes the
+ * newest one every interval and skips whatever came in between.
+ */
+public class CameraFrameSource implements FrameSource {
+    private static final long DEFAULT_INTERVAL_MS = 30;
+
+    private final PixelCamera camera;
+    private final long intervalMillis;
+    private boolean isFirstFrame = true;
+
+    public CameraFrameSource(PixelCamera camera) {
+        this(camera, DEFAULT_INTERVAL_MS);
+    }
+
+    // intervalMillis is the pause between two vision passes
+    public CameraFrameSource(PixelCamera camera, long intervalMillis) {
+        this.camera = camera;
+        this.intervalMillis = intervalMillis;
+    }
+
+    @Override
+    public boolean nextFrame() throws InterruptedException {
+        if (!this.isFirstFrame)
+            Thread.sleep(this.intervalMillis);
+        this.isFirstFrame = false;
+        return true;
+    }
+
+    @Override
+    public Mat getFrame() {
+        return this.camera.getCameraFrame();
+    }
+
+    @Override
+    public long getFrameTimestampNanos() {
+        return this.camera.getFrameTimestampNanos();
+    }
+
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        return this.camera.writeLaneInput(target, width, height);
+    }
+
+    // the camera belongs to the activity
+    @Override
+    public void close() {
+    }
+}
@@ -18,102 +18,222 @@ package com.bit.pixelopolis_car.services.carvision;
 
 import android.content.Context;
 import android.content.res.AssetManager;
-import android.util.Log;
 
 import com.bit.pixelopolis_car.services.camera.PixelCamera;
 import com.bit.pixelopolis_car.services.camera.PixelCameraOverlayDrawer;
-import org.opencv.android.OpenCVLoader;
+import com.bit.pixelopolis_car.services.metrics.Counter;
+import com.bit.pixelopolis_car.services.metrics.Gauge;
+import com.bit.pixelopolis_car.services.metrics.Histogram;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+import com.bit.pixelopolis_car.services.recorder.DriveRecorder;
+import com.bit.pixelopolis_car.services.startup.StartupOrchestrator;
+import com.bit.pixelopolis_car.services.tracing.LatencyTracer;
 import org.opencv.core.Mat;
-import org.opencv.core.Rect;
-import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.util.stream.Collectors;
 
 public class CarVision {
+
+    // called on the vision thread, e.g. to collect results of a replay
+    public interface FrameResultListener {
+        void onFrameProcessed(long frameNumber, float steeringAngle, List<ObjectDetector.DetectedObject> detectedObjects, float processingMillis);
+        // a replay ran out of frames
+        void onSourceFinished(long frameCount);
+    }
+
     private static String TAG = "CarVision";
-    private PixelCamera camera;
+    // 2 ms to about 1 s
+    private static final double[] TIME_BOUNDS = Histogram.exponentialBounds(0.002, 2, 10);
+    private static final long FPS_WINDOW_NANOS = 1000000000L;
+    private FrameSource frameSource;
     private PixelCameraOverlayDrawer cameraOverlayDrawer;
     private float steeringAngle = 0.0f;
     private AssetManager assetManager;
     private Mat detectedFrame;
     private List<ObjectDetector.DetectedObject> detectedObjects;
     private Context context;
+    // completes once both models are built and warmed up
+    private final CompletableFuture<VisionModels> models;
+    private volatile FrameResultListener frameResultListener = null;
+    private volatile DriveRecorder driveRecorder = null;
+    private volatile LatencyTracer latencyTracer = null;
 
     private boolean isFinished = false;
     private boolean isPause = false;
+    // time of the last lane and object detection pass, without the sleep
+    private volatile float processingMillis = 0;
+
+    private final Counter frameCounter = MetricsRegistry.getInstance().counter("vision_frames_total", "Frames run through lane and object detection");
+    private final Gauge fpsGauge = MetricsRegistry.getInstance().gauge("vision_frames_per_second", "Frames processed over the last second");
+    private final Histogram frameTime = MetricsRegistry.getInstance().histogram("vision_frame_seconds", "Lane and object detection of one frame", TIME_BOUNDS);
+    private final Histogram laneInferenceTime = MetricsRegistry.getInstance().histogram("vision_inference_seconds", "One model run", TIME_BOUNDS, "model", "lane");
+    private final Histogram objectInferenceTime = MetricsRegistry.getInstance().histogram("vision_inference_seconds", "One model run", TIME_BOUNDS, "model", "object");
 
     public CarVision(PixelCamera camera, AssetManager assetManager, Context context)
     {
-        this.camera = camera;
-        this.cameraOverlayDrawer = camera.getCameraOverlayDrawer();
+        this(new CameraFrameSource(camera), camera.getCameraOverlayDrawer(), assetManager, context);
+    }
+
+    // cameraOverlayDrawer may be null when nothing shows the detections, e.g. for a replay
+    public CarVision(FrameSource frameSource, PixelCameraOverlayDrawer cameraOverlayDrawer, AssetManager assetManager, Context context)
+    {
+        this.frameSource = frameSource;
+        this.cameraOverlayDrawer = cameraOverlayDrawer;
         this.assetManager = assetManager;
         this.context = context;
-        if (!OpenCVLoader.initDebug())
-            Log.e("CarVision", "Unable to load OpenCV");
-        else
-            Log.d("CarVision", "OpenCV loaded");
+        // usually prewarmed during setup, otherwise the build starts here
+        this.models = StartupOrchestrator.getInstance().takeModels(assetManager);
 
         new Thread(new MyRunnable()).start();
     }
 
+    // the controllers wait on this so they never steer on a model that is still loading
+    public CompletableFuture<VisionModels> getReadiness() {
+        return models;
+    }
+
     public float getSteeringAngle() {
         return steeringAngle;
     }
 
+    public float getProcessingMillis() {
+        return processingMillis;
+    }
+
     public List<ObjectDetector.DetectedObject> getObjectFound()
     {
         return detectedObjects;
     }
 
+    public void setFrameResultListener(FrameResultListener frameResultListener) {
+        this.frameResultListener = frameResultListener;
+    }
+
+    public void setDriveRecorder(DriveRecorder driveRecorder) {
+        this.driveRecorder = driveRecorder;
+    }
+
+    // frame numbers are the trace ids
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
 
     public class MyRunnable implements Runnable {
         private LaneDetector laneDetector;
         private ObjectDetector objectDetector;
+        // filled for the recorder, which takes arrays so it does not allocate
+        private final float[] recordedConfidences = new float[DriveRecorder.MAX_DETECTIONS];
+        private final float[] recordedBoxes = new float[DriveRecorder.MAX_DETECTIONS * 4];
+        private final String[] recordedTitles = new String[DriveRecorder.MAX_DETECTIONS];
+        private long fpsWindowStartNanos = 0;
+        private int fpsWindowFrames = 0;
 
         public void run(){
-            try {
-                laneDetector = new LaneDetector(assetManager);
-            } catch (IOException e) {
-                Log.e("CarVision", "Failed to initialize LaneDetector.", e);
-            }
-
-            try {
-                objectDetector = TFLiteObjectDetectionAPIModel.create(assetManager,"object_detector.tflite",
-                        "file:///android_asset/labels_piority.json",300,225,true);
-            } catch (IOException e) {
-                Log.e("CarVision", "Failed to initialize LaneDetector.", e);
-            }
+            VisionModels visionModels = models.join();
+            laneDetector = visionModels.getLaneDetector();
+            objectDetector = visionModels.getObjectDetector();
 
+            long frameNumber = 0;
             while (!isFinished){
                 if(!isPause) {
-                    Mat cameraMat = camera.getCameraFrame();
-                    steeringAngle = getCarSteering(cameraMat);
-                    detectedObjects = getDetectedObjects(cameraMat).stream().filter(e -> e.getConfidence() > 0.7f).collect(Collectors.toList());
-                    cameraOverlayDrawer.setDetectedObjects(detectedObjects);
-
                     try {
-                        Thread.sleep(30);
+                        if (!frameSource.nextFrame()) {
+                            FrameResultListener listener = frameResultListener;
+                            if (listener != null)
+                                listener.onSourceFinished(frameNumber);
+                            break;
+                        }
                     } catch (InterruptedException e) {
                         e.printStackTrace();
+                        continue;
                     }
 
-
+                    long start = System.nanoTime();
+                    Mat cameraMat = frameSource.getFrame();
+                    long captureNanos = frameSource.getFrameTimestampNanos();
+                    // nothing to trace before the first frame
+                    LatencyTracer tracer = captureNanos != 0 ? latencyTracer : null;
+                    if (tracer != null)
+                        tracer.record(LatencyTracer.STAGE_CAPTURE, captureNanos, start);
+                    steeringAngle = getCarSteering(cameraMat, captureNanos, tracer);
+                    if (tracer != null)
+                        tracer.publish(frameNumber, captureNanos, System.nanoTime());
+                    detectedObjects = getDetectedObjects(cameraMat).stream().filter(e -> e.getConfidence() > 0.7f).collect(Collectors.toList());
+                    if (cameraOverlayDrawer != null)
+                        cameraOverlayDrawer.setDetectedObjects(detectedObjects);
+                    long end = System.nanoTime();
+                    processingMillis = (end - start) / 1e6f;
+                    frameTime.observeNanos(end - start);
+                    frameCounter.inc();
+                    updateFps(end);
+
+                    DriveRecorder recorder = driveRecorder;
+                    if (recorder != null)
+                        record(recorder, cameraMat, detectedObjects);
+                    FrameResultListener listener = frameResultListener;
+                    if (listener != null)
+                        listener.onFrameProcessed(frameNumber, steeringAngle, detectedObjects, processingMillis);
+                    frameNumber++;
                 }
             }
+            frameSource.close();
         }
 
-        private float getCarSteering(Mat frame) {
+        private float getCarSteering(Mat frame, long captureNanos, LatencyTracer tracer) {
             if(frame == null || laneDetector ==null || frame.empty()) return 0;
-            // assume lower half of the frame is road, then crop
-            Rect roi = new Rect(0, 3*frame.size(0)/4, frame.size(1), frame.size(0)/4);
-            Mat cropped = new Mat(frame, roi);
-            // feed
-            return laneDetector.classifyMat(cropped);
+            // YUV cameras fill the model input themselves, otherwise the detector crops the lower quarter of the frame, which is road
+            if(!frameSource.writeLaneInput(laneDetector.getInputBuffer(), LaneDetector.DIM_WIDTH, LaneDetector.DIM_HEIGHT))
+                laneDetector.preprocessFrame(frame);
+            if (tracer != null)
+                tracer.record(LatencyTracer.STAGE_PREPROCESS, captureNanos, System.nanoTime());
+            long inferenceStart = System.nanoTime();
+            float angle = laneDetector.classifyInput();
+            long inferenceEnd = System.nanoTime();
+            laneInferenceTime.observeNanos(inferenceEnd - inferenceStart);
+            if (tracer != null)
+                tracer.record(LatencyTracer.STAGE_INFERENCE, captureNanos, inferenceEnd);
+            return angle;
+        }
+
+        private void updateFps(long now) {
+            fpsWindowFrames++;
+            if (fpsWindowStartNanos == 0) {
+                fpsWindowStartNanos = now;
+                fpsWindowFrames = 0;
+            } else if (now - fpsWindowStartNanos >= FPS_WINDOW_NANOS) {
+                fpsGauge.set(fpsWindowFrames * 1e9 / (now - fpsWindowStartNanos));
+                fpsWindowStartNanos = now;
+                fpsWindowFrames = 0;
+            }
+        }
+
+        private void record(DriveRecorder recorder, Mat frame, List<ObjectDetector.DetectedObject> objects) {
+            long now = System.nanoTime();
+            int count = Math.min(objects.size(), DriveRecorder.MAX_DETECTIONS);
+            for (int i = 0; i < count; i++) {
+                ObjectDetector.DetectedObject object = objects.get(i);
+                recordedConfidences[i] = object.getConfidence();
+                recordedBoxes[i * 4] = object.getLeft();
+                recordedBoxes[i * 4 + 1] = object.getTop();
+                recordedBoxes[i * 4 + 2] = object.getRight();
+                recordedBoxes[i * 4 + 3] = object.getBottom();
+                recordedTitles[i] = object.getTitle();
+            }
+            recorder.recordVision(steeringAngle, processingMillis, count, recordedConfidences, recordedBoxes, recordedTitles, now);
+            recorder.recordFrame(frame, now);
         }
 
         private List<ObjectDetector.DetectedObject> getDetectedObjects(Mat frame)
         {
-            return objectDetector.recognizeImage(frame);
+            if (objectDetector == null)
+                return Collections.emptyList();
+            long inferenceStart = System.nanoTime();
+            List<ObjectDetector.DetectedObject> objects = objectDetector.recognizeImage(frame);
+            objectInferenceTime.observeNanos(System.nanoTime() - inferenceStart);
+            return objects;
         }
     }
 
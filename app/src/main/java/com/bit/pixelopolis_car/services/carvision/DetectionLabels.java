@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * The detector's class table, resolved once from labels_piority.json. Post-processing used to look
+ * every detection's class up in the JSON twice, and again for every comparison of the priority
+ * sort. Names, ids and priorities now sit in arrays indexed by class, so picking and ordering the
+ * detections of a frame is a few array reads and an insertion sort over at most NUM_DETECTIONS.
+ */
+public class DetectionLabels {
+    private final String[] ids;
+    private final String[] names;
+    private final int[] priorities;
+    private final boolean[] enabled;
+
+    /**
+     * @param names class name by class index, null for classes missing from the table
+     * @param priorities sort order by class index, lower comes first
+     * @param enabledNames names the caller wants to see, detections of other classes are dropped
+     */
+    public DetectionLabels(String[] names, int[] priorities, Collection<String> enabledNames) {
+        if (names.length != priorities.length) {
+            throw new IllegalArgumentException("one priority per name is needed");
+        }
+        this.ids = new String[names.length];
+        this.names = names.clone();
+        this.priorities = priorities.clone();
+        this.enabled = new boolean[names.length];
+        for (int classIndex = 0; classIndex < names.length; classIndex++) {
+            this.ids[classIndex] = String.valueOf(classIndex);
+            this.enabled[classIndex] = names[classIndex] != null && enabledNames.contains(names[classIndex]);
+        }
+    }
+
+    /**
+     * @param labelsPiority labels_piority.json, class index to name and piority, may be null
+     */
+    public static DetectionLabels parse(JSONObject labelsPiority, Collection<String> enabledNames) {
+        int classCount = 0;
+        if (labelsPiority != null) {
+            Iterator<String> keys = labelsPiority.keys();
+            while (keys.hasNext()) {
+                try {
+                    classCount = Math.max(classCount, Integer.parseInt(keys.next()) + 1);
+                } catch (NumberFormatException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        String[] names = new String[classCount];
+        int[] priorities = new int[classCount];
+        for (int classIndex = 0; classIndex < classCount; classIndex++) {
+            JSONObject label = labelsPiority.optJSONObject(String.valueOf(classIndex));
+            if (label == null)
+                continue;
+            try {
+                names[classIndex] = label.getString("name");
+                priorities[classIndex] = label.getInt("piority");
+            } catch (JSONException e) {
+                names[classIndex] = null;
+                e.printStackTrace();
+            }
+        }
+        return new DetectionLabels(names, priorities, enabledNames);
+    }
+
+    public int getClassCount() {
+        return names.length;
+    }
+
+    public String getId(int classIndex) {
+        return ids[classIndex];
+    }
+
+    public String getName(int classIndex) {
+        return names[classIndex];
+    }
+
+    public int getPriority(int classIndex) {
+        return priorities[classIndex];
+    }
+
+    // the model reports background as -1, which counts as class 0 like before
+    public static int toClassIndex(float modelClass) {
+        return modelClass < 0 ? 0 : (int) modelClass;
+    }
+
+    /**
+     * Picks the detections of enabled classes and orders them by class priority, ties keep the
+     * model's order.
+     * @param classes model class of each detection
+     * @param order receives the picked detection indices, at least count long
+     * @return how many indices were written to order
+     */
+    public int select(float[] classes, int count, int[] order) {
+        int selected = 0;
+        for (int detection = 0; detection < count; detection++) {
+            int classIndex = toClassIndex(classes[detection]);
+            if (classIndex >= enabled.length || !enabled[classIndex])
+                continue;
+            int priority = priorities[classIndex];
+            int position = selected;
+            while (position > 0 && priorities[toClassIndex(classes[order[position - 1]])] > priority) {
+                order[position] = order[position - 1];
+                position--;
+            }
+            order[position] = detection;
+            selected++;
+        }
+        return selected;
+    }
+
+    /**
+     * Turns one run of the object model into the detections of enabled classes in priority order.
+     * @param locations box of each detection as top, left, bottom, right
+     * @param order scratch for {@link #select}, at least count long
+     */
+    public List<ObjectDetector.DetectedObject> toDetectedObjects(float[][] locations, float[] classes, float[] scores, int count, int[] order) {
+        int selected = select(classes, count, order);
+        List<ObjectDetector.DetectedObject> detectedObjects = new ArrayList<>(selected);
+        for (int rank = 0; rank < selected; ++rank) {
+            int detection = order[rank];
+            int classIndex = toClassIndex(classes[detection]);
+            float[] box = locations[detection];
+            detectedObjects.add(new ObjectDetector.DetectedObject(ids[classIndex], names[classIndex], scores[detection], box[1], box[0], box[3], box[2]));
+        }
+        return detectedObjects;
+    }
+}
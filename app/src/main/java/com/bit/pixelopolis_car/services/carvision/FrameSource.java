@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import org.opencv.core.Mat;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Where CarVision gets its frames: the live camera, or a recording replayed for offline runs.
+ * Only the vision thread calls it.
+ */
+public interface FrameSource {
+
+    /**
+     * Waits until the next frame is due and makes it current.
+     * @return false once a finite source has no frames left
+     */
+    boolean nextFrame() throws InterruptedException;
+
+    // current upright RGB frame, as PixelCamera.getCameraFrame
+    Mat getFrame();
+
+    // System.nanoTime() when the current frame was captured, see PixelCamera.getFrameTimestampNanos
+    long getFrameTimestampNanos();
+
+    // see PixelCamera.writeLaneInput
+    boolean writeLaneInput(FloatBuffer target, int width, int height);
+
+    void close();
+}
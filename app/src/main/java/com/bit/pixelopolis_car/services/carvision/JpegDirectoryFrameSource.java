@@ -0,0 +1,111 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+
+/**
+ * Replays a directory of upright camera frames saved as JPEG, once, in file name order. Name the
+ * files so they sort, e.g. frame_000123.jpg. Frames go through the same RGB path as the
+ * JavaCameraView backend.
+ */
+public class JpegDirectoryFrameSource implements FrameSource {
+    private static final Logger LOG = LogService.getInstance().getLogger("JpegDirectoryFrameSource");
+
+    private final File[] files;
+    private final ReplayClock clock;
+    private final Mat frame = new Mat();
+    private int frameIndex = 0;
+    private long frameTimestampNanos = 0;
+
+    // frameRate is the replay speed, 0 for as fast as vision runs
+    public JpegDirectoryFrameSource(File directory, int frameRate) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> {
+            String lowerName = name.toLowerCase();
+            return lowerName.endsWith(".jpg") || lowerName.endsWith(".jpeg");
+        });
+        if (files == null || files.length == 0)
+            throw new IOException("no JPEG frames in " + directory);
+        Arrays.sort(files);
+        this.files = files;
+        this.clock = new ReplayClock(frameRate);
+    }
+
+    public int getFrameCount() {
+        return this.files.length;
+    }
+
+    // file of the current frame
+    public File getFrameFile() {
+        return this.frameIndex > 0 ? this.files[this.frameIndex - 1] : null;
+    }
+
+    @Override
+    public boolean nextFrame() throws InterruptedException {
+        while (this.frameIndex < this.files.length) {
+            File file = this.files[this.frameIndex++];
+            // decode before waiting, so the pace covers the decode as well
+            Mat bgr = Imgcodecs.imread(file.getPath(), Imgcodecs.IMREAD_COLOR);
+            try {
+                if (bgr.empty()) {
+                    LOG.w("Skipping unreadable frame %s", file);
+                    continue;
+                }
+                this.clock.awaitFrame();
+                this.frameTimestampNanos = System.nanoTime();
+                Imgproc.cvtColor(bgr, this.frame, Imgproc.COLOR_BGR2RGB);
+                return true;
+            } finally {
+                bgr.release();
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Mat getFrame() {
+        return this.frame;
+    }
+
+    // when the frame was made current, replays have no capture time
+    @Override
+    public long getFrameTimestampNanos() {
+        return this.frameTimestampNanos;
+    }
+
+    // only RGB frames
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        return false;
+    }
+
+    @Override
+    public void close() {
+        this.frame.release();
+    }
+}
@@ -21,15 +21,14 @@ import android.content.res.AssetManager;
 import android.os.SystemClock;
 import android.util.Log;
 import com.bit.pixelopolis_car.services.config.Config;
-import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.imgproc.Imgproc;
 import org.tensorflow.lite.Interpreter;
 import org.tensorflow.lite.gpu.GpuDelegate;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 
@@ -37,18 +36,17 @@ public class LaneDetector {
     private static final String TAG = "LaneDetector";
     private static final int DIM_BATCH_SIZE = 1;
     private static final int DIM_PIXEL_SIZE = 3;
-    private static final int  DIM_HEIGHT = 40;
-    private static final int DIM_WIDTH = 120;
+    static final int  DIM_HEIGHT = 40;
+    static final int DIM_WIDTH = 120;
 
     protected Interpreter tflite;
     private Interpreter.Options tfliteOptions = new Interpreter.Options();
     private GpuDelegate gpuDelegate = null;
-    //protected Mat frame = new Mat(DIM_HEIGHT,DIM_WIDTH, CvType.CV_32FC3);
-    float[] frameData = new float[DIM_HEIGHT * DIM_WIDTH * DIM_PIXEL_SIZE];
     protected ByteBuffer imgData = null;
+    private FloatBuffer imgFloats = null;
+    private final LanePreprocessor preprocessor = new LanePreprocessor(DIM_WIDTH, DIM_HEIGHT);
     private float[][] steeringAngle = null;
     protected String modelFile = "lane_detector.tflite";
-    private Mat yuvCropped = new Mat();
     private float[][] net_out = new float[1][1];
 
     //allocate buffer and create interface
@@ -58,6 +56,7 @@ public class LaneDetector {
         tflite = new Interpreter(loadModelFile(assetManager),tfliteOptions);
         imgData = ByteBuffer.allocateDirect(DIM_BATCH_SIZE * DIM_HEIGHT * DIM_WIDTH * DIM_PIXEL_SIZE * 4);
         imgData.order(ByteOrder.nativeOrder());
+        imgFloats = imgData.asFloatBuffer();
         steeringAngle = new float[1][1];
         Log.d(TAG, " Tensorflow Lite LaneDetector.");
     }
@@ -77,28 +76,6 @@ public class LaneDetector {
         return (int) ((value - rangeInMin) / (rangeInMax - rangeInMin) * (rangeOutMax - rangeOutMin) + rangeOutMin);
     }
 
-    private void preprocessMat(Mat mat){
-        /*Input mat cropped RGB 8UC3 H400xW600*/
-        // resize to network input size
-        Imgproc.resize(mat, mat, new org.opencv.core.Size(DIM_WIDTH,DIM_HEIGHT));
-        // convert RGB to YUV
-        Imgproc.cvtColor(mat,yuvCropped,Imgproc.COLOR_RGB2YUV);
-        // convert 8UC1 to 32FC3
-        yuvCropped.convertTo(yuvCropped,CvType.CV_32FC3);
-    }
-
-    private void convertMattoTfLiteInput() {
-        imgData.rewind();
-        yuvCropped.get(0,0,frameData);
-        for (int i = 0; i < DIM_HEIGHT; ++i) {
-            for (int j = 0; j < DIM_WIDTH; ++j) {
-                int idx = (i * DIM_WIDTH + j )* DIM_PIXEL_SIZE;
-                imgData.putFloat(frameData[idx ]);
-                imgData.putFloat(frameData[idx + 1]);
-                imgData.putFloat(frameData[idx + 2]);
-            }
-        }
-    }
 
     //predict
     private float[][] runInference() {
@@ -107,11 +84,26 @@ public class LaneDetector {
         return net_out;
     }
 
-    //classify mat
-    public float classifyMat(Mat mat) {
+    //classify the road part of an upright RGB camera frame
+    public float classifyFrame(Mat frame) {
+        preprocessFrame(frame);
+        return classifyInput();
+    }
+
+    // road crop, resize, YUV and float conversion straight into the model input
+    void preprocessFrame(Mat frame) {
+        preprocessor.preprocess(frame, imgFloats);
+    }
+
+    // DIM_WIDTH x DIM_HEIGHT interleaved YUV floats, for cameras that write the input themselves
+    FloatBuffer getInputBuffer() {
+        return imgFloats;
+    }
+
+    //classify what is in the input buffer
+    public float classifyInput() {
         long startTime = SystemClock.uptimeMillis();
-        preprocessMat(mat);
-        convertMattoTfLiteInput();
+        imgData.rewind();
         net_out = runInference();
         //Log.e(TAG,"net_out: "+net_out[0][0]);
         long endTime = SystemClock.uptimeMillis();
@@ -122,6 +114,7 @@ public class LaneDetector {
 
     //close interface
     public void close() {
+        preprocessor.release();
         if(tflite!=null)
         {
             tflite.close();
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Turns the road part of an upright RGB camera frame into the lane model's float YUV input.
+ * The road is assumed to be the lower quarter of the frame. The crop is a view on the frame that
+ * is only rebuilt when the frame is reallocated or changes size, and the resize, colour and float
+ * conversions run into Mats kept between calls, so the steering path does not allocate.
+ * Not thread safe, use it on the vision thread.
+ */
+public class LanePreprocessor {
+    private static final int ROAD_SHARE_DIVISOR = 4;
+
+    private final Size inputSize;
+    private final Mat resized = new Mat();
+    private final Mat yuv = new Mat();
+    private final Mat yuvFloat = new Mat();
+    private final float[] values;
+    private Mat roadView = null;
+    private Rect roi = null;
+    private long frameAddress = 0;
+    private int frameRows = -1;
+    private int frameCols = -1;
+
+    public LanePreprocessor(int inputWidth, int inputHeight) {
+        this.inputSize = new Size(inputWidth, inputHeight);
+        this.values = new float[inputWidth * inputHeight * 3];
+    }
+
+    /**
+     * Writes the model input to target from its start, as interleaved YUV floats.
+     */
+    public void preprocess(Mat frame, FloatBuffer target) {
+        Imgproc.resize(roadView(frame), this.resized, this.inputSize);
+        Imgproc.cvtColor(this.resized, this.yuv, Imgproc.COLOR_RGB2YUV);
+        this.yuv.convertTo(this.yuvFloat, CvType.CV_32FC3);
+        this.yuvFloat.get(0, 0, this.values);
+        target.clear();
+        target.put(this.values);
+    }
+
+    public Rect getRoi() {
+        return this.roi;
+    }
+
+    public void release() {
+        if (this.roadView != null) {
+            this.roadView.release();
+            this.roadView = null;
+        }
+        this.resized.release();
+        this.yuv.release();
+        this.yuvFloat.release();
+    }
+
+    private Mat roadView(Mat frame) {
+        if (this.roadView == null || frame.dataAddr() != this.frameAddress
+                || frame.rows() != this.frameRows || frame.cols() != this.frameCols) {
+            if (this.roadView != null) {
+                this.roadView.release();
+            }
+            this.frameAddress = frame.dataAddr();
+            this.frameRows = frame.rows();
+            this.frameCols = frame.cols();
+            this.roi = new Rect(0, (ROAD_SHARE_DIVISOR - 1) * this.frameRows / ROAD_SHARE_DIVISOR, this.frameCols, this.frameRows / ROAD_SHARE_DIVISOR);
+            this.roadView = frame.submat(this.roi);
+        }
+        return this.roadView;
+    }
+}
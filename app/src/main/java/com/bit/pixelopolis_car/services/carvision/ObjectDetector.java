@@ -15,8 +15,6 @@ limitations under the License.
 
 package com.bit.pixelopolis_car.services.carvision;
 
-import android.graphics.RectF;
-
 import org.opencv.core.Mat;
 
 import java.util.List;
@@ -51,15 +49,21 @@ public interface ObjectDetector {
          */
         private final Float confidence;
 
-        /** Optional location within the source image for the location of the recognized object. */
-        private RectF location;
+        /** Location within the source image of the recognized object, kept as plain floats so detections work off Android. */
+        private final float left;
+        private final float top;
+        private final float right;
+        private final float bottom;
 
         public DetectedObject(
-                final String id, final String title, final Float confidence, final RectF location) {
+                final String id, final String title, final Float confidence, final float left, final float top, final float right, final float bottom) {
             this.id = id;
             this.title = title;
             this.confidence = confidence;
-            this.location = location;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
         }
 
         public String getId() {
@@ -74,12 +78,28 @@ public interface ObjectDetector {
             return confidence;
         }
 
-        public RectF getLocation() {
-            return new RectF(location);
+        public float getLeft() {
+            return left;
+        }
+
+        public float getTop() {
+            return top;
+        }
+
+        public float getRight() {
+            return right;
         }
 
-        public void setLocation(RectF location) {
-            this.location = location;
+        public float getBottom() {
+            return bottom;
+        }
+
+        public float getWidth() {
+            return right - left;
+        }
+
+        public float getHeight() {
+            return bottom - top;
         }
 
         @Override
@@ -97,9 +117,7 @@ public interface ObjectDetector {
                 resultString += String.format("(%.1f%%) ", confidence * 100.0f);
             }
 
-            if (location != null) {
-                resultString += location + " ";
-            }
+            resultString += String.format("[%.3f, %.3f, %.3f, %.3f] ", left, top, right, bottom);
 
             return resultString.trim();
         }
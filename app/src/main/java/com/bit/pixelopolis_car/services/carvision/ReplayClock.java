@@ -0,0 +1,47 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+/**
+ * Paces a replay at a fixed frame rate, or not at all for a max speed run. Every frame is handed
+ * out: when vision is slower than the recording the replay slows down instead of skipping, so
+ * results do not depend on timing.
+ */
+final class ReplayClock {
+    private final long frameIntervalNanos;
+    private long nextFrameNanos = Long.MIN_VALUE;
+
+    // frameRate 0 or less means max speed
+    ReplayClock(int frameRate) {
+        this.frameIntervalNanos = frameRate > 0 ? 1000000000L / frameRate : 0;
+    }
+
+    void awaitFrame() throws InterruptedException {
+        if (this.frameIntervalNanos == 0)
+            return;
+        long now = System.nanoTime();
+        if (this.nextFrameNanos == Long.MIN_VALUE || now - this.nextFrameNanos > this.frameIntervalNanos) {
+            // first frame, or running late, do not try to catch up
+            this.nextFrameNanos = now;
+        }
+        long sleepNanos = this.nextFrameNanos - now;
+        if (sleepNanos > 0)
+            Thread.sleep(sleepNanos / 1000000, (int) (sleepNanos % 1000000));
+        this.nextFrameNanos += this.frameIntervalNanos;
+    }
+}
@@ -17,7 +17,6 @@ package com.bit.pixelopolis_car.services.carvision;
 
 import android.content.res.AssetFileDescriptor;
 import android.content.res.AssetManager;
-import android.graphics.RectF;
 import android.os.SystemClock;
 import android.os.Trace;
 
@@ -32,14 +31,11 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 
-import org.json.JSONException;
 import org.json.JSONObject;
 import org.opencv.core.Mat;
 import org.opencv.core.Size;
@@ -69,6 +65,9 @@ public class TFLiteObjectDetectionAPIModel implements ObjectDetector {
     // Pre-allocated buffers.
     private Vector<String> labels = new Vector<String>();
     private JSONObject labelsPiority;
+    private DetectionLabels detectionLabels;
+    // detection indices picked by detectionLabels, in priority order
+    private final int[] detectionOrder = new int[NUM_DETECTIONS];
 
     List<NodeInfo> allNodeInfos;
     List<String> enableNodes = new ArrayList<String>();
@@ -213,6 +212,7 @@ public class TFLiteObjectDetectionAPIModel implements ObjectDetector {
 
         }
         d.enableNodes.add("Car");
+        d.detectionLabels = DetectionLabels.parse(d.labelsPiority, d.enableNodes);
 
         return d;
     }
@@ -274,55 +274,11 @@ public class TFLiteObjectDetectionAPIModel implements ObjectDetector {
 
         // Show the best detections.
         // after scaling them back to the input size.
-        final ArrayList<DetectedObject> detectedObjects = new ArrayList<>(NUM_DETECTIONS);
-        for (int i = 0; i < NUM_DETECTIONS; ++i) {
-            final RectF detection =
-                    new RectF(
-                            outputLocations[0][i][1],
-                            outputLocations[0][i][0],
-                            outputLocations[0][i][3],
-                            outputLocations[0][i][2]);
-            // SSD Mobilenet V1 Model assumes class 0 is background class
-            // in label file and class labels start from 1 to number_of_classes+1,
-            // while outputClasses correspond to class index from 0 to number_of_classes
-            int labelOffset = 0;
-            outputClasses[0][i] = outputClasses[0][i] < 0 ? 0 : outputClasses[0][i];
-            try {
-                String className = labelsPiority.getJSONObject(String.valueOf((int)outputClasses[0][i])).getString("name");
-                if (enableNodes.contains(className)){
-                    detectedObjects.add(
-                            new DetectedObject(
-                                    String.valueOf((int) outputClasses[0][i]),
-                                    className,
-                                    outputScores[0][i],
-                                    detection));
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
-            }
-        }
+        // labels are resolved once in create(), this picks and orders the detections by priority
+        final List<DetectedObject> detectedObjects =
+                detectionLabels.toDetectedObjects(outputLocations[0], outputClasses[0], outputScores[0], NUM_DETECTIONS, detectionOrder);
         Trace.endSection(); // "recognizeImage"
 
-
-
-        // sort array by pre-defined object piority.
-        Collections.sort(detectedObjects, new Comparator<DetectedObject>() {
-            @Override
-            public int compare(DetectedObject one, DetectedObject two) {
-                try {
-
-                    if (labelsPiority.getJSONObject(one.getId()).getInt("piority") < labelsPiority.getJSONObject(two.getId()).getInt("piority")){
-                        return -1;
-                    }else{
-                        return 1;
-                    }
-
-                } catch (JSONException e) {
-                    e.printStackTrace();
-                }
-                return 0;
-            }});
-
         return detectedObjects;
     }
 
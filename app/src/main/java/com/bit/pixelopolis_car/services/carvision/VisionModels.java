@@ -0,0 +1,80 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import android.content.res.AssetManager;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.IOException;
+
+/**
+ * The lane and object models one {@link CarVision} runs. Either is null when it failed to load, the
+ * vision thread then steers straight or sees nothing, as before. Each factory runs one inference on
+ * a blank input, so the interpreter allocates its tensors before the first camera frame does.
+ * Needs OpenCV loaded.
+ */
+public class VisionModels {
+    private static final String OBJECT_MODEL_FILE = "object_detector.tflite";
+    private static final String OBJECT_LABELS_FILE = "file:///android_asset/labels_piority.json";
+    private static final int OBJECT_INPUT_HEIGHT = 300;
+    private static final int OBJECT_INPUT_WIDTH = 225;
+
+    private final LaneDetector laneDetector;
+    private final ObjectDetector objectDetector;
+
+    public VisionModels(LaneDetector laneDetector, ObjectDetector objectDetector) {
+        this.laneDetector = laneDetector;
+        this.objectDetector = objectDetector;
+    }
+
+    public static LaneDetector createLaneDetector(AssetManager assetManager) throws IOException {
+        LaneDetector laneDetector = new LaneDetector(assetManager);
+        try {
+            // the input buffer is still zeros
+            laneDetector.classifyInput();
+        } catch (RuntimeException e) {
+            laneDetector.close();
+            throw e;
+        }
+        return laneDetector;
+    }
+
+    public static ObjectDetector createObjectDetector(AssetManager assetManager) throws IOException {
+        ObjectDetector objectDetector = TFLiteObjectDetectionAPIModel.create(assetManager, OBJECT_MODEL_FILE,
+                OBJECT_LABELS_FILE, OBJECT_INPUT_HEIGHT, OBJECT_INPUT_WIDTH, true);
+        Mat blank = Mat.zeros(OBJECT_INPUT_HEIGHT, OBJECT_INPUT_WIDTH, CvType.CV_8UC3);
+        try {
+            objectDetector.recognizeImage(blank);
+        } catch (RuntimeException e) {
+            objectDetector.close();
+            throw e;
+        } finally {
+            blank.release();
+        }
+        return objectDetector;
+    }
+
+    public LaneDetector getLaneDetector() {
+        return laneDetector;
+    }
+
+    public ObjectDetector getObjectDetector() {
+        return objectDetector;
+    }
+}
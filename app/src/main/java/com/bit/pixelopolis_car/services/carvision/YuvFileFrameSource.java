@@ -0,0 +1,99 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.carvision;
+
+import com.bit.pixelopolis_car.services.camera.YuvFrameFile;
+import com.bit.pixelopolis_car.services.camera.YuvFrameProcessor;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+
+/**
+ * Replays a memory mapped raw YUV recording once, frame by frame. Frames take the same
+ * YuvFrameProcessor path as the Camera2 backend, so steering and detections match a live run on
+ * the same frames.
+ */
+public class YuvFileFrameSource implements FrameSource {
+    private final YuvFrameFile frames;
+    private final YuvFrameProcessor processor;
+    private final ReplayClock clock;
+    private final Mat frame;
+    private int frameIndex = 0;
+    private long frameTimestampNanos = 0;
+
+    /**
+     * @param format YuvFrameProcessor.FORMAT_NV21 or FORMAT_I420
+     * @param frameRate replay speed, 0 for as fast as vision runs
+     */
+    public YuvFileFrameSource(File file, int width, int height, int format, int frameRate) throws IOException {
+        this.frames = new YuvFrameFile(file, width, height);
+        this.processor = new YuvFrameProcessor(width, height, format);
+        this.clock = new ReplayClock(frameRate);
+        this.frame = new Mat(width, height, CvType.CV_8UC3);
+    }
+
+    public int getFrameCount() {
+        return this.frames.getFrameCount();
+    }
+
+    // index of the current frame in the file
+    public int getFrameIndex() {
+        return this.frameIndex - 1;
+    }
+
+    @Override
+    public boolean nextFrame() throws InterruptedException {
+        if (this.frameIndex >= this.frames.getFrameCount())
+            return false;
+        this.clock.awaitFrame();
+        this.frameTimestampNanos = System.nanoTime();
+        this.frames.read(this.frameIndex++, this.processor.getBuffer());
+        this.processor.update();
+        this.processor.toUpright(this.frame);
+        return true;
+    }
+
+    @Override
+    public Mat getFrame() {
+        return this.frame;
+    }
+
+    // when the frame was made current, replays have no capture time
+    @Override
+    public long getFrameTimestampNanos() {
+        return this.frameTimestampNanos;
+    }
+
+    @Override
+    public boolean writeLaneInput(FloatBuffer target, int width, int height) {
+        if (this.frameIndex == 0)
+            return false;
+        this.processor.writeLaneInput(target, width, height);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        this.frame.release();
+        this.processor.release();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.config;
+
+public class CameraInfo {
+    public static final String BACKEND_JAVA_CAMERA_VIEW = "java_camera_view";
+    public static final String BACKEND_CAMERA2 = "camera2";
+    public static final String BACKEND_REPLAY = "replay";
+    public static final String FORMAT_NV21 = "nv21";
+    public static final String FORMAT_I420 = "i420";
+
+    String backend = BACKEND_JAVA_CAMERA_VIEW;
+    int maxFrameWidth = 800;
+    int maxFrameHeight = 600;
+    // raw landscape YUV 4:2:0 frames back to back, as recorded from the camera
+    String replayFile = "";
+    String replayFormat = FORMAT_NV21;
+    int replayWidth = 800;
+    int replayHeight = 600;
+    int replayFrameRate = 30;
+
+    public String getBackend() {
+        return backend;
+    }
+
+    public void setBackend(String backend) {
+        this.backend = backend;
+    }
+
+    public int getMaxFrameWidth() {
+        return maxFrameWidth;
+    }
+
+    public void setMaxFrameWidth(int maxFrameWidth) {
+        this.maxFrameWidth = maxFrameWidth;
+    }
+
+    public int getMaxFrameHeight() {
+        return maxFrameHeight;
+    }
+
+    public void setMaxFrameHeight(int maxFrameHeight) {
+        this.maxFrameHeight = maxFrameHeight;
+    }
+
+    public String getReplayFile() {
+        return replayFile;
+    }
+
+    public void setReplayFile(String replayFile) {
+        this.replayFile = replayFile;
+    }
+
+    public String getReplayFormat() {
+        return replayFormat;
+    }
+
+    public void setReplayFormat(String replayFormat) {
+        this.replayFormat = replayFormat;
+    }
+
+    public int getReplayWidth() {
+        return replayWidth;
+    }
+
+    public void setReplayWidth(int replayWidth) {
+        this.replayWidth = replayWidth;
+    }
+
+    public int getReplayHeight() {
+        return replayHeight;
+    }
+
+    public void setReplayHeight(int replayHeight) {
+        this.replayHeight = replayHeight;
+    }
+
+    public int getReplayFrameRate() {
+        return replayFrameRate;
+    }
+
+    public void setReplayFrameRate(int replayFrameRate) {
+        this.replayFrameRate = replayFrameRate;
+    }
+}
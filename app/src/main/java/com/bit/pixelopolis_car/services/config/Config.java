@@ -16,8 +16,6 @@
 
 package com.bit.pixelopolis_car.services.config;
 
-import android.util.Pair;
-
 import com.bit.pixelopolis_car.data.NodeInfo;
 
 import java.util.ArrayList;
@@ -44,12 +42,17 @@ public class Config {
     int maxFrameHistory;
     int seenCountTrigger;
     boolean isInDebugMode;
-    private ArrayList<Pair<Integer, Integer>> attractionNodeAndPathIds;
+    private ArrayList<AttractionPlace> attractionNodeAndPathIds;
     String latestAppVersion;
     String appDownloadPath;
     int defaultWheelSpeed;
     int slowWheelSpeed;
     FixHittingWallInfo fixHittingWallInfo;
+    SerialLinkInfo serialLinkInfo;
+    StreamingInfo streamingInfo;
+    CameraInfo cameraInfo;
+    RecorderInfo recorderInfo;
+    LoggingInfo loggingInfo;
     int batteryLowThreshold;
     int batteryVeryLowThreshold;
 
@@ -69,11 +72,11 @@ public class Config {
         this.appDownloadPath = appDownloadPath;
     }
 
-    public ArrayList<Pair<Integer, Integer>> getAttractionNodeAndPathIds() {
+    public ArrayList<AttractionPlace> getAttractionNodeAndPathIds() {
         return attractionNodeAndPathIds;
     }
 
-    public void setAttractionNodeAndPathIds(ArrayList<Pair<Integer, Integer>> attractionNodeAndPathIds) {
+    public void setAttractionNodeAndPathIds(ArrayList<AttractionPlace> attractionNodeAndPathIds) {
         this.attractionNodeAndPathIds = attractionNodeAndPathIds;
     }
 
@@ -189,6 +192,46 @@ public class Config {
         this.fixHittingWallInfo = fixHittingWallInfo;
     }
 
+    public SerialLinkInfo getSerialLinkInfo() {
+        return serialLinkInfo;
+    }
+
+    public void setSerialLinkInfo(SerialLinkInfo serialLinkInfo) {
+        this.serialLinkInfo = serialLinkInfo;
+    }
+
+    public StreamingInfo getStreamingInfo() {
+        return streamingInfo;
+    }
+
+    public void setStreamingInfo(StreamingInfo streamingInfo) {
+        this.streamingInfo = streamingInfo;
+    }
+
+    public CameraInfo getCameraInfo() {
+        return cameraInfo;
+    }
+
+    public void setCameraInfo(CameraInfo cameraInfo) {
+        this.cameraInfo = cameraInfo;
+    }
+
+    public RecorderInfo getRecorderInfo() {
+        return recorderInfo;
+    }
+
+    public void setRecorderInfo(RecorderInfo recorderInfo) {
+        this.recorderInfo = recorderInfo;
+    }
+
+    public LoggingInfo getLoggingInfo() {
+        return loggingInfo;
+    }
+
+    public void setLoggingInfo(LoggingInfo loggingInfo) {
+        this.loggingInfo = loggingInfo;
+    }
+
     public int getBatteryLowThreshold() {
         return batteryLowThreshold;
     }
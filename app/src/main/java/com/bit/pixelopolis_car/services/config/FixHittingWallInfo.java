@@ -17,9 +17,16 @@
 package com.bit.pixelopolis_car.services.config;
 
 public class FixHittingWallInfo {
+    // control loop period that frameCounterThreshold was tuned for
+    public static final int FRAME_COUNTER_INTERVAL = 10;
+
     int sensorMinThreshold;
     int sensorMaxThreshold;
     int frameCounterThreshold;
+    int debounceDuration;
+    int medianWindowSize = 5;
+    double smoothingFactor = 0.5;
+    double sampleRateSmoothingFactor = 0.1;
     int goBackDuration;
     int turnAngle;
     boolean isEnable;
@@ -48,6 +55,38 @@ public class FixHittingWallInfo {
         this.frameCounterThreshold = frameCounterThreshold;
     }
 
+    public int getDebounceDuration() {
+        return debounceDuration;
+    }
+
+    public void setDebounceDuration(int debounceDuration) {
+        this.debounceDuration = debounceDuration;
+    }
+
+    public int getMedianWindowSize() {
+        return medianWindowSize;
+    }
+
+    public void setMedianWindowSize(int medianWindowSize) {
+        this.medianWindowSize = medianWindowSize;
+    }
+
+    public double getSmoothingFactor() {
+        return smoothingFactor;
+    }
+
+    public void setSmoothingFactor(double smoothingFactor) {
+        this.smoothingFactor = smoothingFactor;
+    }
+
+    public double getSampleRateSmoothingFactor() {
+        return sampleRateSmoothingFactor;
+    }
+
+    public void setSampleRateSmoothingFactor(double sampleRateSmoothingFactor) {
+        this.sampleRateSmoothingFactor = sampleRateSmoothingFactor;
+    }
+
     public int getGoBackDuration() {
         return goBackDuration;
     }
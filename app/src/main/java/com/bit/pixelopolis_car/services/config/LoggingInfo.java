@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.config;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class LoggingInfo {
+    // level of the tags not in tagLevels: verbose, debug, info, warn, error or off
+    String defaultLevel = "debug";
+    // per tag levels, e.g. API_CALL to warn in production
+    Map<String, String> tagLevels = new HashMap<>();
+    // lines per second one call site may log on average, 0 for no limit
+    double ratePerSecond = 5;
+    // lines one call site may log at once before the rate applies
+    int burst = 20;
+    // also print to logcat, the in-app buffer at /logs on the stream port is always written
+    boolean isLogcat = true;
+
+    public String getDefaultLevel() {
+        return defaultLevel;
+    }
+
+    public void setDefaultLevel(String defaultLevel) {
+        this.defaultLevel = defaultLevel;
+    }
+
+    public Map<String, String> getTagLevels() {
+        return tagLevels;
+    }
+
+    public void setTagLevels(Map<String, String> tagLevels) {
+        this.tagLevels = tagLevels;
+    }
+
+    public double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    public void setRatePerSecond(double ratePerSecond) {
+        this.ratePerSecond = ratePerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public void setBurst(int burst) {
+        this.burst = burst;
+    }
+
+    public boolean isLogcat() {
+        return isLogcat;
+    }
+
+    public void setLogcat(boolean logcat) {
+        isLogcat = logcat;
+    }
+}
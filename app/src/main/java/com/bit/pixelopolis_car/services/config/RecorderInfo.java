@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.config;
+
+public class RecorderInfo {
+    // keep the drive recorder running, it can be downloaded from /recorder on the stream port
+    boolean isEnable = true;
+    // ring file size, the oldest records are overwritten once it is full
+    int sizeMb = 16;
+    // least time between two recorded camera frames, in ms
+    int frameIntervalMs = 500;
+    // recorded frames are this many times smaller than the camera's
+    int frameDownscale = 5;
+    int frameQuality = 50;
+
+    public boolean isEnable() {
+        return isEnable;
+    }
+
+    public void setEnable(boolean enable) {
+        isEnable = enable;
+    }
+
+    public int getSizeMb() {
+        return sizeMb;
+    }
+
+    public void setSizeMb(int sizeMb) {
+        this.sizeMb = sizeMb;
+    }
+
+    public int getFrameIntervalMs() {
+        return frameIntervalMs;
+    }
+
+    public void setFrameIntervalMs(int frameIntervalMs) {
+        this.frameIntervalMs = frameIntervalMs;
+    }
+
+    public int getFrameDownscale() {
+        return frameDownscale;
+    }
+
+    public void setFrameDownscale(int frameDownscale) {
+        this.frameDownscale = frameDownscale;
+    }
+
+    public int getFrameQuality() {
+        return frameQuality;
+    }
+
+    public void setFrameQuality(int frameQuality) {
+        this.frameQuality = frameQuality;
+    }
+}
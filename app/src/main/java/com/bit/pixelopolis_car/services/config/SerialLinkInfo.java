@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.config;
+
+public class SerialLinkInfo {
+    // the controller board has to echo "p<seq>" lines back, older firmware does not
+    boolean isPingEnable = false;
+    int pingInterval = 500;
+    int pingTimeout = 1000;
+    int degradedLatency = 150;
+    double degradedLossRate = 0.3;
+    double degradedSpeedScale = 0.6;
+
+    public boolean isPingEnable() {
+        return isPingEnable;
+    }
+
+    public void setPingEnable(boolean pingEnable) {
+        isPingEnable = pingEnable;
+    }
+
+    public int getPingInterval() {
+        return pingInterval;
+    }
+
+    public void setPingInterval(int pingInterval) {
+        this.pingInterval = pingInterval;
+    }
+
+    public int getPingTimeout() {
+        return pingTimeout;
+    }
+
+    public void setPingTimeout(int pingTimeout) {
+        this.pingTimeout = pingTimeout;
+    }
+
+    public int getDegradedLatency() {
+        return degradedLatency;
+    }
+
+    public void setDegradedLatency(int degradedLatency) {
+        this.degradedLatency = degradedLatency;
+    }
+
+    public double getDegradedLossRate() {
+        return degradedLossRate;
+    }
+
+    public void setDegradedLossRate(double degradedLossRate) {
+        this.degradedLossRate = degradedLossRate;
+    }
+
+    public double getDegradedSpeedScale() {
+        return degradedSpeedScale;
+    }
+
+    public void setDegradedSpeedScale(double degradedSpeedScale) {
+        this.degradedSpeedScale = degradedSpeedScale;
+    }
+}
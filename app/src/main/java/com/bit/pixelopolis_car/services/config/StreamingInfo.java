@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.config;
+
+public class StreamingInfo {
+    boolean isAdaptive = true;
+    int jpegQuality = 40;
+    int minJpegQuality = 20;
+    int maxJpegQuality = 60;
+    int maxDownscale = 4;
+    int maxFrameRate = 15;
+    int minFrameRate = 2;
+    // encode plus send time a viewer may lag behind, in ms
+    int latencyBudget = 200;
+    // vision loop time above which streaming backs off, in ms
+    int visionBusyThreshold = 80;
+    // serve the changed tiles stream at /delta and its viewer at /delta.html
+    boolean isDeltaEnable = true;
+    // mean difference of a 16x16 tile, 0 to 255, above which it is sent
+    int deltaTileThreshold = 6;
+    // sent frames between full frames on the delta stream
+    int keyframeInterval = 100;
+
+    public boolean isAdaptive() {
+        return isAdaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        isAdaptive = adaptive;
+    }
+
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    public void setJpegQuality(int jpegQuality) {
+        this.jpegQuality = jpegQuality;
+    }
+
+    public int getMinJpegQuality() {
+        return minJpegQuality;
+    }
+
+    public void setMinJpegQuality(int minJpegQuality) {
+        this.minJpegQuality = minJpegQuality;
+    }
+
+    public int getMaxJpegQuality() {
+        return maxJpegQuality;
+    }
+
+    public void setMaxJpegQuality(int maxJpegQuality) {
+        this.maxJpegQuality = maxJpegQuality;
+    }
+
+    public int getMaxDownscale() {
+        return maxDownscale;
+    }
+
+    public void setMaxDownscale(int maxDownscale) {
+        this.maxDownscale = maxDownscale;
+    }
+
+    public int getMaxFrameRate() {
+        return maxFrameRate;
+    }
+
+    public void setMaxFrameRate(int maxFrameRate) {
+        this.maxFrameRate = maxFrameRate;
+    }
+
+    public int getMinFrameRate() {
+        return minFrameRate;
+    }
+
+    public void setMinFrameRate(int minFrameRate) {
+        this.minFrameRate = minFrameRate;
+    }
+
+    public int getLatencyBudget() {
+        return latencyBudget;
+    }
+
+    public void setLatencyBudget(int latencyBudget) {
+        this.latencyBudget = latencyBudget;
+    }
+
+    public int getVisionBusyThreshold() {
+        return visionBusyThreshold;
+    }
+
+    public void setVisionBusyThreshold(int visionBusyThreshold) {
+        this.visionBusyThreshold = visionBusyThreshold;
+    }
+
+    public boolean isDeltaEnable() {
+        return isDeltaEnable;
+    }
+
+    public void setDeltaEnable(boolean deltaEnable) {
+        isDeltaEnable = deltaEnable;
+    }
+
+    public int getDeltaTileThreshold() {
+        return deltaTileThreshold;
+    }
+
+    public void setDeltaTileThreshold(int deltaTileThreshold) {
+        this.deltaTileThreshold = deltaTileThreshold;
+    }
+
+    public int getKeyframeInterval() {
+        return keyframeInterval;
+    }
+
+    public void setKeyframeInterval(int keyframeInterval) {
+        this.keyframeInterval = keyframeInterval;
+    }
+}
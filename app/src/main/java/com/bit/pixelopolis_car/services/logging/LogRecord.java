@@ -0,0 +1,192 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.logging;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.IllegalFormatException;
+import java.util.Locale;
+
+/**
+ * One log call as it leaves the calling thread: the format and the arguments, not yet turned into text.
+ *
+ * Ring buffer layout, big endian:
+ *   u32 length of the rest, u64 wall clock millis, u8 level, u32 lines suppressed before this one,
+ *   text tag, text format, u8 argument count, per argument a u8 type and
+ *     ARG_NULL nothing, ARG_LONG i64, ARG_DOUBLE f64, ARG_BOOLEAN u8, ARG_STRING text,
+ *   u8 1 when a stack trace follows as text, else 0.
+ * A text is a u16 length and UTF-8, cut at MAX_TEXT_LENGTH characters.
+ */
+final class LogRecord {
+    static final byte ARG_NULL = 0;
+    static final byte ARG_LONG = 1;
+    static final byte ARG_DOUBLE = 2;
+    static final byte ARG_BOOLEAN = 3;
+    static final byte ARG_STRING = 4;
+
+    static final int MAX_ARGS = 8;
+    static final int MAX_TEXT_LENGTH = 2048;
+    // tag, format, stack trace and every argument as a text of at most 3 bytes per character
+    static final int MAX_SIZE = 19 + MAX_ARGS + (3 + MAX_ARGS) * (2 + 3 * MAX_TEXT_LENGTH);
+
+    private static final String LEVEL_LETTERS = "??VDIWEA";
+
+    final long wallMillis;
+    final int level;
+    final String tag;
+    final String format;
+    final long suppressedCount;
+    final Object[] args;
+    final Throwable throwable;
+
+    LogRecord(long wallMillis, int level, String tag, String format, long suppressedCount, Object[] args, Throwable throwable) {
+        this.wallMillis = wallMillis;
+        this.level = level;
+        this.tag = tag;
+        this.format = format;
+        this.suppressedCount = suppressedCount;
+        this.args = args;
+        this.throwable = throwable;
+    }
+
+    // turns the arguments into what the ring stores, so the ring and the sink print the same values
+    void freezeArgs() {
+        if (args == null)
+            return;
+        for (int i = 0; i < args.length; i++) {
+            Object arg = args[i];
+            if (arg instanceof Integer || arg instanceof Long || arg instanceof Short || arg instanceof Byte)
+                args[i] = ((Number) arg).longValue();
+            else if (arg instanceof Float || arg instanceof Double)
+                args[i] = ((Number) arg).doubleValue();
+            else if (arg != null && !(arg instanceof Boolean))
+                args[i] = truncate(String.valueOf(arg));
+        }
+    }
+
+    String getMessage() {
+        return formatMessage(format, args);
+    }
+
+    // call freezeArgs first
+    void writeTo(ByteBuffer out) {
+        int start = out.position();
+        out.putInt(0);
+        out.putLong(wallMillis);
+        out.put((byte) level);
+        out.putInt((int) Math.min(suppressedCount, Integer.MAX_VALUE));
+        putText(out, tag);
+        putText(out, format);
+        int argCount = args != null ? Math.min(args.length, MAX_ARGS) : 0;
+        out.put((byte) argCount);
+        for (int i = 0; i < argCount; i++) {
+            Object arg = args[i];
+            if (arg == null) {
+                out.put(ARG_NULL);
+            } else if (arg instanceof Long) {
+                out.put(ARG_LONG).putLong((Long) arg);
+            } else if (arg instanceof Double) {
+                out.put(ARG_DOUBLE).putDouble((Double) arg);
+            } else if (arg instanceof Boolean) {
+                out.put(ARG_BOOLEAN).put((byte) ((Boolean) arg ? 1 : 0));
+            } else {
+                out.put(ARG_STRING);
+                putText(out, (String) arg);
+            }
+        }
+        if (throwable != null) {
+            out.put((byte) 1);
+            putText(out, stackTraceOf(throwable));
+        } else {
+            out.put((byte) 0);
+        }
+        out.putInt(start, out.position() - start - 4);
+    }
+
+    // reads one record written by writeTo and appends it as a logcat style line
+    static void appendText(ByteBuffer in, StringBuilder out, DateFormat dateFormat) {
+        int end = in.getInt();
+        end += in.position();
+        long wallMillis = in.getLong();
+        int level = in.get();
+        int suppressedCount = in.getInt();
+        String tag = getText(in);
+        String format = getText(in);
+        Object[] args = new Object[in.get()];
+        for (int i = 0; i < args.length; i++) {
+            byte type = in.get();
+            if (type == ARG_LONG)
+                args[i] = in.getLong();
+            else if (type == ARG_DOUBLE)
+                args[i] = in.getDouble();
+            else if (type == ARG_BOOLEAN)
+                args[i] = in.get() != 0;
+            else if (type == ARG_STRING)
+                args[i] = getText(in);
+        }
+        String stackTrace = in.get() != 0 ? getText(in) : null;
+        in.position(end);
+
+        out.append(dateFormat.format(new Date(wallMillis))).append(' ')
+                .append(level >= 0 && level < LEVEL_LETTERS.length() ? LEVEL_LETTERS.charAt(level) : '?')
+                .append('/').append(tag).append(": ").append(formatMessage(format, args));
+        if (suppressedCount > 0)
+            out.append(" (").append(suppressedCount).append(" suppressed)");
+        out.append('\n');
+        if (stackTrace != null)
+            out.append(stackTrace).append('\n');
+    }
+
+    // without arguments the format is the message as is, a stray % in it is fine
+    static String formatMessage(String format, Object[] args) {
+        if (args == null || args.length == 0)
+            return format;
+        try {
+            return String.format(Locale.US, format, args);
+        } catch (IllegalFormatException e) {
+            return format + " " + Arrays.toString(args);
+        }
+    }
+
+    private static String stackTraceOf(Throwable throwable) {
+        StringWriter text = new StringWriter();
+        throwable.printStackTrace(new PrintWriter(text));
+        return text.toString();
+    }
+
+    private static String truncate(String text) {
+        return text.length() > MAX_TEXT_LENGTH ? text.substring(0, MAX_TEXT_LENGTH) : text;
+    }
+
+    private static void putText(ByteBuffer out, String text) {
+        byte[] bytes = truncate(text != null ? text : "null").getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length);
+        out.put(bytes);
+    }
+
+    private static String getText(ByteBuffer in) {
+        int length = in.getShort() & 0xffff;
+        String text = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return text;
+    }
+}
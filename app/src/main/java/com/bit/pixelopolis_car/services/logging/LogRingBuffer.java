@@ -0,0 +1,69 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.logging;
+
+/**
+ * The bytes of the encoded log records, see {@link LogRecord} for the layout. Like the drive recorder
+ * it keeps head and tail as absolute byte offsets, here records may wrap around the end of the array.
+ * Once the ring is full the oldest whole records make room for the new one.
+ */
+class LogRingBuffer {
+    private final byte[] ring;
+    private long head = 0;
+    private long tail = 0;
+    private long overwrittenCount = 0;
+
+    LogRingBuffer(int capacity) {
+        if (capacity < LogRecord.MAX_SIZE)
+            throw new IllegalArgumentException("capacity must hold the largest record");
+        ring = new byte[capacity];
+    }
+
+    // record holds one record from LogRecord.writeTo, length prefix included
+    synchronized void append(byte[] record, int length) {
+        while (head + length - tail > ring.length) {
+            tail += 4 + readInt(tail);
+            overwrittenCount++;
+        }
+        int position = (int) (head % ring.length);
+        int first = Math.min(length, ring.length - position);
+        System.arraycopy(record, 0, ring, position, first);
+        System.arraycopy(record, first, ring, 0, length - first);
+        head += length;
+    }
+
+    // the stored records oldest first, laid out as they were appended
+    synchronized byte[] copyRecords() {
+        byte[] records = new byte[(int) (head - tail)];
+        int position = (int) (tail % ring.length);
+        int first = Math.min(records.length, ring.length - position);
+        System.arraycopy(ring, position, records, 0, first);
+        System.arraycopy(ring, 0, records, first, records.length - first);
+        return records;
+    }
+
+    synchronized long getOverwrittenCount() {
+        return overwrittenCount;
+    }
+
+    private int readInt(long offset) {
+        int value = 0;
+        for (int i = 0; i < 4; i++)
+            value = (value << 8) | (ring[(int) ((offset + i) % ring.length)] & 0xff);
+        return value;
+    }
+}
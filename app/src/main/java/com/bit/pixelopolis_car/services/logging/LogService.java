@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.logging;
+
+import com.bit.pixelopolis_car.services.config.LoggingInfo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The app's log: {@link Logger}s hand their lines to a bounded queue without waiting, one background
+ * thread formats nothing, it encodes each line into a binary ring buffer and, when enabled, prints it
+ * to the {@link LogSink}. The ring is turned into text only when it is dumped, at /logs on the stream
+ * port. A full queue drops the line and counts it rather than hold up a control thread.
+ */
+public class LogService {
+    public static final String CONTENT_TYPE = "text/plain; charset=utf-8";
+    private static final int QUEUE_CAPACITY = 1024;
+    private static final int BUFFER_SIZE = 512 * 1024;
+    private static final String DATE_FORMAT = "MM-dd HH:mm:ss.SSS";
+
+    private static final LogService ourInstance = new LogService(BUFFER_SIZE, true);
+
+    public static LogService getInstance() {
+        return ourInstance;
+    }
+
+    private final ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<>();
+    private final ArrayBlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final LogRingBuffer ringBuffer;
+    // only touched by the thread writing the ring
+    private final ByteBuffer scratch = ByteBuffer.allocate(LogRecord.MAX_SIZE);
+
+    private volatile LogSink sink = null;
+    private volatile boolean isSinkEnabled = true;
+    private volatile int defaultLevel = Logger.DEBUG;
+    private volatile Map<String, Integer> tagLevels = Collections.emptyMap();
+    private volatile double ratePerSecond = new LoggingInfo().getRatePerSecond();
+    private volatile double burst = new LoggingInfo().getBurst();
+
+    // without the writer thread the queue is only written by drain(), for tests
+    LogService(int bufferSize, boolean startWriter) {
+        ringBuffer = new LogRingBuffer(bufferSize);
+        if (startWriter) {
+            Thread writer = new Thread(this::writeLoop, "LogWriter");
+            writer.setDaemon(true);
+            writer.setPriority(Thread.MIN_PRIORITY);
+            writer.start();
+        }
+    }
+
+    public Logger getLogger(String tag) {
+        Logger logger = loggers.get(tag);
+        if (logger != null)
+            return logger;
+        synchronized (this) {
+            return loggers.computeIfAbsent(tag, t -> new Logger(this, t, levelOf(t)));
+        }
+    }
+
+    // applies the station config to the existing loggers and the ones still to come
+    public synchronized void configure(LoggingInfo loggingInfo) {
+        defaultLevel = parseLevel(loggingInfo.getDefaultLevel(), Logger.DEBUG);
+        Map<String, Integer> levels = new HashMap<>();
+        if (loggingInfo.getTagLevels() != null) {
+            for (Map.Entry<String, String> entry : loggingInfo.getTagLevels().entrySet())
+                levels.put(entry.getKey(), parseLevel(entry.getValue(), defaultLevel));
+        }
+        tagLevels = levels;
+        ratePerSecond = loggingInfo.getRatePerSecond();
+        burst = Math.max(1, loggingInfo.getBurst());
+        isSinkEnabled = loggingInfo.isLogcat();
+        for (Logger logger : loggers.values())
+            logger.setLevel(levelOf(logger.getTag()));
+    }
+
+    public synchronized void setLevel(String tag, int level) {
+        Map<String, Integer> levels = new HashMap<>(tagLevels);
+        levels.put(tag, level);
+        tagLevels = levels;
+        getLogger(tag).setLevel(level);
+    }
+
+    public void setSink(LogSink sink) {
+        this.sink = sink;
+    }
+
+    // verbose, debug, info, warn, error or off, anything else is fallback
+    public static int parseLevel(String name, int fallback) {
+        if (name == null)
+            return fallback;
+        switch (name.trim().toLowerCase(Locale.US)) {
+            case "verbose":
+                return Logger.VERBOSE;
+            case "debug":
+                return Logger.DEBUG;
+            case "info":
+                return Logger.INFO;
+            case "warn":
+                return Logger.WARN;
+            case "error":
+                return Logger.ERROR;
+            case "off":
+                return Logger.OFF;
+            default:
+                return fallback;
+        }
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    // the ring as logcat style text, oldest line first
+    public byte[] dump() {
+        byte[] records = ringBuffer.copyRecords();
+        StringBuilder text = new StringBuilder(records.length + 128);
+        text.append("# ").append(droppedCount.get()).append(" lines dropped while the writer was behind, ")
+                .append(ringBuffer.getOverwrittenCount()).append(" overwritten\n");
+        DateFormat dateFormat = new SimpleDateFormat(DATE_FORMAT, Locale.US);
+        ByteBuffer in = ByteBuffer.wrap(records);
+        while (in.hasRemaining())
+            LogRecord.appendText(in, text, dateFormat);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    double getRatePerSecond() {
+        return ratePerSecond;
+    }
+
+    double getBurst() {
+        return burst;
+    }
+
+    void submit(int level, String tag, String format, long suppressedCount, Object[] args, Throwable throwable) {
+        LogRecord record = new LogRecord(System.currentTimeMillis(), level, tag, format, suppressedCount, args, throwable);
+        if (!queue.offer(record))
+            droppedCount.incrementAndGet();
+    }
+
+    // writes what is queued on the calling thread
+    void drain() {
+        LogRecord record;
+        while ((record = queue.poll()) != null)
+            write(record);
+    }
+
+    private int levelOf(String tag) {
+        Integer level = tagLevels.get(tag);
+        return level != null ? level : defaultLevel;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            try {
+                write(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void write(LogRecord record) {
+        try {
+            record.freezeArgs();
+            scratch.clear();
+            record.writeTo(scratch);
+            ringBuffer.append(scratch.array(), scratch.position());
+            LogSink currentSink = sink;
+            if (currentSink != null && isSinkEnabled)
+                currentSink.write(record.level, record.tag, record.getMessage(), record.throwable);
+        } catch (RuntimeException e) {
+            // an argument whose toString throws must not stop the writer
+            droppedCount.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.logging;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Logs of one tag, get it from {@link LogService#getLogger(String)} and keep it in a static field.
+ * The level of the tag is checked first, then the rate limit of the call site, a call site being the
+ * format string. Only a line that passes both allocates, it captures its arguments and the writer
+ * thread formats them later, so pass values that do not change afterwards.
+ */
+public final class Logger {
+    // same values as android.util.Log
+    public static final int VERBOSE = 2;
+    public static final int DEBUG = 3;
+    public static final int INFO = 4;
+    public static final int WARN = 5;
+    public static final int ERROR = 6;
+    public static final int OFF = 8;
+
+    // calls below this level are compiled into the app but return right away, whatever the station config says
+    public static final int COMPILED_LEVEL = DEBUG;
+    // a message built at run time is a new call site each time, past this many they share one limit
+    private static final int MAX_CALL_SITES = 256;
+
+    private final LogService service;
+    private final String tag;
+    private volatile int level;
+    private final ConcurrentHashMap<String, TokenBucket> callSites = new ConcurrentHashMap<>();
+    private final TokenBucket sharedCallSite = new TokenBucket();
+
+    Logger(LogService service, String tag, int level) {
+        this.service = service;
+        this.tag = tag;
+        this.level = level;
+    }
+
+    public String getTag() {
+        return tag;
+    }
+
+    public int getLevel() {
+        return level;
+    }
+
+    void setLevel(int level) {
+        this.level = level;
+    }
+
+    // guard for arguments that are expensive to get, the usual calls check it themselves
+    public boolean isEnabled(int level) {
+        return level >= COMPILED_LEVEL && level >= this.level;
+    }
+
+    public void v(String message) {
+        log(VERBOSE, message, null, null);
+    }
+
+    public void v(String format, Object arg) {
+        if (isEnabled(VERBOSE))
+            log(VERBOSE, format, new Object[]{arg}, null);
+    }
+
+    public void v(String format, Object arg1, Object arg2) {
+        if (isEnabled(VERBOSE))
+            log(VERBOSE, format, new Object[]{arg1, arg2}, null);
+    }
+
+    public void v(String format, Object... args) {
+        log(VERBOSE, format, args, null);
+    }
+
+    public void d(String message) {
+        log(DEBUG, message, null, null);
+    }
+
+    public void d(String format, Object arg) {
+        if (isEnabled(DEBUG))
+            log(DEBUG, format, new Object[]{arg}, null);
+    }
+
+    public void d(String format, Object arg1, Object arg2) {
+        if (isEnabled(DEBUG))
+            log(DEBUG, format, new Object[]{arg1, arg2}, null);
+    }
+
+    public void d(String format, Object... args) {
+        log(DEBUG, format, args, null);
+    }
+
+    public void i(String message) {
+        log(INFO, message, null, null);
+    }
+
+    public void i(String format, Object arg) {
+        if (isEnabled(INFO))
+            log(INFO, format, new Object[]{arg}, null);
+    }
+
+    public void i(String format, Object arg1, Object arg2) {
+        if (isEnabled(INFO))
+            log(INFO, format, new Object[]{arg1, arg2}, null);
+    }
+
+    public void i(String format, Object... args) {
+        log(INFO, format, args, null);
+    }
+
+    public void w(String message) {
+        log(WARN, message, null, null);
+    }
+
+    public void w(String format, Object arg) {
+        if (isEnabled(WARN))
+            log(WARN, format, new Object[]{arg}, null);
+    }
+
+    public void w(String format, Object arg1, Object arg2) {
+        if (isEnabled(WARN))
+            log(WARN, format, new Object[]{arg1, arg2}, null);
+    }
+
+    public void w(String format, Object... args) {
+        log(WARN, format, args, null);
+    }
+
+    public void w(String message, Throwable throwable) {
+        log(WARN, message, null, throwable);
+    }
+
+    public void e(String message) {
+        log(ERROR, message, null, null);
+    }
+
+    public void e(String format, Object arg) {
+        if (isEnabled(ERROR))
+            log(ERROR, format, new Object[]{arg}, null);
+    }
+
+    public void e(String format, Object arg1, Object arg2) {
+        if (isEnabled(ERROR))
+            log(ERROR, format, new Object[]{arg1, arg2}, null);
+    }
+
+    public void e(String format, Object... args) {
+        log(ERROR, format, args, null);
+    }
+
+    public void e(String message, Throwable throwable) {
+        log(ERROR, message, null, throwable);
+    }
+
+    private void log(int level, String format, Object[] args, Throwable throwable) {
+        if (!isEnabled(level))
+            return;
+        TokenBucket callSite = callSites.get(format);
+        if (callSite == null)
+            callSite = callSites.size() < MAX_CALL_SITES ? callSites.computeIfAbsent(format, site -> new TokenBucket()) : sharedCallSite;
+        long suppressedCount = callSite.tryAcquire(System.nanoTime(), service.getRatePerSecond(), service.getBurst());
+        if (suppressedCount >= 0)
+            service.submit(level, tag, format, suppressedCount, args, throwable);
+    }
+}
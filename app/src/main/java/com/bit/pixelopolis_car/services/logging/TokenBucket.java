@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.logging;
+
+/**
+ * Rate limit of one log call site: ratePerSecond lines on average, up to burst at once. The limits
+ * are passed on every call so a new station config applies to the sites that already exist.
+ */
+class TokenBucket {
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private double tokens = -1;
+    private long lastRefillNanos;
+    private long suppressedCount;
+
+    // -1 when the line has to be dropped, otherwise how many were dropped since the last one that passed
+    synchronized long tryAcquire(long nowNanos, double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0)
+            return takeSuppressedCount();
+        if (tokens < 0) {
+            // a new site starts full
+            tokens = burst;
+        } else {
+            tokens = Math.min(burst, tokens + (nowNanos - lastRefillNanos) * ratePerSecond / NANOS_PER_SECOND);
+        }
+        lastRefillNanos = nowNanos;
+        if (tokens < 1) {
+            suppressedCount++;
+            return -1;
+        }
+        tokens -= 1;
+        return takeSuppressedCount();
+    }
+
+    private long takeSuppressedCount() {
+        long count = suppressedCount;
+        suppressedCount = 0;
+        return count;
+    }
+}
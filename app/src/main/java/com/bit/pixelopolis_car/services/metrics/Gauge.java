@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+/**
+ * A value that goes up and down. Either set by whoever owns it, or read from a supplier when the
+ * metrics are scraped, for values that are cheaper to look up than to keep up to date.
+ */
+public class Gauge {
+    // the double's bits, so setting it is a single atomic write
+    private final AtomicLong bits = new AtomicLong(Double.doubleToRawLongBits(0));
+    private final DoubleSupplier supplier;
+
+    Gauge(DoubleSupplier supplier) {
+        this.supplier = supplier;
+    }
+
+    public void set(double value) {
+        if (supplier != null) {
+            throw new IllegalStateException("gauge is read from its supplier");
+        }
+        bits.set(Double.doubleToRawLongBits(value));
+    }
+
+    public double get() {
+        if (supplier != null) {
+            return supplier.getAsDouble();
+        }
+        return Double.longBitsToDouble(bits.get());
+    }
+}
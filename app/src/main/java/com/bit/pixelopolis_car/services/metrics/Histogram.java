@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts observations into fixed buckets, Prometheus style: a bucket holds the observations up to
+ * its upper bound, the last one everything above the largest bound. Each bucket and the sum are
+ * striped adders, so observing never locks and never allocates. Times are observed in seconds.
+ */
+public class Histogram {
+    private final double[] upperBounds;
+    private final LongAdder[] buckets;
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] upperBounds) {
+        for (int i = 1; i < upperBounds.length; i++) {
+            if (upperBounds[i] <= upperBounds[i - 1]) {
+                throw new IllegalArgumentException("bucket bounds must increase");
+            }
+        }
+        this.upperBounds = upperBounds.clone();
+        buckets = new LongAdder[upperBounds.length + 1];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    // count bounds starting at start, each factor times the one before
+    public static double[] exponentialBounds(double start, double factor, int count) {
+        double[] bounds = new double[count];
+        double bound = start;
+        for (int i = 0; i < count; i++) {
+            bounds[i] = bound;
+            bound *= factor;
+        }
+        return bounds;
+    }
+
+    public void observe(double value) {
+        // a handful of buckets, a linear scan beats a binary search here
+        int bucket = 0;
+        while (bucket < upperBounds.length && value > upperBounds[bucket]) {
+            bucket++;
+        }
+        buckets[bucket].increment();
+        sum.add(value);
+    }
+
+    public void observeNanos(long nanos) {
+        observe(nanos / 1e9);
+    }
+
+    public long getCount() {
+        long count = 0;
+        for (LongAdder bucket : buckets) {
+            count += bucket.sum();
+        }
+        return count;
+    }
+
+    public double getSum() {
+        return sum.sum();
+    }
+
+    int getBucketCount() {
+        return buckets.length;
+    }
+
+    // Double.POSITIVE_INFINITY for the last bucket
+    double getUpperBound(int bucket) {
+        return bucket < upperBounds.length ? upperBounds[bucket] : Double.POSITIVE_INFINITY;
+    }
+
+    long getBucketValue(int bucket) {
+        return buckets[bucket].sum();
+    }
+}
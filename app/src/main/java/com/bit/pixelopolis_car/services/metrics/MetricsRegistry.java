@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+
+/**
+ * The app's counters, gauges and histograms, served as Prometheus text next to the camera stream at
+ * /metrics. A metric is looked up by its name and labels once, typically when the component that
+ * feeds it is built, and updated from any thread afterwards without locking. Labels are given as
+ * name, value pairs, e.g. counter("serial_errors_total", "...", "kind", "io").
+ */
+public class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final MetricsRegistry ourInstance = new MetricsRegistry();
+
+    public static MetricsRegistry getInstance() {
+        return ourInstance;
+    }
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        private final String text;
+        Type(String text) {this.text = text;}
+    }
+
+    private static final class Family {
+        final String name;
+        final String help;
+        final Type type;
+        // keyed by the rendered labels, sorted so a scrape is stable
+        final ConcurrentSkipListMap<String, Object> children = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, Type type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+
+    private final ConcurrentSkipListMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+    public MetricsRegistry() {
+    }
+
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) family(name, help, Type.COUNTER).children.computeIfAbsent(toLabelText(labels), key -> new Counter());
+    }
+
+    public Gauge gauge(String name, String help, String... labels) {
+        return (Gauge) family(name, help, Type.GAUGE).children.computeIfAbsent(toLabelText(labels), key -> new Gauge(null));
+    }
+
+    // registering the same name and labels again replaces the supplier, the newest owner is the one read
+    public Gauge gauge(String name, String help, DoubleSupplier supplier, String... labels) {
+        Gauge gauge = new Gauge(supplier);
+        family(name, help, Type.GAUGE).children.put(toLabelText(labels), gauge);
+        return gauge;
+    }
+
+    // an existing histogram keeps the bounds it was made with
+    public Histogram histogram(String name, String help, double[] upperBounds, String... labels) {
+        return (Histogram) family(name, help, Type.HISTOGRAM).children.computeIfAbsent(toLabelText(labels), key -> new Histogram(upperBounds));
+    }
+
+    // everything in the Prometheus text exposition format
+    public byte[] scrape() {
+        StringBuilder text = new StringBuilder(4096);
+        writeText(text);
+        return text.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    public void writeText(StringBuilder out) {
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ');
+            appendEscaped(out, family.help, false);
+            out.append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type.text).append('\n');
+            for (Map.Entry<String, Object> child : family.children.entrySet()) {
+                String labels = child.getKey();
+                switch (family.type) {
+                    case COUNTER:
+                        appendSample(out, family.name, "", labels, null, ((Counter) child.getValue()).get());
+                        break;
+                    case GAUGE:
+                        appendSample(out, family.name, "", labels, null, ((Gauge) child.getValue()).get());
+                        break;
+                    case HISTOGRAM:
+                        appendHistogram(out, family.name, labels, (Histogram) child.getValue());
+                        break;
+                }
+            }
+        }
+    }
+
+    private Family family(String name, String help, Type type) {
+        checkName(name);
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (family.type != type) {
+            throw new IllegalArgumentException(name + " is already a " + family.type.text);
+        }
+        return family;
+    }
+
+    private static void appendHistogram(StringBuilder out, String name, String labels, Histogram histogram) {
+        // buckets are cumulative, and the count is the last one so the two always agree
+        long cumulative = 0;
+        for (int bucket = 0; bucket < histogram.getBucketCount(); bucket++) {
+            cumulative += histogram.getBucketValue(bucket);
+            double bound = histogram.getUpperBound(bucket);
+            appendSample(out, name, "_bucket", labels, bound == Double.POSITIVE_INFINITY ? "+Inf" : Double.toString(bound), cumulative);
+        }
+        appendSample(out, name, "_sum", labels, null, histogram.getSum());
+        appendSample(out, name, "_count", labels, null, cumulative);
+    }
+
+    private static void appendSample(StringBuilder out, String name, String suffix, String labels, String le, double value) {
+        appendName(out, name, suffix, labels, le);
+        out.append(' ');
+        if (Double.isNaN(value)) {
+            out.append("NaN");
+        } else if (Double.isInfinite(value)) {
+            out.append(value > 0 ? "+Inf" : "-Inf");
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static void appendSample(StringBuilder out, String name, String suffix, String labels, String le, long value) {
+        appendName(out, name, suffix, labels, le);
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static void appendName(StringBuilder out, String name, String suffix, String labels, String le) {
+        out.append(name).append(suffix);
+        if (labels.isEmpty() && le == null) {
+            return;
+        }
+        out.append('{').append(labels);
+        if (le != null) {
+            if (!labels.isEmpty()) {
+                out.append(',');
+            }
+            out.append("le=\"").append(le).append('"');
+        }
+        out.append('}');
+    }
+
+    private static String toLabelText(String[] labels) {
+        if (labels.length % 2 != 0) {
+            throw new IllegalArgumentException("labels come in name, value pairs");
+        }
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < labels.length; i += 2) {
+            checkName(labels[i]);
+            if (i > 0) {
+                text.append(',');
+            }
+            text.append(labels[i]).append("=\"");
+            appendEscaped(text, labels[i + 1], true);
+            text.append('"');
+        }
+        return text.toString();
+    }
+
+    private static void checkName(String name) {
+        boolean valid = !name.isEmpty();
+        for (int i = 0; i < name.length() && valid; i++) {
+            char c = name.charAt(i);
+            valid = c == '_' || c == ':' || (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (i > 0 && c >= '0' && c <= '9');
+        }
+        if (!valid) {
+            throw new IllegalArgumentException("invalid metric or label name " + name);
+        }
+    }
+
+    // help text escapes backslash and newline, label values the double quote as well
+    private static void appendEscaped(StringBuilder out, String text, boolean isLabelValue) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                out.append("\\\\");
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else if (c == '"' && isLabelValue) {
+                out.append("\\\"");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+}
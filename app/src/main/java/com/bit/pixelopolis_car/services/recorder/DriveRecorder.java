@@ -0,0 +1,513 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.recorder;
+
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+import com.bit.pixelopolis_car.services.streaming.HttpDownload;
+import com.bit.pixelopolis_car.services.streaming.JpegEncoder;
+
+import org.opencv.core.Mat;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Black box for the car: a compact binary trace of what it saw and did, written into a fixed size
+ * memory mapped ring file so it survives a crash and never grows. Once the ring is full the oldest
+ * records are overwritten.
+ *
+ * File layout, big endian. A 64 byte header:
+ *   u32 magic "PXDR", u16 version, u16 header size, u32 ring capacity, u32 reserved,
+ *   u64 head, u64 tail (absolute byte offsets, the ring position is offset % capacity),
+ *   u64 record count, u64 wall clock millis and u64 System.nanoTime() when the recorder opened,
+ *   u64 reserved.
+ * Then the ring of records, each starting on a 16 byte boundary with a 16 byte header:
+ *   u8 type, u8 reserved, u16 payload length, u32 sequence, u64 System.nanoTime(), payload.
+ * Records never wrap, the space left at the end of the ring is filled with a TYPE_PAD record.
+ * Payloads:
+ *   TYPE_FRAME      u16 width, u16 height, JPEG of the downscaled upright frame
+ *   TYPE_VISION     f32 steering angle, f32 processing ms, u8 count, per detection
+ *                   f32 confidence, f32 left, top, right, bottom, u8 title length, ASCII title
+ *   TYPE_STATUS     u8 length, ASCII previous status, u8 length, ASCII new status
+ *   TYPE_SERIAL_TX  i16 left speed, i16 right speed
+ *   TYPE_TELEMETRY  i32 motor battery percentage, i32 raw IR value, i32 filtered IR value
+ *
+ * Recording does not allocate. Every record is appended under one lock, frames are encoded before
+ * taking it. A dump is the same header followed by the records from tail to head in order, with
+ * the capacity set to their length. It is written straight from the mapping in small chunks, the
+ * lock is only held to copy one chunk, so recording goes on while a dump downloads. The file of
+ * the previous run is kept next to the new one, so it can still be dumped after the app crashed.
+ */
+public class DriveRecorder {
+    private static final Logger LOG = LogService.getInstance().getLogger("DriveRecorder");
+    public static final int MAGIC = 0x50584452;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 64;
+    public static final int RECORD_HEADER_SIZE = 16;
+    public static final int RECORD_ALIGNMENT = 16;
+
+    public static final int TYPE_PAD = 0;
+    public static final int TYPE_FRAME = 1;
+    public static final int TYPE_VISION = 2;
+    public static final int TYPE_STATUS = 3;
+    public static final int TYPE_SERIAL_TX = 4;
+    public static final int TYPE_TELEMETRY = 5;
+
+    static final int OFFSET_CAPACITY = 8;
+    static final int OFFSET_HEAD = 16;
+    static final int OFFSET_TAIL = 24;
+    static final int OFFSET_RECORD_COUNT = 32;
+    static final int OFFSET_START_MILLIS = 40;
+    static final int OFFSET_START_NANOS = 48;
+
+    public static final int MAX_DETECTIONS = 16;
+    private static final int MAX_TEXT_LENGTH = 64;
+    private static final int MAX_FRAME_SIZE = 0xffff - 4;
+    private static final int DUMP_CHUNK_SIZE = 64 * 1024;
+
+    private final File file;
+    private final RandomAccessFile randomAccessFile;
+    private final MappedByteBuffer mapped;
+    // header and ring are views on the same mapping
+    private final ByteBuffer header;
+    private final ByteBuffer ring;
+    private final int capacity;
+    private long head = 0;
+    private long tail = 0;
+    private long recordCount = 0;
+    private volatile boolean isClosed = false;
+
+    // only touched by the thread that records frames
+    private JpegEncoder frameEncoder = null;
+    private final ByteBuffer frameBuffer = ByteBuffer.allocate(MAX_FRAME_SIZE);
+    private final long frameIntervalNanos;
+    private final int frameDownscale;
+    private final int frameQuality;
+    private long lastFrameNanos = Long.MIN_VALUE;
+
+    /**
+     * @param capacity ring size in bytes, rounded down to RECORD_ALIGNMENT
+     * @param frameIntervalMillis least time between two recorded frames
+     */
+    public DriveRecorder(File file, int capacity, long frameIntervalMillis, int frameDownscale, int frameQuality) throws IOException {
+        if (capacity < RECORD_ALIGNMENT * 64) {
+            throw new IllegalArgumentException("capacity too small: " + capacity);
+        }
+        this.file = file;
+        this.capacity = capacity / RECORD_ALIGNMENT * RECORD_ALIGNMENT;
+        this.frameIntervalNanos = frameIntervalMillis * 1000000L;
+        this.frameDownscale = frameDownscale;
+        this.frameQuality = frameQuality;
+
+        File previousFile = getPreviousFile(file);
+        if (file.exists() && (!previousFile.exists() || previousFile.delete()) && !file.renameTo(previousFile)) {
+            LOG.w("Could not keep %s", file);
+        }
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            this.randomAccessFile.setLength(HEADER_SIZE + this.capacity);
+            this.mapped = this.randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + this.capacity);
+        } catch (IOException e) {
+            this.randomAccessFile.close();
+            throw e;
+        }
+        this.mapped.position(0).limit(HEADER_SIZE);
+        this.header = this.mapped.slice();
+        this.mapped.position(HEADER_SIZE).limit(HEADER_SIZE + this.capacity);
+        this.ring = this.mapped.slice();
+        this.mapped.clear();
+
+        this.header.putInt(0, MAGIC);
+        this.header.putShort(4, (short) VERSION);
+        this.header.putShort(6, (short) HEADER_SIZE);
+        this.header.putInt(OFFSET_CAPACITY, this.capacity);
+        this.header.putLong(OFFSET_START_MILLIS, System.currentTimeMillis());
+        this.header.putLong(OFFSET_START_NANOS, System.nanoTime());
+        writePositions();
+    }
+
+    public File getFile() {
+        return this.file;
+    }
+
+    // where the recording of the previous run is kept
+    public static File getPreviousFile(File file) {
+        return new File(file.getPath() + ".prev");
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public synchronized long getRecordCount() {
+        return this.recordCount;
+    }
+
+    // bytes between the oldest and the newest record
+    public synchronized int getUsedBytes() {
+        return (int) (this.head - this.tail);
+    }
+
+    /**
+     * Downscales and encodes the frame when the frame interval has passed since the last one.
+     * Call it from one thread only, e.g. the vision thread.
+     */
+    public void recordFrame(Mat rgbFrame, long nowNanos) {
+        if (this.lastFrameNanos != Long.MIN_VALUE && nowNanos - this.lastFrameNanos < this.frameIntervalNanos) {
+            return;
+        }
+        if (this.isClosed || rgbFrame == null || rgbFrame.empty()) {
+            return;
+        }
+        this.lastFrameNanos = nowNanos;
+        if (this.frameEncoder == null) {
+            this.frameEncoder = new JpegEncoder();
+        }
+        // same downscale and channel swap as the stream
+        Mat scaled = this.frameEncoder.toBgr(rgbFrame, this.frameDownscale);
+        this.frameBuffer.clear();
+        int length = this.frameEncoder.encodeBgr(scaled, this.frameQuality, this.frameBuffer);
+        if (length < 0) {
+            return;
+        }
+        this.frameBuffer.flip();
+        recordFrame(scaled.cols(), scaled.rows(), this.frameBuffer, nowNanos);
+    }
+
+    // records an already encoded frame, all of the jpeg buffer's remaining bytes
+    public synchronized void recordFrame(int width, int height, ByteBuffer jpeg, long nowNanos) {
+        int offset = begin(TYPE_FRAME, 4 + jpeg.remaining(), nowNanos);
+        if (offset < 0) {
+            return;
+        }
+        this.ring.putShort(offset, (short) width);
+        this.ring.putShort(offset + 2, (short) height);
+        ByteBuffer target = this.ring.duplicate();
+        target.position(offset + 4);
+        target.put(jpeg);
+        end();
+    }
+
+    /**
+     * @param detections count of detections in the arrays, more than 16 are cut
+     * @param boxes left, top, right, bottom per detection
+     */
+    public synchronized void recordVision(float steeringAngle, float processingMillis, int detections, float[] confidences, float[] boxes, CharSequence[] titles, long nowNanos) {
+        detections = Math.min(detections, MAX_DETECTIONS);
+        int length = 9;
+        for (int i = 0; i < detections; i++) {
+            length += 21 + textLength(titles[i]);
+        }
+        int offset = begin(TYPE_VISION, length, nowNanos);
+        if (offset < 0) {
+            return;
+        }
+        this.ring.putFloat(offset, steeringAngle);
+        this.ring.putFloat(offset + 4, processingMillis);
+        this.ring.put(offset + 8, (byte) detections);
+        offset += 9;
+        for (int i = 0; i < detections; i++) {
+            this.ring.putFloat(offset, confidences[i]);
+            for (int side = 0; side < 4; side++) {
+                this.ring.putFloat(offset + 4 + side * 4, boxes[i * 4 + side]);
+            }
+            offset = putText(offset + 20, titles[i]);
+        }
+        end();
+    }
+
+    public synchronized void recordStatus(CharSequence previousStatus, CharSequence newStatus, long nowNanos) {
+        int offset = begin(TYPE_STATUS, 2 + textLength(previousStatus) + textLength(newStatus), nowNanos);
+        if (offset < 0) {
+            return;
+        }
+        offset = putText(offset, previousStatus);
+        putText(offset, newStatus);
+        end();
+    }
+
+    public synchronized void recordSerialTx(int leftSpeed, int rightSpeed, long nowNanos) {
+        int offset = begin(TYPE_SERIAL_TX, 4, nowNanos);
+        if (offset < 0) {
+            return;
+        }
+        this.ring.putShort(offset, (short) leftSpeed);
+        this.ring.putShort(offset + 2, (short) rightSpeed);
+        end();
+    }
+
+    public synchronized void recordTelemetry(int motorBatteryPercentage, int irSensorValue, int filteredIrSensorValue, long nowNanos) {
+        int offset = begin(TYPE_TELEMETRY, 12, nowNanos);
+        if (offset < 0) {
+            return;
+        }
+        this.ring.putInt(offset, motorBatteryPercentage);
+        this.ring.putInt(offset + 4, irSensorValue);
+        this.ring.putInt(offset + 8, filteredIrSensorValue);
+        end();
+    }
+
+    /**
+     * Snapshots where the records from oldest to newest are, nothing is copied until the dump is
+     * written. Recording goes on meanwhile, a dump the ring overwrote before it was written fails.
+     */
+    public synchronized Dump openDump() {
+        ByteBuffer dumpHeader = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer source = this.header.duplicate();
+        source.clear();
+        dumpHeader.put(source);
+        dumpHeader.flip();
+        return new RingDump(dumpHeader, this.tail, this.head);
+    }
+
+    /**
+     * Same as openDump() for a ring file that is not open, e.g. the previous run's.
+     * @return null when the file is missing or not a recording
+     */
+    public static Dump openDump(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        FileChannel channel = new RandomAccessFile(file, "r").getChannel();
+        try {
+            ByteBuffer stored = ByteBuffer.allocate(HEADER_SIZE);
+            if (channel.size() < HEADER_SIZE || channel.read(stored, 0) < HEADER_SIZE) {
+                channel.close();
+                return null;
+            }
+            stored.flip();
+            int capacity = stored.getInt(OFFSET_CAPACITY);
+            long head = stored.getLong(OFFSET_HEAD);
+            long tail = stored.getLong(OFFSET_TAIL);
+            if (stored.getInt(0) != MAGIC || capacity <= 0 || HEADER_SIZE + (long) capacity > channel.size()
+                    || tail < 0 || head < tail || head - tail > capacity) {
+                channel.close();
+                return null;
+            }
+            return new FileDump(stored, channel, capacity, tail, head);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A dump being written, see the class comment for its layout.
+     */
+    public abstract static class Dump implements HttpDownload.Body {
+        private final ByteBuffer header;
+        final long tail;
+        final long head;
+
+        Dump(ByteBuffer storedHeader, long tail, long head) {
+            int length = (int) (head - tail);
+            this.header = storedHeader;
+            this.header.putInt(OFFSET_CAPACITY, length);
+            this.header.putLong(OFFSET_HEAD, length);
+            this.header.putLong(OFFSET_TAIL, 0);
+            this.tail = tail;
+            this.head = head;
+        }
+
+        @Override
+        public long getLength() {
+            return HEADER_SIZE + this.head - this.tail;
+        }
+
+        @Override
+        public void writeTo(WritableByteChannel out) throws IOException {
+            writeFully(out, this.header.duplicate());
+            writeRecords(out);
+        }
+
+        abstract void writeRecords(WritableByteChannel out) throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private final class RingDump extends Dump {
+        RingDump(ByteBuffer storedHeader, long tail, long head) {
+            super(storedHeader, tail, head);
+        }
+
+        @Override
+        void writeRecords(WritableByteChannel out) throws IOException {
+            ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(DUMP_CHUNK_SIZE, this.head - this.tail));
+            for (long position = this.tail; position < this.head; ) {
+                int length = (int) Math.min(chunk.capacity(), this.head - position);
+                chunk.clear();
+                if (!copyRing(position, length, chunk)) {
+                    throw new IOException("the recording overwrote the dump at " + position);
+                }
+                chunk.flip();
+                writeFully(out, chunk);
+                position += length;
+            }
+        }
+    }
+
+    private static final class FileDump extends Dump {
+        private final FileChannel channel;
+        private final int capacity;
+
+        FileDump(ByteBuffer storedHeader, FileChannel channel, int capacity, long tail, long head) {
+            super(storedHeader, tail, head);
+            this.channel = channel;
+            this.capacity = capacity;
+        }
+
+        @Override
+        void writeRecords(WritableByteChannel out) throws IOException {
+            int length = (int) (this.head - this.tail);
+            int start = (int) (this.tail % this.capacity);
+            int first = Math.min(length, this.capacity - start);
+            transfer(HEADER_SIZE + start, first, out);
+            transfer(HEADER_SIZE, length - first, out);
+        }
+
+        private void transfer(long position, long count, WritableByteChannel out) throws IOException {
+            while (count > 0) {
+                long sent = this.channel.transferTo(position, Math.min(count, DUMP_CHUNK_SIZE), out);
+                if (sent <= 0) {
+                    throw new EOFException("recording ends before " + position);
+                }
+                position += sent;
+                count -= sent;
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            this.channel.close();
+        }
+    }
+
+    // copies the ring bytes at the absolute position, false once they have been overwritten
+    private synchronized boolean copyRing(long position, int length, ByteBuffer target) {
+        // the byte at position is reused by the one a capacity later
+        if (this.head - position > this.capacity) {
+            return false;
+        }
+        int start = ringOffset(position);
+        int first = Math.min(length, this.capacity - start);
+        ByteBuffer source = this.ring.duplicate();
+        source.position(start).limit(start + first);
+        target.put(source);
+        source.position(0).limit(length - first);
+        target.put(source);
+        return true;
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    public synchronized void close() {
+        if (this.isClosed) {
+            return;
+        }
+        this.isClosed = true;
+        // the encoder is left to the vision thread, it may be encoding right now
+        this.mapped.force();
+        try {
+            this.randomAccessFile.close();
+        } catch (IOException e) {
+            LOG.w("Closing the recording failed", e);
+        }
+    }
+
+    // reserves an aligned record at the head, dropping the oldest records it overlaps, -1 when it can not fit
+    private int begin(int type, int payloadLength, long nowNanos) {
+        int recordLength = align(RECORD_HEADER_SIZE + payloadLength);
+        if (this.isClosed || payloadLength > 0xffff || recordLength > this.capacity) {
+            return -1;
+        }
+        int offset = ringOffset(this.head);
+        if (offset + recordLength > this.capacity) {
+            int padLength = this.capacity - offset;
+            reserve(padLength);
+            putRecordHeader(offset, TYPE_PAD, padLength - RECORD_HEADER_SIZE, nowNanos);
+            this.head += padLength;
+            offset = 0;
+        }
+        reserve(recordLength);
+        putRecordHeader(offset, type, payloadLength, nowNanos);
+        this.head += recordLength;
+        this.recordCount++;
+        return offset + RECORD_HEADER_SIZE;
+    }
+
+    private void end() {
+        writePositions();
+    }
+
+    private void reserve(int length) {
+        while (this.head + length - this.tail > this.capacity) {
+            int payloadLength = this.ring.getShort(ringOffset(this.tail) + 2) & 0xffff;
+            this.tail += align(RECORD_HEADER_SIZE + payloadLength);
+        }
+    }
+
+    private void putRecordHeader(int offset, int type, int payloadLength, long nowNanos) {
+        this.ring.put(offset, (byte) type);
+        this.ring.put(offset + 1, (byte) 0);
+        this.ring.putShort(offset + 2, (short) payloadLength);
+        this.ring.putInt(offset + 4, (int) this.recordCount);
+        this.ring.putLong(offset + 8, nowNanos);
+    }
+
+    private void writePositions() {
+        this.header.putLong(OFFSET_HEAD, this.head);
+        this.header.putLong(OFFSET_TAIL, this.tail);
+        this.header.putLong(OFFSET_RECORD_COUNT, this.recordCount);
+    }
+
+    private int putText(int offset, CharSequence text) {
+        int length = textLength(text) - 1;
+        this.ring.put(offset, (byte) length);
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            this.ring.put(offset + 1 + i, (byte) (c < 128 ? c : '?'));
+        }
+        return offset + 1 + length;
+    }
+
+    // bytes the text takes with its length prefix
+    private static int textLength(CharSequence text) {
+        return 1 + (text == null ? 0 : Math.min(text.length(), MAX_TEXT_LENGTH));
+    }
+
+    private int ringOffset(long position) {
+        return (int) (position % this.capacity);
+    }
+
+    private static int align(int length) {
+        return (length + RECORD_ALIGNMENT - 1) / RECORD_ALIGNMENT * RECORD_ALIGNMENT;
+    }
+}
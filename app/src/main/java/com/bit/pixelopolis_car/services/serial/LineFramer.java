@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.serial;
+
+/**
+ * Splits the raw serial byte stream into '\n' terminated lines.
+ * Delimiters are found anywhere inside a chunk. A line that is complete inside one chunk is handed
+ * out straight from that chunk, otherwise it is gathered in a fixed size buffer. A line longer than
+ * the buffer is dropped up to its next delimiter, so memory stays bounded on a noisy link.
+ */
+public class LineFramer {
+
+    public interface LineListener {
+        // line bytes are only valid during the call, a trailing '\r' is already stripped
+        void onLine(byte[] buffer, int offset, int length);
+    }
+
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+
+    private final byte[] buffer;
+    private final LineListener listener;
+    private int length = 0;
+    private boolean isOverrun = false;
+    private int overrunCount = 0;
+
+    public LineFramer(int capacity, LineListener listener) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        this.buffer = new byte[capacity];
+        this.listener = listener;
+    }
+
+    public void feed(byte[] data, int offset, int count) {
+        int end = offset + count;
+        int lineStart = offset;
+        for (int i = offset; i < end; i++) {
+            if (data[i] != LINE_FEED)
+                continue;
+
+            if (length == 0 && !isOverrun) {
+                // whole line is inside this chunk, no need to copy it
+                dispatch(data, lineStart, i - lineStart);
+            } else {
+                append(data, lineStart, i - lineStart);
+                if (!isOverrun)
+                    dispatch(buffer, 0, length);
+                length = 0;
+                isOverrun = false;
+            }
+            lineStart = i + 1;
+        }
+        append(data, lineStart, end - lineStart);
+    }
+
+    public void reset() {
+        length = 0;
+        isOverrun = false;
+    }
+
+    public int getOverrunCount() {
+        return overrunCount;
+    }
+
+    private void append(byte[] data, int offset, int count) {
+        if (isOverrun || count == 0)
+            return;
+        if (length + count > buffer.length) {
+            isOverrun = true;
+            overrunCount++;
+            length = 0;
+            return;
+        }
+        System.arraycopy(data, offset, buffer, length, count);
+        length += count;
+    }
+
+    private void dispatch(byte[] data, int offset, int count) {
+        if (count > buffer.length) {
+            overrunCount++;
+            return;
+        }
+        if (count > 0 && data[offset + count - 1] == CARRIAGE_RETURN)
+            count--;
+        if (count > 0)
+            listener.onLine(data, offset, count);
+    }
+}
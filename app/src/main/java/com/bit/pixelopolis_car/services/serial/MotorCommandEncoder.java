@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.serial;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Motor commands for the controller board: each wheel speed is shifted by 288 and sent as two base
+ * 24 digits, 0-9 then a-o, and the pair is ended by a line feed, e.g. "c0c0\n" for a stop. Written
+ * straight into the caller's array, sending a command does not build strings or box digits.
+ */
+public final class MotorCommandEncoder {
+    public static final int COMMAND_LENGTH = 5;
+    // the board's speed range, encodable speeds are clamped to it
+    public static final int MIN_SPEED = -288;
+    public static final int MAX_SPEED = 311;
+
+    private static final int SPEED_OFFSET = 288;
+    private static final int RADIX = 24;
+    private static final byte[] DIGITS = "0123456789abcdefghijklmno".getBytes(StandardCharsets.US_ASCII);
+    private static final byte LINE_FEED = '\n';
+
+    private MotorCommandEncoder() {}
+
+    /**
+     * @return number of bytes written at offset, always COMMAND_LENGTH
+     */
+    public static int encode(int leftSpeed, int rightSpeed, byte[] target, int offset) {
+        putSpeed(leftSpeed, target, offset);
+        putSpeed(rightSpeed, target, offset + 2);
+        target[offset + 4] = LINE_FEED;
+        return COMMAND_LENGTH;
+    }
+
+    private static void putSpeed(int speed, byte[] target, int offset) {
+        int shifted = Math.min(MAX_SPEED, Math.max(MIN_SPEED, speed)) + SPEED_OFFSET;
+        target[offset] = DIGITS[shifted / RADIX];
+        target[offset + 1] = DIGITS[shifted % RADIX];
+    }
+}
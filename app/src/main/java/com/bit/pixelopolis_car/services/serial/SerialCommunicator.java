@@ -29,13 +29,15 @@ import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.os.IBinder;
 import android.widget.Toast;
+import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.config.SerialLinkInfo;
+import com.bit.pixelopolis_car.services.metrics.Counter;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+import com.bit.pixelopolis_car.services.tracing.LatencyTracer;
 import com.hoho.android.usbserial.driver.UsbSerialDriver;
 import com.hoho.android.usbserial.driver.UsbSerialPort;
 import com.hoho.android.usbserial.driver.UsbSerialProber;
 
-import java.util.HashMap;
-import java.util.Map;
-
 public class SerialCommunicator implements ServiceConnection, SerialListener {
     private enum Connected { False, Pending, True }
     //public static final String INTENT_ACTION_GRANT_USB = BuildConfig.APPLICATION_ID + ".GRANT_USB";
@@ -47,6 +49,7 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
     private UsbSerialDriver driver;
     private Integer portNum;
     private final int baudRate = 9600;
+    private static final int MAX_LINE_LENGTH = 64;
     private final String newline = "\r\n";
 
     private SerialSocket socket;
@@ -59,13 +62,23 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
     private final Handler handler = new Handler();
     private int errorCount = 0;
     private String debugText = "";
-    private String receivedData = "";
-    private Map<Integer,String> baseNumber24;
+    private final LineFramer lineFramer;
+    private final SerialLinkMonitor linkMonitor;
+    private volatile LatencyTracer latencyTracer = null;
+    // reused for every command, the port write has the bytes out before it returns
+    private final byte[] commandBuffer = new byte[MotorCommandEncoder.COMMAND_LENGTH];
+
+    private final Counter txCommandCounter = MetricsRegistry.getInstance().counter("serial_tx_commands_total", "Motor commands written to the board");
+    private final Counter txByteCounter = MetricsRegistry.getInstance().counter("serial_tx_bytes_total", "Bytes written to the board, pings included");
+    private final Counter rxByteCounter = MetricsRegistry.getInstance().counter("serial_rx_bytes_total", "Bytes read from the board");
+    private final Counter ioErrorCounter = MetricsRegistry.getInstance().counter("serial_errors_total", "Serial failures", "kind", "io");
+    private final Counter connectErrorCounter = MetricsRegistry.getInstance().counter("serial_errors_total", "Serial failures", "kind", "connect");
+    private final Counter notConnectedCounter = MetricsRegistry.getInstance().counter("serial_errors_total", "Serial failures", "kind", "not_connected");
 
     private SerialCommunicatorListener listener;
 
     public interface SerialCommunicatorListener{
-        void onReceive(String text);
+        void onReceive(byte[] line, int offset, int length);
         void onDisconnect();
         void onDebugTextUpdate(String text);
     }
@@ -73,6 +86,9 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
     public SerialCommunicator(Context context,SerialCommunicatorListener listener){
         this.context = context;
         this.listener = listener;
+        SerialLinkInfo serialLinkInfo = Config.getInstance().getSerialLinkInfo();
+        linkMonitor = new SerialLinkMonitor(serialLinkInfo != null ? serialLinkInfo : new SerialLinkInfo());
+        lineFramer = new LineFramer(MAX_LINE_LENGTH, this::onLine);
         broadcastReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
@@ -98,7 +114,6 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
             }
         };
         findDevice();
-        setupMap();
         context.bindService(new Intent(context, SerialService.class), this, Context.BIND_AUTO_CREATE);
     }
 
@@ -237,46 +252,70 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
 
     public void send(int leftSpeed,int rightSpeed){
         if(connected != Connected.True) {
+            notConnectedCounter.inc();
             Toast.makeText(context, "not connected", Toast.LENGTH_SHORT).show();
             return;
         }
         try {
-            String leftString = get24BaseNumber(leftSpeed);
-            String rightString = get24BaseNumber(rightSpeed);
-            String sendString = leftString+rightString+"\n";
-            byte[] data = sendString.getBytes();
             //Log.i("Debug",data.toString());
-
-
-            String receiveTextStr = "";
-            receiveTextStr += leftSpeed +" "+ rightSpeed +"size = "+data.length+"\n";
-
-
-            socket.write(data);
+            long now;
+            // the wheel thread is the only sender today, the lock keeps the buffer safe if that changes
+            synchronized (commandBuffer) {
+                MotorCommandEncoder.encode(leftSpeed, rightSpeed, commandBuffer, 0);
+                now = System.nanoTime();
+                socket.write(commandBuffer);
+            }
+            linkMonitor.onBytesWritten(MotorCommandEncoder.COMMAND_LENGTH, now);
+            txCommandCounter.inc();
+            txByteCounter.add(MotorCommandEncoder.COMMAND_LENGTH);
+            LatencyTracer tracer = latencyTracer;
+            if(tracer != null)
+                tracer.onSerialWrite(System.nanoTime());
+            byte[] ping = linkMonitor.nextPing(now);
+            if(ping != null) {
+                socket.write(ping);
+                linkMonitor.onBytesWritten(ping.length, now);
+                txByteCounter.add(ping.length);
+            }
             Thread.sleep(35);
 
-            receiveTextStr+=String.format("error count: %d\n" , errorCount);
-
-            status(receiveTextStr);
+            // the serial monitor is only on screen in debug mode, do not format it for every command otherwise
+            if(Config.getInstance().isInDebugMode()) {
+                String receiveTextStr = leftSpeed + " " + rightSpeed + "size = " + MotorCommandEncoder.COMMAND_LENGTH + "\n"
+                        + "error count: " + errorCount + "\n";
+                if(service != null)
+                    receiveTextStr += "dropped rx bytes: " + service.getDroppedReadBytes() + "\n";
+                status(receiveTextStr);
+            }
 
         } catch (Exception e) {
             onSerialIoError(e);
         }
     }
 
-    private void receive(byte[] data) {
-        // TODO: callback to caller
-        String s = new String(data);
-
-        if(s.equals("\n")) {
-            listener.onReceive(receivedData);
-            receivedData = "";
-        }
-        else{
-            receivedData += s;
+    private void receive(byte[] data, int length) {
+        linkMonitor.onBytesRead(length, System.nanoTime());
+        rxByteCounter.add(length);
+        // the reader thread feeds while onSerialConnect resets on the main thread
+        synchronized (lineFramer) {
+            lineFramer.feed(data, 0, length);
         }
     }
 
+    private void onLine(byte[] line, int offset, int length) {
+        // ping echoes stay here, everything else goes to the car
+        if(!linkMonitor.onLine(line, offset, length, System.nanoTime()))
+            listener.onReceive(line, offset, length);
+    }
+
+    public SerialLinkMonitor getLinkMonitor() {
+        return linkMonitor;
+    }
+
+    public void setLatencyTracer(LatencyTracer latencyTracer) {
+        this.latencyTracer = latencyTracer;
+    }
+
     public void refresh(){
         findDevice();
         if(device!=null){
@@ -284,45 +323,6 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
         }
     }
 
-    private void setupMap(){
-        baseNumber24 = new HashMap<>();
-        baseNumber24.put(0,"0");
-        baseNumber24.put(1,"1");
-        baseNumber24.put(2,"2");
-        baseNumber24.put(3,"3");
-        baseNumber24.put(4,"4");
-        baseNumber24.put(5,"5");
-        baseNumber24.put(6,"6");
-        baseNumber24.put(7,"7");
-        baseNumber24.put(8,"8");
-        baseNumber24.put(9,"9");
-        baseNumber24.put(10,"a");
-        baseNumber24.put(11,"b");
-        baseNumber24.put(12,"c");
-        baseNumber24.put(13,"d");
-        baseNumber24.put(14,"e");
-        baseNumber24.put(15,"f");
-        baseNumber24.put(16,"g");
-        baseNumber24.put(17,"h");
-        baseNumber24.put(18,"i");
-        baseNumber24.put(19,"j");
-        baseNumber24.put(20,"k");
-        baseNumber24.put(21,"l");
-        baseNumber24.put(22,"m");
-        baseNumber24.put(23,"n");
-        baseNumber24.put(24,"o");
-    }
-
-    private String get24BaseNumber(int input){
-        String out="";
-        int upperInput = input+288;
-        Integer firstIndex =  (int)Math.floor(upperInput/24.0f);
-        out +=baseNumber24.get(firstIndex);
-        Integer secondIndex = upperInput-firstIndex*24;
-        out +=baseNumber24.get(secondIndex);
-        return out;
-    }
-
     private void status(String str) {
         debugText = str;
         listener.onDebugTextUpdate(str);
@@ -351,6 +351,10 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
 
     @Override
     public void onSerialConnect() {
+        synchronized (lineFramer) {
+            lineFramer.reset();
+            linkMonitor.reset();
+        }
         appendStatus("connected");
         connected = Connected.True;
     }
@@ -358,17 +362,20 @@ public class SerialCommunicator implements ServiceConnection, SerialListener {
     @Override
     public void onSerialConnectError(Exception e) {
         appendStatus("connection failed: " + e.getMessage());
+        connectErrorCounter.inc();
         disconnect();
     }
 
     @Override
-    public void onSerialRead(byte[] data) {
-        receive(data);
+    public void onSerialRead(byte[] data, int length) {
+        receive(data, length);
     }
 
     @Override
     public void onSerialIoError(Exception e) {
         appendStatus("connection lost: " + e.getMessage());
         errorCount++;
+        ioErrorCounter.inc();
+        linkMonitor.onError();
     }
 }
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.serial;
+
+import com.bit.pixelopolis_car.services.config.SerialLinkInfo;
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Health of the serial link to the controller board.
+ * When pinging is enabled a "p<seq>" line is sent at most every ping interval, the board echoes it
+ * back and the round trip goes into a rolling latency histogram. Only one ping is in flight, a ping
+ * that is not echoed within the timeout counts as lost. Byte throughput and link errors are
+ * counted either way.
+ * Written from the wheel controller and serial reader threads, read from the control thread.
+ */
+public class SerialLinkMonitor {
+    public static final byte PING_CHANNEL = 'p';
+
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final int HISTOGRAM_WINDOW_COUNT = 10;
+    private static final long HISTOGRAM_WINDOW_MILLIS = 1000;
+    private static final long RATE_WINDOW_NANOS = 1000 * NANOS_PER_MILLI;
+    private static final float LOSS_SMOOTHING_FACTOR = 0.1f;
+    private static final int SEQUENCE_MODULO = 1000000;
+    private static final int MAX_SEQUENCE_DIGITS = 6;
+    private static final int NO_PING = -1;
+    private static final long NO_TIME = Long.MIN_VALUE;
+
+    private final SerialLinkInfo serialLinkInfo;
+    private final LatencyHistogram latencyHistogram;
+
+    private int nextSequence = 0;
+    private int pendingSequence = NO_PING;
+    private long pendingSentNanos = NO_TIME;
+    private long lastPingNanos = NO_TIME;
+    private long pingCount = 0;
+    private long lostPingCount = 0;
+    private long unexpectedEchoCount = 0;
+    private float lossRate = 0;
+
+    private long txBytes = 0;
+    private long rxBytes = 0;
+    private long errorCount = 0;
+    private long rateWindowStartNanos = NO_TIME;
+    private long txBytesAtWindowStart = 0;
+    private long rxBytesAtWindowStart = 0;
+    private float txBytesPerSecond = 0;
+    private float rxBytesPerSecond = 0;
+
+    public SerialLinkMonitor(SerialLinkInfo serialLinkInfo) {
+        this.serialLinkInfo = serialLinkInfo;
+        latencyHistogram = new LatencyHistogram(HISTOGRAM_WINDOW_COUNT, HISTOGRAM_WINDOW_MILLIS);
+    }
+
+    public boolean isPingEnable() {
+        return serialLinkInfo.isPingEnable();
+    }
+
+    /**
+     * @return the ping line to write now, or null when pinging is off, a ping is still in flight or
+     * the interval has not passed yet
+     */
+    public synchronized byte[] nextPing(long nowNanos) {
+        if (!serialLinkInfo.isPingEnable())
+            return null;
+        expirePendingPing(nowNanos);
+        if (pendingSequence != NO_PING)
+            return null;
+        if (lastPingNanos != NO_TIME && nowNanos - lastPingNanos < serialLinkInfo.getPingInterval() * NANOS_PER_MILLI)
+            return null;
+
+        pendingSequence = nextSequence;
+        nextSequence = (nextSequence + 1) % SEQUENCE_MODULO;
+        pendingSentNanos = nowNanos;
+        lastPingNanos = nowNanos;
+        pingCount++;
+        return ("p" + pendingSequence + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * @return true when the line was a ping echo and is consumed here
+     */
+    public synchronized boolean onLine(byte[] line, int offset, int length, long nowNanos) {
+        if (!serialLinkInfo.isPingEnable() || length == 0 || line[offset] != PING_CHANNEL)
+            return false;
+
+        int sequence = parseSequence(line, offset + 1, length - 1);
+        if (sequence == NO_PING) {
+            errorCount++;
+        } else if (sequence == pendingSequence) {
+            latencyHistogram.record(nowNanos - pendingSentNanos, nowNanos);
+            lossRate -= LOSS_SMOOTHING_FACTOR * lossRate;
+            pendingSequence = NO_PING;
+        } else {
+            // echo of a ping that already timed out
+            unexpectedEchoCount++;
+        }
+        return true;
+    }
+
+    public synchronized void onBytesWritten(int count, long nowNanos) {
+        txBytes += count;
+        updateRates(nowNanos);
+    }
+
+    public synchronized void onBytesRead(int count, long nowNanos) {
+        rxBytes += count;
+        updateRates(nowNanos);
+    }
+
+    public synchronized void onError() {
+        errorCount++;
+    }
+
+    public synchronized void reset() {
+        pendingSequence = NO_PING;
+        lastPingNanos = NO_TIME;
+        rateWindowStartNanos = NO_TIME;
+        lossRate = 0;
+        txBytesPerSecond = 0;
+        rxBytesPerSecond = 0;
+        latencyHistogram.reset();
+    }
+
+    public float getLatencyMillis(double percentile, long nowNanos) {
+        return latencyHistogram.getPercentileMillis(percentile, nowNanos);
+    }
+
+    public synchronized float getLossRate(long nowNanos) {
+        expirePendingPing(nowNanos);
+        return lossRate;
+    }
+
+    public synchronized float getTxBytesPerSecond(long nowNanos) {
+        updateRates(nowNanos);
+        return txBytesPerSecond;
+    }
+
+    public synchronized float getRxBytesPerSecond(long nowNanos) {
+        updateRates(nowNanos);
+        return rxBytesPerSecond;
+    }
+
+    public synchronized long getPingCount() {
+        return pingCount;
+    }
+
+    public synchronized long getLostPingCount() {
+        return lostPingCount;
+    }
+
+    public synchronized long getUnexpectedEchoCount() {
+        return unexpectedEchoCount;
+    }
+
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized boolean isDegraded(long nowNanos) {
+        if (!serialLinkInfo.isPingEnable())
+            return false;
+        long degradedNanos = serialLinkInfo.getDegradedLatency() * NANOS_PER_MILLI;
+        // a ping that is already late counts before its echo arrives
+        if (pendingSequence != NO_PING && nowNanos - pendingSentNanos > degradedNanos)
+            return true;
+        if (getLossRate(nowNanos) > serialLinkInfo.getDegradedLossRate())
+            return true;
+        return getLatencyMillis(95, nowNanos) > serialLinkInfo.getDegradedLatency();
+    }
+
+    public float getSpeedScale(long nowNanos) {
+        if (!isDegraded(nowNanos))
+            return 1.0f;
+        double scale = serialLinkInfo.getDegradedSpeedScale();
+        if (scale <= 0 || scale > 1)
+            return 1.0f;
+        return (float) scale;
+    }
+
+    public String getSummary(long nowNanos) {
+        String summary = String.format("link tx %.0f B/s rx %.0f B/s errors %d",
+                getTxBytesPerSecond(nowNanos), getRxBytesPerSecond(nowNanos), getErrorCount());
+        if (serialLinkInfo.isPingEnable()) {
+            summary += String.format(" rtt p50 %.1f p95 %.1f ms loss %.0f%%%s",
+                    getLatencyMillis(50, nowNanos), getLatencyMillis(95, nowNanos),
+                    getLossRate(nowNanos) * 100, isDegraded(nowNanos) ? " DEGRADED" : "");
+        }
+        return summary;
+    }
+
+    private void expirePendingPing(long nowNanos) {
+        if (pendingSequence == NO_PING)
+            return;
+        if (nowNanos - pendingSentNanos <= serialLinkInfo.getPingTimeout() * NANOS_PER_MILLI)
+            return;
+        lostPingCount++;
+        lossRate += LOSS_SMOOTHING_FACTOR * (1 - lossRate);
+        pendingSequence = NO_PING;
+    }
+
+    private void updateRates(long nowNanos) {
+        if (rateWindowStartNanos == NO_TIME) {
+            rateWindowStartNanos = nowNanos;
+            txBytesAtWindowStart = txBytes;
+            rxBytesAtWindowStart = rxBytes;
+            return;
+        }
+        long elapsed = nowNanos - rateWindowStartNanos;
+        if (elapsed < RATE_WINDOW_NANOS)
+            return;
+        txBytesPerSecond = (txBytes - txBytesAtWindowStart) * 1e9f / elapsed;
+        rxBytesPerSecond = (rxBytes - rxBytesAtWindowStart) * 1e9f / elapsed;
+        rateWindowStartNanos = nowNanos;
+        txBytesAtWindowStart = txBytes;
+        rxBytesAtWindowStart = rxBytes;
+    }
+
+    private static int parseSequence(byte[] data, int offset, int length) {
+        if (length <= 0 || length > MAX_SEQUENCE_DIGITS)
+            return NO_PING;
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                return NO_PING;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -27,6 +27,6 @@ package com.bit.pixelopolis_car.services.serial;
 public interface SerialListener {
     void onSerialConnect      ();
     void onSerialConnectError (Exception e);
-    void onSerialRead         (byte[] data);
+    void onSerialRead         (byte[] data, int length);
     void onSerialIoError      (Exception e);
 }
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.serial;
+
+/**
+ * Bounded byte ring between the USB reader thread (single producer) and the serial consumer thread
+ * (single consumer). The producer never blocks: when the ring is full the oldest bytes are
+ * overwritten and counted. The consumer takes everything that is buffered in one batch.
+ */
+class SerialRingBuffer {
+    private final byte[] buffer;
+    private int head = 0;
+    private int size = 0;
+    private long droppedBytes = 0;
+
+    SerialRingBuffer(int capacity) {
+        buffer = new byte[capacity];
+    }
+
+    synchronized void write(byte[] data, int offset, int count) {
+        if (count > buffer.length) {
+            // only the newest bytes fit
+            droppedBytes += count - buffer.length;
+            offset += count - buffer.length;
+            count = buffer.length;
+        }
+        int overflow = size + count - buffer.length;
+        if (overflow > 0) {
+            head = (head + overflow) % buffer.length;
+            size -= overflow;
+            droppedBytes += overflow;
+        }
+        int tail = (head + size) % buffer.length;
+        int firstPart = Math.min(count, buffer.length - tail);
+        System.arraycopy(data, offset, buffer, tail, firstPart);
+        System.arraycopy(data, offset + firstPart, buffer, 0, count - firstPart);
+        size += count;
+        notifyAll();
+    }
+
+    /**
+     * Waits up to timeoutMillis for data, then moves as much as fits into target.
+     * @return number of bytes copied, 0 on timeout
+     */
+    synchronized int take(byte[] target, long timeoutMillis) throws InterruptedException {
+        if (size == 0)
+            wait(timeoutMillis);
+        int count = Math.min(size, target.length);
+        int firstPart = Math.min(count, buffer.length - head);
+        System.arraycopy(buffer, head, target, 0, firstPart);
+        System.arraycopy(buffer, 0, target, firstPart, count - firstPart);
+        head = (head + count) % buffer.length;
+        size -= count;
+        return count;
+    }
+
+    synchronized void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    synchronized long getDroppedBytes() {
+        return droppedBytes;
+    }
+}
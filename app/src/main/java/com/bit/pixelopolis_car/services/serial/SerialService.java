@@ -42,12 +42,15 @@ import androidx.core.app.NotificationCompat;
 
 import com.bit.pixelopolis_car.R;
 
-import java.util.LinkedList;
-import java.util.Queue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * create notification and queue serial data while activity is not in the foreground
  * use listener chain: SerialSocket -> SerialService -> UI fragment
+ * read data is buffered in a bounded ring and delivered in batches from a background reader thread,
+ * connect and error events go through the main looper
  */
 public class SerialService extends Service implements SerialListener {
 
@@ -55,22 +58,29 @@ public class SerialService extends Service implements SerialListener {
         public SerialService getService() { return SerialService.this; }
     }
 
-    private enum QueueType {Connect, ConnectError, Read, IoError}
+    private enum QueueType {Connect, ConnectError, IoError}
 
     private class QueueItem {
         QueueType type;
-        byte[] data;
         Exception e;
 
-        QueueItem(QueueType type, byte[] data, Exception e) { this.type=type; this.data=data; this.e=e; }
+        QueueItem(QueueType type, Exception e) { this.type=type; this.e=e; }
     }
 
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final int MAX_QUEUED_EVENTS = 16;
+    private static final long READ_WAIT_MILLIS = 100;
+
     private final Handler mainLooper;
     private final IBinder binder;
-    private final Queue<QueueItem> queue1, queue2;
+    private final ArrayDeque<QueueItem> queue;
+    private final SerialRingBuffer readBuffer;
+    private final byte[] readBatch;
+    private Thread readerThread;
+    private volatile boolean isReaderRunning;
 
-    private SerialListener listener;
-    private boolean connected;
+    private volatile SerialListener listener;
+    private volatile boolean connected;
     private String notificationMsg;
 
     /**
@@ -79,14 +89,16 @@ public class SerialService extends Service implements SerialListener {
     public SerialService() {
         mainLooper = new Handler(Looper.getMainLooper());
         binder = new SerialBinder();
-        queue1 = new LinkedList<>();
-        queue2 = new LinkedList<>();
+        queue = new ArrayDeque<>(MAX_QUEUED_EVENTS);
+        readBuffer = new SerialRingBuffer(READ_BUFFER_SIZE);
+        readBatch = new byte[READ_BUFFER_SIZE];
     }
 
     @Override
     public void onDestroy() {
         cancelNotification();
         disconnect();
+        stopReader();
         super.onDestroy();
     }
 
@@ -100,9 +112,14 @@ public class SerialService extends Service implements SerialListener {
      * Api
      */
     public void connect(SerialListener listener, String notificationMsg) {
-        this.listener = listener;
+        readBuffer.clear();
+        synchronized (this) {
+            this.listener = listener;
+            notifyAll();
+        }
         connected = true;
         this.notificationMsg = notificationMsg;
+        startReader();
         listener.onSerialConnect();
     }
 
@@ -110,48 +127,90 @@ public class SerialService extends Service implements SerialListener {
         listener = null;
         connected = false;
         notificationMsg = null;
+        readBuffer.clear();
+    }
+
+    public long getDroppedReadBytes() {
+        return readBuffer.getDroppedBytes();
     }
 
     public void attach(SerialListener listener) {
         if(Looper.getMainLooper().getThread() != Thread.currentThread())
             throw new IllegalArgumentException("not in main thread");
         cancelNotification();
-        // use synchronized() to prevent new items in queue2
-        // new items will not be added to queue1 because mainLooper.post and attach() run in main thread
-        if(connected) {
-            synchronized (this) {
+        // use synchronized() to prevent new items in queue while it is copied
+        // buffered read data is picked up by the reader thread once it is notified
+        List<QueueItem> items;
+        synchronized (this) {
+            if(connected) {
                 this.listener = listener;
+                notifyAll();
             }
+            items = new ArrayList<>(queue);
+            queue.clear();
         }
-        for(QueueItem item : queue1) {
-            switch(item.type) {
-                case Connect:       listener.onSerialConnect      (); break;
-                case ConnectError:  listener.onSerialConnectError (item.e); break;
-                case Read:          listener.onSerialRead         (item.data); break;
-                case IoError:       listener.onSerialIoError      (item.e); break;
-            }
-        }
-        for(QueueItem item : queue2) {
+        for(QueueItem item : items) {
             switch(item.type) {
                 case Connect:       listener.onSerialConnect      (); break;
                 case ConnectError:  listener.onSerialConnectError (item.e); break;
-                case Read:          listener.onSerialRead         (item.data); break;
                 case IoError:       listener.onSerialIoError      (item.e); break;
             }
         }
-        queue1.clear();
-        queue2.clear();
     }
 
     public void detach() {
         if(connected)
             createNotification();
-        // items already in event queue (posted before detach() to mainLooper) will end up in queue1
-        // items occurring later, will be moved directly to queue2
+        // items already in event queue (posted before detach() to mainLooper) and items occurring later
+        // both end up in queue, read data stays in the ring buffer (oldest bytes dropped when full)
         // detach() and mainLooper.post run in the main thread, so all items are caught
         listener = null;
     }
 
+    private void enqueue(QueueItem item) {
+        synchronized (this) {
+            if(queue.size() >= MAX_QUEUED_EVENTS)
+                queue.poll();
+            queue.add(item);
+        }
+    }
+
+    private void startReader() {
+        if(readerThread != null)
+            return;
+        isReaderRunning = true;
+        readerThread = new Thread(this::readerRun, "SerialServiceReader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+    }
+
+    private void stopReader() {
+        isReaderRunning = false;
+        if(readerThread != null) {
+            readerThread.interrupt();
+            readerThread = null;
+        }
+    }
+
+    private void readerRun() {
+        try {
+            while (isReaderRunning) {
+                SerialListener target;
+                synchronized (this) {
+                    while (isReaderRunning && listener == null)
+                        wait();
+                    target = listener;
+                }
+                if(target == null)
+                    continue;
+                int length = readBuffer.take(readBatch, READ_WAIT_MILLIS);
+                if(length > 0)
+                    target.onSerialRead(readBatch, length);
+            }
+        } catch (InterruptedException ignored) {
+        }
+    }
+
     private void createNotification() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
             NotificationChannel nc = new NotificationChannel(Constants.NOTIFICATION_CHANNEL, "Background service", NotificationManager.IMPORTANCE_LOW);
@@ -196,11 +255,11 @@ public class SerialService extends Service implements SerialListener {
                         if (listener != null) {
                             listener.onSerialConnect();
                         } else {
-                            queue1.add(new QueueItem(QueueType.Connect, null, null));
+                            enqueue(new QueueItem(QueueType.Connect, null));
                         }
                     });
                 } else {
-                    queue2.add(new QueueItem(QueueType.Connect, null, null));
+                    enqueue(new QueueItem(QueueType.Connect, null));
                 }
             }
         }
@@ -214,13 +273,13 @@ public class SerialService extends Service implements SerialListener {
                         if (listener != null) {
                             listener.onSerialConnectError(e);
                         } else {
-                            queue1.add(new QueueItem(QueueType.ConnectError, null, e));
+                            enqueue(new QueueItem(QueueType.ConnectError, e));
                             cancelNotification();
                             disconnect();
                         }
                     });
                 } else {
-                    queue2.add(new QueueItem(QueueType.ConnectError, null, e));
+                    enqueue(new QueueItem(QueueType.ConnectError, e));
                     cancelNotification();
                     disconnect();
                 }
@@ -228,21 +287,9 @@ public class SerialService extends Service implements SerialListener {
         }
     }
 
-    public void onSerialRead(byte[] data) {
+    public void onSerialRead(byte[] data, int length) {
         if(connected) {
-            synchronized (this) {
-                if (listener != null) {
-                    mainLooper.post(() -> {
-                        if (listener != null) {
-                            listener.onSerialRead(data);
-                        } else {
-                            queue1.add(new QueueItem(QueueType.Read, data, null));
-                        }
-                    });
-                } else {
-                    queue2.add(new QueueItem(QueueType.Read, data, null));
-                }
-            }
+            readBuffer.write(data, 0, length);
         }
     }
 
@@ -254,13 +301,13 @@ public class SerialService extends Service implements SerialListener {
                         if (listener != null) {
                             listener.onSerialIoError(e);
                         } else {
-                            queue1.add(new QueueItem(QueueType.IoError, null, e));
+                            enqueue(new QueueItem(QueueType.IoError, e));
                             cancelNotification();
                             disconnect();
                         }
                     });
                 } else {
-                    queue2.add(new QueueItem(QueueType.IoError, null, e));
+                    enqueue(new QueueItem(QueueType.IoError, e));
                     cancelNotification();
                     disconnect();
                 }
@@ -114,7 +114,7 @@ public class SerialSocket implements SerialInputOutputManager.Listener {
     @Override
     public void onNewData(byte[] data) {
         if(listener != null)
-            listener.onSerialRead(data);
+            listener.onSerialRead(data, data.length);
     }
 
     @Override
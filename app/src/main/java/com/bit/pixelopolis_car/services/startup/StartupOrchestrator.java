@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.startup;
+
+import android.content.res.AssetManager;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.bit.pixelopolis_car.services.carvision.LaneDetector;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+import com.bit.pixelopolis_car.services.carvision.VisionModels;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+import com.bit.pixelopolis_car.services.metrics.MetricsRegistry;
+
+import org.opencv.android.OpenCVLoader;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Brings the car up. OpenCV is loaded once for the whole app, then the lane and object models are
+ * built and warmed up in parallel, see {@link VisionModels}. SetupConfigActivity starts this while the
+ * station handshake runs, CarVision takes the models and the controllers wait for them before their
+ * first tick. Every phase is exported as startup_seconds, counted from the start of the process, the
+ * last one being the first steering command.
+ */
+public class StartupOrchestrator {
+    private static final StartupOrchestrator ourInstance = new StartupOrchestrator();
+
+    public static StartupOrchestrator getInstance() {
+        return ourInstance;
+    }
+
+    private static final Logger LOG = LogService.getInstance().getLogger("Startup");
+
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "Startup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean hasSteered = new AtomicBoolean(false);
+    private Boolean isOpenCvLoaded = null;
+    // built ahead for the next CarVision
+    private CompletableFuture<VisionModels> pendingModels = null;
+
+    // every OpenCV user calls this, only the first call loads it
+    public synchronized boolean loadOpenCv() {
+        if (isOpenCvLoaded == null) {
+            long start = System.nanoTime();
+            isOpenCvLoaded = OpenCVLoader.initDebug();
+            if (isOpenCvLoaded)
+                LOG.i("OpenCV loaded in %d ms", (System.nanoTime() - start) / 1000000L);
+            else
+                LOG.e("Unable to load OpenCV");
+            markPhase("opencv");
+        }
+        return isOpenCvLoaded;
+    }
+
+    // starts building the models unless a set is already on its way
+    public synchronized void prewarm(AssetManager assetManager) {
+        if (pendingModels == null)
+            pendingModels = buildModels(assetManager);
+    }
+
+    // the interpreters are not thread safe, so every CarVision gets its own set and the next one is built anew
+    public synchronized CompletableFuture<VisionModels> takeModels(AssetManager assetManager) {
+        prewarm(assetManager);
+        CompletableFuture<VisionModels> models = pendingModels;
+        pendingModels = null;
+        return models;
+    }
+
+    // called with every lane keeping command, the first one ends the cold start
+    public void onSteeringCommand() {
+        if (hasSteered.get() || !hasSteered.compareAndSet(false, true))
+            return;
+        double seconds = markPhase("first_steering");
+        LOG.i("First steering command %.0f ms after process start", seconds * 1000);
+    }
+
+    private CompletableFuture<VisionModels> buildModels(AssetManager assetManager) {
+        CompletableFuture<Void> openCv = CompletableFuture.runAsync(this::loadOpenCv, executor);
+        // a model that broke is left out like one that failed to load, the other one is still used
+        CompletableFuture<LaneDetector> laneDetector = openCv.thenApplyAsync(ignored -> buildLaneDetector(assetManager), executor)
+                .handle((lane, e) -> e == null ? lane : failed("lane detector", e));
+        CompletableFuture<ObjectDetector> objectDetector = openCv.thenApplyAsync(ignored -> buildObjectDetector(assetManager), executor)
+                .handle((object, e) -> e == null ? object : failed("object detector", e));
+        return laneDetector.thenCombine(objectDetector, (lane, object) -> {
+            markPhase("models_ready");
+            return new VisionModels(lane, object);
+        });
+    }
+
+    private static <T> T failed(String model, Throwable e) {
+        LOG.e("Building the " + model + " failed", e);
+        return null;
+    }
+
+    private LaneDetector buildLaneDetector(AssetManager assetManager) {
+        long start = System.nanoTime();
+        try {
+            LaneDetector laneDetector = VisionModels.createLaneDetector(assetManager);
+            LOG.i("Lane detector built and warmed up in %d ms", (System.nanoTime() - start) / 1000000L);
+            markPhase("lane_model");
+            return laneDetector;
+        } catch (IOException e) {
+            LOG.e("Failed to initialize LaneDetector.", e);
+            return null;
+        }
+    }
+
+    private ObjectDetector buildObjectDetector(AssetManager assetManager) {
+        long start = System.nanoTime();
+        try {
+            ObjectDetector objectDetector = VisionModels.createObjectDetector(assetManager);
+            LOG.i("Object detector built and warmed up in %d ms", (System.nanoTime() - start) / 1000000L);
+            markPhase("object_model");
+            return objectDetector;
+        } catch (IOException e) {
+            LOG.e("Failed to initialize the object detector.", e);
+            return null;
+        }
+    }
+
+    // seconds since the process started, kept as the phase's gauge
+    private static double markPhase(String phase) {
+        double seconds = (SystemClock.elapsedRealtime() - Process.getStartElapsedRealtime()) / 1000.0;
+        MetricsRegistry.getInstance().gauge("startup_seconds", "Time from process start to the end of a startup phase",
+                "phase", phase).set(seconds);
+        return seconds;
+    }
+}
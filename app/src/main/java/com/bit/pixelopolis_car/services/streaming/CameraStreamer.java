@@ -17,21 +17,29 @@
 package com.bit.pixelopolis_car.services.streaming;
 
 import com.bit.pixelopolis_car.services.camera.PixelCamera;
+import com.bit.pixelopolis_car.services.carvision.CarVision;
+import com.bit.pixelopolis_car.services.config.StreamingInfo;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
 
-import android.graphics.Bitmap;
+import android.content.res.AssetManager;
 import android.graphics.ImageFormat;
 import android.graphics.Rect;
 import android.os.Handler;
 import android.os.HandlerThread;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
 import android.os.SystemClock;
-import android.util.Log;
 
-import org.opencv.android.Utils;
 import org.opencv.core.Mat;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
 
 public class CameraStreamer {
 
@@ -64,22 +72,36 @@ public class CameraStreamer {
 
     private static final long OPEN_CAMERA_POLLING_INTERVAL_MS = 1000;
     private static final String TAG = CameraStreamer.class.getSimpleName();
+    private static final String DELTA_VIEWER_ASSET = "delta_viewer.html";
+    private static final Logger LOG = LogService.getInstance().getLogger(TAG);
     private long lastTimestamp = Long.MIN_VALUE;
+    private volatile long lastSentTimestamp = Long.MIN_VALUE;
+    private final FrameMailbox frameMailbox = new FrameMailbox();
     private long numFrames = 0;
     private final PixelCamera.StreamFrameCallback streamFrameCallback = (Mat frame, PixelCamera camera) -> {
-        if(this.streaming) {
-            long timestamp = SystemClock.elapsedRealtime();
-            Message message = CameraStreamer.this.workHandler.obtainMessage();
-            message.what = 1;
-            message.obj = new Object[]{frame, timestamp};
-            message.sendToTarget();
+        if(!CameraStreamer.this.streaming || !CameraStreamer.this.httpStreamer.hasClients()) {
+            return;
+        }
+        long timestamp = SystemClock.elapsedRealtime();
+        if (CameraStreamer.this.lastSentTimestamp != Long.MIN_VALUE && timestamp - CameraStreamer.this.lastSentTimestamp < CameraStreamer.this.qualityController.getFrameIntervalMillis()) {
+            return;
+        }
+        // only wake the encoder when it has nothing queued, a waiting frame is just replaced
+        if (CameraStreamer.this.frameMailbox.put(frame, timestamp)) {
+            CameraStreamer.this.workHandler.obtainMessage(1).sendToTarget();
         }
     };
 
+    // milliseconds per sent frame
     private final MovingAverage averageSpf = new MovingAverage(50);
     private PixelCamera pixelCamera = null;
-    private BufferStream outputStream = null;
-    private final int quality;
+    private final JpegEncoder jpegEncoder = new JpegEncoder();
+    private final TileDeltaEncoder deltaEncoder;
+    private final byte[] deltaViewerPage;
+    private final StreamQualityController qualityController;
+    private final CarVision carVision;
+    // replayed on every HttpStreamer this streamer starts
+    private final List<Consumer<HttpStreamer>> endpoints = new ArrayList<>();
     private final Object lock = new Object();
     private Looper looper = null;
     private HttpStreamer httpStreamer = null;
@@ -90,8 +112,7 @@ public class CameraStreamer {
     private Rect previewRect = null;
     private int previewWidth = Integer.MIN_VALUE;
     private boolean running = false;
-    private boolean streaming = false;
-    private Bitmap bmp;
+    private volatile boolean streaming = false;
     public Handler workHandler = null;
 
     private final class WorkHandler extends Handler {
@@ -105,8 +126,9 @@ public class CameraStreamer {
                     CameraStreamer.this.tryStartStreaming();
                     return;
                 case 1:
-                    Object[] args = (Object[]) message.obj;
-                    CameraStreamer.this.sendPreviewFrame((Mat) args[0], ((Long) args[1]).longValue());
+                    if (CameraStreamer.this.frameMailbox.take()) {
+                        CameraStreamer.this.sendPreviewFrame(CameraStreamer.this.frameMailbox.getFrame(), CameraStreamer.this.frameMailbox.getTimestamp());
+                    }
                     return;
                 default:
                     throw new IllegalArgumentException("cannot handle message");
@@ -114,13 +136,39 @@ public class CameraStreamer {
         }
     }
 
-    public CameraStreamer(int port, int jpegQuality, PixelCamera camera) {
+    public CameraStreamer(int port, StreamingInfo streamingInfo, PixelCamera camera, CarVision carVision, AssetManager assets) {
         if (camera == null) {
             throw new IllegalArgumentException("camera must not be null");
         }
+        if (streamingInfo == null) {
+            streamingInfo = new StreamingInfo();
+        }
         this.port = port;
-        this.quality = jpegQuality;
+        this.qualityController = new StreamQualityController(streamingInfo);
+        this.deltaEncoder = new TileDeltaEncoder(this.jpegEncoder, streamingInfo.getDeltaTileThreshold(), streamingInfo.getKeyframeInterval());
+        this.deltaViewerPage = streamingInfo.isDeltaEnable() ? loadAsset(assets, DELTA_VIEWER_ASSET) : null;
         this.pixelCamera = camera;
+        this.carVision = carVision;
+    }
+
+    // serves what endpoint returns at path next to the stream, add endpoints before start
+    public void addEndpoint(String path, String contentType, HttpEndpoint endpoint) {
+        synchronized (this.lock) {
+            if (this.running) {
+                throw new IllegalStateException("endpoints must be added before start");
+            }
+            this.endpoints.add(streamer -> streamer.addEndpoint(path, contentType, endpoint));
+        }
+    }
+
+    // serves a large document from the download thread, add downloads before start
+    public void addDownload(String path, String contentType, HttpDownload download) {
+        synchronized (this.lock) {
+            if (this.running) {
+                throw new IllegalStateException("downloads must be added before start");
+            }
+            this.endpoints.add(streamer -> streamer.addDownload(path, contentType, download));
+        }
     }
 
     public void start() {
@@ -130,7 +178,8 @@ public class CameraStreamer {
             }
             this.running = true;
         }
-        HandlerThread worker = new HandlerThread(TAG, -1);
+        // encoding must not take the CPU away from the vision thread
+        HandlerThread worker = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
         worker.setDaemon(true);
         worker.start();
         this.looper = worker.getLooper();
@@ -160,14 +209,14 @@ public class CameraStreamer {
                 break;
             } catch (RuntimeException openCameraFailed) {
                 try {
-                    Log.d(TAG, "Open camera failed, retying in 1000ms", openCameraFailed);
+                    LOG.d("Open camera failed, retrying in %d ms: %s", OPEN_CAMERA_POLLING_INTERVAL_MS, openCameraFailed);
                     Thread.sleep(OPEN_CAMERA_POLLING_INTERVAL_MS);
                 } catch (Exception startPreviewFailed) {
-                    Log.w(TAG, "Failed to start camera preview", startPreviewFailed);
+                    LOG.w("Failed to start camera preview", startPreviewFailed);
                     return;
                 }
             } catch (IOException e) {
-                e.printStackTrace();
+                LOG.w("Failed to start streaming", e);
             }
         }
     }
@@ -175,14 +224,15 @@ public class CameraStreamer {
     private void startStreamingIfRunning() throws IOException {
 
         this.previewFormat = ImageFormat.FLEX_RGB_888;
-        this.previewWidth = pixelCamera.getStreamingFrame().width();
-        this.previewHeight = pixelCamera.getStreamingFrame().height();
+        this.previewWidth = pixelCamera.getCameraFrame().width();
+        this.previewHeight = pixelCamera.getCameraFrame().height();
         this.previewBufferSize = ((((this.previewWidth * this.previewHeight) * (ImageFormat.getBitsPerPixel(this.previewFormat) / 8)) * 3) / 2) + 1;
         this.previewRect = new Rect(0, 0, this.previewWidth, this.previewHeight);
-        this.bmp = Bitmap.createBitmap(this.previewWidth,this.previewHeight, Bitmap.Config.ARGB_8888);
         this.pixelCamera.setStreamFrameCallback(this.streamFrameCallback);
-        this.outputStream = new BufferStream(this.previewBufferSize);
-        HttpStreamer streamer = new HttpStreamer(this.port, this.previewBufferSize);
+        HttpStreamer streamer = new HttpStreamer(this.port, this.previewBufferSize, this.deltaViewerPage);
+        for (Consumer<HttpStreamer> endpoint : this.endpoints) {
+            endpoint.accept(streamer);
+        }
         streamer.start();
         synchronized (this.lock) {
             if (!this.running) {
@@ -198,18 +248,100 @@ public class CameraStreamer {
     }
 
     public void sendPreviewFrame(Mat img, long timestamp) {
-        long timestampSeconds = timestamp / OPEN_CAMERA_POLLING_INTERVAL_MS;
+        // the encode is shared by all viewers, skip it while nobody watches
+        boolean hasJpegClients = this.httpStreamer.hasJpegClients();
+        boolean hasDeltaClients = this.httpStreamer.hasDeltaClients();
+        if (!hasJpegClients && !hasDeltaClients) {
+            return;
+        }
+        this.lastSentTimestamp = timestamp;
+
+        long encodeStart = SystemClock.elapsedRealtimeNanos();
+        // the mailbox frame belongs to this thread, so the overlay goes straight on it
+        this.pixelCamera.getCameraOverlayDrawer().drawOn(img);
+        int quality = this.qualityController.getQuality();
+        Mat bgr = this.jpegEncoder.toBgr(img, this.qualityController.getDownscale());
+        if (hasJpegClients) {
+            sendJpeg(bgr, quality, timestamp);
+        }
+        if (hasDeltaClients) {
+            sendDelta(bgr, quality, timestamp);
+        }
+        float encodeMillis = (SystemClock.elapsedRealtimeNanos() - encodeStart) / 1e6f;
+
+        float visionMillis = this.carVision != null ? this.carVision.getProcessingMillis() : 0;
+        this.qualityController.update(encodeMillis, this.httpStreamer.getSendLatencyMillis(), this.httpStreamer.getBacklogFrames(), visionMillis);
+        updateFrameRate(timestamp);
+    }
+
+    private void sendJpeg(Mat bgr, int quality, long timestamp) {
+        // encode straight into a pooled frame, null while every frame is still being sent
+        StreamFrame frame = this.httpStreamer.acquireFrame();
+        if (frame == null) {
+            return;
+        }
+        int length = this.jpegEncoder.encodeBgr(bgr, quality, frame.getData());
+        if (length < 0 && frame.ensureCapacity(this.jpegEncoder.getEncodedLength())) {
+            // larger than any JPEG so far, the frames grow to it
+            length = this.jpegEncoder.putEncoded(frame.getData());
+        }
+        if (length >= 0) {
+            this.httpStreamer.publish(frame, length, timestamp);
+        } else {
+            frame.release();
+        }
+    }
+
+    private void sendDelta(Mat bgr, int quality, long timestamp) {
+        if (this.httpStreamer.takeKeyframeRequest()) {
+            this.deltaEncoder.requestKeyframe();
+        }
+        // a skipped frame leaves the reference alone, the next delta still covers it
+        StreamFrame frame = this.httpStreamer.acquireFrame();
+        if (frame == null) {
+            return;
+        }
+        int length = this.deltaEncoder.encode(bgr, quality, frame.getData());
+        if (length > 0) {
+            this.httpStreamer.publishDelta(frame, length, timestamp, this.deltaEncoder.isLastKeyframe());
+        } else {
+            if (length < 0) {
+                // did not fit, the keyframe that follows gets frames twice the size
+                frame.ensureCapacity(frame.getData().capacity() * 2);
+            }
+            frame.release();
+        }
+    }
+
+    private static byte[] loadAsset(AssetManager assets, String name) {
+        if (assets == null) {
+            return null;
+        }
+        try (InputStream in = assets.open(name)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } catch (IOException e) {
+            LOG.w("No delta viewer page, delta streaming is off", e);
+            return null;
+        }
+    }
+
+    private void updateFrameRate(long timestamp) {
         this.numFrames++;
         if (this.lastTimestamp != Long.MIN_VALUE) {
-            this.averageSpf.update(timestampSeconds - this.lastTimestamp);
-            if (this.numFrames % 10 == 9) {
-                Log.d(TAG, "FramePerSecond= " + (1.0d / this.averageSpf.getAverage()));
+            this.averageSpf.update(timestamp - this.lastTimestamp);
+            if (this.numFrames % 10 == 9 && LOG.isEnabled(Logger.DEBUG)) {
+                LOG.d("FramePerSecond= %.1f quality= %d downscale= %d latency= %.1f dropped= %d",
+                        1000.0d / this.averageSpf.getAverage(), this.qualityController.getQuality(),
+                        this.qualityController.getDownscale(), this.qualityController.getLatencyMillis(),
+                        this.frameMailbox.getDroppedFrameCount());
             }
         }
-        this.lastTimestamp = timestampSeconds;
-        Utils.matToBitmap(img, bmp);
-        bmp.compress(Bitmap.CompressFormat.JPEG, this.quality,this.outputStream);
-        this.httpStreamer.streamJpeg(this.outputStream.getBuffer(), this.outputStream.getLength(), timestamp);
-        this.outputStream.seek(0);
+        this.lastTimestamp = timestamp;
     }
 }
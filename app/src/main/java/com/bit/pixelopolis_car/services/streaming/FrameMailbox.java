@@ -0,0 +1,88 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import org.opencv.core.Mat;
+
+/**
+ * Single slot, latest frame wins hand-over from the camera thread to the stream encoder.
+ * Three Mats rotate between the camera (copying in), the slot (newest frame) and the encoder
+ * (encoding), so each side owns the frame it works on and nothing is allocated once the Mats have
+ * their size. A frame still in the slot when the next one arrives is dropped and counted, so the
+ * encoder can never fall behind by more than one frame.
+ */
+public class FrameMailbox {
+
+    private static final class Slot {
+        final Mat frame = new Mat();
+        long timestamp;
+    }
+
+    private Slot writeSlot = new Slot();
+    private Slot readySlot = new Slot();
+    private Slot readSlot = new Slot();
+    private boolean isReadyFull = false;
+    private long droppedFrames = 0;
+
+    /**
+     * Copies the frame in, the caller may reuse its Mat as soon as this returns. Camera thread only.
+     * @return true when the slot was empty, the encoder has to be woken up
+     */
+    public boolean put(Mat frame, long timestamp) {
+        // writeSlot belongs to the camera thread, copy outside the lock
+        frame.copyTo(writeSlot.frame);
+        writeSlot.timestamp = timestamp;
+        synchronized (this) {
+            Slot slot = readySlot;
+            readySlot = writeSlot;
+            writeSlot = slot;
+            boolean wasEmpty = !isReadyFull;
+            if (!wasEmpty)
+                droppedFrames++;
+            isReadyFull = true;
+            return wasEmpty;
+        }
+    }
+
+    /**
+     * Moves the newest frame to the encoder side. Encoder thread only.
+     * @return false when there is no new frame
+     */
+    public synchronized boolean take() {
+        if (!isReadyFull)
+            return false;
+        Slot slot = readSlot;
+        readSlot = readySlot;
+        readySlot = slot;
+        isReadyFull = false;
+        return true;
+    }
+
+    // frame taken last, owned by the encoder until the next take()
+    public synchronized Mat getFrame() {
+        return readSlot.frame;
+    }
+
+    public synchronized long getTimestamp() {
+        return readSlot.timestamp;
+    }
+
+    public synchronized long getDroppedFrameCount() {
+        return droppedFrames;
+    }
+}
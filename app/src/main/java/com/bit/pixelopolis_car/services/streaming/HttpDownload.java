@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * A large document served next to the stream, e.g. a recording, see CameraStreamer.addDownload.
+ * Unlike an {@link HttpEndpoint} it is written from the streamer's download thread, so a slow
+ * download never holds up the viewers.
+ */
+public interface HttpDownload {
+    /**
+     * Called on the download thread for every request, one download at a time.
+     * @return the body, or null to answer 404
+     */
+    Body open() throws IOException;
+
+    interface Body extends Closeable {
+        long getLength();
+
+        // writes exactly getLength() bytes to the blocking channel
+        void writeTo(WritableByteChannel out) throws IOException;
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * A document served next to the stream, e.g. diagnostics, see CameraStreamer.addEndpoint.
+ */
+public interface HttpEndpoint {
+    /**
+     * Called on the streamer thread for every request, so it should be quick.
+     * @return the body, which is only read from afterwards, or null to answer 404
+     */
+    ByteBuffer respond() throws IOException;
+}
@@ -14,37 +14,145 @@
  * limitations under the License.
  */
 
+
 package com.bit.pixelopolis_car.services.streaming;
 
-import java.io.DataOutputStream;
+import com.bit.pixelopolis_car.services.logging.LogService;
+import com.bit.pixelopolis_car.services.logging.Logger;
+
+import java.io.EOFException;
 import java.io.IOException;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketTimeoutException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * MJPEG server for up to MAX_CLIENTS viewers on one non-blocking selector thread.
+ * A published frame is shared by reference: each client writes the part header, the JPEG and the
+ * boundary with one gathering write from the frame's direct buffers. A client that is still busy
+ * keeps only the newest waiting frame, older ones are dropped, so slow viewers never hold up the
+ * others or make the streamer allocate.
+ * When a viewer page is given, /delta streams TileDeltaEncoder messages and /delta.html serves the
+ * page that decodes them. Deltas cannot be skipped, a viewer that misses one waits for the next
+ * keyframe and asks the encoder for it.
+ * Endpoints added before start serve small documents on their own paths. Downloads are handed
+ * over to a blocking download thread, one at a time, so the selector keeps serving the viewers.
+ */
 class HttpStreamer {
 
     private static final String BOUNDARY = "--gc0p4Jq0M2Yt08jU534c0p--";
     private static final String BOUNDARY_LINES = "\r\n"+BOUNDARY+"\r\n";
     private static final String HTTP_HEADER = "HTTP/1.0 200 OK\r\nServer: Streamer\r\nConnection: close\r\nMax-Age: 0\r\nExpires: 0\r\nCache-Control: no-store, no-cache, must-revalidate, pre-check=0, post-check=0, max-age=0\r\nPragma: no-cache\r\nAccess-Control-Allow-Origin:*\r\nContent-Type: multipart/x-mixed-replace; boundary="+BOUNDARY+"\r\n\r\n"+BOUNDARY+"\r\n";
+    private static final String DELTA_HTTP_HEADER = "HTTP/1.0 200 OK\r\nServer: Streamer\r\nConnection: close\r\nCache-Control: no-store, no-cache, must-revalidate, max-age=0\r\nPragma: no-cache\r\nAccess-Control-Allow-Origin:*\r\nContent-Type: application/octet-stream\r\n\r\n";
+    private static final String VIEWER_HTTP_HEADER = "HTTP/1.0 200 OK\r\nServer: Streamer\r\nConnection: close\r\nContent-Type: text/html; charset=utf-8\r\nContent-Length: ";
+    private static final String DOCUMENT_HTTP_HEADER = "HTTP/1.0 200 OK\r\nServer: Streamer\r\nConnection: close\r\nCache-Control: no-store, no-cache, must-revalidate, max-age=0\r\nAccess-Control-Allow-Origin:*\r\nContent-Type: ";
+    private static final String NOT_FOUND_RESPONSE = "HTTP/1.0 404 Not Found\r\nServer: Streamer\r\nConnection: close\r\nContent-Length: 0\r\n\r\n";
+    private static final String DELTA_PATH = "/delta";
+    private static final String VIEWER_PATH = "/delta.html";
+    private static final String FAVICON_PATH = "/favicon.ico";
     private static final String TAG = HttpStreamer.class.getSimpleName();
-    private final byte[] bufferA;
-    private final byte[] bufferB;
-    private final Object bufferLock = new Object();
-    private int lengthA = Integer.MIN_VALUE;
-    private int lengthB = Integer.MIN_VALUE;
-    private boolean jpeg = false;
+    private static final int MAX_CLIENTS = 8;
+    // every client can hold the frame it writes and the next one, plus one published and one being encoded for each stream
+    private static final int FRAME_POOL_SIZE = MAX_CLIENTS * 2 + 4;
+    // a typical JPEG of the stream, frames grow when one is larger
+    private static final int INITIAL_FRAME_CAPACITY = 64 * 1024;
+    private static final int SELECT_TIMEOUT_MS = 1000;
+    private static final int BIND_RETRY_INTERVAL_MS = 1000;
+    private static final int REQUEST_BUFFER_SIZE = 1024;
+    // only the request line is parsed, a longer one falls back to the MJPEG stream
+    private static final int REQUEST_LINE_CAPACITY = 256;
+    private static final float SEND_LATENCY_SMOOTHING_FACTOR = 0.2f;
+    private static final ByteBuffer HTTP_HEADER_BUFFER = directBuffer(HTTP_HEADER);
+    private static final ByteBuffer BOUNDARY_BUFFER = directBuffer(BOUNDARY_LINES);
+    private static final ByteBuffer DELTA_HTTP_HEADER_BUFFER = directBuffer(DELTA_HTTP_HEADER);
+    private static final ByteBuffer NOT_FOUND_BUFFER = directBuffer(NOT_FOUND_RESPONSE);
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+    private static final Logger LOG = LogService.getInstance().getLogger("HttpStreamer");
+
+    private enum Route {MJPEG, DELTA, VIEWER, DOCUMENT, DOWNLOAD, NOT_FOUND}
+
+    private static final class Endpoint {
+        final String contentType;
+        // one of the two is set
+        final HttpEndpoint endpoint;
+        final HttpDownload download;
+
+        Endpoint(String contentType, HttpEndpoint endpoint, HttpDownload download) {
+            this.contentType = contentType;
+            this.endpoint = endpoint;
+            this.download = download;
+        }
+    }
+
     private final int port;
+    private final StreamFramePool framePool;
+    private final ByteBuffer viewerResponse;
+    // only changed before start
+    private final Map<String, Endpoint> endpoints = new HashMap<>();
+    private final AtomicReference<StreamFrame> publishedFrame = new AtomicReference<>();
+    private final AtomicReference<StreamFrame> publishedDelta = new AtomicReference<>();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final AtomicBoolean keyframeRequested = new AtomicBoolean(false);
+    // only touched by the encoder thread
+    private long deltaSequence = 0;
+    // only touched by the selector thread
+    private final List<Client> clients = new ArrayList<>();
+    // left the selector on this round, they are handed to the download thread on the next
+    private final List<Client> pendingDownloads = new ArrayList<>();
+    private final ByteBuffer requestBuffer = ByteBuffer.allocate(REQUEST_BUFFER_SIZE);
+    private volatile int clientCount = 0;
+    private volatile int jpegClientCount = 0;
+    private volatile int deltaClientCount = 0;
+    private volatile int backlogFrames = 0;
+    private volatile float sendLatencyMillis = 0;
+    private volatile int localPort = -1;
     private volatile boolean running = false;
-    private boolean streamingBufferA = true;
-    private long timestampA = Long.MIN_VALUE;
-    private long timestampB = Long.MIN_VALUE;
+    private volatile Selector selector = null;
+    private ServerSocketChannel serverChannel = null;
     private Thread worker = null;
+    private ExecutorService downloadExecutor = null;
+
+    HttpStreamer(int port, int maxFrameSize) {
+        this(port, maxFrameSize, null);
+    }
 
-    HttpStreamer(int port, int bufferSize) {
+    /**
+     * @param maxFrameSize most a JPEG or delta message may take
+     * @param deltaViewerPage html served at /delta.html, null turns the delta stream off
+     */
+    HttpStreamer(int port, int maxFrameSize, byte[] deltaViewerPage) {
         this.port = port;
-        this.bufferA = new byte[bufferSize];
-        this.bufferB = new byte[bufferSize];
+        this.framePool = new StreamFramePool(FRAME_POOL_SIZE, INITIAL_FRAME_CAPACITY, maxFrameSize);
+        this.viewerResponse = deltaViewerPage != null ? viewerResponse(deltaViewerPage) : null;
+    }
+
+    void addEndpoint(String path, String contentType, HttpEndpoint endpoint) {
+        if (this.running) {
+            throw new IllegalStateException("endpoints must be added before start");
+        }
+        this.endpoints.put(path, new Endpoint(contentType, endpoint, null));
+    }
+
+    void addDownload(String path, String contentType, HttpDownload download) {
+        if (this.running) {
+            throw new IllegalStateException("downloads must be added before start");
+        }
+        this.endpoints.put(path, new Endpoint(contentType, null, download));
     }
 
     void start() {
@@ -52,7 +160,12 @@ class HttpStreamer {
             throw new IllegalStateException("HttpStreamer is already running");
         }
         this.running = true;
-        this.worker = new Thread(HttpStreamer.this::workerRun);
+        this.downloadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, TAG + " download");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.worker = new Thread(HttpStreamer.this::workerRun, TAG);
         this.worker.start();
     }
 
@@ -61,130 +174,563 @@ class HttpStreamer {
             throw new IllegalStateException("HttpStreamer is already stopped");
         }
         this.running = false;
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
         this.worker.interrupt();
+        // an interrupted blocking write closes its channel
+        this.downloadExecutor.shutdownNow();
     }
 
-    void streamJpeg(byte[] jpeg, int length, long timestamp) {
-        byte[] buffer;
-        synchronized (this.bufferLock) {
-            if (this.streamingBufferA) {
-                buffer = this.bufferB;
-                this.lengthB = length;
-                this.timestampB = timestamp;
-            } else {
-                buffer = this.bufferA;
-                this.lengthA = length;
-                this.timestampA = timestamp;
-            }
-            System.arraycopy(jpeg, 0, buffer, 0, length);
-            this.jpeg = true;
-            this.bufferLock.notify();
+    boolean hasClients() {
+        return this.jpegClientCount > 0 || this.deltaClientCount > 0;
+    }
+
+    boolean hasJpegClients() {
+        return this.jpegClientCount > 0;
+    }
+
+    boolean hasDeltaClients() {
+        return this.deltaClientCount > 0;
+    }
+
+    // open connections, including ones that have not sent their request yet
+    int getClientCount() {
+        return this.clientCount;
+    }
+
+    int getDeltaClientCount() {
+        return this.deltaClientCount;
+    }
+
+    // true once after a delta viewer joined or missed a message, the next delta must be a keyframe
+    boolean takeKeyframeRequest() {
+        return this.keyframeRequested.getAndSet(false);
+    }
+
+    // port actually bound, useful when started on port 0, -1 until bound
+    int getLocalPort() {
+        return this.localPort;
+    }
+
+    long getDroppedFrameCount() {
+        return this.droppedFrames.get();
+    }
+
+    // frames waiting behind the one being written, summed over viewers
+    int getBacklogFrames() {
+        return this.backlogFrames;
+    }
+
+    // smoothed time from publish until a viewer has the whole frame
+    float getSendLatencyMillis() {
+        return this.sendLatencyMillis;
+    }
+
+    int getFreeFrameCount() {
+        return this.framePool.getFreeCount();
+    }
+
+    /**
+     * @return an empty frame to encode into, or null when every pooled frame is still being sent
+     */
+    StreamFrame acquireFrame() {
+        StreamFrame frame = this.framePool.acquire();
+        if (frame == null) {
+            this.droppedFrames.incrementAndGet();
+        }
+        return frame;
+    }
+
+    // hands the encoded frame over to the streamer, the caller must not touch it afterwards
+    void publish(StreamFrame frame, int length, long timestamp) {
+        frame.seal(length, timestamp);
+        StreamFrame replaced = this.publishedFrame.getAndSet(frame);
+        if (replaced != null) {
+            replaced.release();
+            this.droppedFrames.incrementAndGet();
+        }
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    // same as publish for a TileDeltaEncoder message, which goes to the /delta viewers only
+    void publishDelta(StreamFrame frame, int length, long timestamp, boolean isKeyframe) {
+        frame.sealDelta(length, timestamp, this.deltaSequence++, isKeyframe);
+        StreamFrame replaced = this.publishedDelta.getAndSet(frame);
+        if (replaced != null) {
+            // the viewers notice the gap in the sequence and wait for a keyframe
+            replaced.release();
+            this.droppedFrames.incrementAndGet();
+        }
+        Selector selector = this.selector;
+        if (selector != null) {
+            selector.wakeup();
         }
     }
 
     private void workerRun() {
         while (this.running) {
             try {
-                acceptAndStream();
+                if (this.selector == null) {
+                    openChannels();
+                }
+                selectOnce();
             } catch (IOException exceptionWhileStreaming) {
-                System.err.println(exceptionWhileStreaming);
+                LOG.w("Streaming failed, reopening the server socket", exceptionWhileStreaming);
+                closeChannels();
+                try {
+                    Thread.sleep(BIND_RETRY_INTERVAL_MS);
+                } catch (InterruptedException e) {
+                    break;
+                }
             } catch (Throwable throwable) {
-                throwable.printStackTrace();
+                LOG.e("Streaming thread failed", throwable);
             }
         }
+        closeChannels();
     }
 
-    private void acceptAndStream() throws Throwable{
-        byte[] buffer;
-        int length;
-        long timestamp;
-        ServerSocket serverSocket;
-        Socket socket = null;
-        Throwable th;
+    private void openChannels() throws IOException {
+        Selector selector = Selector.open();
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
         try {
-            ServerSocket serverSocket2 = new ServerSocket(this.port);
+            // a restarted streamer must not wait for the old port to leave TIME_WAIT
+            serverChannel.socket().setReuseAddress(true);
+            serverChannel.socket().bind(new InetSocketAddress(this.port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException bindFailed) {
+            serverChannel.close();
+            selector.close();
+            throw bindFailed;
+        }
+        this.serverChannel = serverChannel;
+        this.localPort = serverChannel.socket().getLocalPort();
+        this.selector = selector;
+    }
+
+    private void closeChannels() {
+        for (Client client : new ArrayList<>(this.clients)) {
+            closeClient(client);
+        }
+        for (Client client : this.pendingDownloads) {
+            client.close();
+        }
+        this.pendingDownloads.clear();
+        StreamFrame frame = this.publishedFrame.getAndSet(null);
+        if (frame != null) {
+            frame.release();
+        }
+        StreamFrame delta = this.publishedDelta.getAndSet(null);
+        if (delta != null) {
+            delta.release();
+        }
+        try {
+            if (this.serverChannel != null) {
+                this.serverChannel.close();
+            }
+            if (this.selector != null) {
+                this.selector.close();
+            }
+        } catch (IOException closingServerSocket) {
+            LOG.w("Closing the server socket failed", closingServerSocket);
+        }
+        this.serverChannel = null;
+        this.selector = null;
+        this.localPort = -1;
+    }
+
+    private void selectOnce() throws IOException {
+        if (this.pendingDownloads.isEmpty()) {
+            this.selector.select(SELECT_TIMEOUT_MS);
+        } else {
+            // deregisters the cancelled keys, a channel must leave the selector before it can block
+            this.selector.selectNow();
+            startDownloads();
+        }
+
+        StreamFrame frame = this.publishedFrame.getAndSet(null);
+        if (frame != null) {
+            for (Client client : this.clients) {
+                if (client.route == Route.MJPEG) {
+                    client.offer(frame);
+                }
+            }
+            frame.release();
+        }
+        StreamFrame delta = this.publishedDelta.getAndSet(null);
+        if (delta != null) {
+            for (Client client : this.clients) {
+                if (client.route == Route.DELTA) {
+                    client.offerDelta(delta);
+                }
+            }
+            delta.release();
+        }
+
+        Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+            SelectionKey key = keys.next();
+            keys.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+            if (key.isAcceptable()) {
+                acceptClient();
+                continue;
+            }
+            Client client = (Client) key.attachment();
             try {
-                serverSocket2.setSoTimeout(1000);
-                do {
-                    socket = serverSocket2.accept();
-                } while (socket == null);
-            } catch (SocketTimeoutException e) {
-                if (!this.running) {
-                    try {
-                        serverSocket2.close();
-                    } catch (IOException closingServerSocket) {
-                        System.err.println(closingServerSocket);
-                    }
-                    return;
+                if (key.isReadable()) {
+                    client.read();
                 }
-            } catch (Throwable th1) {
-                th = th1;
-                serverSocket = serverSocket2;
-                try {
-                    serverSocket.close();
-                } catch (IOException closingServerSocket2) {
-                    System.err.println(closingServerSocket2);
+                if (key.isValid() && key.isWritable()) {
+                    client.write();
                 }
-                throw th;
+                if (client.isFinished()) {
+                    closeClient(client);
+                }
+            } catch (IOException clientGone) {
+                // viewer closed the page
+                closeClient(client);
             }
-            serverSocket2.close();
-            DataOutputStream stream2;
-            assert socket != null;
-            stream2 = new DataOutputStream(socket.getOutputStream());
+        }
+
+        int backlog = 0;
+        for (Client client : this.clients) {
+            if (client.nextFrame != null) {
+                backlog++;
+            }
+        }
+        this.backlogFrames = backlog;
+    }
+
+    private void startDownloads() {
+        for (Client client : this.pendingDownloads) {
+            Endpoint endpoint = this.endpoints.get(client.path);
             try {
-                stream2.writeBytes(HTTP_HEADER);
-                stream2.flush();
-                while (this.running) {
-                    synchronized (this.bufferLock) {
-                        while (!this.jpeg) {
-                            try {
-                                this.bufferLock.wait();
-                            } catch (InterruptedException e2) {
-                                try {
-                                    stream2.close();
-                                } catch (IOException closingStream3) {
-                                    System.err.println(closingStream3);
-                                }
-                                try {
-                                    socket.close();
-                                } catch (IOException closingSocket3) {
-                                    System.err.println(closingSocket3);
-                                }
-                                return;
-                            }
-                        }
-                        this.streamingBufferA = !this.streamingBufferA;
-                        if (this.streamingBufferA) {
-                            buffer = this.bufferA;
-                            length = this.lengthA;
-                            timestamp = this.timestampA;
-                        } else {
-                            buffer = this.bufferB;
-                            length = this.lengthB;
-                            timestamp = this.timestampB;
-                        }
-                        this.jpeg = false;
-                    }
-                    stream2.writeBytes("Content-type: image/jpeg\r\nContent-Length: " + length + "\r\nX-Timestamp:" + timestamp + "\r\n\r\n");
-                    stream2.write(buffer, 0, length);
-                    stream2.writeBytes(BOUNDARY_LINES);
-                    stream2.flush();
+                client.channel.configureBlocking(true);
+                this.downloadExecutor.execute(() -> download(client.channel, endpoint));
+            } catch (IOException | RuntimeException downloadFailed) {
+                LOG.w("Could not start a download", downloadFailed);
+                client.close();
+            }
+        }
+        this.pendingDownloads.clear();
+    }
+
+    // on the download thread, the channel is blocking
+    private static void download(SocketChannel channel, Endpoint endpoint) {
+        try (SocketChannel out = channel; HttpDownload.Body body = endpoint.download.open()) {
+            if (body == null) {
+                writeFully(out, NOT_FOUND_BUFFER.duplicate());
+                return;
+            }
+            String header = DOCUMENT_HTTP_HEADER + endpoint.contentType + "\r\nContent-Length: " + body.getLength() + "\r\n\r\n";
+            writeFully(out, ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII)));
+            body.writeTo(out);
+        } catch (IOException | RuntimeException downloadFailed) {
+            LOG.w("Download failed", downloadFailed);
+        }
+    }
+
+    private static void writeFully(SocketChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void recordSendLatency(long latencyNanos) {
+        this.sendLatencyMillis += SEND_LATENCY_SMOOTHING_FACTOR * (latencyNanos / 1e6f - this.sendLatencyMillis);
+    }
+
+    private void acceptClient() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (this.clients.size() >= MAX_CLIENTS) {
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        // nothing is written before the request line tells which stream the viewer wants
+        SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+        Client client = new Client(channel, key);
+        key.attach(client);
+        this.clients.add(client);
+        this.clientCount = this.clients.size();
+    }
+
+    private void closeClient(Client client) {
+        client.close();
+        this.clients.remove(client);
+        updateClientCounts();
+    }
+
+    private void updateClientCounts() {
+        int jpegClients = 0;
+        int deltaClients = 0;
+        for (Client client : this.clients) {
+            if (client.route == Route.MJPEG) {
+                jpegClients++;
+            } else if (client.route == Route.DELTA) {
+                deltaClients++;
+            }
+        }
+        this.jpegClientCount = jpegClients;
+        this.deltaClientCount = deltaClients;
+        this.clientCount = this.clients.size();
+    }
+
+    private Route route(String path) {
+        if (this.viewerResponse != null && DELTA_PATH.equals(path)) {
+            return Route.DELTA;
+        }
+        if (this.viewerResponse != null && VIEWER_PATH.equals(path)) {
+            return Route.VIEWER;
+        }
+        Endpoint endpoint = this.endpoints.get(path);
+        if (endpoint != null) {
+            return endpoint.download != null ? Route.DOWNLOAD : Route.DOCUMENT;
+        }
+        if (FAVICON_PATH.equals(path)) {
+            return Route.NOT_FOUND;
+        }
+        // any other path keeps getting the MJPEG stream, like before there were routes
+        return Route.MJPEG;
+    }
+
+    private static String stripQuery(String path) {
+        int query = path.indexOf('?');
+        return query >= 0 ? path.substring(0, query) : path;
+    }
+
+    private static ByteBuffer viewerResponse(byte[] page) {
+        byte[] header = (VIEWER_HTTP_HEADER + page.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(header.length + page.length);
+        buffer.put(header);
+        buffer.put(page);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer directBuffer(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    private final class Client {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer[] parts = new ByteBuffer[3];
+        private final ByteBuffer[] responseParts = new ByteBuffer[2];
+        private ByteBuffer request = ByteBuffer.allocate(REQUEST_LINE_CAPACITY);
+        private ByteBuffer httpHeader = EMPTY_BUFFER;
+        // endpoint document sent after the header
+        private ByteBuffer body = EMPTY_BUFFER;
+        private Route route = null;
+        private String path = null;
+        private StreamFrame currentFrame = null;
+        private StreamFrame nextFrame = null;
+        private long lastDeltaSequence = -1;
+        private boolean isWaitingForKeyframe = true;
+
+        Client(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        void offerDelta(StreamFrame frame) {
+            if (!frame.isKeyframe() && this.nextFrame != null && this.nextFrame.isKeyframe()) {
+                // fell behind with a keyframe still waiting, keep it and drop the delta; the viewer
+                // goes on from that keyframe and asks for the next one only once it is on the wire
+                this.lastDeltaSequence = this.nextFrame.getSequence();
+                this.isWaitingForKeyframe = true;
+                HttpStreamer.this.droppedFrames.incrementAndGet();
+                return;
+            }
+            boolean isInSequence = frame.getSequence() == this.lastDeltaSequence + 1;
+            this.lastDeltaSequence = frame.getSequence();
+            if (!frame.isKeyframe() && (this.isWaitingForKeyframe || !isInSequence)) {
+                resync();
+                return;
+            }
+            if (!frame.isKeyframe() && this.nextFrame != null) {
+                // fell behind, a delta can not replace the waiting one so start over from a keyframe
+                this.nextFrame.release();
+                this.nextFrame = null;
+                HttpStreamer.this.droppedFrames.incrementAndGet();
+                resync();
+                return;
+            }
+            this.isWaitingForKeyframe = false;
+            offer(frame);
+        }
+
+        void offer(StreamFrame frame) {
+            frame.retain();
+            if (this.currentFrame == null && !this.httpHeader.hasRemaining()) {
+                begin(frame);
+                return;
+            }
+            if (this.nextFrame != null) {
+                this.nextFrame.release();
+                HttpStreamer.this.droppedFrames.incrementAndGet();
+            }
+            this.nextFrame = frame;
+        }
+
+        // after the request line, reads only notice when the viewer goes away
+        void read() throws IOException {
+            if (this.route != null) {
+                HttpStreamer.this.requestBuffer.clear();
+                if (this.channel.read(HttpStreamer.this.requestBuffer) < 0) {
+                    throw new EOFException();
                 }
-                try {
-                    stream2.close();
-                } catch (IOException closingStream4) {
-                    System.err.println(closingStream4);
+                return;
+            }
+            if (this.channel.read(this.request) < 0) {
+                throw new EOFException();
+            }
+            String requestLine = requestLine();
+            if (requestLine != null) {
+                begin(requestLine);
+            }
+        }
+
+        boolean isFinished() {
+            return (this.route == Route.VIEWER || this.route == Route.DOCUMENT || this.route == Route.NOT_FOUND)
+                    && !this.httpHeader.hasRemaining() && !this.body.hasRemaining();
+        }
+
+        void write() throws IOException {
+            if (this.httpHeader.hasRemaining() || this.body.hasRemaining()) {
+                this.responseParts[0] = this.httpHeader;
+                this.responseParts[1] = this.body;
+                this.channel.write(this.responseParts);
+                if (!this.httpHeader.hasRemaining() && !this.body.hasRemaining()) {
+                    finishWrite();
                 }
-                try {
-                    socket.close();
-                } catch (IOException closingSocket4) {
-                    System.err.println(closingSocket4);
+                return;
+            }
+            if (this.currentFrame == null) {
+                this.key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+            this.channel.write(this.parts);
+            if (!this.parts[1].hasRemaining() && !this.parts[2].hasRemaining()) {
+                recordSendLatency(System.nanoTime() - this.currentFrame.getPublishNanos());
+                this.currentFrame.release();
+                this.currentFrame = null;
+                finishWrite();
+            }
+        }
+
+        void close() {
+            this.key.cancel();
+            try {
+                this.channel.close();
+            } catch (IOException closingSocket) {
+                LOG.w("Closing a viewer socket failed", closingSocket);
+            }
+            if (this.currentFrame != null) {
+                this.currentFrame.release();
+                this.currentFrame = null;
+            }
+            if (this.nextFrame != null) {
+                this.nextFrame.release();
+                this.nextFrame = null;
+            }
+        }
+
+        private String requestLine() {
+            for (int i = 0; i < this.request.position(); i++) {
+                if (this.request.get(i) == '\n') {
+                    return new String(this.request.array(), 0, i, StandardCharsets.US_ASCII);
                 }
-            } catch (Throwable ignored) {
             }
-        } catch (Throwable th3) {
-            th = th3;
-            throw th;
+            return this.request.hasRemaining() ? null : "";
+        }
+
+        private void begin(String requestLine) {
+            String[] fields = requestLine.trim().split(" ");
+            this.path = stripQuery(fields.length > 1 ? fields[1] : "/");
+            this.route = route(this.path);
+            this.request = null;
+            switch (this.route) {
+                case MJPEG:
+                    this.httpHeader = HTTP_HEADER_BUFFER.duplicate();
+                    break;
+                case DELTA:
+                    this.httpHeader = DELTA_HTTP_HEADER_BUFFER.duplicate();
+                    HttpStreamer.this.keyframeRequested.set(true);
+                    break;
+                case VIEWER:
+                    this.httpHeader = HttpStreamer.this.viewerResponse.duplicate();
+                    break;
+                case DOCUMENT:
+                    respond(HttpStreamer.this.endpoints.get(this.path));
+                    break;
+                case DOWNLOAD:
+                    this.key.cancel();
+                    HttpStreamer.this.clients.remove(this);
+                    HttpStreamer.this.pendingDownloads.add(this);
+                    updateClientCounts();
+                    return;
+                default:
+                    this.httpHeader = NOT_FOUND_BUFFER.duplicate();
+                    break;
+            }
+            updateClientCounts();
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        private void respond(Endpoint endpoint) {
+            ByteBuffer body = null;
+            try {
+                body = endpoint.endpoint.respond();
+            } catch (IOException | RuntimeException endpointFailed) {
+                LOG.w("Endpoint failed", endpointFailed);
+            }
+            if (body == null) {
+                this.httpHeader = NOT_FOUND_BUFFER.duplicate();
+                return;
+            }
+            String header = DOCUMENT_HTTP_HEADER + endpoint.contentType + "\r\nContent-Length: " + body.remaining() + "\r\n\r\n";
+            this.httpHeader = ByteBuffer.wrap(header.getBytes(StandardCharsets.US_ASCII));
+            this.body = body;
+        }
+
+        private void begin(StreamFrame frame) {
+            this.currentFrame = frame;
+            this.parts[0] = frame.getHeader().duplicate();
+            this.parts[1] = frame.getData().duplicate();
+            this.parts[2] = this.route == Route.DELTA ? EMPTY_BUFFER : BOUNDARY_BUFFER.duplicate();
+            this.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        }
+
+        private void resync() {
+            this.isWaitingForKeyframe = true;
+            HttpStreamer.this.keyframeRequested.set(true);
+        }
+
+        private void finishWrite() {
+            if (this.nextFrame != null) {
+                StreamFrame frame = this.nextFrame;
+                this.nextFrame = null;
+                begin(frame);
+            } else {
+                this.key.interestOps(SelectionKey.OP_READ);
+            }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes 3 channel RGB frames to JPEG with OpenCV, without going through an ARGB Bitmap.
+ * The frame is downscaled first when asked, then swapped to the BGR order imencode expects.
+ * All intermediate Mats and the output array are kept between calls, so a steady stream of
+ * same sized frames does not allocate on the Java side. Not thread safe, use one per encoder thread.
+ */
+public class JpegEncoder {
+    private static final String JPEG_EXTENSION = ".jpg";
+
+    private final Mat scaledFrame = new Mat();
+    private final Mat bgrFrame = new Mat();
+    private final MatOfByte encoded = new MatOfByte();
+    private final MatOfInt params = new MatOfInt();
+    private byte[] bytes = new byte[0];
+    private int encodedLength = -1;
+    private int quality = -1;
+    private Size scaledSize = null;
+    private int scaledDownscale = 1;
+
+    /**
+     * @return length of the JPEG written at target's position, or -1 when it did not fit
+     */
+    public int encode(Mat rgbFrame, int downscale, int quality, ByteBuffer target) {
+        return encodeBgr(toBgr(rgbFrame, downscale), quality, target);
+    }
+
+    /**
+     * Downscales and swaps the frame once so it can be encoded more than one way.
+     * @return the encoder's own BGR Mat, valid until the next call
+     */
+    public Mat toBgr(Mat rgbFrame, int downscale) {
+        Mat source = downscale(rgbFrame, downscale);
+        Imgproc.cvtColor(source, this.bgrFrame, Imgproc.COLOR_RGB2BGR);
+        return this.bgrFrame;
+    }
+
+    /**
+     * @param bgrFrame frame or submat in BGR order
+     * @return length of the JPEG written at target's position, or -1 when it did not fit
+     */
+    public int encodeBgr(Mat bgrFrame, int quality, ByteBuffer target) {
+        if (quality != this.quality) {
+            this.params.fromArray(Imgcodecs.IMWRITE_JPEG_QUALITY, quality);
+            this.quality = quality;
+        }
+        if (!Imgcodecs.imencode(JPEG_EXTENSION, bgrFrame, this.encoded, this.params)) {
+            this.encodedLength = -1;
+            return -1;
+        }
+        this.encodedLength = (int) this.encoded.total();
+        return putEncoded(target);
+    }
+
+    // length of the last JPEG, also when it did not fit, -1 when encoding failed
+    public int getEncodedLength() {
+        return this.encodedLength;
+    }
+
+    /**
+     * Writes the last JPEG again, e.g. into a larger target after it did not fit.
+     * @return its length, or -1 when there is none or it did not fit
+     */
+    public int putEncoded(ByteBuffer target) {
+        int length = this.encodedLength;
+        if (length < 0 || length > target.remaining()) {
+            return -1;
+        }
+        if (this.bytes.length < length) {
+            // some headroom so small size changes between frames do not reallocate
+            this.bytes = new byte[length + length / 4];
+        }
+        this.encoded.get(0, 0, this.bytes);
+        target.put(this.bytes, 0, length);
+        return length;
+    }
+
+    public void release() {
+        this.scaledFrame.release();
+        this.bgrFrame.release();
+        this.encoded.release();
+        this.params.release();
+    }
+
+    private Mat downscale(Mat frame, int downscale) {
+        if (downscale <= 1) {
+            return frame;
+        }
+        if (this.scaledSize == null || this.scaledDownscale != downscale) {
+            this.scaledSize = new Size(frame.cols() / downscale, frame.rows() / downscale);
+            this.scaledDownscale = downscale;
+        }
+        Imgproc.resize(frame, this.scaledFrame, this.scaledSize, 0, 0, Imgproc.INTER_AREA);
+        return this.scaledFrame;
+    }
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One encoded JPEG plus its multipart part header, both in direct buffers so the NIO streamer can
+ * hand them to the socket without copying. A frame can also carry a tile delta message, which is
+ * sent as is without a part header. Frames are reference counted and go back to their pool when
+ * the last client has written them.
+ */
+final class StreamFrame {
+    private static final byte[] HEADER_PREFIX = "Content-type: image/jpeg\r\nContent-Length: ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] TIMESTAMP_PREFIX = "\r\nX-Timestamp:".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER_END = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    // prefixes plus two longs of up to 20 characters
+    private static final int HEADER_CAPACITY = 128;
+
+    private final StreamFramePool pool;
+    // replaced when the frame grows, only while the encoder holds the frame
+    private ByteBuffer data;
+    private final ByteBuffer header;
+    private final AtomicInteger refCount = new AtomicInteger(0);
+    private long timestamp;
+    private long publishNanos;
+    private long sequence;
+    private boolean isKeyframe;
+
+    StreamFrame(StreamFramePool pool, int capacity) {
+        this.pool = pool;
+        this.data = ByteBuffer.allocateDirect(capacity);
+        this.header = ByteBuffer.allocateDirect(HEADER_CAPACITY);
+    }
+
+    // buffer to encode into, cleared when the frame is acquired
+    ByteBuffer getData() {
+        return this.data;
+    }
+
+    ByteBuffer getHeader() {
+        return this.header;
+    }
+
+    int getLength() {
+        return this.data.limit();
+    }
+
+    long getTimestamp() {
+        return this.timestamp;
+    }
+
+    long getPublishNanos() {
+        return this.publishNanos;
+    }
+
+    long getSequence() {
+        return this.sequence;
+    }
+
+    boolean isKeyframe() {
+        return this.isKeyframe;
+    }
+
+    /**
+     * Makes room for capacity bytes while the frame is being encoded into, the data written so far
+     * is lost when it has to grow.
+     * @return false when capacity is more than a frame may take
+     */
+    boolean ensureCapacity(int capacity) {
+        if (capacity <= this.data.capacity()) {
+            return true;
+        }
+        if (!this.pool.grow(capacity)) {
+            return false;
+        }
+        this.data = ByteBuffer.allocateDirect(this.pool.getFrameCapacity());
+        return true;
+    }
+
+    void onAcquire(int capacity) {
+        if (this.data.capacity() < capacity) {
+            this.data = ByteBuffer.allocateDirect(capacity);
+        }
+        this.data.clear();
+        this.header.clear();
+        this.refCount.set(1);
+    }
+
+    // flips the encoded data for reading and writes the part header for it
+    void seal(int length, long timestamp) {
+        this.timestamp = timestamp;
+        this.publishNanos = System.nanoTime();
+        this.data.position(0);
+        this.data.limit(length);
+        this.header.clear();
+        this.header.put(HEADER_PREFIX);
+        putDecimal(this.header, length);
+        this.header.put(TIMESTAMP_PREFIX);
+        putDecimal(this.header, timestamp);
+        this.header.put(HEADER_END);
+        this.header.flip();
+    }
+
+    // flips a tile delta message for reading, it needs no part header
+    void sealDelta(int length, long timestamp, long sequence, boolean isKeyframe) {
+        this.timestamp = timestamp;
+        this.publishNanos = System.nanoTime();
+        this.sequence = sequence;
+        this.isKeyframe = isKeyframe;
+        this.data.position(0);
+        this.data.limit(length);
+        this.header.clear();
+        this.header.flip();
+    }
+
+    void retain() {
+        this.refCount.incrementAndGet();
+    }
+
+    void release() {
+        int count = this.refCount.decrementAndGet();
+        if (count == 0) {
+            this.pool.recycle(this);
+        } else if (count < 0) {
+            throw new IllegalStateException("StreamFrame released too often");
+        }
+    }
+
+    private static void putDecimal(ByteBuffer buffer, long value) {
+        if (value < 0) {
+            buffer.put((byte) '-');
+            value = -value;
+        }
+        int digits = 1;
+        for (long rest = value / 10; rest > 0; rest /= 10) {
+            digits++;
+        }
+        int end = buffer.position() + digits;
+        for (int index = end - 1; index >= buffer.position(); index--) {
+            buffer.put(index, (byte) ('0' + value % 10));
+            value /= 10;
+        }
+        buffer.position(end);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import java.util.ArrayDeque;
+
+/**
+ * Bounded set of StreamFrames. When every frame is still in use acquire() returns null and the
+ * caller drops its frame, so a stalled viewer cannot make the streamer allocate.
+ * Frames are only allocated when the ones there are all in use, at the size of a typical JPEG.
+ * A frame that is too small grows, and so does every frame acquired after it, up to the most a
+ * frame may take.
+ */
+final class StreamFramePool {
+    private final ArrayDeque<StreamFrame> freeFrames;
+    private final int frameCount;
+    private final int maxFrameCapacity;
+    private int allocatedCount = 0;
+    // frames are grown to this when acquired
+    private volatile int frameCapacity;
+
+    StreamFramePool(int frameCount, int initialFrameCapacity, int maxFrameCapacity) {
+        this.freeFrames = new ArrayDeque<>(frameCount);
+        this.frameCount = frameCount;
+        this.maxFrameCapacity = maxFrameCapacity;
+        this.frameCapacity = Math.min(initialFrameCapacity, maxFrameCapacity);
+    }
+
+    StreamFrame acquire() {
+        StreamFrame frame;
+        synchronized (this) {
+            frame = this.freeFrames.poll();
+            if (frame == null && this.allocatedCount < this.frameCount) {
+                frame = new StreamFrame(this, this.frameCapacity);
+                this.allocatedCount++;
+            }
+        }
+        if (frame != null) {
+            frame.onAcquire(this.frameCapacity);
+        }
+        return frame;
+    }
+
+    int getFrameCapacity() {
+        return this.frameCapacity;
+    }
+
+    // raises the capacity of the frames acquired from now on, false when it is more than a frame may take
+    boolean grow(int capacity) {
+        if (capacity > this.maxFrameCapacity) {
+            return false;
+        }
+        if (capacity > this.frameCapacity) {
+            // some headroom so the next slightly larger frame does not reallocate again
+            this.frameCapacity = Math.min(this.maxFrameCapacity, capacity + capacity / 4);
+        }
+        return true;
+    }
+
+    // frames that can still be acquired, allocated or not
+    synchronized int getFreeCount() {
+        return this.freeFrames.size() + this.frameCount - this.allocatedCount;
+    }
+
+    synchronized void recycle(StreamFrame frame) {
+        this.freeFrames.add(frame);
+    }
+}
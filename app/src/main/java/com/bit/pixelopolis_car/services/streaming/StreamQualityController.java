@@ -0,0 +1,134 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import com.bit.pixelopolis_car.services.config.StreamingInfo;
+
+/**
+ * Picks JPEG quality, downscale factor and frame rate for the stream.
+ * The latency of a frame is its encode time, the time until the slowest viewer has received it
+ * and one frame interval for every frame still queued for a viewer. While the smoothed latency is
+ * over the budget the controller steps down one knob at a time, cheapest loss first: quality,
+ * then resolution, then frame rate. Well under the budget it steps back up in reverse order.
+ * While the vision loop is busy the frame rate is halved so inference keeps the CPU.
+ */
+public class StreamQualityController {
+    private static final int QUALITY_STEP = 10;
+    private static final int FRAME_RATE_STEP = 2;
+    private static final float SMOOTHING_FACTOR = 0.2f;
+    // frames to wait after an adjustment so its effect shows up in the latency
+    private static final int ADJUST_COOLDOWN_FRAMES = 10;
+    private static final float RECOVER_RATIO = 0.5f;
+
+    private final StreamingInfo streamingInfo;
+    private int quality;
+    private int downscale = 1;
+    private int frameRate;
+    private float latencyMillis = 0;
+    private boolean hasSample = false;
+    private int framesSinceAdjust = 0;
+    private boolean isVisionBusy = false;
+
+    public StreamQualityController(StreamingInfo streamingInfo) {
+        this.streamingInfo = streamingInfo;
+        this.quality = clamp(streamingInfo.getJpegQuality(), streamingInfo.getMinJpegQuality(), streamingInfo.getMaxJpegQuality());
+        this.frameRate = Math.max(1, streamingInfo.getMaxFrameRate());
+    }
+
+    public void update(float encodeMillis, float sendLatencyMillis, int backlogFrames, float visionMillis) {
+        float latency = encodeMillis + sendLatencyMillis + backlogFrames * getFrameIntervalMillis();
+        if (!this.hasSample) {
+            this.latencyMillis = latency;
+            this.hasSample = true;
+        } else {
+            this.latencyMillis += SMOOTHING_FACTOR * (latency - this.latencyMillis);
+        }
+        this.isVisionBusy = visionMillis > this.streamingInfo.getVisionBusyThreshold();
+
+        if (!this.streamingInfo.isAdaptive() || ++this.framesSinceAdjust < ADJUST_COOLDOWN_FRAMES) {
+            return;
+        }
+        int budget = this.streamingInfo.getLatencyBudget();
+        boolean isAdjusted = false;
+        if (this.latencyMillis > budget) {
+            isAdjusted = stepDown();
+        } else if (this.latencyMillis < budget * RECOVER_RATIO) {
+            isAdjusted = stepUp();
+        }
+        if (isAdjusted) {
+            this.framesSinceAdjust = 0;
+        }
+    }
+
+    public int getQuality() {
+        return this.quality;
+    }
+
+    public int getDownscale() {
+        return this.downscale;
+    }
+
+    public int getFrameRate() {
+        if (this.isVisionBusy) {
+            return Math.max(this.streamingInfo.getMinFrameRate(), this.frameRate / 2);
+        }
+        return this.frameRate;
+    }
+
+    public long getFrameIntervalMillis() {
+        return 1000 / Math.max(1, getFrameRate());
+    }
+
+    public float getLatencyMillis() {
+        return this.latencyMillis;
+    }
+
+    public boolean isVisionBusy() {
+        return this.isVisionBusy;
+    }
+
+    private boolean stepDown() {
+        if (this.quality > this.streamingInfo.getMinJpegQuality()) {
+            this.quality = Math.max(this.streamingInfo.getMinJpegQuality(), this.quality - QUALITY_STEP);
+        } else if (this.downscale < this.streamingInfo.getMaxDownscale()) {
+            this.downscale++;
+        } else if (this.frameRate > this.streamingInfo.getMinFrameRate()) {
+            this.frameRate = Math.max(this.streamingInfo.getMinFrameRate(), this.frameRate - FRAME_RATE_STEP);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private boolean stepUp() {
+        if (this.frameRate < this.streamingInfo.getMaxFrameRate()) {
+            this.frameRate = Math.min(this.streamingInfo.getMaxFrameRate(), this.frameRate + FRAME_RATE_STEP);
+        } else if (this.downscale > 1) {
+            this.downscale--;
+        } else if (this.quality < this.streamingInfo.getMaxJpegQuality()) {
+            this.quality = Math.min(this.streamingInfo.getMaxJpegQuality(), this.quality + QUALITY_STEP);
+        } else {
+            return false;
+        }
+        return true;
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encodes BGR frames as the tiles that changed since the last message, for low bandwidth viewing.
+ * The frame is compared with what the viewers already have in TILE_SIZE squares, changed tiles
+ * next to each other in a tile row are cut out as one strip and JPEG encoded on their own. Only
+ * sent tiles go into the reference, so slow changes below the threshold add up until they are sent.
+ * A keyframe with the whole frame goes out every keyframeInterval frames, when asked for, or when
+ * most tiles changed anyway. Not thread safe, use it on the encoder thread.
+ *
+ * Message layout, big endian, as read by assets/delta_viewer.html:
+ * u32 length of the rest, u8 version, u8 flags (bit 0 keyframe), u16 width, u16 height, u8 tile
+ * size, u16 rect count, then per rect u16 x, u16 y, u16 width, u16 height in tiles, u32 JPEG
+ * length and the JPEG. Rects at the right and bottom edge are cut to the frame.
+ */
+public class TileDeltaEncoder {
+    public static final int TILE_SIZE = 16;
+    static final int VERSION = 1;
+    static final int FLAG_KEYFRAME = 1;
+    static final int MESSAGE_HEADER_SIZE = 13;
+    static final int RECT_HEADER_SIZE = 12;
+    // above this share of changed tiles one JPEG of the whole frame is cheaper than the strips
+    private static final float KEYFRAME_CHANGE_RATIO = 0.5f;
+
+    private final JpegEncoder jpegEncoder;
+    private final int tileThreshold;
+    private final int keyframeInterval;
+    private final Mat reference = new Mat();
+    private final Mat difference = new Mat();
+    private final Mat grayDifference = new Mat();
+    private final Mat paddedDifference = new Mat();
+    private final Mat tileMeans = new Mat();
+    private final Rect rect = new Rect();
+    private byte[] tileValues = new byte[0];
+    private Size tileGridSize = null;
+    private int framesSinceKeyframe = 0;
+    private boolean isKeyframeRequested = true;
+    private boolean isLastKeyframe = false;
+    private int lastRectCount = 0;
+
+    /**
+     * @param jpegEncoder encodes the tiles, may be the one that made the BGR frame
+     * @param tileThreshold mean absolute difference of a tile, 0 to 255, above which it is sent
+     * @param keyframeInterval frames between keyframes, unchanged frames count too
+     */
+    public TileDeltaEncoder(JpegEncoder jpegEncoder, int tileThreshold, int keyframeInterval) {
+        this.jpegEncoder = jpegEncoder;
+        this.tileThreshold = tileThreshold;
+        this.keyframeInterval = Math.max(1, keyframeInterval);
+    }
+
+    public void requestKeyframe() {
+        this.isKeyframeRequested = true;
+    }
+
+    public boolean isLastKeyframe() {
+        return this.isLastKeyframe;
+    }
+
+    public int getLastRectCount() {
+        return this.lastRectCount;
+    }
+
+    /**
+     * @return length of the message written at target's position, 0 when no tile changed,
+     * or -1 when it did not fit, the next message is then a keyframe
+     */
+    public int encode(Mat bgrFrame, int quality, ByteBuffer target) {
+        int width = bgrFrame.cols();
+        int height = bgrFrame.rows();
+        int tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+        int tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+        boolean isKeyframe = this.isKeyframeRequested
+                || this.framesSinceKeyframe + 1 >= this.keyframeInterval
+                || this.reference.cols() != width || this.reference.rows() != height;
+        int changedTiles = 0;
+        if (!isKeyframe) {
+            changedTiles = findChangedTiles(bgrFrame, tileColumns, tileRows);
+            isKeyframe = changedTiles > KEYFRAME_CHANGE_RATIO * tileColumns * tileRows;
+        }
+        this.isLastKeyframe = isKeyframe;
+        this.lastRectCount = 0;
+        if (!isKeyframe && changedTiles == 0) {
+            this.framesSinceKeyframe++;
+            return 0;
+        }
+
+        int start = target.position();
+        if (target.remaining() < MESSAGE_HEADER_SIZE) {
+            return fail(target, start);
+        }
+        target.position(start + MESSAGE_HEADER_SIZE);
+        int rectCount = 0;
+        if (isKeyframe) {
+            if (!putRect(bgrFrame, 0, 0, tileColumns, tileRows, quality, target)) {
+                return fail(target, start);
+            }
+            rectCount = 1;
+            bgrFrame.copyTo(this.reference);
+            this.framesSinceKeyframe = 0;
+            this.isKeyframeRequested = false;
+        } else {
+            for (int row = 0; row < tileRows; row++) {
+                int column = 0;
+                while (column < tileColumns) {
+                    if (!isChanged(row * tileColumns + column)) {
+                        column++;
+                        continue;
+                    }
+                    int runStart = column;
+                    while (column < tileColumns && isChanged(row * tileColumns + column)) {
+                        column++;
+                    }
+                    if (!putRect(bgrFrame, runStart, row, column - runStart, 1, quality, target)) {
+                        return fail(target, start);
+                    }
+                    // the viewer has these pixels now
+                    Mat sent = bgrFrame.submat(this.rect);
+                    Mat kept = this.reference.submat(this.rect);
+                    sent.copyTo(kept);
+                    sent.release();
+                    kept.release();
+                    rectCount++;
+                }
+            }
+            this.framesSinceKeyframe++;
+        }
+
+        int length = target.position() - start;
+        target.putInt(start, length - 4);
+        target.put(start + 4, (byte) VERSION);
+        target.put(start + 5, (byte) (isKeyframe ? FLAG_KEYFRAME : 0));
+        target.putShort(start + 6, (short) width);
+        target.putShort(start + 8, (short) height);
+        target.put(start + 10, (byte) TILE_SIZE);
+        target.putShort(start + 11, (short) rectCount);
+        this.lastRectCount = rectCount;
+        return length;
+    }
+
+    public void release() {
+        this.reference.release();
+        this.difference.release();
+        this.grayDifference.release();
+        this.paddedDifference.release();
+        this.tileMeans.release();
+    }
+
+    // area resize gives the mean difference of every tile in one pass
+    private int findChangedTiles(Mat bgrFrame, int tileColumns, int tileRows) {
+        Core.absdiff(bgrFrame, this.reference, this.difference);
+        Imgproc.cvtColor(this.difference, this.grayDifference, Imgproc.COLOR_BGR2GRAY);
+        if (this.tileGridSize == null || this.tileGridSize.width != tileColumns || this.tileGridSize.height != tileRows) {
+            this.tileGridSize = new Size(tileColumns, tileRows);
+        }
+        // resizing by anything but TILE_SIZE would shift the tiles, so a frame that does not divide
+        // into whole tiles is padded with its edge pixels first
+        Mat tileDifference = this.grayDifference;
+        int paddingBottom = tileRows * TILE_SIZE - bgrFrame.rows();
+        int paddingRight = tileColumns * TILE_SIZE - bgrFrame.cols();
+        if (paddingBottom != 0 || paddingRight != 0) {
+            Core.copyMakeBorder(this.grayDifference, this.paddedDifference, 0, paddingBottom, 0, paddingRight, Core.BORDER_REPLICATE);
+            tileDifference = this.paddedDifference;
+        }
+        Imgproc.resize(tileDifference, this.tileMeans, this.tileGridSize, 0, 0, Imgproc.INTER_AREA);
+        int tileCount = tileColumns * tileRows;
+        if (this.tileValues.length != tileCount) {
+            this.tileValues = new byte[tileCount];
+        }
+        this.tileMeans.get(0, 0, this.tileValues);
+        int changed = 0;
+        for (int i = 0; i < tileCount; i++) {
+            if (isChanged(i)) {
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    private boolean isChanged(int tile) {
+        return (this.tileValues[tile] & 0xff) > this.tileThreshold;
+    }
+
+    private boolean putRect(Mat bgrFrame, int tileX, int tileY, int tileWidth, int tileHeight, int quality, ByteBuffer target) {
+        int rectStart = target.position();
+        if (target.remaining() < RECT_HEADER_SIZE) {
+            return false;
+        }
+        this.rect.x = tileX * TILE_SIZE;
+        this.rect.y = tileY * TILE_SIZE;
+        this.rect.width = Math.min(tileWidth * TILE_SIZE, bgrFrame.cols() - this.rect.x);
+        this.rect.height = Math.min(tileHeight * TILE_SIZE, bgrFrame.rows() - this.rect.y);
+
+        target.position(rectStart + RECT_HEADER_SIZE);
+        int jpegLength;
+        if (this.rect.width == bgrFrame.cols() && this.rect.height == bgrFrame.rows()) {
+            jpegLength = this.jpegEncoder.encodeBgr(bgrFrame, quality, target);
+        } else {
+            Mat tiles = bgrFrame.submat(this.rect);
+            jpegLength = this.jpegEncoder.encodeBgr(tiles, quality, target);
+            tiles.release();
+        }
+        if (jpegLength < 0) {
+            return false;
+        }
+        target.putShort(rectStart, (short) tileX);
+        target.putShort(rectStart + 2, (short) tileY);
+        target.putShort(rectStart + 4, (short) tileWidth);
+        target.putShort(rectStart + 6, (short) tileHeight);
+        target.putInt(rectStart + 8, jpegLength);
+        return true;
+    }
+
+    private int fail(ByteBuffer target, int start) {
+        // the reference may already hold tiles the viewers never got
+        target.position(start);
+        this.isKeyframeRequested = true;
+        this.isLastKeyframe = false;
+        this.lastRectCount = 0;
+        return -1;
+    }
+}
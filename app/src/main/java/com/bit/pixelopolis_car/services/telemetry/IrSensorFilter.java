@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.telemetry;
+
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+
+/**
+ * Filters the IR distance readings and decides when the car is hitting a wall.
+ * Each reading goes through a small median (drops single spikes) and an exponential moving average.
+ * The filtered value must stay outside the FixHittingWallInfo range for the debounce duration,
+ * measured on the sample timestamps, before the car counts as hitting a wall.
+ * Updated from the serial thread, read from the control thread.
+ */
+public class IrSensorFilter {
+    private static final long NANOS_PER_MILLI = 1000000L;
+    private static final long NOT_OUT_OF_RANGE = Long.MIN_VALUE;
+    private static final long NO_SAMPLE = Long.MIN_VALUE;
+    // readings older than this many sample intervals are not trusted
+    private static final int STALE_SAMPLE_INTERVALS = 10;
+    private static final long MIN_STALE_NANOS = 250 * NANOS_PER_MILLI;
+
+    private final FixHittingWallInfo fixHittingWallInfo;
+    private final int[] window;
+    private final int[] sortedWindow;
+    private final float smoothingFactor;
+    private final float sampleRateSmoothingFactor;
+    private int windowCount = 0;
+    private int windowIndex = 0;
+    private float smoothedValue;
+    private float averageIntervalNanos = 0;
+
+    private volatile int filteredValue;
+    private volatile long lastSampleNanos = NO_SAMPLE;
+    private volatile long outOfRangeSinceNanos = NOT_OUT_OF_RANGE;
+    private volatile float sampleRateHz = 0;
+
+    public IrSensorFilter(FixHittingWallInfo fixHittingWallInfo) {
+        this.fixHittingWallInfo = fixHittingWallInfo;
+        int windowSize = Math.max(1, fixHittingWallInfo.getMedianWindowSize());
+        window = new int[windowSize];
+        sortedWindow = new int[windowSize];
+        smoothingFactor = clampFactor(fixHittingWallInfo.getSmoothingFactor());
+        sampleRateSmoothingFactor = clampFactor(fixHittingWallInfo.getSampleRateSmoothingFactor());
+    }
+
+    public void update(int rawValue, long timestampNanos) {
+        window[windowIndex] = rawValue;
+        windowIndex = (windowIndex + 1) % window.length;
+        if (windowCount < window.length)
+            windowCount++;
+        int median = median();
+
+        if (lastSampleNanos == NO_SAMPLE) {
+            smoothedValue = median;
+        } else {
+            smoothedValue += smoothingFactor * (median - smoothedValue);
+
+            long interval = timestampNanos - lastSampleNanos;
+            if (averageIntervalNanos == 0)
+                averageIntervalNanos = interval;
+            else
+                averageIntervalNanos += sampleRateSmoothingFactor * (interval - averageIntervalNanos);
+            if (averageIntervalNanos > 0)
+                sampleRateHz = 1e9f / averageIntervalNanos;
+        }
+
+        int value = Math.round(smoothedValue);
+        filteredValue = value;
+        if (fixHittingWallInfo.isSensorValueInRange(value)) {
+            outOfRangeSinceNanos = NOT_OUT_OF_RANGE;
+        } else if (outOfRangeSinceNanos == NOT_OUT_OF_RANGE) {
+            outOfRangeSinceNanos = timestampNanos;
+        }
+        lastSampleNanos = timestampNanos;
+    }
+
+    public int getFilteredValue() {
+        return filteredValue;
+    }
+
+    public float getSampleRateHz() {
+        return sampleRateHz;
+    }
+
+    public boolean isOutOfRange(long nowNanos) {
+        return outOfRangeSinceNanos != NOT_OUT_OF_RANGE && !isStale(nowNanos);
+    }
+
+    public boolean isHittingWall(long nowNanos) {
+        long since = outOfRangeSinceNanos;
+        if (since == NOT_OUT_OF_RANGE || isStale(nowNanos))
+            return false;
+        return nowNanos - since >= fixHittingWallInfo.getDebounceDuration() * NANOS_PER_MILLI;
+    }
+
+    private boolean isStale(long nowNanos) {
+        long last = lastSampleNanos;
+        if (last == NO_SAMPLE)
+            return true;
+        long staleNanos = Math.max(MIN_STALE_NANOS, (long) (averageIntervalNanos * STALE_SAMPLE_INTERVALS));
+        return nowNanos - last > staleNanos;
+    }
+
+    private int median() {
+        System.arraycopy(window, 0, sortedWindow, 0, windowCount);
+        // insertion sort, the window only holds a handful of samples
+        for (int i = 1; i < windowCount; i++) {
+            int value = sortedWindow[i];
+            int j = i - 1;
+            while (j >= 0 && sortedWindow[j] > value) {
+                sortedWindow[j + 1] = sortedWindow[j];
+                j--;
+            }
+            sortedWindow[j + 1] = value;
+        }
+        return sortedWindow[windowCount / 2];
+    }
+
+    private static float clampFactor(double factor) {
+        if (factor <= 0 || factor > 1)
+            return 1.0f;
+        return (float) factor;
+    }
+}
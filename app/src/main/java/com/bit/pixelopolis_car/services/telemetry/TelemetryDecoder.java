@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.telemetry;
+
+/**
+ * Decodes telemetry lines from the controller board, e.g. "b87" (motor battery) or "r301" (IR sensor).
+ * The channel is picked from the first byte and the digits are parsed in place, so a new sensor
+ * channel is one more case in {@link #decode} and costs nothing for the others.
+ * Lines are decoded on the serial thread, readers get the latest sample through {@link #getSample()}.
+ */
+public class TelemetryDecoder {
+    static final byte CHANNEL_BATTERY = 'b';
+    static final byte CHANNEL_IR_SENSOR = 'r';
+
+    // keeps the parsed value inside int range
+    private static final int MAX_DIGITS = 9;
+
+    private int motorBatteryPercentage;
+    private int irSensorValue;
+    private volatile TelemetrySample sample;
+    private IrSensorFilter irSensorFilter;
+
+    public TelemetryDecoder(int initialMotorBatteryPercentage, int initialIrSensorValue) {
+        motorBatteryPercentage = initialMotorBatteryPercentage;
+        irSensorValue = initialIrSensorValue;
+        sample = new TelemetrySample(motorBatteryPercentage, irSensorValue, System.nanoTime());
+    }
+
+    public void setIrSensorFilter(IrSensorFilter irSensorFilter) {
+        this.irSensorFilter = irSensorFilter;
+    }
+
+    public void decode(byte[] line, int offset, int length) {
+        decode(line, offset, length, System.nanoTime());
+    }
+
+    // timestampNanos stamps the sample and feeds the IR filter, a simulated board passes its own clock
+    public void decode(byte[] line, int offset, int length, long timestampNanos) {
+        if (length < 2)
+            return;
+        int value = parseDigits(line, offset + 1, length - 1);
+        if (value < 0)
+            return;
+
+        switch (line[offset]) {
+            case CHANNEL_BATTERY:
+                motorBatteryPercentage = value;
+                break;
+            case CHANNEL_IR_SENSOR:
+                irSensorValue = value;
+                break;
+            default:
+                return;
+        }
+        if (line[offset] == CHANNEL_IR_SENSOR && irSensorFilter != null)
+            irSensorFilter.update(value, timestampNanos);
+        sample = new TelemetrySample(motorBatteryPercentage, irSensorValue, timestampNanos);
+    }
+
+    public TelemetrySample getSample() {
+        return sample;
+    }
+
+    // returns -1 when the field is empty, too long or not all digits
+    static int parseDigits(byte[] data, int offset, int length) {
+        if (length <= 0 || length > MAX_DIGITS)
+            return -1;
+        int value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            int digit = data[i] - '0';
+            if (digit < 0 || digit > 9)
+                return -1;
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.services.telemetry;
+
+/**
+ * Immutable snapshot of the latest values reported by the controller board.
+ */
+public class TelemetrySample {
+    private final int motorBatteryPercentage;
+    private final int irSensorValue;
+    private final long timestampNanos;
+
+    TelemetrySample(int motorBatteryPercentage, int irSensorValue, long timestampNanos) {
+        this.motorBatteryPercentage = motorBatteryPercentage;
+        this.irSensorValue = irSensorValue;
+        this.timestampNanos = timestampNanos;
+    }
+
+    public int getMotorBatteryPercentage() {
+        return motorBatteryPercentage;
+    }
+
+    public int getIrSensorValue() {
+        return irSensorValue;
+    }
+
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+
+    public long getAgeMillis() {
+        return (System.nanoTime() - timestampNanos) / 1000000L;
+    }
+}
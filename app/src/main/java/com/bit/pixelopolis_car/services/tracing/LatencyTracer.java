@@ -0,0 +1,145 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.tracing;
+
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+
+/**
+ * Follows frames from the camera to the motors. Every stage records how old the frame is when the
+ * stage is done, measured from its capture time, into a rolling histogram of its own:
+ *   capture          vision picks the frame up
+ *   preprocess       the lane model input is ready
+ *   inference        the lane model gave its angle
+ *   publish          the steering angle is visible to the wheel controller
+ *   controller_read  the wheel controller read that angle for the first time
+ *   serial_write     the first motor command computed from it was written to the serial port
+ * Vision publishes each frame under a trace id, the controller and the serial port pick up the
+ * newest published trace, so a frame is counted once per stage however often its angle is reused.
+ * Recording does not allocate.
+ */
+public class LatencyTracer {
+    public static final int STAGE_CAPTURE = 0;
+    public static final int STAGE_PREPROCESS = 1;
+    public static final int STAGE_INFERENCE = 2;
+    public static final int STAGE_PUBLISH = 3;
+    public static final int STAGE_CONTROLLER_READ = 4;
+    public static final int STAGE_SERIAL_WRITE = 5;
+    public static final int STAGE_COUNT = 6;
+
+    private static final String[] STAGE_NAMES = {"capture", "preprocess", "inference", "publish", "controller_read", "serial_write"};
+    private static final double[] PERCENTILES = {50, 95, 99};
+    private static final int DEFAULT_WINDOW_COUNT = 6;
+    private static final long DEFAULT_WINDOW_MILLIS = 10000;
+
+    private final LatencyHistogram[] histograms = new LatencyHistogram[STAGE_COUNT];
+    private final long windowMillis;
+    private long publishedTraceId = -1;
+    private long publishedCaptureNanos = 0;
+    private long controllerTraceId = -1;
+    // trace of the angle read by the controller, waiting for its motor command
+    private long commandTraceId = -1;
+    private long commandCaptureNanos = 0;
+    private long lastSerialTraceId = -1;
+
+    // the last minute, in 10 s windows
+    public LatencyTracer() {
+        this(DEFAULT_WINDOW_COUNT, DEFAULT_WINDOW_MILLIS);
+    }
+
+    public LatencyTracer(int windowCount, long windowMillis) {
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            histograms[stage] = new LatencyHistogram(windowCount, windowMillis);
+        }
+        this.windowMillis = windowCount * windowMillis;
+    }
+
+    public static String getStageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    // frame age at the end of a vision stage
+    public void record(int stage, long captureNanos, long nowNanos) {
+        histograms[stage].record(nowNanos - captureNanos, nowNanos);
+    }
+
+    // the steering angle of traceId is now what the controller reads
+    public synchronized void publish(long traceId, long captureNanos, long nowNanos) {
+        record(STAGE_PUBLISH, captureNanos, nowNanos);
+        publishedTraceId = traceId;
+        publishedCaptureNanos = captureNanos;
+    }
+
+    // call right after reading the steering angle
+    public synchronized void onControllerRead(long nowNanos) {
+        if (publishedTraceId < 0 || publishedTraceId == controllerTraceId)
+            return;
+        controllerTraceId = publishedTraceId;
+        record(STAGE_CONTROLLER_READ, publishedCaptureNanos, nowNanos);
+        commandTraceId = publishedTraceId;
+        commandCaptureNanos = publishedCaptureNanos;
+    }
+
+    // call right after a motor command went out, commands not based on a frame are not counted
+    public synchronized void onSerialWrite(long nowNanos) {
+        if (commandTraceId < 0 || commandTraceId == lastSerialTraceId)
+            return;
+        lastSerialTraceId = commandTraceId;
+        record(STAGE_SERIAL_WRITE, commandCaptureNanos, nowNanos);
+    }
+
+    // newest published trace id, -1 before the first
+    public synchronized long getPublishedTraceId() {
+        return publishedTraceId;
+    }
+
+    public float getPercentileMillis(int stage, double percentile, long nowNanos) {
+        return histograms[stage].getPercentileMillis(percentile, nowNanos);
+    }
+
+    // samples of the stage in the rolling window
+    public long getCount(int stage, long nowNanos) {
+        return histograms[stage].getCount(nowNanos);
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Appends {"window_ms": ..., "stages": {"capture": {"count": ..., "p50_ms": ..., ...}, ...}}.
+     */
+    public void appendJson(StringBuilder json, long nowNanos) {
+        json.append("{\"window_ms\": ").append(windowMillis).append(", \"stages\": {");
+        for (int stage = 0; stage < STAGE_COUNT; stage++) {
+            if (stage > 0)
+                json.append(", ");
+            json.append('"').append(STAGE_NAMES[stage]).append("\": {\"count\": ").append(getCount(stage, nowNanos));
+            for (double percentile : PERCENTILES) {
+                json.append(", \"p").append((int) percentile).append("_ms\": ").append(getPercentileMillis(stage, percentile, nowNanos));
+            }
+            json.append('}');
+        }
+        json.append("}}");
+    }
+
+    public void reset() {
+        for (LatencyHistogram histogram : histograms) {
+            histogram.reset();
+        }
+    }
+}
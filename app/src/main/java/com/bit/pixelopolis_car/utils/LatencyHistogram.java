@@ -0,0 +1,133 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.utils;
+
+import java.util.Arrays;
+
+/**
+ * Rolling latency histogram with log-linear buckets (4 per power of two, so about 19% resolution).
+ * Samples go into the newest of a few time windows, percentiles are taken over all windows, and the
+ * oldest window is cleared as time moves on. Values are kept in microseconds.
+ * Recording does not allocate, methods are synchronized so one thread can record while another reads.
+ */
+public class LatencyHistogram {
+    private static final long NANOS_PER_MICRO = 1000L;
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // covers up to about 2^40 us, more than enough for anything measured here
+    private static final int BUCKET_COUNT = 40 * SUB_BUCKETS;
+
+    private final long[][] windows;
+    private final long windowNanos;
+    private int currentWindow = 0;
+    private long currentWindowStartNanos;
+    private boolean isStarted = false;
+    private long totalCount = 0;
+
+    public LatencyHistogram(int windowCount, long windowMillis) {
+        if (windowCount <= 0 || windowMillis <= 0) {
+            throw new IllegalArgumentException("window count and duration must be positive");
+        }
+        windows = new long[windowCount][BUCKET_COUNT];
+        windowNanos = windowMillis * 1000000L;
+    }
+
+    public synchronized void record(long latencyNanos, long nowNanos) {
+        rotate(nowNanos);
+        windows[currentWindow][bucketIndex(Math.max(0, latencyNanos) / NANOS_PER_MICRO)]++;
+        totalCount++;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return upper bound of the bucket holding the percentile in milliseconds, 0 when empty
+     */
+    public synchronized float getPercentileMillis(double percentile, long nowNanos) {
+        rotate(nowNanos);
+        long count = getCount(nowNanos);
+        if (count == 0)
+            return 0;
+        long rank = (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100.0);
+        rank = Math.max(1, rank);
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            for (long[] window : windows)
+                seen += window[bucket];
+            if (seen >= rank)
+                return bucketUpperBound(bucket) / 1000.0f;
+        }
+        return bucketUpperBound(BUCKET_COUNT - 1) / 1000.0f;
+    }
+
+    // number of samples in the rolling windows
+    public synchronized long getCount(long nowNanos) {
+        rotate(nowNanos);
+        long count = 0;
+        for (long[] window : windows)
+            for (long bucketCount : window)
+                count += bucketCount;
+        return count;
+    }
+
+    // number of samples since creation or the last reset
+    public synchronized long getTotalCount() {
+        return totalCount;
+    }
+
+    public synchronized void reset() {
+        for (long[] window : windows)
+            Arrays.fill(window, 0);
+        totalCount = 0;
+        isStarted = false;
+    }
+
+    private void rotate(long nowNanos) {
+        if (!isStarted) {
+            currentWindowStartNanos = nowNanos;
+            isStarted = true;
+            return;
+        }
+        long elapsedWindows = (nowNanos - currentWindowStartNanos) / windowNanos;
+        if (elapsedWindows <= 0)
+            return;
+        int clearCount = (int) Math.min(elapsedWindows, windows.length);
+        for (int i = 0; i < clearCount; i++) {
+            currentWindow = (currentWindow + 1) % windows.length;
+            Arrays.fill(windows[currentWindow], 0);
+        }
+        currentWindowStartNanos += elapsedWindows * windowNanos;
+    }
+
+    static int bucketIndex(long micros) {
+        if (micros < SUB_BUCKETS)
+            return (int) micros;
+        int msb = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        int index = (msb - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+        return Math.min(index, BUCKET_COUNT - 1);
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS)
+            return index;
+        int msb = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << (msb - SUB_BUCKET_BITS);
+        return lower + (1L << (msb - SUB_BUCKET_BITS)) - 1;
+    }
+}
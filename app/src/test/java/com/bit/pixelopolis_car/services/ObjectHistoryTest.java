@@ -0,0 +1,44 @@
+package com.bit.pixelopolis_car.services;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import static org.junit.Assert.*;
+
+public class ObjectHistoryTest {
+
+    @Test
+    public void countsTitlesOfTheStoredFrames() {
+        ObjectHistory<String> history = new ObjectHistory<>(Function.identity());
+        history.add(Arrays.asList("Go", "Car"), 3);
+        history.add(Arrays.asList("Go", "Go"), 3);
+        history.add(Collections.<String>emptyList(), 3);
+
+        assertEquals(3, history.size());
+        assertEquals(3, history.getSeenCount("Go"));
+        assertEquals(1, history.getSeenCount("Car"));
+        assertEquals(0, history.getSeenCount("Museum"));
+    }
+
+    @Test
+    public void forgetsFramesBeyondTheLimit() {
+        ObjectHistory<String> history = new ObjectHistory<>(Function.identity());
+        history.add(Arrays.asList("Go", "Car"), 2);
+        history.add(Arrays.asList("Go"), 2);
+        history.add(Arrays.asList("Museum"), 2);
+
+        assertEquals(2, history.size());
+        assertEquals(1, history.getSeenCount("Go"));
+        assertEquals(0, history.getSeenCount("Car"));
+
+        history.add(Arrays.asList("Go"), 1);
+        assertEquals(1, history.size());
+        assertEquals(0, history.getSeenCount("Museum"));
+
+        history.clear();
+        assertEquals(0, history.getSeenCount("Go"));
+    }
+}
@@ -0,0 +1,68 @@
+package com.bit.pixelopolis_car.services;
+
+import com.bit.pixelopolis_car.enums.AppStatus;
+import com.bit.pixelopolis_car.enums.CMD;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StatusSnapshotTest {
+
+    private static String render(StatusSnapshot snapshot) {
+        StatusSnapshot copy = new StatusSnapshot();
+        copy.copyFrom(snapshot);
+        StringBuilder out = new StringBuilder();
+        copy.appendTo(out);
+        return out.toString();
+    }
+
+    @Test
+    public void rendersTheOldDebugLayout() {
+        StatusSnapshot snapshot = new StatusSnapshot();
+        snapshot.update(0, false, AppStatus.WORKING_ON_AUTO_TURN_COMMAND, CMD.TURN_LEFT, "4", "Museum", "7");
+        snapshot.updateTelemetry(80, 310, 305, 19.6f);
+
+        assertEquals("GO TO DESTINATION MODE - WORKING_ON_AUTO_TURN_COMMAND\nTURN_LEFT\nGOING TO NODE = 4   (prev node = Museum)"
+                + "\nDESTINATION NODE ID = 7\nmotor % : 80 /// ir sensor value : 310 (filtered 305 @ 20 Hz)", render(snapshot));
+    }
+
+    @Test
+    public void leavesOutWhatIsNotKnown() {
+        StatusSnapshot snapshot = new StatusSnapshot();
+        snapshot.update(0, true, AppStatus.IDLE, CMD.TURN_LEFT, null, null, null);
+        snapshot.setOtherCarBottom(0.75f, 0);
+
+        assertEquals("IDLE MODE - IDLE\nmotor % : 0 /// ir sensor value : 0 (filtered 0 @ 0 Hz)\ndetected car / bottom = 0.75", render(snapshot));
+    }
+
+    @Test
+    public void dropsTheOtherCarOnceItIsNoLongerSeen() {
+        StatusSnapshot snapshot = new StatusSnapshot();
+        snapshot.update(0, true, AppStatus.IDLE, null, null, null, null);
+        snapshot.setOtherCarBottom(0.75f, 0);
+        snapshot.update(StatusSnapshot.OTHER_CAR_EXPIRY_NANOS, true, AppStatus.IDLE, null, null, null, null);
+        assertTrue(render(snapshot).contains("detected car / bottom = 0.75"));
+
+        // seen again before it expired, the newest bottom is shown
+        snapshot.setOtherCarBottom(0.5f, StatusSnapshot.OTHER_CAR_EXPIRY_NANOS);
+        snapshot.update(2 * StatusSnapshot.OTHER_CAR_EXPIRY_NANOS, true, AppStatus.IDLE, null, null, null, null);
+        assertTrue(render(snapshot).contains("detected car / bottom = 0.5"));
+
+        snapshot.update(2 * StatusSnapshot.OTHER_CAR_EXPIRY_NANOS + 1, true, AppStatus.IDLE, null, null, null, null);
+        assertFalse(render(snapshot).contains("detected car"));
+    }
+
+    @Test
+    public void theCopyDoesNotFollowLaterUpdates() {
+        StatusSnapshot snapshot = new StatusSnapshot();
+        snapshot.update(0, true, AppStatus.IDLE, null, "1", null, null);
+        StatusSnapshot copy = new StatusSnapshot();
+        copy.copyFrom(snapshot);
+        snapshot.update(0, true, AppStatus.IDLE, null, "2", null, null);
+
+        StringBuilder out = new StringBuilder();
+        copy.appendTo(out);
+        assertTrue(out.toString().contains("GOING TO NODE = 1"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.bit.pixelopolis_car.services.carvision;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DetectionLabelsTest {
+
+    private static DetectionLabels labels() {
+        String[] names = {"Hand", "Go", null, "Car", "Museum"};
+        int[] priorities = {0, 4, 0, 1, 2};
+        return new DetectionLabels(names, priorities, Arrays.asList("Hand", "Go", "Car", "Museum"));
+    }
+
+    @Test
+    public void ordersEnabledDetectionsByPriority() {
+        DetectionLabels labels = labels();
+        float[] classes = {1, 4, 3, 4, 0};
+        int[] order = new int[classes.length];
+
+        assertEquals(5, labels.select(classes, classes.length, order));
+        assertArrayEquals(new int[] {4, 2, 1, 3, 0}, order);
+        assertEquals("Car", labels.getName(DetectionLabels.toClassIndex(classes[order[1]])));
+        assertEquals("3", labels.getId(3));
+    }
+
+    @Test
+    public void dropsUnknownAndDisabledClasses() {
+        DetectionLabels labels = new DetectionLabels(new String[] {"Hand", "Go", null}, new int[] {0, 1, 2}, Arrays.asList("Go"));
+        float[] classes = {0, 2, 7, 1, -1};
+        int[] order = new int[classes.length];
+
+        assertEquals(1, labels.select(classes, classes.length, order));
+        assertEquals(3, order[0]);
+        assertEquals(0, DetectionLabels.toClassIndex(-1));
+    }
+
+    @Test
+    public void turnsModelOutputIntoDetectedObjects() {
+        DetectionLabels labels = labels();
+        // top, left, bottom, right like the model
+        float[][] locations = {{0.1f, 0.2f, 0.3f, 0.4f}, {0.5f, 0.6f, 0.7f, 0.8f}, {0f, 0f, 1f, 1f}};
+        float[] classes = {1, 3, 2};
+        float[] scores = {0.9f, 0.8f, 0.7f};
+        int[] order = new int[classes.length];
+
+        List<ObjectDetector.DetectedObject> detected = labels.toDetectedObjects(locations, classes, scores, classes.length, order);
+        assertEquals(2, detected.size());
+        ObjectDetector.DetectedObject car = detected.get(0);
+        assertEquals("3", car.getId());
+        assertEquals("Car", car.getTitle());
+        assertEquals(0.8f, car.getConfidence(), 0f);
+        assertEquals(0.6f, car.getLeft(), 0f);
+        assertEquals(0.5f, car.getTop(), 0f);
+        assertEquals(0.8f, car.getRight(), 0f);
+        assertEquals(0.7f, car.getBottom(), 0f);
+        assertEquals("Go", detected.get(1).getTitle());
+    }
+}
@@ -0,0 +1,44 @@
+package com.bit.pixelopolis_car.services.carvision;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ReplayClockTest {
+
+    @Test
+    public void maxSpeedNeverWaits() throws InterruptedException {
+        ReplayClock clock = new ReplayClock(0);
+        long start = System.nanoTime();
+        for (int frame = 0; frame < 1000; frame++) {
+            clock.awaitFrame();
+        }
+        assertTrue((System.nanoTime() - start) / 1000000 < 100);
+    }
+
+    @Test
+    public void fixedRateHoldsFramesBack() throws InterruptedException {
+        ReplayClock clock = new ReplayClock(100);
+        long start = System.nanoTime();
+        // the first frame is due right away, the other ten 10ms apart
+        for (int frame = 0; frame < 11; frame++) {
+            clock.awaitFrame();
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        assertTrue(elapsedMillis >= 95);
+        assertTrue(elapsedMillis < 1000);
+    }
+
+    @Test
+    public void lateFramesAreNotMadeUp() throws InterruptedException {
+        ReplayClock clock = new ReplayClock(100);
+        clock.awaitFrame();
+        // vision took as long as five frames
+        Thread.sleep(50);
+        long start = System.nanoTime();
+        clock.awaitFrame();
+        clock.awaitFrame();
+        // the late frame goes right away, the one after it a full interval later
+        assertTrue((System.nanoTime() - start) / 1000000 >= 9);
+    }
+}
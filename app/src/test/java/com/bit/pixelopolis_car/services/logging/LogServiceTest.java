@@ -0,0 +1,140 @@
+package com.bit.pixelopolis_car.services.logging;
+
+import com.bit.pixelopolis_car.services.config.LoggingInfo;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class LogServiceTest {
+
+    private static String dump(LogService service) {
+        service.drain();
+        return new String(service.dump(), StandardCharsets.UTF_8);
+    }
+
+    private static LoggingInfo unlimited() {
+        LoggingInfo loggingInfo = new LoggingInfo();
+        loggingInfo.setRatePerSecond(0);
+        return loggingInfo;
+    }
+
+    @Test
+    public void formatsWhenDumped() {
+        LogService service = new LogService(LogRecord.MAX_SIZE, false);
+        service.configure(unlimited());
+        Logger logger = service.getLogger("API_CALL");
+        StringBuilder body = new StringBuilder("{\"car_id\":1}");
+        logger.d("alive : %s", body);
+        logger.w("latency %.1f ms after %d tries", 12.25f, 3);
+        logger.i("100% of nothing");
+
+        String text = dump(service);
+        assertTrue(text, text.contains(" D/API_CALL: alive : {\"car_id\":1}\n"));
+        assertTrue(text, text.contains(" W/API_CALL: latency 12.3 ms after 3 tries\n"));
+        assertTrue(text, text.contains(" I/API_CALL: 100% of nothing\n"));
+    }
+
+    @Test
+    public void levelsComeFromTheConfig() {
+        LogService service = new LogService(LogRecord.MAX_SIZE, false);
+        Logger api = service.getLogger("API_CALL");
+        LoggingInfo loggingInfo = unlimited();
+        loggingInfo.setDefaultLevel("info");
+        loggingInfo.getTagLevels().put("API_CALL", "warn");
+        service.configure(loggingInfo);
+        Logger camera = service.getLogger("Camera");
+
+        assertEquals(Logger.WARN, api.getLevel());
+        assertEquals(Logger.INFO, camera.getLevel());
+        api.i("hidden");
+        api.e("shown");
+        camera.d("hidden too");
+        camera.i("also shown");
+        // below the compiled level whatever the config says
+        service.setLevel("Camera", Logger.VERBOSE);
+        camera.v("never");
+
+        String text = dump(service);
+        assertFalse(text.contains("hidden"));
+        assertFalse(text.contains("never"));
+        assertTrue(text.contains("E/API_CALL: shown"));
+        assertTrue(text.contains("I/Camera: also shown"));
+    }
+
+    @Test
+    public void eachCallSiteHasItsOwnLimit() {
+        LogService service = new LogService(LogRecord.MAX_SIZE, false);
+        LoggingInfo loggingInfo = new LoggingInfo();
+        loggingInfo.setRatePerSecond(0.001);
+        loggingInfo.setBurst(2);
+        service.configure(loggingInfo);
+        Logger logger = service.getLogger("CarController");
+        for (int i = 0; i < 10; i++)
+            logger.d("poll %d", i);
+        logger.d("arrived");
+
+        String text = dump(service);
+        assertTrue(text.contains("poll 0\n"));
+        assertTrue(text.contains("poll 1\n"));
+        assertFalse(text.contains("poll 2"));
+        assertTrue(text.contains("arrived\n"));
+    }
+
+    @Test
+    public void aBucketRefillsAndReportsWhatItDropped() {
+        TokenBucket bucket = new TokenBucket();
+        assertEquals(0, bucket.tryAcquire(0, 10, 1));
+        assertEquals(-1, bucket.tryAcquire(10000000L, 10, 1));
+        assertEquals(-1, bucket.tryAcquire(50000000L, 10, 1));
+        // 100 ms at 10 per second is one token
+        assertEquals(2, bucket.tryAcquire(100000000L, 10, 1));
+        assertEquals(-1, bucket.tryAcquire(100000000L, 10, 1));
+    }
+
+    @Test
+    public void theRingDropsTheOldestRecords() {
+        LogService service = new LogService(LogRecord.MAX_SIZE, false);
+        service.configure(unlimited());
+        Logger logger = service.getLogger("Serial");
+        char[] filler = new char[LogRecord.MAX_TEXT_LENGTH];
+        Arrays.fill(filler, 'x');
+        String padding = new String(filler);
+        for (int i = 0; i < 40; i++) {
+            logger.d("record %d %s", i, padding);
+            service.drain();
+        }
+
+        String text = dump(service);
+        assertFalse(text.contains("record 0 "));
+        assertTrue(text.contains("record 39 "));
+        // whole records go, every line left is complete
+        String[] lines = text.split("\n");
+        assertTrue(lines[0].startsWith("# 0 lines dropped"));
+        assertFalse(lines[0].endsWith(" 0 overwritten"));
+        for (int i = 1; i < lines.length; i++)
+            assertTrue(lines[i], lines[i].matches("\\d\\d-\\d\\d [\\d:.]+ D/Serial: record \\d+ x+"));
+    }
+
+    @Test
+    public void theSinkGetsTheFormattedLine() {
+        LogService service = new LogService(LogRecord.MAX_SIZE, false);
+        service.configure(unlimited());
+        List<String> lines = new ArrayList<>();
+        service.setSink((level, tag, message, throwable) -> lines.add(level + " " + tag + " " + message + (throwable != null ? " " + throwable.getMessage() : "")));
+        Logger logger = service.getLogger("API_CALL");
+        logger.e("connectCar failed", new IllegalStateException("timeout"));
+        logger.d("waitForStart : %s", (Object) null);
+        service.drain();
+
+        assertEquals(2, lines.size());
+        assertEquals(Logger.ERROR + " API_CALL connectCar failed timeout", lines.get(0));
+        assertEquals(Logger.DEBUG + " API_CALL waitForStart : null", lines.get(1));
+        assertTrue(dump(service).contains("java.lang.IllegalStateException: timeout"));
+    }
+}
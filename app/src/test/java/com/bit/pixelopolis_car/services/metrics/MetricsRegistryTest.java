@@ -0,0 +1,95 @@
+package com.bit.pixelopolis_car.services.metrics;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MetricsRegistryTest {
+
+    private static String scrape(MetricsRegistry registry) {
+        return new String(registry.scrape(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void sameNameAndLabelsIsTheSameMetric() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter io = registry.counter("serial_errors_total", "Serial failures", "kind", "io");
+        registry.counter("serial_errors_total", "Serial failures", "kind", "io").add(2);
+        registry.counter("serial_errors_total", "Serial failures", "kind", "connect").inc();
+
+        assertEquals(2, io.get());
+        String text = scrape(registry);
+        assertTrue(text.contains("# TYPE serial_errors_total counter\n"));
+        assertTrue(text.contains("serial_errors_total{kind=\"io\"} 2\n"));
+        assertTrue(text.contains("serial_errors_total{kind=\"connect\"} 1\n"));
+    }
+
+    @Test
+    public void histogramBucketsAreCumulative() {
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("station_request_seconds", "Request time", new double[]{0.01, 0.1}, "endpoint", "alive");
+        histogram.observe(0.005);
+        histogram.observeNanos(50000000L);
+        histogram.observe(0.1);
+        histogram.observe(3);
+
+        String text = scrape(registry);
+        assertTrue(text.contains("station_request_seconds_bucket{endpoint=\"alive\",le=\"0.01\"} 1\n"));
+        assertTrue(text.contains("station_request_seconds_bucket{endpoint=\"alive\",le=\"0.1\"} 3\n"));
+        assertTrue(text.contains("station_request_seconds_bucket{endpoint=\"alive\",le=\"+Inf\"} 4\n"));
+        assertTrue(text.contains("station_request_seconds_count{endpoint=\"alive\"} 4\n"));
+        assertEquals(3.155, histogram.getSum(), 1e-9);
+    }
+
+    @Test
+    public void gaugesAreSetOrSupplied() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("vision_frames_per_second", "Frames per second").set(14.5);
+        registry.gauge("battery_percent", "Battery", () -> 80);
+        registry.gauge("battery_percent", "Battery", () -> 75);
+
+        String text = scrape(registry);
+        assertTrue(text.contains("vision_frames_per_second 14.5\n"));
+        // the newest supplier wins
+        assertTrue(text.contains("battery_percent 75\n"));
+    }
+
+    @Test
+    public void labelValuesAreEscaped() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("events_total", "Events", "name", "a\"b\\c\nd").inc();
+
+        assertTrue(scrape(registry).contains("events_total{name=\"a\\\"b\\\\c\\nd\"} 1\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void aNameHasOneType() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("frames", "Frames");
+        registry.gauge("frames", "Frames");
+    }
+
+    @Test
+    public void concurrentUpdatesAreAllCounted() throws InterruptedException {
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter counter = registry.counter("ticks_total", "Ticks");
+        Histogram histogram = registry.histogram("tick_seconds", "Ticks", Histogram.exponentialBounds(0.001, 2, 8));
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    counter.inc();
+                    histogram.observe(0.003);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(40000, counter.get());
+        assertEquals(40000, histogram.getCount());
+    }
+}
@@ -0,0 +1,214 @@
+package com.bit.pixelopolis_car.services.recorder;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DriveRecorderTest {
+    private File file;
+    private DriveRecorder recorder;
+
+    private static class Record {
+        final int type;
+        final int sequence;
+        final long timestampNanos;
+        final ByteBuffer payload;
+
+        Record(int type, int sequence, long timestampNanos, ByteBuffer payload) {
+            this.type = type;
+            this.sequence = sequence;
+            this.timestampNanos = timestampNanos;
+            this.payload = payload;
+        }
+
+        String text(int offset) {
+            byte[] bytes = new byte[payload.get(offset) & 0xff];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = payload.get(offset + 1 + i);
+            return new String(bytes, StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        file = File.createTempFile("drive_recorder", ".bin");
+        file.delete();
+    }
+
+    @After
+    public void tearDown() {
+        if (recorder != null)
+            recorder.close();
+        file.delete();
+        DriveRecorder.getPreviousFile(file).delete();
+    }
+
+    @Test
+    public void dumpsEveryRecordType() throws Exception {
+        recorder = new DriveRecorder(file, 64 * 1024, 500, 5, 50);
+        recorder.recordStatus("IDLE", "LOST", 10);
+        recorder.recordSerialTx(-120, 340, 20);
+        recorder.recordTelemetry(87, 301, 299, 30);
+        recorder.recordVision(0.25f, 41.5f, 2, new float[]{0.9f, 0.8f},
+                new float[]{1, 2, 3, 4, 5, 6, 7, 8}, new String[]{"node_7", "car"}, 40);
+        recorder.recordFrame(12, 16, ByteBuffer.wrap(new byte[]{(byte) 0xff, (byte) 0xd8, 1, 2, 3}), 50);
+
+        List<Record> records = parse(write(recorder.openDump()));
+        assertEquals(5, records.size());
+        for (int i = 0; i < records.size(); i++) {
+            assertEquals(i, records.get(i).sequence);
+            assertEquals((i + 1) * 10, records.get(i).timestampNanos);
+        }
+
+        Record status = records.get(0);
+        assertEquals(DriveRecorder.TYPE_STATUS, status.type);
+        assertEquals("IDLE", status.text(0));
+        assertEquals("LOST", status.text(5));
+
+        Record serialTx = records.get(1);
+        assertEquals(DriveRecorder.TYPE_SERIAL_TX, serialTx.type);
+        assertEquals(-120, serialTx.payload.getShort(0));
+        assertEquals(340, serialTx.payload.getShort(2));
+
+        Record telemetry = records.get(2);
+        assertEquals(DriveRecorder.TYPE_TELEMETRY, telemetry.type);
+        assertEquals(87, telemetry.payload.getInt(0));
+        assertEquals(301, telemetry.payload.getInt(4));
+        assertEquals(299, telemetry.payload.getInt(8));
+
+        Record vision = records.get(3);
+        assertEquals(DriveRecorder.TYPE_VISION, vision.type);
+        assertEquals(0.25f, vision.payload.getFloat(0), 0);
+        assertEquals(41.5f, vision.payload.getFloat(4), 0);
+        assertEquals(2, vision.payload.get(8));
+        assertEquals(0.9f, vision.payload.getFloat(9), 0);
+        assertEquals(4f, vision.payload.getFloat(25), 0);
+        assertEquals("node_7", vision.text(29));
+        assertEquals(0.8f, vision.payload.getFloat(36), 0);
+        assertEquals("car", vision.text(56));
+
+        Record frame = records.get(4);
+        assertEquals(DriveRecorder.TYPE_FRAME, frame.type);
+        assertEquals(12, frame.payload.getShort(0));
+        assertEquals(16, frame.payload.getShort(2));
+        assertEquals(9, frame.payload.remaining());
+        assertEquals((byte) 0xd8, frame.payload.get(5));
+    }
+
+    @Test
+    public void overwritesOldestRecordsOnceFull() throws Exception {
+        recorder = new DriveRecorder(file, 1024, 500, 5, 50);
+        ByteBuffer jpeg = ByteBuffer.allocate(37);
+        for (int i = 0; i < 500; i++) {
+            // odd sizes so records do not line up with the end of the ring
+            if (i % 3 == 0) {
+                jpeg.clear();
+                recorder.recordFrame(1, 1, jpeg, i);
+            } else {
+                recorder.recordSerialTx(i, -i, i);
+            }
+            assertTrue(recorder.getUsedBytes() <= recorder.getCapacity());
+        }
+        assertEquals(500, recorder.getRecordCount());
+
+        List<Record> records = parse(write(recorder.openDump()));
+        assertTrue(records.size() > 10);
+        int previous = -1;
+        for (Record record : records) {
+            if (previous >= 0)
+                assertEquals(previous + 1, record.sequence);
+            previous = record.sequence;
+        }
+        Record last = records.get(records.size() - 1);
+        assertEquals(499, last.sequence);
+        assertEquals(DriveRecorder.TYPE_SERIAL_TX, last.type);
+        assertEquals(499, last.payload.getShort(0));
+    }
+
+    @Test
+    public void keepsPreviousRunForPostMortem() throws Exception {
+        recorder = new DriveRecorder(file, 4096, 500, 5, 50);
+        recorder.recordStatus("ON_ROUTE_TO_NODE", "HITTING_WALL", 1);
+        // no close, as if the app died here
+        recorder = new DriveRecorder(file, 4096, 500, 5, 50);
+        recorder.recordSerialTx(0, 0, 2);
+
+        List<Record> previous = parse(write(DriveRecorder.openDump(DriveRecorder.getPreviousFile(file))));
+        assertEquals(1, previous.size());
+        assertEquals("HITTING_WALL", previous.get(0).text(17));
+        List<Record> current = parse(write(recorder.openDump()));
+        assertEquals(1, current.size());
+        assertEquals(DriveRecorder.TYPE_SERIAL_TX, current.get(0).type);
+    }
+
+    @Test
+    public void keepsRecordingWhileDumpIsWritten() throws Exception {
+        recorder = new DriveRecorder(file, 4096, 500, 5, 50);
+        recorder.recordSerialTx(1, 1, 1);
+        recorder.recordSerialTx(2, 2, 2);
+        DriveRecorder.Dump dump = recorder.openDump();
+        // after the snapshot, not part of the dump
+        recorder.recordSerialTx(3, 3, 3);
+
+        List<Record> records = parse(write(dump));
+        assertEquals(2, records.size());
+        assertEquals(2, records.get(1).payload.getShort(0));
+        assertEquals(3, recorder.getRecordCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void failsDumpOverwrittenBeforeItWasWritten() throws Exception {
+        recorder = new DriveRecorder(file, 1024, 500, 5, 50);
+        recorder.recordSerialTx(1, 1, 1);
+        DriveRecorder.Dump dump = recorder.openDump();
+        for (int i = 0; i < 100; i++)
+            recorder.recordSerialTx(i, i, i);
+        write(dump);
+    }
+
+    @Test
+    public void dumpsNothingForMissingFile() throws Exception {
+        assertNull(DriveRecorder.openDump(DriveRecorder.getPreviousFile(file)));
+    }
+
+    private static ByteBuffer write(DriveRecorder.Dump dump) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DriveRecorder.Dump written = dump) {
+            written.writeTo(Channels.newChannel(out));
+        }
+        assertEquals(dump.getLength(), out.size());
+        return ByteBuffer.wrap(out.toByteArray());
+    }
+
+    // skips pad records
+    private static List<Record> parse(ByteBuffer dump) {
+        assertEquals(DriveRecorder.MAGIC, dump.getInt(0));
+        assertEquals(DriveRecorder.VERSION, dump.getShort(4));
+        int length = dump.getInt(8);
+        assertEquals(DriveRecorder.HEADER_SIZE + length, dump.remaining());
+        List<Record> records = new ArrayList<>();
+        int offset = DriveRecorder.HEADER_SIZE;
+        while (offset < dump.limit()) {
+            int type = dump.get(offset);
+            int payloadLength = dump.getShort(offset + 2) & 0xffff;
+            ByteBuffer payload = dump.duplicate();
+            payload.position(offset + DriveRecorder.RECORD_HEADER_SIZE).limit(offset + DriveRecorder.RECORD_HEADER_SIZE + payloadLength);
+            if (type != DriveRecorder.TYPE_PAD)
+                records.add(new Record(type, dump.getInt(offset + 4), dump.getLong(offset + 8), payload.slice()));
+            offset += (DriveRecorder.RECORD_HEADER_SIZE + payloadLength + DriveRecorder.RECORD_ALIGNMENT - 1) / DriveRecorder.RECORD_ALIGNMENT * DriveRecorder.RECORD_ALIGNMENT;
+        }
+        assertEquals(dump.limit(), offset);
+        return records;
+    }
+}
@@ -0,0 +1,115 @@
+package com.bit.pixelopolis_car.services.serial;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LineFramerTest {
+
+    private static final int CAPACITY = 16;
+
+    private final List<String> received = new ArrayList<>();
+    private final LineFramer framer = new LineFramer(CAPACITY,
+            (buffer, offset, length) -> received.add(new String(buffer, offset, length, StandardCharsets.US_ASCII)));
+
+    @Test
+    public void splitsLinesInsideOneChunk() {
+        feed("b87\nr301\r\nr299\n");
+        assertEquals(listOf("b87", "r301", "r299"), received);
+    }
+
+    @Test
+    public void joinsLinesAcrossChunks() {
+        feed("r3");
+        feed("0");
+        feed("1\nb");
+        feed("9");
+        feed("0\n");
+        assertEquals(listOf("r301", "b90"), received);
+    }
+
+    @Test
+    public void skipsEmptyLines() {
+        feed("\n\r\nb50\n\n");
+        assertEquals(listOf("b50"), received);
+    }
+
+    @Test
+    public void dropsOverrunLineAndRecovers() {
+        feed("r1");
+        feed("2345678901234567890");
+        feed("\nb42\n");
+        feed("012345678901234567890123\nr200\n");
+        assertEquals(listOf("b42", "r200"), received);
+        assertEquals(2, framer.getOverrunCount());
+    }
+
+    @Test
+    public void resetDiscardsPartialLine() {
+        feed("r12");
+        framer.reset();
+        feed("b7\n");
+        assertEquals(listOf("b7"), received);
+    }
+
+    @Test
+    public void randomChunkBoundaries() {
+        Random random = new Random(26);
+        for (int round = 0; round < 200; round++) {
+            received.clear();
+            framer.reset();
+
+            List<String> expected = new ArrayList<>();
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            int lineCount = 1 + random.nextInt(40);
+            for (int i = 0; i < lineCount; i++) {
+                String line = randomLine(random);
+                expected.add(line);
+                byte[] bytes = (line + (random.nextBoolean() ? "\r\n" : "\n")).getBytes(StandardCharsets.US_ASCII);
+                stream.write(bytes, 0, bytes.length);
+            }
+            byte[] data = stream.toByteArray();
+
+            int position = 0;
+            while (position < data.length) {
+                int chunk = Math.min(data.length - position, 1 + random.nextInt(24));
+                // feed from the middle of a larger array to check offsets are honoured
+                byte[] padded = new byte[chunk + 8];
+                System.arraycopy(data, position, padded, 4, chunk);
+                framer.feed(padded, 4, chunk);
+                position += chunk;
+            }
+            assertEquals(expected, received);
+            assertEquals(0, framer.getOverrunCount());
+        }
+    }
+
+    private String randomLine(Random random) {
+        char channel = random.nextBoolean() ? 'b' : 'r';
+        int digits = 1 + random.nextInt(CAPACITY - 2);
+        StringBuilder builder = new StringBuilder().append(channel);
+        for (int i = 0; i < digits; i++) {
+            builder.append((char) ('0' + random.nextInt(10)));
+        }
+        return builder.toString();
+    }
+
+    private void feed(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        framer.feed(bytes, 0, bytes.length);
+    }
+
+    private static List<String> listOf(String... values) {
+        List<String> list = new ArrayList<>();
+        for (String value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,39 @@
+package com.bit.pixelopolis_car.services.serial;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class MotorCommandEncoderTest {
+
+    private static final String DIGITS = "0123456789abcdefghijklmno";
+
+    // the string based encoding the board was written against
+    private static String legacyEncode(int speed) {
+        int upperInput = speed + 288;
+        int firstIndex = (int) Math.floor(upperInput / 24.0f);
+        int secondIndex = upperInput - firstIndex * 24;
+        return "" + DIGITS.charAt(firstIndex) + DIGITS.charAt(secondIndex);
+    }
+
+    @Test
+    public void matchesLegacyEncodingOverTheSpeedRange() {
+        byte[] command = new byte[MotorCommandEncoder.COMMAND_LENGTH];
+        for (int speed = MotorCommandEncoder.MIN_SPEED; speed <= MotorCommandEncoder.MAX_SPEED; speed++) {
+            int length = MotorCommandEncoder.encode(speed, -speed / 2, command, 0);
+            String expected = legacyEncode(speed) + legacyEncode(-speed / 2) + "\n";
+            assertEquals(expected, new String(command, 0, length, StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    public void clampsSpeedsOutsideTheBoardRange() {
+        byte[] command = new byte[MotorCommandEncoder.COMMAND_LENGTH + 2];
+        MotorCommandEncoder.encode(-1000, 1000, command, 2);
+        assertEquals("00on\n", new String(command, 2, MotorCommandEncoder.COMMAND_LENGTH, StandardCharsets.US_ASCII));
+        MotorCommandEncoder.encode(0, 0, command, 0);
+        assertEquals("c0c0\n", new String(command, 0, MotorCommandEncoder.COMMAND_LENGTH, StandardCharsets.US_ASCII));
+    }
+}
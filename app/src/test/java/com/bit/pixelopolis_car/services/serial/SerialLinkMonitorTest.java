@@ -0,0 +1,193 @@
+package com.bit.pixelopolis_car.services.serial;
+
+import com.bit.pixelopolis_car.services.config.SerialLinkInfo;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class SerialLinkMonitorTest {
+
+    private static final long MILLI = 1000000L;
+
+    /**
+     * Stand-in for the controller board on the other end of the USB cable: every written line comes
+     * back after a fixed delay, like firmware that echoes pings. Time only moves through advance().
+     */
+    private static class Echo {
+        final long arrivalNanos;
+        final byte[] data;
+
+        Echo(long arrivalNanos, byte[] data) {
+            this.arrivalNanos = arrivalNanos;
+            this.data = data;
+        }
+    }
+
+    private static class LoopbackLink {
+        private final SerialLinkMonitor monitor;
+        private final List<String> forwardedLines = new ArrayList<>();
+        private final ArrayDeque<Echo> inFlight = new ArrayDeque<>();
+        private final LineFramer framer;
+        private long echoDelayNanos;
+        private boolean isEchoing = true;
+        long nowNanos = 1000 * MILLI;
+
+        LoopbackLink(SerialLinkMonitor monitor, long echoDelayNanos) {
+            this.monitor = monitor;
+            this.echoDelayNanos = echoDelayNanos;
+            framer = new LineFramer(64, (buffer, offset, length) -> {
+                if (!monitor.onLine(buffer, offset, length, nowNanos))
+                    forwardedLines.add(new String(buffer, offset, length, StandardCharsets.US_ASCII));
+            });
+        }
+
+        // what SerialCommunicator.send does for one speed command
+        void sendCommand() {
+            write("i0i0\n".getBytes(StandardCharsets.US_ASCII));
+            byte[] ping = monitor.nextPing(nowNanos);
+            if (ping != null)
+                write(ping);
+        }
+
+        void write(byte[] data) {
+            monitor.onBytesWritten(data.length, nowNanos);
+            if (isEchoing && data[0] == SerialLinkMonitor.PING_CHANNEL) {
+                inFlight.add(new Echo(nowNanos + echoDelayNanos, data));
+            }
+        }
+
+        void advance(long nanos) {
+            long end = nowNanos + nanos;
+            while (!inFlight.isEmpty() && inFlight.peek().arrivalNanos <= end) {
+                Echo echo = inFlight.poll();
+                nowNanos = echo.arrivalNanos;
+                monitor.onBytesRead(echo.data.length, nowNanos);
+                framer.feed(echo.data, 0, echo.data.length);
+            }
+            nowNanos = end;
+        }
+
+        void receive(String text) {
+            byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+            monitor.onBytesRead(data.length, nowNanos);
+            framer.feed(data, 0, data.length);
+        }
+    }
+
+    private SerialLinkInfo info;
+
+    @Before
+    public void setUp() {
+        info = new SerialLinkInfo();
+        info.setPingEnable(true);
+        info.setPingInterval(100);
+        info.setPingTimeout(300);
+        info.setDegradedLatency(50);
+        info.setDegradedLossRate(0.3);
+        info.setDegradedSpeedScale(0.5);
+    }
+
+    @Test
+    public void measuresRoundTripThroughLoopback() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 20 * MILLI);
+        drive(link, 3000);
+
+        assertTrue(monitor.getPingCount() >= 25);
+        assertEquals(0, monitor.getLostPingCount());
+        float p50 = monitor.getLatencyMillis(50, link.nowNanos);
+        assertTrue("p50 " + p50, p50 >= 20 && p50 < 24);
+        assertFalse(monitor.isDegraded(link.nowNanos));
+        assertEquals(1.0f, monitor.getSpeedScale(link.nowNanos), 0);
+    }
+
+    @Test
+    public void slowEchoDegradesLinkAndRecovers() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 120 * MILLI);
+        drive(link, 2000);
+        assertTrue(monitor.isDegraded(link.nowNanos));
+        assertEquals(0.5f, monitor.getSpeedScale(link.nowNanos), 0);
+
+        // slow samples age out of the rolling histogram
+        link.echoDelayNanos = 5 * MILLI;
+        drive(link, 12000);
+        assertFalse(monitor.isDegraded(link.nowNanos));
+    }
+
+    @Test
+    public void missingEchoCountsAsLoss() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 10 * MILLI);
+        link.isEchoing = false;
+        drive(link, 5000);
+
+        assertTrue(monitor.getLostPingCount() > 5);
+        assertTrue(monitor.getLossRate(link.nowNanos) > 0.3f);
+        assertTrue(monitor.isDegraded(link.nowNanos));
+        assertEquals(0, monitor.getLatencyMillis(50, link.nowNanos), 0);
+    }
+
+    @Test
+    public void lateEchoIsConsumedButNotMeasured() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 500 * MILLI);
+        link.sendCommand();
+        link.advance(400 * MILLI);
+        // timed out, the next ping goes out before the first echo arrives
+        link.sendCommand();
+        link.advance(200 * MILLI);
+
+        assertEquals(1, monitor.getUnexpectedEchoCount());
+        assertEquals(0, monitor.getLatencyMillis(50, link.nowNanos), 0);
+        assertTrue(link.forwardedLines.isEmpty());
+    }
+
+    @Test
+    public void telemetryLinesPassThrough() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 10 * MILLI);
+        link.receive("b80\nr300\npx\n");
+        assertEquals(2, link.forwardedLines.size());
+        assertEquals(1, monitor.getErrorCount());
+    }
+
+    @Test
+    public void pingDisabledSendsNothingAndForwardsEverything() {
+        info.setPingEnable(false);
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 10 * MILLI);
+        drive(link, 1000);
+        link.receive("p12\n");
+
+        assertEquals(0, monitor.getPingCount());
+        assertEquals(1, link.forwardedLines.size());
+        assertFalse(monitor.isDegraded(link.nowNanos));
+    }
+
+    @Test
+    public void measuresThroughput() {
+        SerialLinkMonitor monitor = new SerialLinkMonitor(info);
+        LoopbackLink link = new LoopbackLink(monitor, 10 * MILLI);
+        info.setPingEnable(false);
+        // 5 bytes every 40 ms
+        drive(link, 3000);
+        assertEquals(125, monitor.getTxBytesPerSecond(link.nowNanos), 5);
+        assertEquals(0, monitor.getRxBytesPerSecond(link.nowNanos), 0);
+    }
+
+    // wheel controller rate
+    private void drive(LoopbackLink link, long durationMillis) {
+        for (long elapsed = 0; elapsed < durationMillis; elapsed += 40) {
+            link.sendCommand();
+            link.advance(40 * MILLI);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.bit.pixelopolis_car.services.serial;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class SerialRingBufferTest {
+
+    private static final int CAPACITY = 8;
+
+    private final SerialRingBuffer ring = new SerialRingBuffer(CAPACITY);
+
+    @Test
+    public void takesWhatWasWrittenInOrder() throws Exception {
+        write("b87\n");
+        write("r3");
+        assertEquals("b87\nr3", take(CAPACITY));
+        assertEquals(0, ring.getDroppedBytes());
+    }
+
+    @Test
+    public void wrapsAroundTheEndOfTheRing() throws Exception {
+        write("abcdef");
+        assertEquals("abcd", take(4));
+        // runs past the end of the array and continues at its start
+        write("ghijk");
+        assertEquals("efghijk", take(CAPACITY));
+        write("lmnopqrs");
+        assertEquals("lmnopqrs", take(CAPACITY));
+        assertEquals(0, ring.getDroppedBytes());
+    }
+
+    @Test
+    public void dropsOldestBytesWhenFull() throws Exception {
+        write("abcdef");
+        write("ghijk");
+        assertEquals(3, ring.getDroppedBytes());
+        assertEquals("defghijk", take(CAPACITY));
+    }
+
+    @Test
+    public void keepsNewestBytesOfWriteLargerThanRing() throws Exception {
+        write("xy");
+        write("0123456789ab");
+        assertEquals(2 + 4, ring.getDroppedBytes());
+        assertEquals("456789ab", take(CAPACITY));
+    }
+
+    @Test
+    public void takeLeavesWhatDoesNotFitTheTarget() throws Exception {
+        write("abcde");
+        assertEquals("ab", take(2));
+        assertEquals("cde", take(CAPACITY));
+    }
+
+    @Test
+    public void takeReturnsNothingAfterTimeout() throws Exception {
+        long start = System.nanoTime();
+        assertEquals(0, ring.take(new byte[CAPACITY], 50));
+        assertTrue(System.nanoTime() - start >= 40 * 1000000L);
+    }
+
+    @Test
+    public void takeWakesUpForWrite() throws Exception {
+        Thread writer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            write("r301\n");
+        });
+        writer.start();
+        long start = System.nanoTime();
+        assertEquals("r301\n", take(CAPACITY, 5000));
+        assertTrue(System.nanoTime() - start < 4000 * 1000000L);
+        writer.join();
+    }
+
+    @Test
+    public void clearDiscardsBufferedBytes() throws Exception {
+        write("abc");
+        ring.clear();
+        write("d");
+        assertEquals("d", take(CAPACITY));
+    }
+
+    private void write(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.US_ASCII);
+        ring.write(bytes, 0, bytes.length);
+    }
+
+    private String take(int targetSize) throws InterruptedException {
+        return take(targetSize, 0);
+    }
+
+    private String take(int targetSize, long timeoutMillis) throws InterruptedException {
+        byte[] target = new byte[targetSize];
+        // wait(0) would block forever, data is already there in the tests that pass 0
+        int count = ring.take(target, timeoutMillis == 0 ? 1 : timeoutMillis);
+        return new String(target, 0, count, StandardCharsets.US_ASCII);
+    }
+}
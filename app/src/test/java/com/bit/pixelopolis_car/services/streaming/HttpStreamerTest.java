@@ -0,0 +1,452 @@
+package com.bit.pixelopolis_car.services.streaming;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HttpStreamerTest {
+
+    private static final int FRAME_SIZE = 48 * 1024;
+    private static final int FRAME_COUNT = 300;
+    // largest delta message that still fits a pooled frame with its length prefix
+    private static final int DELTA_SIZE = FRAME_SIZE - 4;
+    // enough to fill the loopback socket buffers of a viewer that does not read
+    private static final int SLOW_FRAME_COUNT = 200;
+    private static final long TIMEOUT_MS = 5000;
+    private static final byte[] VIEWER_PAGE = "<html>delta</html>".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] DOCUMENT = "{\"frames\": 3}".getBytes(StandardCharsets.UTF_8);
+    private static final int DOWNLOAD_SIZE = 4 * 1024 * 1024 + 5;
+
+    private HttpStreamer streamer;
+    private final CountDownLatch downloadGate = new CountDownLatch(1);
+
+    /** Waits for the test before it writes, like a large file on a slow disk. */
+    private class GatedBody implements HttpDownload.Body {
+        @Override
+        public long getLength() {
+            return DOWNLOAD_SIZE;
+        }
+
+        @Override
+        public void writeTo(WritableByteChannel out) throws IOException {
+            try {
+                assertTrue(downloadGate.await(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            ByteBuffer chunk = ByteBuffer.allocate(64 * 1024);
+            for (int offset = 0; offset < DOWNLOAD_SIZE; offset += chunk.capacity()) {
+                chunk.clear();
+                int length = Math.min(chunk.capacity(), DOWNLOAD_SIZE - offset);
+                for (int i = 0; i < length; i++)
+                    chunk.put((byte) (offset + i));
+                chunk.flip();
+                while (chunk.hasRemaining())
+                    out.write(chunk);
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /** Reads the multipart stream like a browser would and checks every frame it gets. */
+    private static class Viewer extends Thread {
+        private final Socket socket;
+        volatile int frameCount = 0;
+        volatile int lastFrameIndex = -1;
+        volatile long byteCount = 0;
+        volatile String error = null;
+
+        Viewer(int port) throws IOException {
+            socket = new Socket("127.0.0.1", port);
+            OutputStream request = socket.getOutputStream();
+            request.write("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                assertEquals("HTTP/1.0 200 OK", readLine(in));
+                while (readLine(in).length() > 0) {
+                    // response headers
+                }
+                readLine(in); // first boundary
+                byte[] body = new byte[FRAME_SIZE];
+                while (true) {
+                    int length = -1;
+                    String line;
+                    while ((line = readLine(in)).length() > 0) {
+                        if (line.startsWith("Content-Length: "))
+                            length = Integer.parseInt(line.substring("Content-Length: ".length()));
+                    }
+                    assertEquals(FRAME_SIZE, length);
+                    readFully(in, body, length);
+                    int index = body[0] & 0xff;
+                    for (int i = 1; i < length; i++) {
+                        if (body[i] != body[0])
+                            throw new AssertionError("frame corrupted at " + i);
+                    }
+                    // indices are mod 256 but never go backwards within a short window
+                    if (lastFrameIndex >= 0 && ((index - lastFrameIndex) & 0xff) == 0)
+                        throw new AssertionError("frame repeated " + index);
+                    lastFrameIndex = index;
+                    assertEquals("", readLine(in));
+                    readLine(in); // boundary
+                    frameCount++;
+                    byteCount += length;
+                }
+            } catch (EOFException | java.net.SocketException closed) {
+                // streamer stopped or test closed the socket
+            } catch (Throwable t) {
+                error = t.toString();
+            }
+        }
+
+        void close() throws IOException {
+            socket.close();
+        }
+
+        private static String readLine(InputStream in) throws IOException {
+            StringBuilder line = new StringBuilder();
+            int c;
+            while ((c = in.read()) != '\n') {
+                if (c < 0)
+                    throw new EOFException();
+                if (c != '\r')
+                    line.append((char) c);
+            }
+            return line.toString();
+        }
+
+        private static void readFully(InputStream in, byte[] buffer, int length) throws IOException {
+            int offset = 0;
+            while (offset < length) {
+                int n = in.read(buffer, offset, length - offset);
+                if (n < 0)
+                    throw new EOFException();
+                offset += n;
+            }
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        streamer = new HttpStreamer(0, FRAME_SIZE + 1, VIEWER_PAGE);
+        streamer.addEndpoint("/document", "application/json", () -> ByteBuffer.wrap(DOCUMENT));
+        streamer.addEndpoint("/missing", "application/json", () -> null);
+        streamer.addDownload("/download", "application/octet-stream", GatedBody::new);
+        streamer.addDownload("/download/missing", "application/octet-stream", () -> null);
+        streamer.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (streamer.getLocalPort() < 0 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(streamer.getLocalPort() > 0);
+    }
+
+    @After
+    public void tearDown() {
+        streamer.stop();
+    }
+
+    @Test
+    public void fansOutToSeveralViewersDespiteStalledOne() throws Exception {
+        // never reads, its socket buffers fill up after a few frames
+        Socket stalled = request("/");
+        stalled.setReceiveBufferSize(4096);
+        List<Viewer> viewers = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            viewers.add(new Viewer(streamer.getLocalPort()));
+        waitForClients(4);
+        for (Viewer viewer : viewers)
+            viewer.start();
+
+        for (int i = 0; i < FRAME_COUNT; i++) {
+            publishFrame(i);
+            Thread.sleep(2);
+        }
+        Thread.sleep(200);
+
+        for (Viewer viewer : viewers) {
+            assertNull(viewer.error, viewer.error);
+            assertTrue("frames " + viewer.frameCount, viewer.frameCount >= FRAME_COUNT / 4);
+            assertEquals((long) viewer.frameCount * FRAME_SIZE, viewer.byteCount);
+            // the last frame always reaches a viewer that keeps up
+            assertEquals((FRAME_COUNT - 1) & 0xff, viewer.lastFrameIndex);
+        }
+
+        stalled.close();
+        for (Viewer viewer : viewers)
+            viewer.close();
+        waitForClients(0);
+    }
+
+    @Test
+    public void returnsFramesToPoolAfterViewersLeave() throws Exception {
+        int freeFrames = streamer.getFreeFrameCount();
+        for (int round = 0; round < 3; round++) {
+            Viewer viewer = new Viewer(streamer.getLocalPort());
+            waitForClients(1);
+            viewer.start();
+            for (int i = 0; i < 50; i++) {
+                publishFrame(i);
+                Thread.sleep(1);
+            }
+            Thread.sleep(100);
+            assertNull(viewer.error, viewer.error);
+            assertTrue(viewer.frameCount > 0);
+            viewer.close();
+            waitForClients(0);
+        }
+        assertEquals(freeFrames, streamer.getFreeFrameCount());
+    }
+
+    @Test
+    public void allocatesFramesOnDemandAndGrowsThem() {
+        StreamFramePool pool = new StreamFramePool(2, 16, 100);
+        assertEquals(2, pool.getFreeCount());
+        StreamFrame frame = pool.acquire();
+        assertEquals(16, frame.getData().capacity());
+        assertFalse(frame.ensureCapacity(101));
+        assertTrue(frame.ensureCapacity(40));
+        assertEquals(50, frame.getData().capacity());
+
+        // frames acquired later are as large as the grown one
+        StreamFrame next = pool.acquire();
+        assertEquals(50, next.getData().capacity());
+        assertNull(pool.acquire());
+        frame.release();
+        next.release();
+        assertEquals(2, pool.getFreeCount());
+        assertEquals(50, pool.acquire().getData().capacity());
+    }
+
+    @Test
+    public void servesViewerPageAndCloses() throws Exception {
+        Socket socket = request("/delta.html");
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        assertEquals("HTTP/1.0 200 OK", Viewer.readLine(in));
+        int length = -1;
+        String line;
+        while ((line = Viewer.readLine(in)).length() > 0) {
+            if (line.startsWith("Content-Length: "))
+                length = Integer.parseInt(line.substring("Content-Length: ".length()));
+        }
+        assertEquals(VIEWER_PAGE.length, length);
+        byte[] page = new byte[length];
+        Viewer.readFully(in, page, length);
+        assertArrayEquals(VIEWER_PAGE, page);
+        assertEquals(-1, in.read());
+        socket.close();
+        waitForClients(0);
+    }
+
+    @Test
+    public void servesEndpointDocumentsAndCloses() throws Exception {
+        Socket socket = request("/document?pretty=1");
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        assertEquals("HTTP/1.0 200 OK", Viewer.readLine(in));
+        int length = -1;
+        String contentType = null;
+        String line;
+        while ((line = Viewer.readLine(in)).length() > 0) {
+            if (line.startsWith("Content-Length: "))
+                length = Integer.parseInt(line.substring("Content-Length: ".length()));
+            if (line.startsWith("Content-Type: "))
+                contentType = line.substring("Content-Type: ".length());
+        }
+        assertEquals("application/json", contentType);
+        assertEquals(DOCUMENT.length, length);
+        byte[] document = new byte[length];
+        Viewer.readFully(in, document, length);
+        assertArrayEquals(DOCUMENT, document);
+        assertEquals(-1, in.read());
+        socket.close();
+        assertFalse(streamer.hasClients());
+
+        socket = request("/missing");
+        in = new BufferedInputStream(socket.getInputStream());
+        assertEquals("HTTP/1.0 404 Not Found", Viewer.readLine(in));
+        socket.close();
+        waitForClients(0);
+    }
+
+    @Test
+    public void servesDownloadWithoutHoldingUpViewers() throws Exception {
+        Socket download = request("/download");
+        // the download leaves the selector for its own thread
+        Thread.sleep(100);
+        waitForClients(0);
+
+        Viewer viewer = new Viewer(streamer.getLocalPort());
+        waitForClients(1);
+        viewer.start();
+        for (int i = 0; i < 50; i++) {
+            publishFrame(i);
+            Thread.sleep(2);
+        }
+        Thread.sleep(100);
+        assertNull(viewer.error, viewer.error);
+        assertEquals(49, viewer.lastFrameIndex);
+
+        downloadGate.countDown();
+        InputStream in = new BufferedInputStream(download.getInputStream());
+        assertEquals("HTTP/1.0 200 OK", Viewer.readLine(in));
+        int length = -1;
+        String line;
+        while ((line = Viewer.readLine(in)).length() > 0) {
+            if (line.startsWith("Content-Length: "))
+                length = Integer.parseInt(line.substring("Content-Length: ".length()));
+        }
+        assertEquals(DOWNLOAD_SIZE, length);
+        byte[] body = new byte[length];
+        Viewer.readFully(in, body, length);
+        for (int i = 0; i < length; i++) {
+            if (body[i] != (byte) i)
+                throw new AssertionError("download corrupted at " + i);
+        }
+        assertEquals(-1, in.read());
+        download.close();
+
+        Socket missing = request("/download/missing");
+        in = new BufferedInputStream(missing.getInputStream());
+        assertEquals("HTTP/1.0 404 Not Found", Viewer.readLine(in));
+        missing.close();
+        viewer.close();
+        waitForClients(0);
+    }
+
+    @Test
+    public void deltaViewerStartsAtKeyframeAndWaitsForOneAfterGap() throws Exception {
+        Socket socket = request("/delta");
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (streamer.getDeltaClientCount() != 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertTrue(streamer.hasDeltaClients());
+        assertFalse(streamer.hasJpegClients());
+        // a new viewer needs a keyframe
+        assertTrue(streamer.takeKeyframeRequest());
+
+        publishDelta(1, false);     // skipped, the viewer has no keyframe yet
+        assertTrue(streamer.takeKeyframeRequest());
+        publishDelta(2, true);
+        publishDelta(3, false);
+        publishDelta(4, false);
+        assertFalse(streamer.takeKeyframeRequest());
+
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        assertEquals("HTTP/1.0 200 OK", Viewer.readLine(in));
+        while (Viewer.readLine(in).length() > 0) {
+            // response headers
+        }
+        for (int expected = 2; expected <= 4; expected++) {
+            assertEquals(1, in.readInt());
+            assertEquals(expected, in.readByte());
+        }
+        socket.close();
+        waitForClients(0);
+    }
+
+    @Test
+    public void slowDeltaViewerDoesNotForceKeyframeEveryFrame() throws Exception {
+        // reads nothing until the encoder is done, the socket buffers fill up after some frames
+        Socket slow = new Socket();
+        slow.setReceiveBufferSize(4096);
+        slow.connect(new InetSocketAddress("127.0.0.1", streamer.getLocalPort()));
+        slow.getOutputStream().write("GET /delta HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (streamer.getDeltaClientCount() != 1 && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+
+        // encodes the way CameraStreamer does, a keyframe only when one was asked for
+        int keyframeCount = 0;
+        for (int i = 0; i < SLOW_FRAME_COUNT; i++) {
+            boolean isKeyframe = streamer.takeKeyframeRequest();
+            if (isKeyframe)
+                keyframeCount++;
+            publishDelta(i, isKeyframe, DELTA_SIZE);
+            Thread.sleep(5);
+        }
+        assertTrue("dropped " + streamer.getDroppedFrameCount(), streamer.getDroppedFrameCount() > 0);
+        assertTrue("keyframes " + keyframeCount, keyframeCount <= SLOW_FRAME_COUNT / 20);
+
+        // the waiting keyframe was kept, the viewer gets a stream it can decode
+        DataInputStream in = new DataInputStream(new BufferedInputStream(slow.getInputStream()));
+        assertEquals("HTTP/1.0 200 OK", Viewer.readLine(in));
+        while (Viewer.readLine(in).length() > 0) {
+            // response headers
+        }
+        byte[] body = new byte[DELTA_SIZE];
+        assertEquals(DELTA_SIZE, in.readInt());
+        Viewer.readFully(in, body, DELTA_SIZE);
+        assertEquals(0, body[0]);
+        slow.close();
+        waitForClients(0);
+    }
+
+    private Socket request(String path) throws IOException {
+        Socket socket = new Socket("127.0.0.1", streamer.getLocalPort());
+        OutputStream request = socket.getOutputStream();
+        request.write(("GET " + path + " HTTP/1.1\r\nHost: car\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        request.flush();
+        return socket;
+    }
+
+    // a frame of one repeated byte, encoded into a pooled frame the way CameraStreamer does
+    private void publishFrame(int index) {
+        StreamFrame frame = streamer.acquireFrame();
+        if (frame == null)
+            return;
+        assertTrue(frame.ensureCapacity(FRAME_SIZE));
+        for (int i = 0; i < FRAME_SIZE; i++)
+            frame.getData().put((byte) index);
+        streamer.publish(frame, FRAME_SIZE, index);
+    }
+
+    // one byte message, framed like TileDeltaEncoder output
+    private void publishDelta(int marker, boolean isKeyframe) throws InterruptedException {
+        publishDelta(marker, isKeyframe, 1);
+        // give the selector time to hand it out before the next one replaces it
+        Thread.sleep(50);
+    }
+
+    // a message of one repeated marker byte, large ones stall a viewer that does not read
+    private void publishDelta(int marker, boolean isKeyframe, int size) {
+        StreamFrame frame = streamer.acquireFrame();
+        assertNotNull(frame);
+        assertTrue(frame.ensureCapacity(size + 4));
+        frame.getData().putInt(size);
+        for (int i = 0; i < size; i++)
+            frame.getData().put((byte) marker);
+        streamer.publishDelta(frame, size + 4, marker, isKeyframe);
+    }
+
+    private void waitForClients(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (streamer.getClientCount() != count && System.currentTimeMillis() < deadline)
+            Thread.sleep(10);
+        assertEquals(count, streamer.getClientCount());
+    }
+}
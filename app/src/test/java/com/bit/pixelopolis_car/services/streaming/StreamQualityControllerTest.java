@@ -0,0 +1,79 @@
+package com.bit.pixelopolis_car.services.streaming;
+
+import com.bit.pixelopolis_car.services.config.StreamingInfo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class StreamQualityControllerTest {
+
+    private final StreamingInfo info = new StreamingInfo();
+
+    @Test
+    public void stepsDownQualityThenResolutionThenFrameRate() {
+        StreamQualityController controller = new StreamQualityController(info);
+        assertEquals(40, controller.getQuality());
+
+        feed(controller, 30, 400, 0, 0);
+        assertEquals(info.getMinJpegQuality(), controller.getQuality());
+        assertEquals(info.getMaxDownscale(), controller.getDownscale());
+        assertEquals(info.getMinFrameRate(), controller.getFrameRate());
+    }
+
+    @Test
+    public void qualityGoesFirstAndResolutionNext() {
+        StreamQualityController controller = new StreamQualityController(info);
+        feed(controller, 2, 400, 0, 0);
+        assertEquals(20, controller.getQuality());
+        assertEquals(1, controller.getDownscale());
+        assertEquals(info.getMaxFrameRate(), controller.getFrameRate());
+
+        feed(controller, 1, 400, 0, 0);
+        assertEquals(2, controller.getDownscale());
+    }
+
+    @Test
+    public void recoversWhenWellUnderBudget() {
+        StreamQualityController controller = new StreamQualityController(info);
+        feed(controller, 30, 400, 0, 0);
+        feed(controller, 40, 10, 0, 0);
+        assertEquals(info.getMaxFrameRate(), controller.getFrameRate());
+        assertEquals(1, controller.getDownscale());
+        assertEquals(info.getMaxJpegQuality(), controller.getQuality());
+    }
+
+    @Test
+    public void backlogCountsTowardsLatency() {
+        StreamQualityController controller = new StreamQualityController(info);
+        // 15 fps, four queued frames add over 260 ms
+        feed(controller, 1, 10, 4, 0);
+        assertTrue(controller.getLatencyMillis() > info.getLatencyBudget());
+        assertTrue(controller.getQuality() < 40);
+    }
+
+    @Test
+    public void busyVisionHalvesFrameRate() {
+        StreamQualityController controller = new StreamQualityController(info);
+        feed(controller, 1, 50, 0, info.getVisionBusyThreshold() + 1);
+        assertTrue(controller.isVisionBusy());
+        assertEquals(info.getMaxFrameRate() / 2, controller.getFrameRate());
+        feed(controller, 1, 50, 0, 10);
+        assertEquals(info.getMaxFrameRate(), controller.getFrameRate());
+    }
+
+    @Test
+    public void fixedSettingsWhenNotAdaptive() {
+        info.setAdaptive(false);
+        StreamQualityController controller = new StreamQualityController(info);
+        feed(controller, 30, 400, 0, 0);
+        assertEquals(40, controller.getQuality());
+        assertEquals(1, controller.getDownscale());
+    }
+
+    // one adjustment per cooldown, ten frames each
+    private void feed(StreamQualityController controller, int adjustments, float latencyMillis, int backlog, float visionMillis) {
+        for (int i = 0; i < adjustments * 10; i++)
+            controller.update(latencyMillis / 2, latencyMillis / 2, backlog, visionMillis);
+    }
+}
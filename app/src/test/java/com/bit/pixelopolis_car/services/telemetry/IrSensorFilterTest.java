@@ -0,0 +1,132 @@
+package com.bit.pixelopolis_car.services.telemetry;
+
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class IrSensorFilterTest {
+
+    private static final long MILLIS = 1000000L;
+    private static final int MIN = 100;
+    private static final int MAX = 500;
+    private static final int DEBOUNCE_MILLIS = 50;
+
+    private long nowNanos = 1000 * MILLIS;
+
+    @Test
+    public void medianDropsSingleSpike() {
+        IrSensorFilter filter = filter(3, 1);
+        sample(filter, 300, 10);
+        sample(filter, 300, 10);
+        sample(filter, 2000, 10);
+        assertEquals(300, filter.getFilteredValue());
+        sample(filter, 300, 10);
+        assertEquals(300, filter.getFilteredValue());
+        assertFalse(filter.isOutOfRange(nowNanos));
+    }
+
+    @Test
+    public void medianFollowsLastingChange() {
+        IrSensorFilter filter = filter(3, 1);
+        sample(filter, 300, 10);
+        sample(filter, 50, 10);
+        sample(filter, 50, 10);
+        assertEquals(50, filter.getFilteredValue());
+    }
+
+    @Test
+    public void smoothsWithMovingAverage() {
+        IrSensorFilter filter = filter(1, 0.5);
+        sample(filter, 400, 10);
+        assertEquals(400, filter.getFilteredValue());
+        sample(filter, 200, 10);
+        assertEquals(300, filter.getFilteredValue());
+        sample(filter, 200, 10);
+        assertEquals(250, filter.getFilteredValue());
+    }
+
+    @Test
+    public void outOfRangeFactorFallsBackToRawValues() {
+        IrSensorFilter filter = filter(1, 0);
+        sample(filter, 400, 10);
+        sample(filter, 200, 10);
+        assertEquals(200, filter.getFilteredValue());
+    }
+
+    @Test
+    public void hitsWallOnlyAfterDebounceDuration() {
+        IrSensorFilter filter = filter(1, 1);
+        sample(filter, 300, 10);
+        long since = nowNanos + 10 * MILLIS;
+        for (int i = 0; i < 5; i++) {
+            sample(filter, 50, 10);
+            assertTrue(filter.isOutOfRange(nowNanos));
+            assertFalse(filter.isHittingWall(nowNanos));
+        }
+        assertTrue(filter.isHittingWall(since + DEBOUNCE_MILLIS * MILLIS));
+        sample(filter, 50, 10);
+        assertTrue(filter.isHittingWall(nowNanos));
+    }
+
+    @Test
+    public void inRangeReadingRestartsDebounce() {
+        IrSensorFilter filter = filter(1, 1);
+        for (int i = 0; i < 4; i++)
+            sample(filter, 600, 10);
+        sample(filter, 300, 10);
+        assertFalse(filter.isOutOfRange(nowNanos));
+        for (int i = 0; i < 4; i++)
+            sample(filter, 600, 10);
+        assertFalse(filter.isHittingWall(nowNanos));
+        sample(filter, 600, 20);
+        assertTrue(filter.isHittingWall(nowNanos));
+    }
+
+    @Test
+    public void staleReadingsAreNotTrusted() {
+        IrSensorFilter filter = filter(1, 1);
+        assertFalse(filter.isOutOfRange(nowNanos));
+        for (int i = 0; i < 10; i++)
+            sample(filter, 50, 10);
+        assertTrue(filter.isHittingWall(nowNanos));
+        // 10 intervals of 10 ms are below the 250 ms floor
+        assertTrue(filter.isHittingWall(nowNanos + 250 * MILLIS));
+        assertFalse(filter.isHittingWall(nowNanos + 251 * MILLIS));
+        assertFalse(filter.isOutOfRange(nowNanos + 251 * MILLIS));
+    }
+
+    @Test
+    public void staleLimitFollowsSlowSampleRate() {
+        IrSensorFilter filter = filter(1, 1);
+        for (int i = 0; i < 3; i++)
+            sample(filter, 50, 100);
+        assertTrue(filter.isOutOfRange(nowNanos + 900 * MILLIS));
+        assertFalse(filter.isOutOfRange(nowNanos + 1001 * MILLIS));
+    }
+
+    @Test
+    public void measuresSampleRate() {
+        IrSensorFilter filter = filter(1, 1);
+        assertEquals(0, filter.getSampleRateHz(), 0);
+        for (int i = 0; i < 5; i++)
+            sample(filter, 300, 20);
+        assertEquals(50, filter.getSampleRateHz(), 0.01);
+    }
+
+    private IrSensorFilter filter(int medianWindowSize, double smoothingFactor) {
+        FixHittingWallInfo info = new FixHittingWallInfo();
+        info.setSensorMinThreshold(MIN);
+        info.setSensorMaxThreshold(MAX);
+        info.setDebounceDuration(DEBOUNCE_MILLIS);
+        info.setMedianWindowSize(medianWindowSize);
+        info.setSmoothingFactor(smoothingFactor);
+        return new IrSensorFilter(info);
+    }
+
+    private void sample(IrSensorFilter filter, int value, long intervalMillis) {
+        nowNanos += intervalMillis * MILLIS;
+        filter.update(value, nowNanos);
+    }
+}
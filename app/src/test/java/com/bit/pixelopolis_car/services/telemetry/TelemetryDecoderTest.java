@@ -0,0 +1,95 @@
+package com.bit.pixelopolis_car.services.telemetry;
+
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+import com.bit.pixelopolis_car.services.serial.LineFramer;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class TelemetryDecoderTest {
+
+    private final TelemetryDecoder decoder = new TelemetryDecoder(100, 0);
+    private long nowNanos = 1000000000L;
+    private final LineFramer framer = new LineFramer(16,
+            (buffer, offset, length) -> decoder.decode(buffer, offset, length, nowNanos));
+
+    @Test
+    public void decodesBatteryAndIrLines() {
+        feed("b87\nr301\n");
+        TelemetrySample sample = decoder.getSample();
+        assertEquals(87, sample.getMotorBatteryPercentage());
+        assertEquals(301, sample.getIrSensorValue());
+        assertEquals(nowNanos, sample.getTimestampNanos());
+    }
+
+    @Test
+    public void decodesLinesFramedAcrossChunks() {
+        feed("b8");
+        feed("7\r");
+        feed("\nr3");
+        assertEquals(87, decoder.getSample().getMotorBatteryPercentage());
+        assertEquals(0, decoder.getSample().getIrSensorValue());
+        feed("01\n");
+        assertEquals(301, decoder.getSample().getIrSensorValue());
+    }
+
+    @Test
+    public void waitsForTheEndOfPartialLine() {
+        feed("r2");
+        nowNanos += 1000000L;
+        feed("5");
+        assertEquals(0, decoder.getSample().getIrSensorValue());
+        feed("\n");
+        assertEquals(25, decoder.getSample().getIrSensorValue());
+        assertEquals(nowNanos, decoder.getSample().getTimestampNanos());
+    }
+
+    @Test
+    public void rejectsCorruptedLines() {
+        feed("b50\n");
+        TelemetrySample before = decoder.getSample();
+        nowNanos += 1000000L;
+        // empty value, garbled digits, too many digits, unknown channel
+        feed("b\nb5x\nr3-1\nr1234567890\nx12\n\u00ff\u00fe\n");
+        assertSame(before, decoder.getSample());
+        feed("b49\n");
+        assertEquals(49, decoder.getSample().getMotorBatteryPercentage());
+    }
+
+    @Test
+    public void keepsTheOtherChannel() {
+        feed("b60\nr120\nb59\n");
+        assertEquals(59, decoder.getSample().getMotorBatteryPercentage());
+        assertEquals(120, decoder.getSample().getIrSensorValue());
+    }
+
+    @Test
+    public void feedsOnlyIrReadingsToTheFilter() {
+        FixHittingWallInfo info = new FixHittingWallInfo();
+        info.setSensorMinThreshold(0);
+        info.setSensorMaxThreshold(1000);
+        info.setMedianWindowSize(1);
+        info.setSmoothingFactor(1);
+        IrSensorFilter filter = new IrSensorFilter(info);
+        decoder.setIrSensorFilter(filter);
+        feed("r300\nb42\nr3x\n");
+        assertEquals(300, filter.getFilteredValue());
+    }
+
+    @Test
+    public void parsesDigitsInPlace() {
+        byte[] data = "xr0123y".getBytes(StandardCharsets.US_ASCII);
+        assertEquals(123, TelemetryDecoder.parseDigits(data, 2, 4));
+        assertEquals(-1, TelemetryDecoder.parseDigits(data, 2, 5));
+        assertEquals(-1, TelemetryDecoder.parseDigits(data, 2, 0));
+        assertEquals(999999999, TelemetryDecoder.parseDigits("999999999".getBytes(StandardCharsets.US_ASCII), 0, 9));
+    }
+
+    private void feed(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.ISO_8859_1);
+        framer.feed(bytes, 0, bytes.length);
+    }
+}
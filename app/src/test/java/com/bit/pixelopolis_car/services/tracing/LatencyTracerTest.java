@@ -0,0 +1,63 @@
+package com.bit.pixelopolis_car.services.tracing;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyTracerTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void stagesRecordAgeSinceCapture() {
+        LatencyTracer tracer = new LatencyTracer(4, 1000);
+        long capture = 1000 * MILLI;
+        tracer.record(LatencyTracer.STAGE_CAPTURE, capture, capture + 2 * MILLI);
+        tracer.record(LatencyTracer.STAGE_INFERENCE, capture, capture + 20 * MILLI);
+        tracer.publish(7, capture, capture + 21 * MILLI);
+
+        long now = capture + 30 * MILLI;
+        assertEquals(7, tracer.getPublishedTraceId());
+        assertEquals(2, tracer.getPercentileMillis(LatencyTracer.STAGE_CAPTURE, 50, now), 2 * 0.25);
+        assertEquals(20, tracer.getPercentileMillis(LatencyTracer.STAGE_INFERENCE, 50, now), 20 * 0.25);
+        assertEquals(21, tracer.getPercentileMillis(LatencyTracer.STAGE_PUBLISH, 50, now), 21 * 0.25);
+        assertEquals(0, tracer.getCount(LatencyTracer.STAGE_PREPROCESS, now));
+    }
+
+    @Test
+    public void reusedAngleIsCountedOncePerFrame() {
+        LatencyTracer tracer = new LatencyTracer(4, 1000);
+        long capture = 1000 * MILLI;
+        tracer.publish(1, capture, capture + 10 * MILLI);
+        tracer.onControllerRead(capture + 12 * MILLI);
+        tracer.onControllerRead(capture + 15 * MILLI);
+        tracer.onSerialWrite(capture + 13 * MILLI);
+        tracer.onSerialWrite(capture + 16 * MILLI);
+
+        long now = capture + 20 * MILLI;
+        assertEquals(1, tracer.getCount(LatencyTracer.STAGE_CONTROLLER_READ, now));
+        assertEquals(1, tracer.getCount(LatencyTracer.STAGE_SERIAL_WRITE, now));
+        assertEquals(12, tracer.getPercentileMillis(LatencyTracer.STAGE_CONTROLLER_READ, 50, now), 12 * 0.25);
+        assertEquals(13, tracer.getPercentileMillis(LatencyTracer.STAGE_SERIAL_WRITE, 50, now), 13 * 0.25);
+
+        tracer.publish(2, capture + 30 * MILLI, capture + 40 * MILLI);
+        tracer.onControllerRead(capture + 41 * MILLI);
+        assertEquals(2, tracer.getCount(LatencyTracer.STAGE_CONTROLLER_READ, capture + 50 * MILLI));
+    }
+
+    @Test
+    public void serialWritesWithoutAFrameAreNotCounted() {
+        LatencyTracer tracer = new LatencyTracer(4, 1000);
+        long now = 1000 * MILLI;
+        tracer.onSerialWrite(now);
+        tracer.onControllerRead(now);
+        tracer.onSerialWrite(now);
+        assertEquals(0, tracer.getCount(LatencyTracer.STAGE_CONTROLLER_READ, now));
+        assertEquals(0, tracer.getCount(LatencyTracer.STAGE_SERIAL_WRITE, now));
+
+        StringBuilder json = new StringBuilder();
+        tracer.appendJson(json, now);
+        assertTrue(json.toString().startsWith("{\"window_ms\": 4000, \"stages\": {\"capture\": {\"count\": 0"));
+        assertTrue(json.toString().endsWith("}}"));
+    }
+}
@@ -0,0 +1,47 @@
+package com.bit.pixelopolis_car.utils;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTest {
+
+    private static final long MILLI = 1000000L;
+
+    @Test
+    public void bucketsAreContiguous() {
+        long previousUpper = -1;
+        for (int index = 0; index < 120; index++) {
+            long upper = LatencyHistogram.bucketUpperBound(index);
+            assertTrue(upper > previousUpper);
+            assertEquals(index, LatencyHistogram.bucketIndex(previousUpper + 1));
+            assertEquals(index, LatencyHistogram.bucketIndex(upper));
+            previousUpper = upper;
+        }
+    }
+
+    @Test
+    public void percentilesStayWithinBucketResolution() {
+        LatencyHistogram histogram = new LatencyHistogram(4, 1000);
+        long now = 0;
+        for (int millis = 1; millis <= 100; millis++)
+            histogram.record(millis * MILLI, now);
+
+        assertEquals(100, histogram.getCount(now));
+        assertEquals(50, histogram.getPercentileMillis(50, now), 50 * 0.25);
+        assertEquals(95, histogram.getPercentileMillis(95, now), 95 * 0.25);
+        assertTrue(histogram.getPercentileMillis(100, now) >= 100);
+    }
+
+    @Test
+    public void oldWindowsAreForgotten() {
+        LatencyHistogram histogram = new LatencyHistogram(4, 1000);
+        histogram.record(80 * MILLI, 0);
+        histogram.record(2 * MILLI, 2500 * MILLI);
+        assertEquals(2, histogram.getCount(3500 * MILLI));
+        assertEquals(1, histogram.getCount(4500 * MILLI));
+        assertTrue(histogram.getPercentileMillis(99, 4500 * MILLI) < 3);
+        assertEquals(0, histogram.getCount(60000 * MILLI));
+        assertEquals(2, histogram.getTotalCount());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.opencv.imgproc.Imgproc;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Work the old stream path did before Bitmap.compress even started: Utils.matToBitmap converts
+ * the RGB frame to RGBA and copies it out into the Bitmap. JpegEncoder skips both.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class BitmapConversionBenchmark {
+
+    private Mat frame;
+    private Mat rgbaFrame;
+    private byte[] bitmapPixels;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrames.create(SyntheticFrames.WIDTH, SyntheticFrames.HEIGHT, 34);
+        rgbaFrame = new Mat(SyntheticFrames.HEIGHT, SyntheticFrames.WIDTH, CvType.CV_8UC4);
+        bitmapPixels = new byte[SyntheticFrames.WIDTH * SyntheticFrames.HEIGHT * 4];
+    }
+
+    @TearDown
+    public void tearDown() {
+        rgbaFrame.release();
+        frame.release();
+    }
+
+    @Benchmark
+    public byte[] matToBitmap() {
+        Imgproc.cvtColor(frame, rgbaFrame, Imgproc.COLOR_RGB2RGBA);
+        rgbaFrame.get(0, 0, bitmapPixels);
+        return bitmapPixels;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.services.carvision.DetectionLabels;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Turning the object model's output arrays into ordered detections, the legacy JSON lookups against
+ * the label table TFLiteObjectDetectionAPIModel builds once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class DetectionPostProcessingBenchmark {
+    // TFLiteObjectDetectionAPIModel.NUM_DETECTIONS
+    private static final int NUM_DETECTIONS = 10;
+    private static final int FRAME_COUNT = 64;
+    private static final String LABELS_RESOURCE = "/labels_piority.json";
+
+    private JSONObject labelsPiority;
+    private List<String> enableNodes;
+    private DetectionLabels detectionLabels;
+    private final int[] detectionOrder = new int[NUM_DETECTIONS];
+    // a run of model outputs, cycled so the branch predictor cannot learn one frame
+    private float[][][] outputLocations;
+    private float[][] outputClasses;
+    private float[][] outputScores;
+    private int frameIndex = 0;
+
+    @Setup
+    public void setUp() throws IOException, JSONException {
+        labelsPiority = new JSONObject(readResource(LABELS_RESOURCE));
+        int classCount = labelsPiority.length();
+        enableNodes = new ArrayList<>();
+        // the city map uses about half of the classes, plus other cars
+        for (int classIndex = 0; classIndex < classCount; classIndex += 2) {
+            enableNodes.add(labelsPiority.getJSONObject(String.valueOf(classIndex)).getString("name"));
+        }
+        enableNodes.add("Car");
+        detectionLabels = DetectionLabels.parse(labelsPiority, enableNodes);
+
+        Random random = new Random(44);
+        outputLocations = new float[FRAME_COUNT][NUM_DETECTIONS][4];
+        outputClasses = new float[FRAME_COUNT][NUM_DETECTIONS];
+        outputScores = new float[FRAME_COUNT][NUM_DETECTIONS];
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            for (int i = 0; i < NUM_DETECTIONS; i++) {
+                float top = random.nextFloat() * 0.5f;
+                float left = random.nextFloat() * 0.5f;
+                outputLocations[frame][i] = new float[] {top, left, top + 0.2f, left + 0.2f};
+                outputClasses[frame][i] = random.nextInt(classCount);
+                // the model sorts by score
+                outputScores[frame][i] = 0.9f - i * 0.08f;
+            }
+        }
+    }
+
+    // per detection JSON lookups and a comparator that looks both sides up again
+    @Benchmark
+    public List<ObjectDetector.DetectedObject> legacyJsonLookup() {
+        int frame = nextFrame();
+        float[] classes = outputClasses[frame];
+        final ArrayList<ObjectDetector.DetectedObject> detectedObjects = new ArrayList<>(NUM_DETECTIONS);
+        for (int i = 0; i < NUM_DETECTIONS; ++i) {
+            float[] box = outputLocations[frame][i];
+            classes[i] = classes[i] < 0 ? 0 : classes[i];
+            try {
+                String className = labelsPiority.getJSONObject(String.valueOf((int) classes[i])).getString("name");
+                if (enableNodes.contains(className)) {
+                    detectedObjects.add(new ObjectDetector.DetectedObject(String.valueOf((int) classes[i]), className, outputScores[frame][i], box[1], box[0], box[3], box[2]));
+                }
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        Collections.sort(detectedObjects, (one, two) -> {
+            try {
+                if (labelsPiority.getJSONObject(one.getId()).getInt("piority") < labelsPiority.getJSONObject(two.getId()).getInt("piority")) {
+                    return -1;
+                } else {
+                    return 1;
+                }
+            } catch (JSONException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return detectedObjects;
+    }
+
+    @Benchmark
+    public List<ObjectDetector.DetectedObject> resolvedLabels() {
+        int frame = nextFrame();
+        return detectionLabels.toDetectedObjects(outputLocations[frame], outputClasses[frame], outputScores[frame], NUM_DETECTIONS, detectionOrder);
+    }
+
+    private int nextFrame() {
+        frameIndex = (frameIndex + 1) % FRAME_COUNT;
+        return frameIndex;
+    }
+
+    private static String readResource(String name) throws IOException {
+        try (InputStream in = DetectionPostProcessingBenchmark.class.getResourceAsStream(name)) {
+            if (in == null) {
+                throw new IOException("missing " + name);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int count;
+            while ((count = in.read(buffer)) > 0) {
+                out.write(buffer, 0, count);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.services.camera.FrameNormalizer;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per frame cost of PixelCamera.onCameraFrame at the 800x600 camera size: the copy, convert, flip,
+ * transpose and copy chain it used to run against FrameNormalizer, both ending with the preview resize.
+ * normalize and the other order of its two steps show which one FrameNormalizer should run first.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameNormalizerBenchmark {
+    private static final int CAMERA_WIDTH = 800;
+    private static final int CAMERA_HEIGHT = 600;
+
+    private Mat rgba;
+    private Mat src;
+    private Mat temp3c;
+    private Mat dst;
+    private Mat preview;
+    private Mat rotated;
+    private FrameNormalizer normalizer;
+
+    @Setup
+    public void setUp() {
+        Mat rgb = SyntheticFrames.create(CAMERA_WIDTH, CAMERA_HEIGHT, 38);
+        rgba = new Mat();
+        Imgproc.cvtColor(rgb, rgba, Imgproc.COLOR_RGB2RGBA);
+        rgb.release();
+        src = new Mat(CAMERA_HEIGHT, CAMERA_WIDTH, CvType.CV_8UC4);
+        temp3c = new Mat(CAMERA_WIDTH, CAMERA_HEIGHT, CvType.CV_8UC3);
+        dst = new Mat(CAMERA_WIDTH, CAMERA_HEIGHT, CvType.CV_8UC3);
+        preview = new Mat(CAMERA_HEIGHT, CAMERA_WIDTH, CvType.CV_8UC3);
+        rotated = new Mat(CAMERA_WIDTH, CAMERA_HEIGHT, CvType.CV_8UC4);
+        normalizer = new FrameNormalizer();
+
+        // both paths must hand vision the same frame
+        legacyChain();
+        Mat expected = dst.clone();
+        fused();
+        Mat difference = new Mat();
+        Core.absdiff(expected, dst, difference);
+        if (Core.countNonZero(difference.reshape(1)) != 0) {
+            throw new IllegalStateException("FrameNormalizer output differs from the legacy chain");
+        }
+        rotateThenConvert();
+        Core.absdiff(expected, dst, difference);
+        if (Core.countNonZero(difference.reshape(1)) != 0) {
+            throw new IllegalStateException("the two orders of FrameNormalizer differ");
+        }
+        expected.release();
+        difference.release();
+    }
+
+    @TearDown
+    public void tearDown() {
+        normalizer.release();
+        rgba.release();
+        src.release();
+        temp3c.release();
+        dst.release();
+        preview.release();
+        rotated.release();
+    }
+
+    @Benchmark
+    public Mat legacyChain() {
+        rgba.copyTo(src);
+        Imgproc.cvtColor(src, temp3c, Imgproc.COLOR_RGBA2RGB);
+        Core.flip(temp3c, temp3c, 1);
+        Core.transpose(temp3c, temp3c);
+        temp3c.copyTo(dst);
+        Imgproc.resize(temp3c, temp3c, new Size(src.width(), src.height()));
+        return temp3c;
+    }
+
+    @Benchmark
+    public Mat fused() {
+        normalizer.normalize(rgba, dst);
+        normalizer.toPreview(dst, preview, rgba.width(), rgba.height());
+        return preview;
+    }
+
+    @Benchmark
+    public Mat normalize() {
+        normalizer.normalize(rgba, dst);
+        return dst;
+    }
+
+    @Benchmark
+    public Mat rotateThenConvert() {
+        Core.rotate(rgba, rotated, Core.ROTATE_90_COUNTERCLOCKWISE);
+        Imgproc.cvtColor(rotated, dst, Imgproc.COLOR_RGBA2RGB);
+        return dst;
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.services.streaming.JpegEncoder;
+
+import org.opencv.core.Mat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stream encode path of CameraStreamer: RGB Mat to JPEG in a direct buffer, at the quality and
+ * downscale steps StreamQualityController picks from.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class JpegEncoderBenchmark {
+
+    @Param({"1", "2", "4"})
+    int downscale;
+
+    @Param({"20", "40", "60"})
+    int quality;
+
+    private Mat frame;
+    private JpegEncoder encoder;
+    private ByteBuffer target;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrames.create(SyntheticFrames.WIDTH, SyntheticFrames.HEIGHT, 34);
+        encoder = new JpegEncoder();
+        target = ByteBuffer.allocateDirect(SyntheticFrames.WIDTH * SyntheticFrames.HEIGHT * 3);
+    }
+
+    @TearDown
+    public void tearDown() {
+        encoder.release();
+        frame.release();
+    }
+
+    @Benchmark
+    public int encode() {
+        target.clear();
+        return encoder.encode(frame, downscale, quality, target);
+    }
+}
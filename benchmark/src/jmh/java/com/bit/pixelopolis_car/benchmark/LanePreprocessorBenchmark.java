@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.services.carvision.LanePreprocessor;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LanePreprocessorBenchmark {
+    // LaneDetector's model input
+    private static final int INPUT_WIDTH = 120;
+    private static final int INPUT_HEIGHT = 40;
+
+    private Mat frame;
+    private Mat legacyYuv;
+    private float[] legacyValues;
+    private ByteBuffer imgData;
+    private FloatBuffer imgFloats;
+    private LanePreprocessor preprocessor;
+
+    @Setup
+    public void setUp() {
+        frame = SyntheticFrames.create(SyntheticFrames.WIDTH, SyntheticFrames.HEIGHT, 39);
+        legacyYuv = new Mat();
+        legacyValues = new float[INPUT_WIDTH * INPUT_HEIGHT * 3];
+        imgData = ByteBuffer.allocateDirect(INPUT_WIDTH * INPUT_HEIGHT * 3 * 4);
+        imgData.order(ByteOrder.nativeOrder());
+        imgFloats = imgData.asFloatBuffer();
+        preprocessor = new LanePreprocessor(INPUT_WIDTH, INPUT_HEIGHT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        preprocessor.release();
+        legacyYuv.release();
+        frame.release();
+    }
+
+    // the crop, resize and per element copy vision ran before LanePreprocessor
+    @Benchmark
+    public ByteBuffer legacyCrop() {
+        Rect roi = new Rect(0, 3 * frame.rows() / 4, frame.cols(), frame.rows() / 4);
+        Mat cropped = new Mat(frame, roi);
+        Imgproc.resize(cropped, cropped, new Size(INPUT_WIDTH, INPUT_HEIGHT));
+        Imgproc.cvtColor(cropped, legacyYuv, Imgproc.COLOR_RGB2YUV);
+        legacyYuv.convertTo(legacyYuv, CvType.CV_32FC3);
+        imgData.rewind();
+        legacyYuv.get(0, 0, legacyValues);
+        for (float value : legacyValues) {
+            imgData.putFloat(value);
+        }
+        // the app left this to the finalizer, which does not keep up under JMH
+        cropped.release();
+        return imgData;
+    }
+
+    @Benchmark
+    public FloatBuffer persistent() {
+        preprocessor.preprocess(frame, imgFloats);
+        return imgFloats;
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.data.NodeInfo;
+import com.bit.pixelopolis_car.services.NavigationController;
+import com.bit.pixelopolis_car.services.ObjectHistory;
+import com.bit.pixelopolis_car.services.api.StationApi;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+import com.bit.pixelopolis_car.services.config.AreaThreshold;
+import com.bit.pixelopolis_car.services.config.CarArea;
+import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+import com.bit.pixelopolis_car.services.config.SpawnLocation;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One NavigationController.objectDetect tick on the node map: store the frame's detections, then
+ * check every detection against every object of the map and confirm matches in the history. The
+ * legacy car only swaps fetchHistory back to the rescan of every stored frame.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class NodeMatchingBenchmark {
+    private static final String[] LANDMARKS = {"Tokyo_tower", "Korean", "Church", "Planetarium", "Museum",
+            "Go", "Slow", "Speed_limit", "No_parking", "Left", "Cross", "Plane", "Bump", "Stop_sign",
+            "Traffic_light", "Left_or_through"};
+    private static final int FRAME_COUNT = 64;
+    private static final int DETECTIONS_PER_FRAME = 3;
+    // SetupConfigActivity defaults
+    private static final int SEEN_COUNT_TRIGGER = 5;
+    private static final float LANDMARK_SIZE = 0.2f;
+
+    // the station is never reached, every StationApi method is void
+    private static final StationApi NO_STATION = (StationApi) Proxy.newProxyInstance(
+            StationApi.class.getClassLoader(), new Class<?>[]{StationApi.class}, (proxy, method, args) -> null);
+
+    static class BenchmarkCar extends NavigationController {
+        List<ObjectDetector.DetectedObject> frame;
+
+        BenchmarkCar() {
+            super(NO_STATION);
+        }
+
+        @Override
+        protected List<ObjectDetector.DetectedObject> getObjectFound() {
+            return frame;
+        }
+
+        @Override
+        protected int getPhoneBatteryPercentage() {
+            return 100;
+        }
+
+        boolean detect(List<ObjectDetector.DetectedObject> frame, NodeInfo target) {
+            this.frame = frame;
+            return objectDetect(target);
+        }
+    }
+
+    static class LegacyCar extends BenchmarkCar {
+        private final List<List<ObjectDetector.DetectedObject>> legacyHistory = new ArrayList<>();
+
+        @Override
+        boolean detect(List<ObjectDetector.DetectedObject> frame, NodeInfo target) {
+            while (legacyHistory.size() >= Config.getInstance().getMaxFrameHistory()) {
+                legacyHistory.remove(0);
+            }
+            legacyHistory.add(frame);
+            return super.detect(frame, target);
+        }
+
+        // NavigationController.fetchHistory before ObjectHistory
+        @Override
+        protected boolean fetchHistory(ObjectHistory<ObjectDetector.DetectedObject> objectsHistory, ObjectDetector.DetectedObject detectedObj) {
+            int seenCount = 0;
+            for (int frame = legacyHistory.size() - 1; frame >= 0; frame--) {
+                for (int index = 0; index < legacyHistory.get(frame).size(); index++) {
+                    if (legacyHistory.get(frame).get(index).getTitle().equals(detectedObj.getTitle())) {
+                        seenCount++;
+                    }
+                }
+            }
+            return seenCount >= Config.getInstance().getSeenCountTrigger();
+        }
+    }
+
+    @Param({"25"})
+    int maxFrameHistory;
+
+    @Param({"16"})
+    int nodeCount;
+
+    private List<List<ObjectDetector.DetectedObject>> frames;
+    private NodeInfo target;
+    private BenchmarkCar car;
+    private BenchmarkCar legacyCar;
+    private int frameIndex = 0;
+
+    @Setup
+    public void setUp() {
+        configure();
+        Random random = new Random(45);
+        frames = new ArrayList<>();
+        for (int frame = 0; frame < FRAME_COUNT; frame++) {
+            List<ObjectDetector.DetectedObject> detections = new ArrayList<>();
+            for (int i = 0; i < DETECTIONS_PER_FRAME; i++) {
+                // mostly the landmark ahead, sometimes others
+                int landmark = random.nextInt(4) == 0 ? random.nextInt(nodeCount) : frame / 16;
+                // titles are separate strings like the model's labels
+                detections.add(new ObjectDetector.DetectedObject(String.valueOf(landmark),
+                        new String(LANDMARKS[landmark % LANDMARKS.length]), 0.4f + random.nextFloat() * 0.5f,
+                        0.4f, 0.4f, 0.4f + LANDMARK_SIZE, 0.4f + LANDMARK_SIZE));
+            }
+            frames.add(detections);
+        }
+        target = Config.getInstance().getAllNodeInfos().get(0);
+        car = new BenchmarkCar();
+        legacyCar = new LegacyCar();
+
+        // both cars must find the same nodes, and some must get past the history check
+        int confirmed = 0;
+        for (List<ObjectDetector.DetectedObject> frame : frames) {
+            boolean found = car.detect(frame, target);
+            if (found != legacyCar.detect(frame, target)) {
+                throw new IllegalStateException("ObjectHistory disagrees with the legacy rescan");
+            }
+            if (car.objectsHistory.getSeenCount(frame.get(0).getTitle()) >= SEEN_COUNT_TRIGGER) {
+                confirmed++;
+            }
+        }
+        if (confirmed == 0) {
+            throw new IllegalStateException("no detection was seen often enough to be confirmed");
+        }
+    }
+
+    // the node map of the city, one object per node like map.json
+    private void configure() {
+        Config config = Config.getInstance();
+        List<NodeInfo> nodeInfos = new ArrayList<>();
+        for (int node = 0; node < nodeCount; node++) {
+            NodeInfo nodeInfo = new NodeInfo();
+            nodeInfo.setNodeId(String.valueOf(node));
+            nodeInfo.addObject(new ObjectDetector.DetectedObject(String.valueOf(node),
+                    new String(LANDMARKS[node % LANDMARKS.length]), 0.5f, 0f, 0f, LANDMARK_SIZE, LANDMARK_SIZE));
+            nodeInfos.add(nodeInfo);
+        }
+        config.setAllNodeInfos(nodeInfos);
+
+        SpawnLocation spawnLocation = new SpawnLocation();
+        spawnLocation.setNodeId(0);
+        config.setSpawnLocation(spawnLocation);
+
+        AreaThreshold areaThreshold = new AreaThreshold();
+        areaThreshold.setMin(0.8);
+        areaThreshold.setMax(1.3);
+        config.setAreaThreshold(areaThreshold);
+
+        CarArea carArea = new CarArea();
+        carArea.setTitle("Car");
+        carArea.setWidth(0.3);
+        carArea.setHeight(0.2);
+        carArea.setConfidence(0.5);
+        carArea.setMin_y(0.8);
+        config.setCarArea(carArea);
+
+        FixHittingWallInfo fixHittingWallInfo = new FixHittingWallInfo();
+        fixHittingWallInfo.setEnable(false);
+        config.setFixHittingWallInfo(fixHittingWallInfo);
+
+        config.setMaxFrameHistory(maxFrameHistory);
+        config.setSeenCountTrigger(SEEN_COUNT_TRIGGER);
+        config.setInDebugMode(false);
+    }
+
+    @Benchmark
+    public boolean legacyRescan() {
+        return legacyCar.detect(nextFrame(), target);
+    }
+
+    @Benchmark
+    public boolean objectHistory() {
+        return car.detect(nextFrame(), target);
+    }
+
+    private List<ObjectDetector.DetectedObject> nextFrame() {
+        frameIndex = (frameIndex + 1) % FRAME_COUNT;
+        return frames.get(frameIndex);
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import com.bit.pixelopolis_car.services.config.SerialLinkInfo;
+import com.bit.pixelopolis_car.services.serial.LineFramer;
+import com.bit.pixelopolis_car.services.serial.MotorCommandEncoder;
+import com.bit.pixelopolis_car.services.serial.SerialLinkMonitor;
+import com.bit.pixelopolis_car.services.telemetry.TelemetryDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Both directions of the controller board link: encoding a motor command, and framing and
+ * decoding what the board sends back as it arrives in USB packets.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SerialFramingBenchmark {
+    // full speed USB bulk packet
+    private static final int CHUNK_SIZE = 64;
+    private static final int LINE_COUNT = 4096;
+    // SerialCommunicator.MAX_LINE_LENGTH
+    private static final int MAX_LINE_LENGTH = 64;
+    private static final String DIGITS = "0123456789abcdefghijklmno";
+
+    private Map<Integer, String> baseNumber24;
+    private int speedIndex = 0;
+    private final int[] speeds = new int[256];
+
+    private byte[][] chunks;
+    private int chunkIndex = 0;
+    private LineFramer lineFramer;
+    private SerialLinkMonitor linkMonitor;
+    private TelemetryDecoder telemetryDecoder;
+
+    @Setup
+    public void setUp() {
+        baseNumber24 = new HashMap<>();
+        for (int digit = 0; digit < DIGITS.length(); digit++) {
+            baseNumber24.put(digit, String.valueOf(DIGITS.charAt(digit)));
+        }
+        Random random = new Random(46);
+        for (int i = 0; i < speeds.length; i++) {
+            speeds[i] = random.nextInt(511) - 255;
+        }
+
+        // battery and IR readings with the odd ping echo, CRLF terminated like the board's firmware
+        ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        for (int line = 0; line < LINE_COUNT; line++) {
+            String text;
+            if (line % 50 == 0) {
+                text = "p" + line;
+            } else if (line % 10 == 0) {
+                text = "b" + (60 + random.nextInt(40));
+            } else {
+                text = "r" + (200 + random.nextInt(300));
+            }
+            byte[] bytes = (text + "\r\n").getBytes(StandardCharsets.US_ASCII);
+            stream.write(bytes, 0, bytes.length);
+        }
+        byte[] all = stream.toByteArray();
+        chunks = new byte[all.length / CHUNK_SIZE][];
+        for (int chunk = 0; chunk < chunks.length; chunk++) {
+            chunks[chunk] = new byte[CHUNK_SIZE];
+            System.arraycopy(all, chunk * CHUNK_SIZE, chunks[chunk], 0, CHUNK_SIZE);
+        }
+
+        SerialLinkInfo serialLinkInfo = new SerialLinkInfo();
+        serialLinkInfo.setPingEnable(true);
+        linkMonitor = new SerialLinkMonitor(serialLinkInfo);
+        telemetryDecoder = new TelemetryDecoder(100, 0);
+        lineFramer = new LineFramer(MAX_LINE_LENGTH, this::onLine);
+    }
+
+    // SerialCommunicator.get24BaseNumber before MotorCommandEncoder
+    @Benchmark
+    public byte[] legacyEncode() {
+        int speed = nextSpeed();
+        String sendString = legacyBase24(speed) + legacyBase24(-speed) + "\n";
+        return sendString.getBytes();
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        int speed = nextSpeed();
+        byte[] data = new byte[MotorCommandEncoder.COMMAND_LENGTH];
+        MotorCommandEncoder.encode(speed, -speed, data, 0);
+        return data;
+    }
+
+    // one USB packet through SerialCommunicator.receive
+    @Benchmark
+    public int receive() {
+        byte[] chunk = chunks[chunkIndex];
+        chunkIndex = (chunkIndex + 1) % chunks.length;
+        long now = System.nanoTime();
+        linkMonitor.onBytesRead(chunk.length, now);
+        lineFramer.feed(chunk, 0, chunk.length);
+        return telemetryDecoder.getSample().getIrSensorValue();
+    }
+
+    private void onLine(byte[] line, int offset, int length) {
+        if (!linkMonitor.onLine(line, offset, length, System.nanoTime()))
+            telemetryDecoder.decode(line, offset, length);
+    }
+
+    private String legacyBase24(int input) {
+        String out = "";
+        int upperInput = input + 288;
+        Integer firstIndex = (int) Math.floor(upperInput / 24.0f);
+        out += baseNumber24.get(firstIndex);
+        Integer secondIndex = upperInput - firstIndex * 24;
+        out += baseNumber24.get(secondIndex);
+        return out;
+    }
+
+    private int nextSpeed() {
+        speedIndex = (speedIndex + 1) & (speeds.length - 1);
+        return speeds[speedIndex];
+    }
+}
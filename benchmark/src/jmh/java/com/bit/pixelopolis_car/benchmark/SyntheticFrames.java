@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.benchmark;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfDouble;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import nu.pattern.OpenCV;
+
+// camera-like RGB frames so JPEG sizes and encode times are close to the real stream
+final class SyntheticFrames {
+    // PixelCamera frames are transposed to portrait
+    static final int WIDTH = 480;
+    static final int HEIGHT = 640;
+
+    private static boolean isLoaded = false;
+
+    private SyntheticFrames() {}
+
+    static synchronized void loadOpenCV() {
+        if (!isLoaded) {
+            OpenCV.loadLocally();
+            isLoaded = true;
+        }
+    }
+
+    static Mat create(int width, int height, long seed) {
+        loadOpenCV();
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        // floor getting lighter towards the camera
+        for (int row = 0; row < height; row++) {
+            int shade = 60 + 120 * row / height;
+            frame.row(row).setTo(new Scalar(shade, shade, shade + 10));
+        }
+        // lane lines and a few markers like the ones on the city map
+        Imgproc.line(frame, new Point(width * 0.3, height), new Point(width * 0.45, height * 0.4), new Scalar(240, 240, 240), 12);
+        Imgproc.line(frame, new Point(width * 0.7, height), new Point(width * 0.55, height * 0.4), new Scalar(240, 240, 240), 12);
+        Imgproc.rectangle(frame, new Point(40, 80), new Point(140, 180), new Scalar(200, 30, 30), -1);
+        Imgproc.rectangle(frame, new Point(width - 150, 120), new Point(width - 60, 210), new Scalar(30, 160, 40), -1);
+        Imgproc.circle(frame, new Point(width / 2.0, height * 0.25), 40, new Scalar(250, 200, 0), -1);
+
+        // sensor noise, so the encoder cannot compress flat areas for free
+        Mat noise = new Mat(height, width, CvType.CV_8UC3);
+        Core.setRNGSeed((int) seed);
+        Core.randn(noise, 0, 8);
+        Core.add(frame, noise, frame);
+        noise.release();
+        return frame;
+    }
+}
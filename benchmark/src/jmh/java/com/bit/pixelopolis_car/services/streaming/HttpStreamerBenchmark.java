@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.bit.pixelopolis_car.services.streaming;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishing one JPEG sized frame and waiting until the selector thread has written it to every
+ * viewer, over loopback. Viewers read and discard as fast as they can. Lives in the streaming
+ * package because the streamer's API is package private.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class HttpStreamerBenchmark {
+    // a quality 40 frame of the stream at full size
+    private static final int FRAME_SIZE = 32 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long CONNECT_TIMEOUT_MS = 5000;
+
+    @Param({"1", "4"})
+    int viewers;
+
+    private HttpStreamer streamer;
+    private final List<Socket> sockets = new ArrayList<>();
+    private byte[] jpeg;
+    private int freeFrameCount;
+    private long timestamp = 0;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, InterruptedException {
+        jpeg = new byte[FRAME_SIZE];
+        new Random(47).nextBytes(jpeg);
+        streamer = new HttpStreamer(0, BUFFER_SIZE);
+        streamer.start();
+        long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MS;
+        while (streamer.getLocalPort() <= 0) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("streamer did not start");
+            Thread.sleep(1);
+        }
+        for (int viewer = 0; viewer < viewers; viewer++) {
+            Socket socket = new Socket("127.0.0.1", streamer.getLocalPort());
+            OutputStream request = socket.getOutputStream();
+            request.write("GET / HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            request.flush();
+            sockets.add(socket);
+            Thread drain = new Thread(() -> discard(socket), "viewer-" + viewer);
+            drain.setDaemon(true);
+            drain.start();
+        }
+        while (streamer.getClientCount() < viewers) {
+            if (System.currentTimeMillis() > deadline)
+                throw new IllegalStateException("viewers did not connect");
+            Thread.sleep(1);
+        }
+        freeFrameCount = streamer.getFreeFrameCount();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        streamer.stop();
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    @Benchmark
+    public int publishAndWrite() {
+        StreamFrame frame = streamer.acquireFrame();
+        if (frame == null)
+            throw new IllegalStateException("frame pool exhausted");
+        frame.getData().put(jpeg, 0, FRAME_SIZE);
+        streamer.publish(frame, FRAME_SIZE, ++timestamp);
+        // the frame goes back to the pool once the last viewer has written it
+        while (streamer.getFreeFrameCount() < freeFrameCount) {
+            Thread.yield();
+        }
+        return freeFrameCount;
+    }
+
+    private static void discard(Socket socket) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream in = socket.getInputStream()) {
+            while (in.read(buffer) >= 0) {
+                // viewer
+            }
+        } catch (IOException closed) {
+            // benchmark is over
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.replay;
+
+import com.bit.pixelopolis_car.services.camera.YuvFrameProcessor;
+import com.bit.pixelopolis_car.services.carvision.FrameSource;
+import com.bit.pixelopolis_car.services.carvision.JpegDirectoryFrameSource;
+import com.bit.pixelopolis_car.services.carvision.LanePreprocessor;
+import com.bit.pixelopolis_car.services.carvision.YuvFileFrameSource;
+import com.bit.pixelopolis_car.services.logging.LogService;
+
+import org.opencv.core.Mat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.FloatBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import nu.pattern.OpenCV;
+
+/**
+ * Replays a recording through the vision preprocessing on the desktop JVM. Every frame of the
+ * FrameSource is made current and turned into the lane model input the way CarVision does it on the
+ * phone. The models need Android's TFLite runtime and asset manager, so the replay stops at their
+ * input. For YUV recordings the lane input the Camera2 path writes is also compared with the one
+ * LanePreprocessor makes from the RGB frame.
+ * Run it with ./gradlew :replay:run --args='--jpegs path/to/frames', see {@link #main} for the options.
+ */
+public final class FrameReplay {
+    // LaneDetector's model input
+    static final int LANE_WIDTH = 120;
+    static final int LANE_HEIGHT = 40;
+    private static final int LANE_CHANNELS = 3;
+
+    private final FrameSource source;
+    private final LanePreprocessor preprocessor = new LanePreprocessor(LANE_WIDTH, LANE_HEIGHT);
+    private final FloatBuffer laneInput = FloatBuffer.allocate(LANE_WIDTH * LANE_HEIGHT * LANE_CHANNELS);
+    private final FloatBuffer rgbLaneInput = FloatBuffer.allocate(LANE_WIDTH * LANE_HEIGHT * LANE_CHANNELS);
+    private final double[] planeMeans = new double[LANE_CHANNELS];
+
+    FrameReplay(FrameSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Runs the source to its end and closes it.
+     * @param frameLog receives a CSV line per frame, may be null
+     */
+    ReplayReport run(PrintStream frameLog) throws InterruptedException {
+        ReplayReport report = new ReplayReport();
+        if (frameLog != null)
+            frameLog.println("frame,source_millis,lane_millis,y_mean,u_mean,v_mean,lane_difference");
+        try {
+            long sourceStart = System.nanoTime();
+            while (source.nextFrame()) {
+                long laneStart = System.nanoTime();
+                Mat frame = source.getFrame();
+                // as CarVision.getCarSteering, YUV sources write the lane input themselves
+                boolean isYuvLane = source.writeLaneInput(laneInput, LANE_WIDTH, LANE_HEIGHT);
+                if (!isYuvLane)
+                    preprocessor.preprocess(frame, laneInput);
+                long laneEnd = System.nanoTime();
+                report.addFrame(laneStart - sourceStart, laneEnd - laneStart);
+
+                double difference = Double.NaN;
+                if (isYuvLane) {
+                    preprocessor.preprocess(frame, rgbLaneInput);
+                    difference = compareLaneInputs(report);
+                }
+                if (frameLog != null) {
+                    computePlaneMeans();
+                    frameLog.println(String.format(Locale.US, "%d,%.3f,%.3f,%.2f,%.2f,%.2f,%.3f",
+                            report.frameCount - 1, (laneStart - sourceStart) / 1e6, (laneEnd - laneStart) / 1e6,
+                            planeMeans[0], planeMeans[1], planeMeans[2], difference));
+                }
+                sourceStart = System.nanoTime();
+            }
+        } finally {
+            source.close();
+            preprocessor.release();
+        }
+        return report;
+    }
+
+    // mean absolute difference of the two lane inputs, the largest one goes into the report
+    private double compareLaneInputs(ReplayReport report) {
+        int count = laneInput.position();
+        double sum = 0;
+        double max = 0;
+        for (int i = 0; i < count; i++) {
+            double difference = Math.abs(laneInput.get(i) - rgbLaneInput.get(i));
+            sum += difference;
+            max = Math.max(max, difference);
+        }
+        double mean = sum / count;
+        report.addLaneDifference(mean, max);
+        return mean;
+    }
+
+    private void computePlaneMeans() {
+        int count = laneInput.position();
+        for (int channel = 0; channel < LANE_CHANNELS; channel++) {
+            double sum = 0;
+            for (int i = channel; i < count; i += LANE_CHANNELS)
+                sum += laneInput.get(i);
+            planeMeans[channel] = sum / (count / LANE_CHANNELS);
+        }
+    }
+
+    /**
+     * --jpegs directory replays upright JPEG frames in file name order. --yuv file replays raw
+     * landscape frames and also takes --width, --height and --format nv21 or i420. --fps paces the
+     * replay, 0 (the default) runs at max speed. --frameLog file writes a CSV line per frame.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i += 2) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                System.err.println("expected --name value, got " + args[i]);
+                System.exit(2);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        OpenCV.loadLocally();
+        // the frame sources log through the app's logger, which has no logcat here
+        LogService.getInstance().setSink((level, tag, message, throwable) -> {
+            System.err.println(tag + ": " + message);
+            if (throwable != null)
+                throwable.printStackTrace();
+        });
+
+        FrameSource source;
+        try {
+            source = open(options);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        PrintStream frameLog = options.containsKey("frameLog")
+                ? new PrintStream(new FileOutputStream(options.get("frameLog")), false, "UTF-8") : null;
+        try {
+            ReplayReport report = new FrameReplay(source).run(frameLog);
+            report.print(System.out);
+        } finally {
+            if (frameLog != null)
+                frameLog.close();
+        }
+    }
+
+    static FrameSource open(Map<String, String> options) throws IOException {
+        int frameRate = Integer.parseInt(options.getOrDefault("fps", "0"));
+        if (options.containsKey("jpegs"))
+            return new JpegDirectoryFrameSource(new File(options.get("jpegs")), frameRate);
+        if (!options.containsKey("yuv"))
+            throw new IllegalArgumentException("give --jpegs directory or --yuv file");
+        if (!options.containsKey("width") || !options.containsKey("height"))
+            throw new IllegalArgumentException("--yuv needs the landscape --width and --height of the frames");
+        int format;
+        String formatName = options.getOrDefault("format", "nv21").toLowerCase(Locale.US);
+        if (formatName.equals("nv21"))
+            format = YuvFrameProcessor.FORMAT_NV21;
+        else if (formatName.equals("i420"))
+            format = YuvFrameProcessor.FORMAT_I420;
+        else
+            throw new IllegalArgumentException("unknown format " + formatName + ", use nv21 or i420");
+        return new YuvFileFrameSource(new File(options.get("yuv")), Integer.parseInt(options.get("width")),
+                Integer.parseInt(options.get("height")), format, frameRate);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.replay;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * What one {@link FrameReplay} run measured.
+ */
+final class ReplayReport {
+    long frameCount = 0;
+    // reading and decoding the frames, the replay's own pacing included
+    long sourceNanos = 0;
+    long laneNanos = 0;
+    long maxLaneNanos = 0;
+    // frames whose YUV lane input was compared with the RGB path
+    long comparedFrameCount = 0;
+    double laneDifferenceSum = 0;
+    double maxLaneDifference = 0;
+
+    void addFrame(long sourceNanos, long laneNanos) {
+        frameCount++;
+        this.sourceNanos += sourceNanos;
+        this.laneNanos += laneNanos;
+        maxLaneNanos = Math.max(maxLaneNanos, laneNanos);
+    }
+
+    void addLaneDifference(double meanDifference, double maxDifference) {
+        comparedFrameCount++;
+        laneDifferenceSum += meanDifference;
+        maxLaneDifference = Math.max(maxLaneDifference, maxDifference);
+    }
+
+    // mean absolute difference of a lane input value, 0 to 255, NaN when nothing was compared
+    double getMeanLaneDifference() {
+        return comparedFrameCount > 0 ? laneDifferenceSum / comparedFrameCount : Double.NaN;
+    }
+
+    void print(PrintStream out) {
+        out.printf(Locale.US, "frames        %d%n", frameCount);
+        if (frameCount == 0)
+            return;
+        out.printf(Locale.US, "source        %.3f ms per frame%n", sourceNanos / 1e6 / frameCount);
+        out.printf(Locale.US, "lane input    %.3f ms per frame mean, %.3f ms max%n", laneNanos / 1e6 / frameCount, maxLaneNanos / 1e6);
+        if (comparedFrameCount > 0)
+            out.printf(Locale.US, "yuv lane      %.3f mean, %.1f max absolute difference from the RGB path over %d frames%n",
+                    getMeanLaneDifference(), maxLaneDifference, comparedFrameCount);
+    }
+}
@@ -0,0 +1,110 @@
+package com.bit.pixelopolis_car.replay;
+
+import com.bit.pixelopolis_car.services.camera.YuvFrameProcessor;
+import com.bit.pixelopolis_car.services.carvision.JpegDirectoryFrameSource;
+import com.bit.pixelopolis_car.services.carvision.YuvFileFrameSource;
+
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class FrameReplayTest {
+    // landscape, as the camera delivers them
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        TestFrames.loadOpenCV();
+    }
+
+    @Test
+    public void replaysEveryReadableJpeg() throws Exception {
+        File directory = folder.newFolder("frames");
+        for (int i = 0; i < 3; i++) {
+            // upright, as vision sees them
+            Mat rgb = TestFrames.create(HEIGHT, WIDTH, i);
+            Mat bgr = new Mat();
+            Imgproc.cvtColor(rgb, bgr, Imgproc.COLOR_RGB2BGR);
+            assertTrue(Imgcodecs.imwrite(new File(directory, String.format("frame_%06d.jpg", i)).getPath(), bgr));
+            rgb.release();
+            bgr.release();
+        }
+        Files.write(new File(directory, "frame_000003.jpg").toPath(), "not a jpeg".getBytes(StandardCharsets.US_ASCII));
+
+        ByteArrayOutputStream frameLog = new ByteArrayOutputStream();
+        ReplayReport report = new FrameReplay(new JpegDirectoryFrameSource(directory, 0))
+                .run(new PrintStream(frameLog, true, "UTF-8"));
+
+        assertEquals(3, report.frameCount);
+        assertEquals(0, report.comparedFrameCount);
+        assertTrue(Double.isNaN(report.getMeanLaneDifference()));
+        String[] lines = frameLog.toString("UTF-8").split("\n");
+        assertEquals(1 + 3, lines.length);
+        assertTrue(lines[1].startsWith("0,"));
+        assertTrue(lines[3].endsWith(",NaN"));
+    }
+
+    @Test
+    public void comparesYuvLaneInputWithRgbPath() throws Exception {
+        File file = writeYuv(4, YuvFrameProcessor.FORMAT_NV21);
+
+        ReplayReport report = new FrameReplay(new YuvFileFrameSource(file, WIDTH, HEIGHT, YuvFrameProcessor.FORMAT_NV21, 0))
+                .run(null);
+
+        assertEquals(4, report.frameCount);
+        assertEquals(4, report.comparedFrameCount);
+        // YuvFrameProcessorTest holds the lane paths to their tolerance, this only checks the harness compares them
+        assertTrue(report.getMeanLaneDifference() > 0);
+        assertTrue(report.getMeanLaneDifference() < 2);
+    }
+
+    @Test
+    public void opensSourcesFromOptions() throws Exception {
+        File file = writeYuv(1, YuvFrameProcessor.FORMAT_I420);
+        Map<String, String> options = new HashMap<>();
+        options.put("yuv", file.getPath());
+        options.put("width", Integer.toString(WIDTH));
+        options.put("height", Integer.toString(HEIGHT));
+        options.put("format", "i420");
+        assertEquals(1, new FrameReplay(FrameReplay.open(options)).run(null).frameCount);
+
+        options.put("format", "yv12");
+        try {
+            FrameReplay.open(options);
+            fail("unknown format accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private File writeYuv(int frameCount, int format) throws IOException {
+        File file = folder.newFile(format == YuvFrameProcessor.FORMAT_NV21 ? "drive.nv21" : "drive.i420");
+        try (FileOutputStream output = new FileOutputStream(file)) {
+            for (int i = 0; i < frameCount; i++) {
+                Mat rgb = TestFrames.create(WIDTH, HEIGHT, i);
+                output.write(format == YuvFrameProcessor.FORMAT_NV21 ? TestFrames.toNv21(rgb) : TestFrames.toI420(rgb));
+                rgb.release();
+            }
+        }
+        return file;
+    }
+}
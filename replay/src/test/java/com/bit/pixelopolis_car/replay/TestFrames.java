@@ -0,0 +1,70 @@
+package com.bit.pixelopolis_car.replay;
+
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+import nu.pattern.OpenCV;
+
+// camera-like frames for the tests that need OpenCV, as the benchmark's SyntheticFrames
+public final class TestFrames {
+    private static boolean isLoaded = false;
+
+    private TestFrames() {}
+
+    public static synchronized void loadOpenCV() {
+        if (!isLoaded) {
+            OpenCV.loadLocally();
+            isLoaded = true;
+        }
+    }
+
+    // RGB floor with lane lines, coloured markers and sensor noise
+    public static Mat create(int width, int height, long seed) {
+        loadOpenCV();
+        Mat frame = new Mat(height, width, CvType.CV_8UC3);
+        for (int row = 0; row < height; row++) {
+            int shade = 60 + 120 * row / height;
+            frame.row(row).setTo(new Scalar(shade, shade, shade + 10));
+        }
+        Imgproc.line(frame, new Point(width * 0.3, height), new Point(width * 0.45, height * 0.4), new Scalar(240, 240, 240), 6);
+        Imgproc.line(frame, new Point(width * 0.7, height), new Point(width * 0.55, height * 0.4), new Scalar(240, 240, 240), 6);
+        Imgproc.rectangle(frame, new Point(width * 0.1, height * 0.15), new Point(width * 0.3, height * 0.3), new Scalar(200, 30, 30), -1);
+        Imgproc.circle(frame, new Point(width * (0.3 + 0.4 * (seed % 5) / 5.0), height * 0.85), height / 12, new Scalar(250, 200, 0), -1);
+
+        // signed, so the noise goes both ways
+        Mat noise = new Mat(height, width, CvType.CV_16SC3);
+        Core.setRNGSeed((int) seed);
+        Core.randn(noise, 0, 6);
+        Core.add(frame, noise, frame, new Mat(), CvType.CV_8UC3);
+        noise.release();
+        return frame;
+    }
+
+    // packed I420 bytes of an RGB frame whose sides are even
+    public static byte[] toI420(Mat rgbFrame) {
+        Mat yuv = new Mat();
+        Imgproc.cvtColor(rgbFrame, yuv, Imgproc.COLOR_RGB2YUV_I420);
+        byte[] bytes = new byte[(int) yuv.total()];
+        yuv.get(0, 0, bytes);
+        yuv.release();
+        return bytes;
+    }
+
+    // the same frame with V and U interleaved after the Y plane
+    public static byte[] toNv21(Mat rgbFrame) {
+        byte[] i420 = toI420(rgbFrame);
+        int ySize = rgbFrame.cols() * rgbFrame.rows();
+        int chromaSize = ySize / 4;
+        byte[] nv21 = new byte[i420.length];
+        System.arraycopy(i420, 0, nv21, 0, ySize);
+        for (int i = 0; i < chromaSize; i++) {
+            nv21[ySize + 2 * i] = i420[ySize + chromaSize + i];
+            nv21[ySize + 2 * i + 1] = i420[ySize + i];
+        }
+        return nv21;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bit.pixelopolis_car.services.camera;
+
+import com.bit.pixelopolis_car.replay.TestFrames;
+import com.bit.pixelopolis_car.services.carvision.LanePreprocessor;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class YuvFrameProcessorTest {
+    // landscape, as the camera delivers them
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    // LaneDetector's model input
+    private static final int LANE_WIDTH = 120;
+    private static final int LANE_HEIGHT = 40;
+    private static final int LANE_SIZE = LANE_WIDTH * LANE_HEIGHT * 3;
+    // the YUV lane input skips the 8 bit RGB frame, so it is off by rounding, values are 0 to 255;
+    // the test frames come to a mean of about 0.35 and at most 4
+    private static final double MAX_MEAN_LANE_DIFFERENCE = 0.5;
+    private static final double MAX_LANE_DIFFERENCE = 6;
+    // 4:2:0 averages each 2x2 block's colour, which takes out most of the test frame's noise
+    // where it differs between channels, about 5 in red and 6 in blue
+    private static final double MAX_MEAN_UPRIGHT_DIFFERENCE = 8;
+
+    private final LanePreprocessor preprocessor = new LanePreprocessor(LANE_WIDTH, LANE_HEIGHT);
+    private final FloatBuffer yuvLane = FloatBuffer.allocate(LANE_SIZE);
+    private final FloatBuffer rgbLane = FloatBuffer.allocate(LANE_SIZE);
+    private final Mat upright = new Mat();
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        TestFrames.loadOpenCV();
+    }
+
+    @After
+    public void tearDown() {
+        preprocessor.release();
+        upright.release();
+    }
+
+    @Test
+    public void nv21LaneInputMatchesRgbPath() {
+        assertLaneInputMatchesRgbPath(YuvFrameProcessor.FORMAT_NV21);
+    }
+
+    @Test
+    public void i420LaneInputMatchesRgbPath() {
+        assertLaneInputMatchesRgbPath(YuvFrameProcessor.FORMAT_I420);
+    }
+
+    @Test
+    public void uprightFrameIsTheRotatedCameraFrame() {
+        Mat landscape = TestFrames.create(WIDTH, HEIGHT, 3);
+        YuvFrameProcessor processor = process(landscape, YuvFrameProcessor.FORMAT_NV21);
+        processor.toUpright(upright);
+
+        Mat expected = new Mat();
+        Core.rotate(landscape, expected, Core.ROTATE_90_COUNTERCLOCKWISE);
+        assertEquals(HEIGHT, upright.cols());
+        assertEquals(WIDTH, upright.rows());
+        Mat difference = new Mat();
+        Core.absdiff(upright, expected, difference);
+        Scalar mean = Core.mean(difference);
+        for (int channel = 0; channel < 3; channel++)
+            assertTrue("channel " + channel + " off by " + mean.val[channel], mean.val[channel] < MAX_MEAN_UPRIGHT_DIFFERENCE);
+        difference.release();
+        expected.release();
+        landscape.release();
+        processor.release();
+    }
+
+    @Test
+    public void rejectsFramesItCannotSplit() {
+        try {
+            new YuvFrameProcessor(WIDTH + 4, HEIGHT, YuvFrameProcessor.FORMAT_NV21);
+            fail("width that is not a multiple of 8 accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new YuvFrameProcessor(WIDTH, HEIGHT, 7);
+            fail("unknown format accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    private void assertLaneInputMatchesRgbPath(int format) {
+        for (long seed = 0; seed < 3; seed++) {
+            Mat landscape = TestFrames.create(WIDTH, HEIGHT, seed);
+            YuvFrameProcessor processor = process(landscape, format);
+            processor.toUpright(upright);
+            preprocessor.preprocess(upright, rgbLane);
+            processor.writeLaneInput(yuvLane, LANE_WIDTH, LANE_HEIGHT);
+
+            assertEquals(LANE_SIZE, yuvLane.position());
+            double sum = 0;
+            double max = 0;
+            for (int i = 0; i < LANE_SIZE; i++) {
+                double difference = Math.abs(yuvLane.get(i) - rgbLane.get(i));
+                sum += difference;
+                max = Math.max(max, difference);
+            }
+            double mean = sum / LANE_SIZE;
+            assertTrue("mean difference " + mean, mean <= MAX_MEAN_LANE_DIFFERENCE);
+            assertTrue("max difference " + max, max <= MAX_LANE_DIFFERENCE);
+            processor.release();
+            landscape.release();
+        }
+    }
+
+    private static YuvFrameProcessor process(Mat landscape, int format) {
+        YuvFrameProcessor processor = new YuvFrameProcessor(WIDTH, HEIGHT, format);
+        byte[] packed = format == YuvFrameProcessor.FORMAT_NV21 ? TestFrames.toNv21(landscape) : TestFrames.toI420(landscape);
+        System.arraycopy(packed, 0, processor.getBuffer(), 0, packed.length);
+        processor.update();
+        return processor;
+    }
+}
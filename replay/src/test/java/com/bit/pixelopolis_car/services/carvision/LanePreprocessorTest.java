@@ -0,0 +1,118 @@
+package com.bit.pixelopolis_car.services.carvision;
+
+import com.bit.pixelopolis_car.replay.TestFrames;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.FloatBuffer;
+
+import static org.junit.Assert.*;
+
+public class LanePreprocessorTest {
+    // LaneDetector's model input
+    private static final int INPUT_WIDTH = 120;
+    private static final int INPUT_HEIGHT = 40;
+    private static final int INPUT_SIZE = INPUT_WIDTH * INPUT_HEIGHT * 3;
+
+    private final LanePreprocessor preprocessor = new LanePreprocessor(INPUT_WIDTH, INPUT_HEIGHT);
+    private final FloatBuffer input = FloatBuffer.allocate(INPUT_SIZE);
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        TestFrames.loadOpenCV();
+    }
+
+    @After
+    public void tearDown() {
+        preprocessor.release();
+    }
+
+    @Test
+    public void matchesLegacyChainBitForBit() {
+        Mat frame = TestFrames.create(600, 800, 1);
+        preprocessor.preprocess(frame, input);
+        assertArrayEquals(legacyChain(frame), values(input), 0f);
+        assertEquals(new Rect(0, 600, 600, 200), preprocessor.getRoi());
+        frame.release();
+    }
+
+    @Test
+    public void seesNewContentOfTheSameFrame() {
+        Mat frame = TestFrames.create(480, 640, 2);
+        preprocessor.preprocess(frame, input);
+        // the camera writes the next frame into the same Mat, the kept road view must follow it
+        Mat next = TestFrames.create(480, 640, 3);
+        next.copyTo(frame);
+        preprocessor.preprocess(frame, input);
+        assertArrayEquals(legacyChain(next), values(input), 0f);
+        next.release();
+        frame.release();
+    }
+
+    @Test
+    public void followsReallocatedAndResizedFrames() {
+        Mat frame = TestFrames.create(480, 640, 4);
+        preprocessor.preprocess(frame, input);
+        frame.release();
+
+        Mat resized = TestFrames.create(600, 800, 5);
+        preprocessor.preprocess(resized, input);
+        assertArrayEquals(legacyChain(resized), values(input), 0f);
+        assertEquals(new Rect(0, 600, 600, 200), preprocessor.getRoi());
+
+        Mat reallocated = TestFrames.create(600, 800, 6);
+        preprocessor.preprocess(reallocated, input);
+        assertArrayEquals(legacyChain(reallocated), values(input), 0f);
+        reallocated.release();
+        resized.release();
+    }
+
+    @Test
+    public void writesFromTheStartOfTheTarget() {
+        Mat frame = TestFrames.create(480, 640, 7);
+        input.position(INPUT_SIZE / 2);
+        preprocessor.preprocess(frame, input);
+        assertEquals(INPUT_SIZE, input.position());
+        assertArrayEquals(legacyChain(frame), values(input), 0f);
+        frame.release();
+    }
+
+    // the crop, resize and per element copy LaneDetector ran before LanePreprocessor
+    private static float[] legacyChain(Mat frame) {
+        Rect roi = new Rect(0, 3 * frame.rows() / 4, frame.cols(), frame.rows() / 4);
+        Mat cropped = new Mat(frame, roi);
+        Imgproc.resize(cropped, cropped, new Size(INPUT_WIDTH, INPUT_HEIGHT));
+        Mat yuvCropped = new Mat();
+        Imgproc.cvtColor(cropped, yuvCropped, Imgproc.COLOR_RGB2YUV);
+        yuvCropped.convertTo(yuvCropped, CvType.CV_32FC3);
+        float[] frameData = new float[INPUT_SIZE];
+        yuvCropped.get(0, 0, frameData);
+        float[] values = new float[INPUT_SIZE];
+        int index = 0;
+        for (int i = 0; i < INPUT_HEIGHT; ++i) {
+            for (int j = 0; j < INPUT_WIDTH; ++j) {
+                int idx = (i * INPUT_WIDTH + j) * 3;
+                values[index++] = frameData[idx];
+                values[index++] = frameData[idx + 1];
+                values[index++] = frameData[idx + 2];
+            }
+        }
+        yuvCropped.release();
+        cropped.release();
+        return values;
+    }
+
+    private static float[] values(FloatBuffer buffer) {
+        float[] values = new float[buffer.position()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = buffer.get(i);
+        return values;
+    }
+}
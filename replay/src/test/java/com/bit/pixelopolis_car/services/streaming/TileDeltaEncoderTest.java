@@ -0,0 +1,226 @@
+package com.bit.pixelopolis_car.services.streaming;
+
+import com.bit.pixelopolis_car.replay.TestFrames;
+
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class TileDeltaEncoderTest {
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 120;
+    private static final int QUALITY = 90;
+    private static final int THRESHOLD = 8;
+    private static final int KEYFRAME_INTERVAL = 100;
+    // JPEG at QUALITY on the noisy test frames, mean absolute difference of a channel in a tile,
+    // 0 to 255; they come to 4.9 on average and 17 at most, a tile that was not sent to well over 40
+    private static final double MAX_MEAN_ERROR = 24;
+
+    private final JpegEncoder jpegEncoder = new JpegEncoder();
+    private final TileDeltaEncoder encoder = new TileDeltaEncoder(jpegEncoder, THRESHOLD, KEYFRAME_INTERVAL);
+    private final ByteBuffer message = ByteBuffer.allocate(256 * 1024);
+    // what a viewer shows, built only from the messages
+    private Mat viewer;
+
+    @BeforeClass
+    public static void loadOpenCV() {
+        TestFrames.loadOpenCV();
+    }
+
+    @After
+    public void tearDown() {
+        encoder.release();
+        jpegEncoder.release();
+        if (viewer != null)
+            viewer.release();
+    }
+
+    @Test
+    public void firstFrameIsKeyframe() {
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 1);
+        assertTrue(encode(frame) > 0);
+        assertTrue(encoder.isLastKeyframe());
+        assertEquals(1, encoder.getLastRectCount());
+        assertClose(frame, viewer);
+        frame.release();
+    }
+
+    @Test
+    public void roundTripsChangedTiles() {
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 2);
+        encode(frame);
+
+        // a marker appears in the lower right corner, the tile grid does not divide the frame there
+        Mat next = frame.clone();
+        Imgproc.rectangle(next, new Point(150, 90), new Point(199, 119), new Scalar(20, 220, 30), -1);
+        int length = encode(next);
+        assertTrue(length > 0);
+        assertFalse(encoder.isLastKeyframe());
+        // tile rows 5 to 7 each get one run of changed tiles
+        assertEquals(3, encoder.getLastRectCount());
+        assertClose(next, viewer);
+
+        // and disappears again
+        length = encode(frame);
+        assertTrue(length > 0);
+        assertFalse(encoder.isLastKeyframe());
+        assertClose(frame, viewer);
+        next.release();
+        frame.release();
+    }
+
+    @Test
+    public void sendsNothingForUnchangedFrame() {
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 3);
+        encode(frame);
+        int position = message.position();
+        assertEquals(0, encoder.encode(frame, QUALITY, message));
+        assertEquals(position, message.position());
+        assertEquals(0, encoder.getLastRectCount());
+        frame.release();
+    }
+
+    @Test
+    public void fallsBackToKeyframeWhenMostTilesChanged() {
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 4);
+        encode(frame);
+        Mat brighter = new Mat();
+        Core.add(frame, new Scalar(40, 40, 40), brighter);
+        assertTrue(encode(brighter) > 0);
+        assertTrue(encoder.isLastKeyframe());
+        assertEquals(1, encoder.getLastRectCount());
+        assertClose(brighter, viewer);
+        brighter.release();
+        frame.release();
+    }
+
+    @Test
+    public void sendsKeyframeOnIntervalRequestAndResize() {
+        TileDeltaEncoder everyThird = new TileDeltaEncoder(jpegEncoder, THRESHOLD, 3);
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 5);
+        assertTrue(everyThird.encode(frame, QUALITY, message) > 0);
+        assertTrue(everyThird.isLastKeyframe());
+        assertEquals(0, everyThird.encode(frame, QUALITY, message));
+        assertEquals(0, everyThird.encode(frame, QUALITY, message));
+        // unchanged frames count towards the interval
+        assertTrue(everyThird.encode(frame, QUALITY, message) > 0);
+        assertTrue(everyThird.isLastKeyframe());
+
+        everyThird.requestKeyframe();
+        assertTrue(everyThird.encode(frame, QUALITY, message) > 0);
+        assertTrue(everyThird.isLastKeyframe());
+
+        Mat smaller = TestFrames.create(WIDTH / 2, HEIGHT / 2, 5);
+        assertTrue(everyThird.encode(smaller, QUALITY, message) > 0);
+        assertTrue(everyThird.isLastKeyframe());
+        everyThird.release();
+        smaller.release();
+        frame.release();
+    }
+
+    @Test
+    public void sendsKeyframeAfterMessageDidNotFit() {
+        Mat frame = TestFrames.create(WIDTH, HEIGHT, 6);
+        encode(frame);
+        Mat next = frame.clone();
+        Imgproc.rectangle(next, new Point(0, 0), new Point(40, 40), new Scalar(250, 250, 250), -1);
+
+        ByteBuffer small = ByteBuffer.allocate(TileDeltaEncoder.MESSAGE_HEADER_SIZE + TileDeltaEncoder.RECT_HEADER_SIZE + 10);
+        small.position(3);
+        assertEquals(-1, encoder.encode(next, QUALITY, small));
+        assertEquals(3, small.position());
+        assertFalse(encoder.isLastKeyframe());
+
+        // the viewer never got the failed tiles, so the next message has to replace everything
+        assertTrue(encode(next) > 0);
+        assertTrue(encoder.isLastKeyframe());
+        assertClose(next, viewer);
+        next.release();
+        frame.release();
+    }
+
+    // encodes into message and applies it to the viewer
+    private int encode(Mat frame) {
+        message.clear();
+        int length = encoder.encode(frame, QUALITY, message);
+        if (length > 0)
+            decode(message, 0, length);
+        return length;
+    }
+
+    // the delta_viewer.html decoder
+    private void decode(ByteBuffer buffer, int start, int length) {
+        assertEquals(length - 4, buffer.getInt(start));
+        assertEquals(TileDeltaEncoder.VERSION, buffer.get(start + 4));
+        boolean isKeyframe = (buffer.get(start + 5) & TileDeltaEncoder.FLAG_KEYFRAME) != 0;
+        int width = buffer.getShort(start + 6) & 0xffff;
+        int height = buffer.getShort(start + 8) & 0xffff;
+        int tileSize = buffer.get(start + 10) & 0xff;
+        int rectCount = buffer.getShort(start + 11) & 0xffff;
+        assertEquals(TileDeltaEncoder.TILE_SIZE, tileSize);
+        if (isKeyframe) {
+            if (viewer != null)
+                viewer.release();
+            viewer = new Mat(height, width, CvType.CV_8UC3, new Scalar(0, 0, 0));
+        }
+        assertNotNull("delta before any keyframe", viewer);
+
+        int position = start + TileDeltaEncoder.MESSAGE_HEADER_SIZE;
+        for (int i = 0; i < rectCount; i++) {
+            int x = (buffer.getShort(position) & 0xffff) * tileSize;
+            int y = (buffer.getShort(position + 2) & 0xffff) * tileSize;
+            int rectWidth = Math.min((buffer.getShort(position + 4) & 0xffff) * tileSize, width - x);
+            int rectHeight = Math.min((buffer.getShort(position + 6) & 0xffff) * tileSize, height - y);
+            int jpegLength = buffer.getInt(position + 8);
+            position += TileDeltaEncoder.RECT_HEADER_SIZE;
+
+            byte[] jpeg = new byte[jpegLength];
+            for (int j = 0; j < jpegLength; j++)
+                jpeg[j] = buffer.get(position + j);
+            position += jpegLength;
+            MatOfByte encoded = new MatOfByte(jpeg);
+            Mat tiles = Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR);
+            assertEquals(rectWidth, tiles.cols());
+            assertEquals(rectHeight, tiles.rows());
+            Mat target = viewer.submat(new Rect(x, y, rectWidth, rectHeight));
+            tiles.copyTo(target);
+            target.release();
+            tiles.release();
+            encoded.release();
+        }
+        assertEquals(start + length, position);
+    }
+
+    // per tile, so a tile the viewer missed cannot hide in the mean of the frame
+    private static void assertClose(Mat expected, Mat actual) {
+        assertEquals(expected.size(), actual.size());
+        Mat difference = new Mat();
+        Core.absdiff(expected, actual, difference);
+        for (int y = 0; y < difference.rows(); y += TileDeltaEncoder.TILE_SIZE) {
+            for (int x = 0; x < difference.cols(); x += TileDeltaEncoder.TILE_SIZE) {
+                Rect tile = new Rect(x, y, Math.min(TileDeltaEncoder.TILE_SIZE, difference.cols() - x),
+                        Math.min(TileDeltaEncoder.TILE_SIZE, difference.rows() - y));
+                Mat tileDifference = difference.submat(tile);
+                Scalar mean = Core.mean(tileDifference);
+                tileDifference.release();
+                for (int channel = 0; channel < 3; channel++)
+                    assertTrue("tile at " + x + "," + y + " channel " + channel + " off by " + mean.val[channel],
+                            mean.val[channel] < MAX_MEAN_ERROR);
+            }
+        }
+        difference.release();
+    }
+}
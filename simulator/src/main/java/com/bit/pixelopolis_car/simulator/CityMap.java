@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.data.NodeInfo;
+import com.bit.pixelopolis_car.enums.CMD;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A grid of intersections joined by two way roads. Every intersection is a node with one landmark
+ * the car recognizes it by, node ids start at 1 and go row by row.
+ */
+final class CityMap {
+    static final int NORTH = 0;
+    static final int EAST = 1;
+    static final int SOUTH = 2;
+    static final int WEST = 3;
+    private static final int HEADING_COUNT = 4;
+
+    private static final String LANDMARK_PREFIX = "Landmark_";
+
+    private final int columns;
+    private final int rows;
+    private final float landmarkWidth;
+    private final float landmarkHeight;
+    private final float landmarkConfidence;
+
+    CityMap(int columns, int rows, float landmarkWidth, float landmarkHeight, float landmarkConfidence) {
+        if (columns < 2 || rows < 2)
+            throw new IllegalArgumentException("the map needs at least 2 x 2 nodes");
+        this.columns = columns;
+        this.rows = rows;
+        this.landmarkWidth = landmarkWidth;
+        this.landmarkHeight = landmarkHeight;
+        this.landmarkConfidence = landmarkConfidence;
+    }
+
+    int getNodeCount() {
+        return columns * rows;
+    }
+
+    float getLandmarkWidth() {
+        return landmarkWidth;
+    }
+
+    float getLandmarkHeight() {
+        return landmarkHeight;
+    }
+
+    String getLandmark(int nodeId) {
+        return LANDMARK_PREFIX + nodeId;
+    }
+
+    // node reached driving from nodeId towards heading, -1 off the map
+    int step(int nodeId, int heading) {
+        int column = (nodeId - 1) % columns;
+        int row = (nodeId - 1) / columns;
+        switch (heading) {
+            case NORTH:
+                row--;
+                break;
+            case EAST:
+                column++;
+                break;
+            case SOUTH:
+                row++;
+                break;
+            default:
+                column--;
+                break;
+        }
+        if (column < 0 || column >= columns || row < 0 || row >= rows)
+            return -1;
+        return row * columns + column + 1;
+    }
+
+    static int turn(int heading, CMD command) {
+        switch (command) {
+            case TURN_LEFT:
+            case SHARP_TURN_LEFT:
+                return (heading + HEADING_COUNT - 1) % HEADING_COUNT;
+            case TURN_RIGHT:
+            case SHARP_TURN_RIGHT:
+                return (heading + 1) % HEADING_COUNT;
+            default:
+                return heading;
+        }
+    }
+
+    // heading the car leaves nodeId with, a command that leads off the map falls back to straight, right, left
+    int exit(int nodeId, int heading, CMD command) {
+        int wanted = turn(heading, command);
+        if (step(nodeId, wanted) != -1)
+            return wanted;
+        int[] fallbacks = {heading, (heading + 1) % HEADING_COUNT, (heading + HEADING_COUNT - 1) % HEADING_COUNT};
+        for (int fallback : fallbacks) {
+            if (step(nodeId, fallback) != -1)
+                return fallback;
+        }
+        throw new IllegalStateException("node " + nodeId + " has no roads");
+    }
+
+    /**
+     * Shortest route for a car arriving at fromNodeId with arrivalHeading. The car can go straight,
+     * left or right at a node, a grid has no dead ends so it never has to turn back.
+     * @return node ids from fromNodeId to toNodeId with the command to run at each, DO_NOTHING at the last
+     */
+    List<RouteStep> route(int fromNodeId, int arrivalHeading, int toNodeId) {
+        int states = getNodeCount() * HEADING_COUNT;
+        int[] previous = new int[states];
+        Arrays.fill(previous, -2);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int start = state(fromNodeId, arrivalHeading);
+        previous[start] = -1;
+        queue.add(start);
+        int end = -1;
+        while (!queue.isEmpty()) {
+            int current = queue.poll();
+            int nodeId = current / HEADING_COUNT + 1;
+            if (nodeId == toNodeId) {
+                end = current;
+                break;
+            }
+            int heading = current % HEADING_COUNT;
+            for (CMD command : new CMD[]{CMD.GO_FORWARD, CMD.TURN_LEFT, CMD.TURN_RIGHT}) {
+                int next = nextState(nodeId, turn(heading, command));
+                if (next >= 0 && previous[next] == -2) {
+                    previous[next] = current;
+                    queue.add(next);
+                }
+            }
+        }
+        if (end == -1)
+            throw new IllegalStateException("no route from " + fromNodeId + " to " + toNodeId);
+
+        ArrayList<Integer> path = new ArrayList<>();
+        for (int current = end; current != -1; current = previous[current])
+            path.add(0, current);
+        List<RouteStep> steps = new ArrayList<>(path.size());
+        for (int i = 0; i < path.size(); i++) {
+            int nodeId = path.get(i) / HEADING_COUNT + 1;
+            CMD command = CMD.DO_NOTHING;
+            if (i + 1 < path.size())
+                command = toCommand(path.get(i) % HEADING_COUNT, path.get(i + 1) % HEADING_COUNT);
+            steps.add(new RouteStep(nodeId, command));
+        }
+        return steps;
+    }
+
+    List<NodeInfo> getAllNodeInfos() {
+        List<NodeInfo> nodeInfos = new ArrayList<>(getNodeCount());
+        for (int nodeId = 1; nodeId <= getNodeCount(); nodeId++) {
+            NodeInfo nodeInfo = new NodeInfo();
+            nodeInfo.setNodeId(Integer.toString(nodeId));
+            nodeInfo.addObject(new ObjectDetector.DetectedObject("", getLandmark(nodeId), landmarkConfidence, 0, 0, landmarkWidth, landmarkHeight));
+            nodeInfos.add(nodeInfo);
+        }
+        return nodeInfos;
+    }
+
+    // a node as the station sends it, see NodeInfo(JSONObject)
+    JSONObject toJson(int nodeId) throws JSONException {
+        JSONObject boundSize = new JSONObject();
+        boundSize.put("width", landmarkWidth);
+        boundSize.put("height", landmarkHeight);
+        JSONObject object = new JSONObject();
+        object.put("class", getLandmark(nodeId));
+        object.put("confidence", landmarkConfidence);
+        object.put("bound_size", boundSize);
+        JSONObject node = new JSONObject();
+        node.put("node_id", nodeId);
+        node.put("objects", new JSONArray().put(object));
+        return node;
+    }
+
+    private int state(int nodeId, int heading) {
+        return (nodeId - 1) * HEADING_COUNT + heading;
+    }
+
+    // state after leaving nodeId towards heading, -1 off the map
+    private int nextState(int nodeId, int heading) {
+        int next = step(nodeId, heading);
+        return next == -1 ? -1 : state(next, heading);
+    }
+
+    private static CMD toCommand(int arrivalHeading, int departureHeading) {
+        int change = (departureHeading - arrivalHeading + HEADING_COUNT) % HEADING_COUNT;
+        switch (change) {
+            case 0:
+                return CMD.GO_FORWARD;
+            case 1:
+                return CMD.TURN_RIGHT;
+            case 3:
+                return CMD.TURN_LEFT;
+            default:
+                throw new IllegalArgumentException("cars do not turn back at a node");
+        }
+    }
+
+    static final class RouteStep {
+        final int nodeId;
+        final CMD command;
+
+        RouteStep(int nodeId, CMD command) {
+            this.nodeId = nodeId;
+            this.command = command;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.services.api.ApiCommunicator;
+import com.bit.pixelopolis_car.services.config.Config;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * Many simulated cars driving in real time against the {@link MockStationServer}, each through its own
+ * ApiCommunicator over HTTP, to see how much traffic a fleet puts on the station and how the cars
+ * cope with a slow or failing one. Run it with ./gradlew :simulator:loadTest --args='--cars 50',
+ * stationLatencyMillis, stationErrorRate, stationFailureRate and serverThreads shape the server.
+ */
+public final class LoadDriver {
+    // the car's control loop period, NavigationController.UPDATE_INTERVAL
+    private static final long TICK_NANOS = 10000000L;
+    private static final long STARTUP_POLL_NANOS = 1000000L;
+    private static final int PHONE_BATTERY_SWAP_PERCENTAGE = 15;
+    private static final int MOTOR_BATTERY_SWAP_PERCENTAGE = 8;
+
+    private final SimulationSettings settings;
+    private final CityMap map;
+    private final MockStationServer server;
+    private final Map<String, TimedStationApi.CallStats> callStats = new ConcurrentHashMap<>();
+
+    LoadDriver(SimulationSettings settings) throws IOException {
+        this.settings = settings;
+        map = new CityMap(settings.columns, settings.rows, settings.landmarkWidth, settings.landmarkHeight, settings.landmarkConfidence);
+        Simulator.configure(settings, map, Simulator.SPAWN_NODE_ID);
+        server = new MockStationServer(map, Config.getInstance(), settings);
+    }
+
+    LoadReport run() throws InterruptedException {
+        server.start();
+        String serverUrl = "http://127.0.0.1:" + server.getPort();
+        long startNanos = System.nanoTime();
+        long endNanos = startNanos + (long) (settings.durationSeconds * 1e9);
+        List<LoadCar> cars = new ArrayList<>(settings.cars);
+        List<Thread> threads = new ArrayList<>(settings.cars);
+        for (int i = 0; i < settings.cars; i++) {
+            LoadCar car = new LoadCar(i, serverUrl, endNanos);
+            cars.add(car);
+            threads.add(new Thread(car, car.carId));
+        }
+        for (Thread thread : threads)
+            thread.start();
+        for (Thread thread : threads)
+            thread.join();
+        long wallNanos = System.nanoTime() - startNanos;
+        server.stop();
+
+        LoadReport report = new LoadReport();
+        report.carCount = settings.cars;
+        report.wallNanos = wallNanos;
+        report.serverStats = server.getStats();
+        report.callStats = callStats;
+        for (LoadCar car : cars) {
+            if (car.startupNanos < 0)
+                continue;
+            report.connectedCarCount++;
+            report.startupNanos.add(car.startupNanos);
+            report.completedJourneyCount += car.car.getCompletedJourneyCount();
+            report.cancelledJourneyCount += car.car.getCancelledJourneyCount();
+            report.wrongDestinationCount += car.car.getWrongDestinationCount();
+            report.lostCount += car.car.getLostCount();
+            report.lateTickCount += car.lateTickCount;
+            report.tickCount += car.tickCount;
+            report.maxInFlightCount = Math.max(report.maxInFlightCount, car.api.getMaxInFlightCount());
+        }
+        return report;
+    }
+
+    // one car on its own thread, its station callbacks are queued and run between ticks like the app's main looper
+    private final class LoadCar implements Runnable {
+        final String carId;
+        final long endNanos;
+        final Queue<Runnable> callbacks = new ConcurrentLinkedQueue<>();
+        final VirtualClock clock = new VirtualClock(0);
+        final SimulatedBattery phoneBattery;
+        final VirtualSerialBoard board;
+        final SimulatedWorld world;
+        final TimedStationApi api;
+        final SimulatedCar car;
+        // time to get through SetupConfigActivity's requests, -1 when the car never got through
+        long startupNanos = -1;
+        long tickCount = 0;
+        // ticks that started a whole period late, the car thread could not keep up
+        long lateTickCount = 0;
+
+        LoadCar(int index, String serverUrl, long endNanos) {
+            this.carId = "car-" + index;
+            this.endNanos = endNanos;
+            Random random = new Random(settings.seed + index);
+            Config config = Config.getInstance();
+            SimulatedBattery motorBattery = new SimulatedBattery(settings.motorBatterySeconds, MOTOR_BATTERY_SWAP_PERCENTAGE);
+            phoneBattery = new SimulatedBattery(settings.phoneBatterySeconds, PHONE_BATTERY_SWAP_PERCENTAGE);
+            board = new VirtualSerialBoard(motorBattery, config.getCommandTime());
+            world = new SimulatedWorld(map, settings, random, board, config.getCarArea(), Simulator.SPAWN_NODE_ID);
+
+            ApiCommunicator communicator = new ApiCommunicator();
+            communicator.initialRetrofit(serverUrl, "device-" + index, carId, "127.0.0.1", callbacks::add);
+            api = new TimedStationApi(communicator, callStats, settings.durationSeconds);
+            server.setLocator(carId, world);
+
+            car = new SimulatedCar(api, board, clock, world, phoneBattery);
+            board.attach(car, world);
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            if (!request(api::getConfig) || !request(api::getAllNodeData) || !request(api::connectCar) || !request(api::waitForConnectStation))
+                return;
+            startupNanos = System.nanoTime() - startNanos;
+
+            long lastNanos = System.nanoTime();
+            long nextTickNanos = lastNanos;
+            while (lastNanos < endNanos) {
+                long now = System.nanoTime();
+                double elapsedSeconds = (now - lastNanos) / 1e9;
+                clock.advance(now - lastNanos);
+                lastNanos = now;
+
+                runCallbacks();
+                world.update(clock.nanoTime(), elapsedSeconds);
+                board.update(clock.nanoTime(), elapsedSeconds);
+                phoneBattery.drain(elapsedSeconds, 1);
+                car.tick();
+                tickCount++;
+
+                nextTickNanos += TICK_NANOS;
+                long sleepNanos = nextTickNanos - System.nanoTime();
+                if (sleepNanos > 0) {
+                    LockSupport.parkNanos(sleepNanos);
+                } else if (-sleepNanos > TICK_NANOS) {
+                    lateTickCount++;
+                    nextTickNanos = System.nanoTime();
+                }
+            }
+            // answers still on their way are dropped with the car
+        }
+
+        // a startup request, asked again until the station says success like the setup screen does
+        private boolean request(Consumer<Callback<String>> call) {
+            while (System.nanoTime() < endNanos) {
+                Answer answer = new Answer();
+                call.accept(answer);
+                while (!answer.isDone) {
+                    if (System.nanoTime() >= endNanos)
+                        return false;
+                    LockSupport.parkNanos(STARTUP_POLL_NANOS);
+                    runCallbacks();
+                }
+                if (answer.isSuccess)
+                    return true;
+            }
+            return false;
+        }
+
+        private void runCallbacks() {
+            Runnable callback;
+            while ((callback = callbacks.poll()) != null)
+                callback.run();
+        }
+    }
+
+    private static final class Answer implements Callback<String> {
+        boolean isDone = false;
+        boolean isSuccess = false;
+
+        @Override
+        public void onResponse(Call<String> call, Response<String> response) {
+            isDone = true;
+            if (response.body() == null)
+                return;
+            try {
+                isSuccess = new JSONObject(response.body()).getBoolean("success");
+            } catch (JSONException e) {
+                isSuccess = false;
+            }
+        }
+
+        @Override
+        public void onFailure(Call<String> call, Throwable t) {
+            isDone = true;
+        }
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        SimulationSettings settings;
+        try {
+            settings = SimulationSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        LoadReport report = new LoadDriver(settings).run();
+        report.print(System.out);
+        // OkHttp keeps its idle connections and threads around for a minute
+        System.exit(report.connectedCarCount == report.carCount ? 0 : 1);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What a load test measured. Server times run from a request arriving to its answer going out,
+ * client times from the car making the call to its callback running, the gap between the two is
+ * time spent queued in the car's HTTP client.
+ */
+final class LoadReport {
+    // latency windows, together they cover the whole test
+    private static final int LATENCY_WINDOWS = 10;
+
+    int carCount;
+    int connectedCarCount;
+    long wallNanos;
+    List<Long> startupNanos = new ArrayList<>();
+
+    long completedJourneyCount;
+    long cancelledJourneyCount;
+    long wrongDestinationCount;
+    long lostCount;
+    long tickCount;
+    long lateTickCount;
+    int maxInFlightCount;
+
+    Map<String, MockStationServer.EndpointStats> serverStats;
+    Map<String, TimedStationApi.CallStats> callStats;
+
+    // a mock station left running keeps about durationSeconds of the latest requests
+    static LatencyHistogram newLatencyHistogram(double durationSeconds) {
+        // one window spare, the first one only starts with the first sample
+        long windowMillis = (long) Math.ceil(durationSeconds * 1000 / (LATENCY_WINDOWS - 1));
+        return new LatencyHistogram(LATENCY_WINDOWS, Math.max(1, windowMillis));
+    }
+
+    long getRequestCount() {
+        long count = 0;
+        for (MockStationServer.EndpointStats stats : serverStats.values())
+            count += stats.requests.sum();
+        return count;
+    }
+
+    // requests the station sees from one car each second
+    double getRequestsPerCarSecond() {
+        return getRequestCount() / Math.max(1, connectedCarCount) / Math.max(1e-9, wallNanos / 1e9);
+    }
+
+    long getCallFailureCount() {
+        long count = 0;
+        for (TimedStationApi.CallStats stats : callStats.values())
+            count += stats.failures.sum() + stats.httpErrors.sum();
+        return count;
+    }
+
+    // seconds, 0 when no car got through startup
+    double getStartupSeconds(double percentile) {
+        if (startupNanos.isEmpty())
+            return 0;
+        List<Long> sorted = new ArrayList<>(startupNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(sorted.size() * percentile / 100.0) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))) / 1e9;
+    }
+
+    void print(PrintStream out) {
+        long now = System.nanoTime();
+        double wallSeconds = wallNanos / 1e9;
+        long serverErrors = 0;
+        long dropped = 0;
+        long bytesIn = 0;
+        long bytesOut = 0;
+        for (MockStationServer.EndpointStats stats : serverStats.values()) {
+            serverErrors += stats.serverErrors.sum();
+            dropped += stats.dropped.sum();
+            bytesIn += stats.bytesIn.sum();
+            bytesOut += stats.bytesOut.sum();
+        }
+        long requests = getRequestCount();
+
+        out.printf(Locale.US, "cars          %d of %d connected in %.0f s, startup p50 %.2f s  max %.2f s%n",
+                connectedCarCount, carCount, wallSeconds, getStartupSeconds(50), getStartupSeconds(100));
+        out.printf(Locale.US, "journeys      %d completed, %d cancelled by timeout, %d wrong place, %d LOST events%n",
+                completedJourneyCount, cancelledJourneyCount, wrongDestinationCount, lostCount);
+        out.printf(Locale.US, "control loop  %d ticks, %d started a period late%n", tickCount, lateTickCount);
+        out.printf(Locale.US, "station       %d requests, %.1f/s, %.2f per car per second, %d HTTP 500, %d dropped, %.0f KB in, %.0f KB out%n",
+                requests, requests / Math.max(1e-9, wallSeconds), getRequestsPerCarSecond(), serverErrors, dropped, bytesIn / 1024.0, bytesOut / 1024.0);
+        out.printf(Locale.US, "client        %d calls failed, at most %d in flight on one car%n",
+                getCallFailureCount(), maxInFlightCount);
+        out.printf(Locale.US, "  %-34s %8s %9s %17s %17s %8s%n", "endpoint", "requests", "/car/s", "server p50/p99 ms", "client p50/p99 ms", "failed");
+        for (Map.Entry<String, MockStationServer.EndpointStats> entry : serverStats.entrySet()) {
+            MockStationServer.EndpointStats stats = entry.getValue();
+            long count = stats.requests.sum();
+            if (count == 0)
+                continue;
+            TimedStationApi.CallStats call = callStats.get(entry.getKey());
+            out.printf(Locale.US, "  %-34s %8d %9.3f %8.0f/%-8.0f %8.0f/%-8.0f %8d%n",
+                    entry.getKey(), count, count / Math.max(1, connectedCarCount) / Math.max(1e-9, wallSeconds),
+                    stats.responseTime.getPercentileMillis(50, now), stats.responseTime.getPercentileMillis(99, now),
+                    call != null ? call.latency.getPercentileMillis(50, now) : 0, call != null ? call.latency.getPercentileMillis(99, now) : 0,
+                    call != null ? call.failures.sum() + call.httpErrors.sum() : 0);
+        }
+    }
+}
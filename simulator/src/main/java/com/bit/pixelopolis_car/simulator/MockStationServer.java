@@ -0,0 +1,355 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The station over real HTTP, for load tests of the app's ApiCommunicator and for a phone on the bench.
+ * Every CallWebService endpoint is served, each car gets its own {@link StationProtocol} keyed by the
+ * car_id it sends. Answers are held back by the configured latency without holding a handler thread,
+ * and a share of them is turned into HTTP 500s or dropped connections. Requests, failures and bytes
+ * are counted per endpoint. Run it on its own with ./gradlew :simulator:mockStation --args='--stationPort 8080'.
+ */
+public final class MockStationServer {
+    static final String[] ENDPOINTS = {
+            "connect_car", "wait_for_connect_station", "get_all_node_data", "get_config",
+            "wait_for_start", "alive", "wait_for_place_selection", "wait_for_cancel_place",
+            "request_route_to_random_destination", "request_route_to_destination",
+            "arrive_at_node", "arrive_wrong_node", "wait_for_traffic", "finish_auto_turn_command",
+            "arrive_at_destination", "wait_for_station_disconnect", "disconnect_car", "video_status"
+    };
+    private static final String ERROR_BODY = "{\"success\":false}";
+
+    static final class EndpointStats {
+        final LongAdder requests = new LongAdder();
+        final LongAdder serverErrors = new LongAdder();
+        final LongAdder dropped = new LongAdder();
+        final LongAdder bytesIn = new LongAdder();
+        final LongAdder bytesOut = new LongAdder();
+        // from the request arriving to the answer going out, the injected latency included
+        final LatencyHistogram responseTime;
+
+        EndpointStats(double durationSeconds) {
+            responseTime = LoadReport.newLatencyHistogram(durationSeconds);
+        }
+    }
+
+    private final CityMap map;
+    private final SimulationSettings settings;
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService responders;
+    // one entry per endpoint, filled before the server starts
+    private final Map<String, EndpointStats> stats = new TreeMap<>();
+    private final Map<String, StationProtocol> protocols = new ConcurrentHashMap<>();
+    private final Map<String, StationProtocol.CarLocator> locators = new ConcurrentHashMap<>();
+    private final AtomicInteger carCount = new AtomicInteger();
+    private final String configResponse;
+    private final String nodeDataResponse;
+
+    /**
+     * @param config what get_config serves, as {@link Simulator#configure} set it up
+     */
+    MockStationServer(CityMap map, Config config, SimulationSettings settings) throws IOException {
+        this.map = map;
+        this.settings = settings;
+        try {
+            configResponse = toConfigResponse(config);
+            nodeDataResponse = toNodeDataResponse(map);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+        server = HttpServer.create(new InetSocketAddress(settings.stationPort), 0);
+        for (String endpoint : ENDPOINTS) {
+            stats.put(endpoint, new EndpointStats(settings.durationSeconds));
+            server.createContext("/" + endpoint, this::handle);
+        }
+        handlers = Executors.newFixedThreadPool(settings.serverThreads, daemonThreads("station-handler"));
+        responders = Executors.newScheduledThreadPool(settings.serverThreads, daemonThreads("station-responder"));
+        server.setExecutor(handlers);
+    }
+
+    void start() {
+        server.start();
+    }
+
+    void stop() {
+        server.stop(0);
+        responders.shutdownNow();
+        handlers.shutdownNow();
+    }
+
+    int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // the car's station knows where it is from the simulated world, set before the car's first request
+    void setLocator(String carId, StationProtocol.CarLocator locator) {
+        locators.put(carId, locator);
+    }
+
+    Map<String, EndpointStats> getStats() {
+        return Collections.unmodifiableMap(stats);
+    }
+
+    int getCarCount() {
+        return carCount.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long receivedNanos = System.nanoTime();
+        String endpoint = exchange.getHttpContext().getPath().substring(1);
+        EndpointStats endpointStats = stats.get(endpoint);
+        byte[] request = readAll(exchange.getRequestBody());
+        endpointStats.requests.increment();
+        endpointStats.bytesIn.add(request.length);
+        if (!exchange.getRequestURI().getPath().equals(exchange.getHttpContext().getPath())) {
+            send(exchange, 404, ERROR_BODY, endpointStats, receivedNanos);
+            return;
+        }
+
+        String body;
+        try {
+            body = answer(endpoint, request.length == 0 ? new JSONObject() : new JSONObject(new String(request, StandardCharsets.UTF_8)));
+        } catch (JSONException e) {
+            send(exchange, 400, ERROR_BODY, endpointStats, receivedNanos);
+            return;
+        }
+
+        // the answer is decided now, how it goes out is rolled like SimulatedStation does
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delayMillis = settings.stationLatencyMillis + random.nextInt(settings.stationJitterMillis + 1);
+        double roll = random.nextDouble();
+        Runnable response;
+        if (roll < settings.stationFailureRate) {
+            response = () -> drop(exchange, endpointStats, receivedNanos);
+        } else if (roll < settings.stationFailureRate + settings.stationErrorRate) {
+            response = () -> {
+                endpointStats.serverErrors.increment();
+                send(exchange, 500, ERROR_BODY, endpointStats, receivedNanos);
+            };
+        } else {
+            response = () -> send(exchange, 200, body, endpointStats, receivedNanos);
+        }
+        if (delayMillis > 0)
+            responders.schedule(response, delayMillis, TimeUnit.MILLISECONDS);
+        else
+            response.run();
+    }
+
+    private String answer(String endpoint, JSONObject request) throws JSONException {
+        switch (endpoint) {
+            case "get_config":
+                return configResponse;
+            case "get_all_node_data":
+                return nodeDataResponse;
+            case "wait_for_connect_station":
+                // the station side is always connected
+                return StationProtocol.success().toString();
+        }
+
+        StationProtocol protocol = getProtocol(request.optString("car_id", ""));
+        JSONObject body;
+        switch (endpoint) {
+            case "connect_car":
+                body = StationProtocol.success();
+                break;
+            case "wait_for_start":
+                body = protocol.waitForStart();
+                break;
+            case "alive":
+                body = protocol.alive();
+                break;
+            case "wait_for_place_selection":
+                body = protocol.waitForPlaceSelection();
+                break;
+            case "wait_for_cancel_place":
+                body = protocol.waitForCancelPlace();
+                break;
+            case "request_route_to_random_destination":
+                body = protocol.requestRouteToRandomDestination(request.optInt("current_car_location", -1));
+                break;
+            case "request_route_to_destination":
+                body = protocol.requestRouteToDestination(request.optInt("current_car_location", -1), request.getInt("destination_node_id"));
+                break;
+            case "arrive_at_node":
+                body = protocol.arriveAtNode(request.getInt("node_id"));
+                break;
+            case "arrive_wrong_node":
+                body = protocol.arriveWrongNode();
+                break;
+            case "wait_for_traffic":
+                body = protocol.waitForTraffic();
+                break;
+            case "finish_auto_turn_command":
+                body = protocol.finishAutoTurnCommand();
+                break;
+            case "arrive_at_destination":
+                body = protocol.arriveAtDestination(request.getInt("destination_node_id"));
+                break;
+            case "wait_for_station_disconnect":
+                body = protocol.waitForStationDisconnect();
+                break;
+            case "disconnect_car":
+                body = protocol.disconnectCar();
+                break;
+            case "video_status":
+                body = protocol.videoStatus();
+                break;
+            default:
+                throw new IllegalStateException("no answer for " + endpoint);
+        }
+        return body.toString();
+    }
+
+    private StationProtocol getProtocol(String carId) {
+        return protocols.computeIfAbsent(carId, id -> {
+            Random random = new Random(settings.seed + carCount.getAndIncrement());
+            return new StationProtocol(System::nanoTime, map, locators.get(id), settings, random);
+        });
+    }
+
+    private void send(HttpExchange exchange, int status, String body, EndpointStats endpointStats, long receivedNanos) {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+            endpointStats.bytesOut.add(bytes.length);
+        } catch (IOException e) {
+            // the client gave up on the request
+        } finally {
+            exchange.close();
+            long now = System.nanoTime();
+            endpointStats.responseTime.record(now - receivedNanos, now);
+        }
+    }
+
+    // closing before any header is sent drops the connection, the client sees its call fail
+    private void drop(HttpExchange exchange, EndpointStats endpointStats, long receivedNanos) {
+        endpointStats.dropped.increment();
+        exchange.close();
+        long now = System.nanoTime();
+        endpointStats.responseTime.record(now - receivedNanos, now);
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) > 0)
+            out.write(buffer, 0, count);
+        return out.toByteArray();
+    }
+
+    // get_config as SetupConfigActivity reads it, keys the simulator does not set are left to the app's defaults
+    private static String toConfigResponse(Config config) throws JSONException {
+        JSONObject configObject = new JSONObject();
+        configObject.put("battery_threshold", new JSONObject()
+                .put("low", config.getBatteryLowThreshold())
+                .put("very_low", config.getBatteryVeryLowThreshold()));
+        configObject.put("command_time", new JSONObject()
+                .put("turning", config.getCommandTime().getTurning())
+                .put("forward", config.getCommandTime().getForward()));
+        configObject.put("spawn_location", new JSONObject()
+                .put("node_id", config.getSpawnLocation().getNodeId())
+                .put("path_id", config.getSpawnLocation().getPathId()));
+        configObject.put("area_threshold", new JSONObject()
+                .put("min", config.getAreaThreshold().getMin())
+                .put("max", config.getAreaThreshold().getMax()));
+        configObject.put("default_confidence_threshold", config.getDefaultConfidenceThreshold());
+        configObject.put("car_bound", new JSONObject()
+                .put("class", config.getCarArea().getTitle())
+                .put("bound_size", new JSONObject()
+                        .put("width", config.getCarArea().getWidth())
+                        .put("height", config.getCarArea().getHeight()))
+                .put("confidence", config.getCarArea().getConfidence())
+                .put("min_y", config.getCarArea().getMin_y()));
+        configObject.put("look_into_past", new JSONObject()
+                .put("max_frame_history", config.getMaxFrameHistory())
+                .put("seen_count_trigger", config.getSeenCountTrigger()));
+        configObject.put("fix_hitting_wall", new JSONObject()
+                .put("enable", config.getFixHittingWallInfo().isEnable()));
+        JSONObject response = StationProtocol.success();
+        response.put("config", new JSONArray().put(configObject));
+        return response.toString();
+    }
+
+    private static String toNodeDataResponse(CityMap map) throws JSONException {
+        JSONArray nodes = new JSONArray();
+        for (int nodeId = 1; nodeId <= map.getNodeCount(); nodeId++)
+            nodes.put(map.toJson(nodeId));
+        JSONObject response = StationProtocol.success();
+        response.put("node_data", nodes);
+        return response.toString();
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static void main(String[] args) throws IOException {
+        SimulationSettings settings;
+        try {
+            settings = SimulationSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        CityMap map = new CityMap(settings.columns, settings.rows, settings.landmarkWidth, settings.landmarkHeight, settings.landmarkConfidence);
+        Simulator.configure(settings, map, Simulator.SPAWN_NODE_ID);
+        MockStationServer server = new MockStationServer(map, Config.getInstance(), settings);
+        server.start();
+        System.out.println("mock station listening on port " + server.getPort());
+    }
+}
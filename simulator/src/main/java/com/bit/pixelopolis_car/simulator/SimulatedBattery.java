@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+/**
+ * A battery pack that drains with load and is swapped for a full one when it gets low,
+ * the way the pit crew does it at the track.
+ */
+final class SimulatedBattery {
+    private final double capacitySeconds;
+    private final int swapPercentage;
+    private double remainingSeconds;
+    private int swapCount = 0;
+
+    /**
+     * @param capacitySeconds seconds of full load a full pack lasts
+     * @param swapPercentage the pack is swapped once it drops below this
+     */
+    SimulatedBattery(double capacitySeconds, int swapPercentage) {
+        this.capacitySeconds = capacitySeconds;
+        this.swapPercentage = swapPercentage;
+        this.remainingSeconds = capacitySeconds;
+    }
+
+    // load is 0 for idle up to 1 for full load
+    void drain(double seconds, double load) {
+        remainingSeconds -= seconds * load;
+        if (getPercentage() < swapPercentage) {
+            remainingSeconds = capacitySeconds;
+            swapCount++;
+        }
+    }
+
+    int getPercentage() {
+        return (int) Math.max(0, Math.round(remainingSeconds / capacitySeconds * 100));
+    }
+
+    int getSwapCount() {
+        return swapCount;
+    }
+}
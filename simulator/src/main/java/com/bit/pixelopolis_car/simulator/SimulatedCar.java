@@ -0,0 +1,183 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.AppStatus;
+import com.bit.pixelopolis_car.enums.ErrorStatus;
+import com.bit.pixelopolis_car.enums.WarningStatus;
+import com.bit.pixelopolis_car.services.BaseListener;
+import com.bit.pixelopolis_car.services.NavigationController;
+import com.bit.pixelopolis_car.services.api.StationApi;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The app's navigation state machine with the phone taken out: detections come from the
+ * {@link SimulatedWorld}, time from the {@link VirtualClock}, and what the activities would show is
+ * counted instead. A journey runs from a place selection to the arrival at that place.
+ */
+final class SimulatedCar extends NavigationController implements NavigationController.NavigationListener, BaseListener {
+    private final VirtualClock clock;
+    private final SimulatedWorld world;
+    private final SimulatedBattery phoneBattery;
+
+    private long journeyStartNanos = -1;
+    private String journeyDestinationNodeId;
+    private boolean journeyLost = false;
+    private final List<Long> journeyNanos = new ArrayList<>();
+    private long lostJourneyCount = 0;
+    private long lostCount = 0;
+    private long cancelledJourneyCount = 0;
+    private long wrongDestinationCount = 0;
+    private long warningCount = 0;
+    private long errorCount = 0;
+
+    SimulatedCar(StationApi stationApi, VirtualSerialBoard board, VirtualClock clock, SimulatedWorld world, SimulatedBattery phoneBattery) {
+        super(stationApi);
+        this.clock = clock;
+        this.world = world;
+        this.phoneBattery = phoneBattery;
+        listener = this;
+        baseListener = this;
+        drivetrain = board;
+        drivetrain.park();
+    }
+
+    int getCompletedJourneyCount() {
+        return journeyNanos.size();
+    }
+
+    List<Long> getJourneyNanos() {
+        return journeyNanos;
+    }
+
+    long getLostJourneyCount() {
+        return lostJourneyCount;
+    }
+
+    long getLostCount() {
+        return lostCount;
+    }
+
+    long getCancelledJourneyCount() {
+        return cancelledJourneyCount;
+    }
+
+    long getWrongDestinationCount() {
+        return wrongDestinationCount;
+    }
+
+    long getWarningCount() {
+        return warningCount;
+    }
+
+    long getErrorCount() {
+        return errorCount;
+    }
+
+    @Override
+    protected List<ObjectDetector.DetectedObject> getObjectFound() {
+        return world.getObjectFound();
+    }
+
+    @Override
+    protected int getPhoneBatteryPercentage() {
+        return phoneBattery.getPercentage();
+    }
+
+    @Override
+    protected long nanoTime() {
+        return clock.nanoTime();
+    }
+
+    @Override
+    protected void onAppStatusChanged(AppStatus previousStatus, AppStatus status) {
+        if (status == AppStatus.LOST) {
+            lostCount++;
+            journeyLost = true;
+        } else if (status == AppStatus.CANCEL_PLACE && journeyStartNanos != -1) {
+            // the station gave up on the journey
+            cancelledJourneyCount++;
+            if (journeyLost)
+                lostJourneyCount++;
+            journeyStartNanos = -1;
+        }
+    }
+
+    @Override
+    public void placeSelected() {
+        journeyStartNanos = clock.nanoTime();
+        journeyDestinationNodeId = currentDestinationNodeInfo.getNodeId();
+        journeyLost = false;
+    }
+
+    @Override
+    public void arriveAtDestination(Integer destinationNodeId) {
+        if (journeyStartNanos == -1)
+            return;
+        if (!journeyDestinationNodeId.equals(destinationNodeId.toString())) {
+            // parked somewhere else, the station keeps waiting until it cancels the journey
+            wrongDestinationCount++;
+            return;
+        }
+        journeyNanos.add(clock.nanoTime() - journeyStartNanos);
+        if (journeyLost)
+            lostJourneyCount++;
+        journeyStartNanos = -1;
+    }
+
+    @Override
+    public void displayStandby() {
+    }
+
+    @Override
+    public void displayWaitJourney() {
+    }
+
+    @Override
+    public void goToSetupActivity() {
+    }
+
+    @Override
+    public void showWarning(WarningStatus warningStatus) {
+        if (warningStatus != WarningStatus.NONE)
+            warningCount++;
+    }
+
+    @Override
+    public void showError(ErrorStatus errorStatus) {
+        errorCount++;
+    }
+
+    @Override
+    public void updateStateView(String string) {
+    }
+
+    @Override
+    public void setCarId(String id) {
+    }
+
+    @Override
+    public void showSpinner() {
+    }
+
+    @Override
+    public void hideSpinner() {
+    }
+}
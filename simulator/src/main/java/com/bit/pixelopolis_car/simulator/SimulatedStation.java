@@ -0,0 +1,150 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.ErrorStatus;
+import com.bit.pixelopolis_car.enums.WarningStatus;
+import com.bit.pixelopolis_car.services.api.StationApi;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * The station answered in process on virtual time, each response is delivered after the configured
+ * latency by the {@link VirtualClock}. What it answers comes from {@link StationProtocol}.
+ */
+final class SimulatedStation implements StationApi {
+    private final VirtualClock clock;
+    private final StationProtocol protocol;
+    private final SimulationSettings settings;
+    private final Random random;
+    private final Map<String, Long> requestCounts = new TreeMap<>();
+    private long failureCount = 0;
+
+    SimulatedStation(VirtualClock clock, CityMap map, SimulatedWorld world, SimulationSettings settings, Random random) {
+        this.clock = clock;
+        this.protocol = new StationProtocol(clock::nanoTime, map, world, settings, random);
+        this.settings = settings;
+        this.random = random;
+    }
+
+    Map<String, Long> getRequestCounts() {
+        return requestCounts;
+    }
+
+    long getRequestCount() {
+        long count = 0;
+        for (long endpointCount : requestCounts.values())
+            count += endpointCount;
+        return count;
+    }
+
+    long getFailureCount() {
+        return failureCount;
+    }
+
+    @Override
+    public void waitForStart(Callback<String> callback) {
+        respond("wait_for_start", protocol.waitForStart(), callback);
+    }
+
+    @Override
+    public void alive(String appStatus, int batteryPercentage, WarningStatus warning, ErrorStatus error, JSONObject diagnostics, Callback<String> callback) {
+        respond("alive", protocol.alive(), callback);
+    }
+
+    @Override
+    public void requestRouteToRandomDestination(int currentCarLocation, List<Integer> obstacleNodeIds, Callback<String> callback) {
+        respond("request_route_to_random_destination", protocol.requestRouteToRandomDestination(currentCarLocation), callback);
+    }
+
+    @Override
+    public void requestRouteToDestination(int currentCarLocation, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds, Callback<String> callback) {
+        respond("request_route_to_destination", protocol.requestRouteToDestination(currentCarLocation, destinationNodeId), callback);
+    }
+
+    @Override
+    public void waitForPlaceSelection(Callback<String> callback) {
+        respond("wait_for_place_selection", protocol.waitForPlaceSelection(), callback);
+    }
+
+    @Override
+    public void waitForCancelPlace(Callback<String> callback) {
+        respond("wait_for_cancel_place", protocol.waitForCancelPlace(), callback);
+    }
+
+    @Override
+    public void arriveAtNode(int nodeId, Callback<String> callback) {
+        respond("arrive_at_node", protocol.arriveAtNode(nodeId), callback);
+    }
+
+    @Override
+    public void arriveWrongNode(int nodeId, String objectClass, Callback<String> callback) {
+        respond("arrive_wrong_node", protocol.arriveWrongNode(), callback);
+    }
+
+    @Override
+    public void waitForTraffic(int nodeId, Callback<String> callback) {
+        respond("wait_for_traffic", protocol.waitForTraffic(), callback);
+    }
+
+    @Override
+    public void finishAutoTurnCommand(int nodeId, Callback<String> callback) {
+        respond("finish_auto_turn_command", protocol.finishAutoTurnCommand(), callback);
+    }
+
+    @Override
+    public void arriveAtDestination(int destinationNodeId, Callback<String> callback) {
+        respond("arrive_at_destination", protocol.arriveAtDestination(destinationNodeId), callback);
+    }
+
+    @Override
+    public void waitForStationDisconnect(Callback<String> callback) {
+        respond("wait_for_station_disconnect", protocol.waitForStationDisconnect(), callback);
+    }
+
+    @Override
+    public void disconnectCar(Callback<String> callback) {
+        respond("disconnect_car", protocol.disconnectCar(), callback);
+    }
+
+    @Override
+    public void videoStatus(Callback<String> callback) {
+        respond("video_status", protocol.videoStatus(), callback);
+    }
+
+    private void respond(String endpoint, JSONObject body, Callback<String> callback) {
+        Long count = requestCounts.get(endpoint);
+        requestCounts.put(endpoint, count == null ? 1 : count + 1);
+        long delayNanos = (settings.stationLatencyMillis + random.nextInt(settings.stationJitterMillis + 1)) * 1000000L;
+        if (random.nextDouble() < settings.stationFailureRate) {
+            failureCount++;
+            clock.schedule(delayNanos, () -> callback.onFailure(null, new IOException("simulated " + endpoint + " failure")));
+            return;
+        }
+        String json = body.toString();
+        clock.schedule(delayNanos, () -> callback.onResponse(null, Response.success(json)));
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.CMD;
+import com.bit.pixelopolis_car.services.carvision.ObjectDetector;
+import com.bit.pixelopolis_car.services.config.CarArea;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Where the simulated car really is, and what its camera sees from there. The car drives along
+ * the road it is on while the board is lane keeping, a scripted move at a node puts it on the
+ * road the command leads to. Detections come out at the vision frame rate like CarVision's do.
+ */
+final class SimulatedWorld implements VirtualSerialBoard.ScriptListener, StationProtocol.CarLocator {
+    private static final float DETECTION_CONFIDENCE = 0.9f;
+    // where the landmark and the car ahead sit in the frame
+    private static final float LANDMARK_CENTER_X = 0.75f;
+    private static final float LANDMARK_CENTER_Y = 0.4f;
+
+    private final CityMap map;
+    private final SimulationSettings settings;
+    private final Random random;
+    private final VirtualSerialBoard board;
+    private final CarArea carArea;
+    private final long frameIntervalNanos;
+
+    private int fromNodeId;
+    // read by the mock station server's threads when it plans a route
+    private volatile int toNodeId;
+    private volatile int heading;
+    private double progressMeters = 0;
+    private String approachTitle;
+    private volatile List<ObjectDetector.DetectedObject> objectFound = null;
+    private long nextFrameNanos = 0;
+    private long otherCarUntilNanos = Long.MIN_VALUE;
+
+    private long misturnCount = 0;
+    private long confusedApproachCount = 0;
+    private long drivenThroughCount = 0;
+    private long otherCarCount = 0;
+
+    SimulatedWorld(CityMap map, SimulationSettings settings, Random random, VirtualSerialBoard board, CarArea carArea, int spawnNodeId) {
+        this.map = map;
+        this.settings = settings;
+        this.random = random;
+        this.board = board;
+        this.carArea = carArea;
+        this.frameIntervalNanos = 1000000000L / settings.visionFps;
+        // leave the spawn node on any road that exists
+        enterRoad(spawnNodeId, map.exit(spawnNodeId, CityMap.EAST, CMD.GO_FORWARD));
+    }
+
+    // the node the car drives towards, the station plans routes from it
+    @Override
+    public int getApproachingNodeId() {
+        return toNodeId;
+    }
+
+    @Override
+    public int getHeading() {
+        return heading;
+    }
+
+    List<ObjectDetector.DetectedObject> getObjectFound() {
+        return objectFound;
+    }
+
+    @Override
+    public void onScript(CMD command) {
+        if (command == CMD.GO_BACKWARD || command == CMD.FIX_HITTING_WALL_TURN_LEFT)
+            return;
+        int exitHeading = map.exit(toNodeId, heading, command);
+        if (random.nextDouble() < settings.misturnRate) {
+            int wrongHeading = map.exit(toNodeId, heading, randomOtherCommand(command));
+            if (wrongHeading != exitHeading) {
+                exitHeading = wrongHeading;
+                misturnCount++;
+            }
+        }
+        enterRoad(toNodeId, exitHeading);
+    }
+
+    void update(long nowNanos, double elapsedSeconds) {
+        if (board.getMode() == VirtualSerialBoard.Mode.LANE_KEEPING) {
+            progressMeters += settings.laneSpeedMetersPerSecond * board.getSpeedScale() * elapsedSeconds;
+            if (progressMeters >= settings.roadLengthMeters) {
+                // nobody told the car to turn, it follows the lane through the node
+                double overshoot = progressMeters - settings.roadLengthMeters;
+                drivenThroughCount++;
+                enterRoad(toNodeId, map.exit(toNodeId, heading, CMD.GO_FORWARD));
+                progressMeters = overshoot;
+            }
+            if (nowNanos >= otherCarUntilNanos && random.nextDouble() < settings.otherCarsPerMinute / 60 * elapsedSeconds) {
+                otherCarUntilNanos = nowNanos + (long) (settings.otherCarSeconds * 1e9);
+                otherCarCount++;
+            }
+        }
+        if (nowNanos >= nextFrameNanos) {
+            objectFound = captureFrame(nowNanos);
+            nextFrameNanos = nowNanos + frameIntervalNanos;
+        }
+    }
+
+    long getMisturnCount() {
+        return misturnCount;
+    }
+
+    long getConfusedApproachCount() {
+        return confusedApproachCount;
+    }
+
+    long getDrivenThroughCount() {
+        return drivenThroughCount;
+    }
+
+    long getOtherCarCount() {
+        return otherCarCount;
+    }
+
+    private void enterRoad(int nodeId, int exitHeading) {
+        fromNodeId = nodeId;
+        heading = exitHeading;
+        toNodeId = map.step(fromNodeId, heading);
+        progressMeters = 0;
+        approachTitle = map.getLandmark(toNodeId);
+        if (random.nextDouble() < settings.confusionRate) {
+            // a look alike sign, the whole approach reads as another node's landmark
+            int otherNodeId = 1 + random.nextInt(map.getNodeCount() - 1);
+            if (otherNodeId >= toNodeId)
+                otherNodeId++;
+            approachTitle = map.getLandmark(otherNodeId);
+            confusedApproachCount++;
+        }
+    }
+
+    // a new list every frame, as the detector returns
+    private List<ObjectDetector.DetectedObject> captureFrame(long nowNanos) {
+        List<ObjectDetector.DetectedObject> objects = new ArrayList<>(2);
+        double distance = settings.roadLengthMeters - progressMeters;
+        if (board.getMode() != VirtualSerialBoard.Mode.SCRIPT && distance <= settings.visibleMeters && random.nextDouble() >= settings.missRate) {
+            double closeness = 1 - distance / settings.visibleMeters;
+            float scale = (float) (settings.farScale + (settings.nearScale - settings.farScale) * closeness);
+            float width = map.getLandmarkWidth() * scale;
+            float height = map.getLandmarkHeight() * scale;
+            objects.add(box("0", approachTitle, LANDMARK_CENTER_X, LANDMARK_CENTER_Y, width, height));
+        }
+        if (nowNanos < otherCarUntilNanos) {
+            float width = (float) carArea.getWidth();
+            float height = (float) carArea.getHeight();
+            // close enough that its bottom edge is past the stop line
+            float bottom = (float) Math.min(1.0, carArea.getMin_y() + 0.05);
+            objects.add(new ObjectDetector.DetectedObject("1", carArea.getTitle(), DETECTION_CONFIDENCE, 0.5f - width / 2, bottom - height, 0.5f + width / 2, bottom));
+        }
+        return objects;
+    }
+
+    private static ObjectDetector.DetectedObject box(String id, String title, float centerX, float centerY, float width, float height) {
+        return new ObjectDetector.DetectedObject(id, title, DETECTION_CONFIDENCE, centerX - width / 2, centerY - height / 2, centerX + width / 2, centerY + height / 2);
+    }
+
+    private CMD randomOtherCommand(CMD command) {
+        CMD[] commands = {CMD.GO_FORWARD, CMD.TURN_LEFT, CMD.TURN_RIGHT};
+        CMD other;
+        do {
+            other = commands[random.nextInt(commands.length)];
+        } while (other == command);
+        return other;
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.AppStatus;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * What a simulation run measured. Journey times are virtual, CPU times are what the simulating
+ * thread spent in the car's code.
+ */
+final class SimulationReport {
+    boolean stalled;
+    AppStatus stalledStatus;
+    long virtualNanos;
+    long wallNanos;
+
+    List<Long> journeyNanos;
+    long cancelledJourneyCount;
+    long wrongDestinationCount;
+    long lostJourneyCount;
+    long lostCount;
+    long misturnCount;
+    long confusedApproachCount;
+    long drivenThroughCount;
+    long otherCarCount;
+
+    long tickCount;
+    boolean cpuMeasured;
+    long tickCpuNanos;
+    float tickCpuP50Millis;
+    float tickCpuP99Millis;
+    long callbackCount;
+    long callbackCpuNanos;
+
+    Map<String, Long> requestCounts;
+    long requestCount;
+    long requestFailureCount;
+
+    long serialCommandCount;
+    long serialTxBytes;
+    long serialRxBytes;
+    long parkedDuringScriptCount;
+    int motorBatterySwapCount;
+    int phoneBatterySwapCount;
+    long warningCount;
+    long errorCount;
+
+    long getJourneyCount() {
+        return journeyNanos.size() + cancelledJourneyCount;
+    }
+
+    // share of journeys that went LOST at least once
+    double getLostRate() {
+        long journeys = getJourneyCount();
+        return journeys == 0 ? 0 : (double) lostJourneyCount / journeys;
+    }
+
+    // seconds, 0 when no journey completed
+    double getJourneySeconds(double percentile) {
+        if (journeyNanos.isEmpty())
+            return 0;
+        List<Long> sorted = new ArrayList<>(journeyNanos);
+        Collections.sort(sorted);
+        int index = (int) Math.ceil(sorted.size() * percentile / 100.0) - 1;
+        return sorted.get(Math.max(0, Math.min(sorted.size() - 1, index))) / 1e9;
+    }
+
+    void print(PrintStream out) {
+        double virtualSeconds = virtualNanos / 1e9;
+        double wallSeconds = wallNanos / 1e9;
+        long journeys = getJourneyCount();
+        if (stalled)
+            out.printf(Locale.US, "STALLED in %s after %.0f s without a journey finishing%n", stalledStatus, virtualSeconds);
+        out.printf(Locale.US, "journeys      %d completed, %d cancelled by timeout, %.0f s virtual in %.1f s wall (x%.0f)%n",
+                journeyNanos.size(), cancelledJourneyCount, virtualSeconds, wallSeconds, wallSeconds > 0 ? virtualSeconds / wallSeconds : 0);
+        out.printf(Locale.US, "completion    p50 %.1f s  p95 %.1f s  p99 %.1f s  max %.1f s%n",
+                getJourneySeconds(50), getJourneySeconds(95), getJourneySeconds(99), getJourneySeconds(100));
+        if (wrongDestinationCount > 0)
+            out.printf(Locale.US, "WRONG PLACE   %d arrivals at a node other than the selected place%n", wrongDestinationCount);
+        out.printf(Locale.US, "lost          %.2f%% of journeys, %d LOST events (%.3f per journey)%n",
+                getLostRate() * 100, lostCount, journeys == 0 ? 0 : (double) lostCount / journeys);
+        out.printf(Locale.US, "  causes      %d misturns, %d look alike approaches, %d nodes driven through%n",
+                misturnCount, confusedApproachCount, drivenThroughCount);
+        if (cpuMeasured) {
+            out.printf(Locale.US, "control loop  %.1f us per tick mean, p50 <= %.0f us, p99 <= %.0f us over %d ticks (%.2f%% of one core at %d Hz)%n",
+                    tickCpuNanos / 1e3 / Math.max(1, tickCount), tickCpuP50Millis * 1e3, tickCpuP99Millis * 1e3, tickCount,
+                    tickCpuNanos / Math.max(1.0, virtualNanos) * 100, Math.round(tickCount / Math.max(1e-9, virtualSeconds)));
+            out.printf(Locale.US, "callbacks     %.1f us per station response over %d responses%n",
+                    callbackCpuNanos / 1e3 / Math.max(1, callbackCount), callbackCount);
+        }
+        out.printf(Locale.US, "station       %d requests (%.1f per virtual second, %.0f per journey), %d failed%n",
+                requestCount, requestCount / Math.max(1e-9, virtualSeconds), journeys == 0 ? 0 : (double) requestCount / journeys, requestFailureCount);
+        for (Map.Entry<String, Long> entry : requestCounts.entrySet())
+            out.printf(Locale.US, "  %-34s %10d  %7.1f/s%n", entry.getKey(), entry.getValue(), entry.getValue() / Math.max(1e-9, virtualSeconds));
+        out.printf(Locale.US, "serial        %d motor commands, %d bytes sent, %d bytes received%n",
+                serialCommandCount, serialTxBytes, serialRxBytes);
+        out.printf(Locale.US, "other         %d cars ahead, %d scripts cut short by a park, %d motor and %d phone battery swaps, %d warnings, %d errors%n",
+                otherCarCount, parkedDuringScriptCount, motorBatterySwapCount, phoneBatterySwapCount, warningCount, errorCount);
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Knobs for one simulation run. Every field can be set from the command line as --fieldName value,
+ * e.g. --journeys 5000 --misturnRate 0.05.
+ */
+final class SimulationSettings {
+    // journeys to a selected place the run drives
+    int journeys = 1000;
+    long seed = 1;
+
+    // city
+    int columns = 4;
+    int rows = 4;
+    double roadLengthMeters = 1.2;
+    // landmark box in normalized image units when the car is at the trigger distance
+    float landmarkWidth = 0.2f;
+    float landmarkHeight = 0.3f;
+    float landmarkConfidence = 0.5f;
+
+    // car
+    double laneSpeedMetersPerSecond = 0.3;
+    int turnMillis = 2500;
+    int forwardMillis = 1500;
+    double motorBatterySeconds = 3600;
+    double phoneBatterySeconds = 4 * 3600;
+
+    // vision
+    int visionFps = 15;
+    // how far before a node its landmark is in view
+    double visibleMeters = 0.6;
+    // landmark box size at the edge of view and at the node, relative to the trigger size
+    double farScale = 0.6;
+    double nearScale = 1.3;
+    // chance a frame misses the landmark
+    double missRate = 0.05;
+    // chance a whole approach sees the landmark as another node's, a look alike sign
+    double confusionRate = 0.01;
+    // chance the car leaves a node on the wrong road
+    double misturnRate = 0.01;
+    double otherCarsPerMinute = 0.5;
+    double otherCarSeconds = 3;
+
+    // station
+    int stationLatencyMillis = 40;
+    int stationJitterMillis = 20;
+    // chance a request fails, over HTTP the mock server drops the connection without an answer
+    double stationFailureRate = 0;
+    // chance the mock server answers HTTP 500
+    double stationErrorRate = 0;
+    // chance a wait_for_traffic answer says the car has to wait
+    double trafficWaitRate = 0.2;
+    double idleSeconds = 10;
+    double staySeconds = 8;
+    // the station cancels a journey that takes longer than this
+    double journeyTimeoutSeconds = 600;
+
+    // control loop tuning the car is configured with
+    double areaThresholdMin = 0.8;
+    double areaThresholdMax = 1.3;
+    int maxFrameHistory = 20;
+    int seenCountTrigger = 15;
+    int batteryLowThreshold = 20;
+    int batteryVeryLowThreshold = 10;
+
+    // load test, cars driving in real time against the mock station server over HTTP
+    int cars = 10;
+    double durationSeconds = 60;
+    // 0 picks a free port
+    int stationPort = 0;
+    int serverThreads = 4;
+
+    static SimulationSettings parse(String[] args) {
+        SimulationSettings settings = new SimulationSettings();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--") || i + 1 >= args.length)
+                throw new IllegalArgumentException("expected --name value, got " + arg);
+            settings.set(arg.substring(2), args[++i]);
+        }
+        return settings;
+    }
+
+    void set(String name, String value) {
+        Field field;
+        try {
+            field = SimulationSettings.class.getDeclaredField(name);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException("unknown setting " + name);
+        }
+        if (Modifier.isStatic(field.getModifiers()))
+            throw new IllegalArgumentException("unknown setting " + name);
+        try {
+            Class<?> type = field.getType();
+            if (type == int.class)
+                field.setInt(this, Integer.parseInt(value));
+            else if (type == long.class)
+                field.setLong(this, Long.parseLong(value));
+            else if (type == float.class)
+                field.setFloat(this, Float.parseFloat(value));
+            else
+                field.setDouble(this, Double.parseDouble(value));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.data.NodeInfo;
+import com.bit.pixelopolis_car.services.config.AreaThreshold;
+import com.bit.pixelopolis_car.services.config.CarArea;
+import com.bit.pixelopolis_car.services.config.CommandTime;
+import com.bit.pixelopolis_car.services.config.Config;
+import com.bit.pixelopolis_car.services.config.FixHittingWallInfo;
+import com.bit.pixelopolis_car.services.config.SpawnLocation;
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Drives the car's navigation state machine through simulated journeys on virtual time, as fast as
+ * the CPU allows. Run it with ./gradlew :simulator:run --args='--journeys 5000', see
+ * {@link SimulationSettings} for the other knobs.
+ */
+public final class Simulator {
+    // the car's control loop period, NavigationController.UPDATE_INTERVAL
+    private static final long TICK_NANOS = 10000000L;
+    static final int SPAWN_NODE_ID = 1;
+    private static final int PHONE_BATTERY_SWAP_PERCENTAGE = 15;
+    private static final int MOTOR_BATTERY_SWAP_PERCENTAGE = 8;
+
+    private final SimulationSettings settings;
+    private final VirtualClock clock = new VirtualClock(0);
+    private final CityMap map;
+    private final SimulatedBattery motorBattery;
+    private final SimulatedBattery phoneBattery;
+    private final VirtualSerialBoard board;
+    private final SimulatedWorld world;
+    private final SimulatedStation station;
+    private final SimulatedCar car;
+
+    Simulator(SimulationSettings settings) {
+        this.settings = settings;
+        Random random = new Random(settings.seed);
+        map = new CityMap(settings.columns, settings.rows, settings.landmarkWidth, settings.landmarkHeight, settings.landmarkConfidence);
+        configure(settings, map, SPAWN_NODE_ID);
+
+        Config config = Config.getInstance();
+        motorBattery = new SimulatedBattery(settings.motorBatterySeconds, MOTOR_BATTERY_SWAP_PERCENTAGE);
+        phoneBattery = new SimulatedBattery(settings.phoneBatterySeconds, PHONE_BATTERY_SWAP_PERCENTAGE);
+        board = new VirtualSerialBoard(motorBattery, config.getCommandTime());
+        world = new SimulatedWorld(map, settings, random, board, config.getCarArea(), SPAWN_NODE_ID);
+        station = new SimulatedStation(clock, map, world, settings, random);
+        car = new SimulatedCar(station, board, clock, world, phoneBattery);
+        board.attach(car, world);
+    }
+
+    SimulationReport run() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        boolean measureCpu = threads.isCurrentThreadCpuTimeSupported();
+        // one window that never rotates, the histogram only ever sees time 0
+        LatencyHistogram tickCpu = new LatencyHistogram(1, 1);
+        long tickCpuNanos = 0;
+        long callbackCpuNanos = 0;
+        long callbackCount = 0;
+        long tickCount = 0;
+        double tickSeconds = TICK_NANOS / 1e9;
+        long stallNanos = (long) (2 * (settings.journeyTimeoutSeconds + settings.idleSeconds + settings.staySeconds) * 1e9);
+        long lastProgressNanos = 0;
+        long finishedJourneys = 0;
+        boolean stalled = false;
+
+        long wallStart = System.nanoTime();
+        while (finishedJourneys < settings.journeys) {
+            clock.advance(TICK_NANOS);
+            long now = clock.nanoTime();
+
+            long cpuStart = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+            callbackCount += clock.runDue();
+            long cpuEnd = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+            callbackCpuNanos += cpuEnd - cpuStart;
+
+            world.update(now, tickSeconds);
+            board.update(now, tickSeconds);
+            phoneBattery.drain(tickSeconds, 1);
+
+            cpuStart = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+            car.tick();
+            cpuEnd = measureCpu ? threads.getCurrentThreadCpuTime() : 0;
+            tickCpu.record(cpuEnd - cpuStart, 0);
+            tickCpuNanos += cpuEnd - cpuStart;
+            tickCount++;
+
+            long journeys = car.getCompletedJourneyCount() + car.getCancelledJourneyCount();
+            if (journeys != finishedJourneys) {
+                finishedJourneys = journeys;
+                lastProgressNanos = now;
+            } else if (now - lastProgressNanos > stallNanos) {
+                stalled = true;
+                break;
+            }
+        }
+        long wallNanos = System.nanoTime() - wallStart;
+
+        SimulationReport report = new SimulationReport();
+        report.stalled = stalled;
+        report.stalledStatus = car.getAppStatus();
+        report.virtualNanos = clock.nanoTime();
+        report.wallNanos = wallNanos;
+        report.journeyNanos = car.getJourneyNanos();
+        report.cancelledJourneyCount = car.getCancelledJourneyCount();
+        report.wrongDestinationCount = car.getWrongDestinationCount();
+        report.lostJourneyCount = car.getLostJourneyCount();
+        report.lostCount = car.getLostCount();
+        report.misturnCount = world.getMisturnCount();
+        report.confusedApproachCount = world.getConfusedApproachCount();
+        report.drivenThroughCount = world.getDrivenThroughCount();
+        report.otherCarCount = world.getOtherCarCount();
+        report.tickCount = tickCount;
+        report.cpuMeasured = measureCpu;
+        report.tickCpuNanos = tickCpuNanos;
+        report.tickCpuP50Millis = tickCpu.getPercentileMillis(50, 0);
+        report.tickCpuP99Millis = tickCpu.getPercentileMillis(99, 0);
+        report.callbackCount = callbackCount;
+        report.callbackCpuNanos = callbackCpuNanos;
+        report.requestCounts = station.getRequestCounts();
+        report.requestCount = station.getRequestCount();
+        report.requestFailureCount = station.getFailureCount();
+        report.serialCommandCount = board.getCommandCount();
+        report.serialTxBytes = board.getTxBytes();
+        report.serialRxBytes = board.getRxBytes();
+        report.parkedDuringScriptCount = board.getParkedDuringScriptCount();
+        report.motorBatterySwapCount = motorBattery.getSwapCount();
+        report.phoneBatterySwapCount = phoneBattery.getSwapCount();
+        report.warningCount = car.getWarningCount();
+        report.errorCount = car.getErrorCount();
+        return report;
+    }
+
+    // what the station would have sent in get_config and get_all_node_data
+    static void configure(SimulationSettings settings, CityMap map, int spawnNodeId) {
+        Config config = Config.getInstance();
+
+        CommandTime commandTime = new CommandTime();
+        commandTime.setTurning(settings.turnMillis);
+        commandTime.setForward(settings.forwardMillis);
+        config.setCommandTime(commandTime);
+
+        SpawnLocation spawnLocation = new SpawnLocation();
+        spawnLocation.setNodeId(spawnNodeId);
+        config.setSpawnLocation(spawnLocation);
+
+        AreaThreshold areaThreshold = new AreaThreshold();
+        areaThreshold.setMin(settings.areaThresholdMin);
+        areaThreshold.setMax(settings.areaThresholdMax);
+        config.setAreaThreshold(areaThreshold);
+
+        CarArea carArea = new CarArea();
+        carArea.setTitle("Car");
+        carArea.setWidth(0.3);
+        carArea.setHeight(0.2);
+        carArea.setConfidence(0.5);
+        carArea.setMin_y(0.8);
+        config.setCarArea(carArea);
+
+        // the simulated board always reads a clear IR sensor
+        FixHittingWallInfo fixHittingWallInfo = new FixHittingWallInfo();
+        fixHittingWallInfo.setEnable(false);
+        config.setFixHittingWallInfo(fixHittingWallInfo);
+
+        List<NodeInfo> nodeInfos = map.getAllNodeInfos();
+        config.setAllNodeInfos(nodeInfos);
+        config.setDefaultConfidenceThreshold(settings.landmarkConfidence);
+        config.setMaxFrameHistory(settings.maxFrameHistory);
+        config.setSeenCountTrigger(settings.seenCountTrigger);
+        config.setBatteryLowThreshold(settings.batteryLowThreshold);
+        config.setBatteryVeryLowThreshold(settings.batteryVeryLowThreshold);
+        config.setInDebugMode(false);
+    }
+
+    public static void main(String[] args) {
+        SimulationSettings settings;
+        try {
+            settings = SimulationSettings.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+            return;
+        }
+        SimulationReport report = new Simulator(settings).run();
+        report.print(System.out);
+        if (report.stalled)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+/**
+ * What the station answers one car, without the transport. A place is picked after the car has
+ * roamed for a while, routes are planned from where the car is, traffic lights turn red now and then,
+ * and the video at the destination plays for a fixed time. Methods are synchronized, an HTTP server
+ * calls them from several threads at once.
+ */
+final class StationProtocol {
+    private static final double MAX_RED_LIGHT_SECONDS = 3;
+
+    // where the station sees the car, the simulated world knows it exactly
+    interface CarLocator {
+        int getApproachingNodeId();
+
+        int getHeading();
+    }
+
+    private final LongSupplier clock;
+    private final CityMap map;
+    private final CarLocator locator;
+    private final SimulationSettings settings;
+    private final Random random;
+
+    private long selectAtNanos;
+    // the place of the journey in progress, -1 while the car roams
+    private int selectedNodeId = -1;
+    private long journeyStartNanos;
+    private long videoEndNanos = Long.MAX_VALUE;
+    private int trafficNodeId = -1;
+    private long greenAtNanos = 0;
+    // for cars without a locator, the last node the car reported and the heading the last route left with
+    private int reportedNodeId = 1;
+    private int routeHeading = CityMap.EAST;
+
+    /**
+     * @param locator null plans routes from the location the car reports
+     */
+    StationProtocol(LongSupplier clock, CityMap map, CarLocator locator, SimulationSettings settings, Random random) {
+        this.clock = clock;
+        this.map = map;
+        this.locator = locator;
+        this.settings = settings;
+        this.random = random;
+        scheduleSelection();
+    }
+
+    synchronized JSONObject waitForStart() {
+        return success();
+    }
+
+    synchronized JSONObject alive() {
+        return success();
+    }
+
+    synchronized JSONObject requestRouteToRandomDestination(int currentCarLocation) {
+        int fromNodeId = getApproachingNodeId(currentCarLocation);
+        return route(fromNodeId, randomNodeOtherThan(fromNodeId));
+    }
+
+    synchronized JSONObject requestRouteToDestination(int currentCarLocation, int destinationNodeId) {
+        return route(getApproachingNodeId(currentCarLocation), destinationNodeId);
+    }
+
+    synchronized JSONObject waitForPlaceSelection() {
+        JSONObject body = success();
+        long now = clock.getAsLong();
+        // the selection is handed out once, like a user tapping a place on the station
+        if (selectedNodeId == -1 && now >= selectAtNanos) {
+            selectedNodeId = randomNodeOtherThan(getApproachingNodeId(-1));
+            journeyStartNanos = now;
+            put(body, "destination_place_info", toJson(selectedNodeId));
+            put(body, "destination_path_id", 0);
+        }
+        return body;
+    }
+
+    synchronized JSONObject waitForCancelPlace() {
+        String trigger = "NONE";
+        if (selectedNodeId != -1 && videoEndNanos == Long.MAX_VALUE && clock.getAsLong() - journeyStartNanos >= settings.journeyTimeoutSeconds * 1e9) {
+            trigger = "CANCEL_PLACE";
+            selectedNodeId = -1;
+            scheduleSelection();
+        }
+        JSONObject body = success();
+        put(body, "server_trigger", trigger);
+        return body;
+    }
+
+    synchronized JSONObject arriveAtNode(int nodeId) {
+        // the car repeats the call until it hears back, the light is decided once per visit
+        if (nodeId != trafficNodeId) {
+            trafficNodeId = nodeId;
+            greenAtNanos = clock.getAsLong();
+            if (random.nextDouble() < settings.trafficWaitRate)
+                greenAtNanos += (long) (random.nextDouble() * MAX_RED_LIGHT_SECONDS * 1e9);
+        }
+        return success();
+    }
+
+    synchronized JSONObject arriveWrongNode() {
+        trafficNodeId = -1;
+        return success();
+    }
+
+    synchronized JSONObject waitForTraffic() {
+        JSONObject body = success();
+        put(body, "can_go", clock.getAsLong() >= greenAtNanos);
+        return body;
+    }
+
+    synchronized JSONObject finishAutoTurnCommand() {
+        return success();
+    }
+
+    synchronized JSONObject arriveAtDestination(int destinationNodeId) {
+        if (selectedNodeId != -1 && destinationNodeId == selectedNodeId && videoEndNanos == Long.MAX_VALUE)
+            videoEndNanos = clock.getAsLong() + (long) (settings.staySeconds * 1e9);
+        return success();
+    }
+
+    synchronized JSONObject waitForStationDisconnect() {
+        JSONObject body = new JSONObject();
+        put(body, "success", false);
+        return body;
+    }
+
+    synchronized JSONObject disconnectCar() {
+        return success();
+    }
+
+    synchronized JSONObject videoStatus() {
+        JSONObject body = success();
+        String status = "PLAY";
+        if (clock.getAsLong() >= videoEndNanos) {
+            status = "NOT_PLAY";
+            // back to roaming, the next place comes after an idle spell
+            videoEndNanos = Long.MAX_VALUE;
+            selectedNodeId = -1;
+            scheduleSelection();
+        }
+        put(body, "video_status", status);
+        return body;
+    }
+
+    private int getApproachingNodeId(int currentCarLocation) {
+        if (locator != null)
+            return locator.getApproachingNodeId();
+        if (currentCarLocation > 0)
+            reportedNodeId = currentCarLocation;
+        return reportedNodeId;
+    }
+
+    private void scheduleSelection() {
+        selectAtNanos = clock.getAsLong() + (long) (random.nextDouble() * settings.idleSeconds * 1e9);
+    }
+
+    private int randomNodeOtherThan(int nodeId) {
+        int other = 1 + random.nextInt(map.getNodeCount() - 1);
+        return other >= nodeId ? other + 1 : other;
+    }
+
+    private JSONObject route(int fromNodeId, int toNodeId) {
+        int heading = locator != null ? locator.getHeading() : routeHeading;
+        JSONObject body = success();
+        JSONArray path = new JSONArray();
+        for (CityMap.RouteStep step : map.route(fromNodeId, heading, toNodeId)) {
+            JSONObject node = toJson(step.nodeId);
+            put(node, "command", step.command.toString());
+            path.put(node);
+            heading = map.exit(step.nodeId, heading, step.command);
+        }
+        routeHeading = heading;
+        put(body, "route_path", path);
+        return body;
+    }
+
+    private JSONObject toJson(int nodeId) {
+        try {
+            return map.toJson(nodeId);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static JSONObject success() {
+        JSONObject body = new JSONObject();
+        put(body, "success", true);
+        return body;
+    }
+
+    static void put(JSONObject body, String name, Object value) {
+        try {
+            body.put(name, value);
+        } catch (JSONException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.ErrorStatus;
+import com.bit.pixelopolis_car.enums.WarningStatus;
+import com.bit.pixelopolis_car.services.api.ApiCommunicator;
+import com.bit.pixelopolis_car.services.api.StationApi;
+import com.bit.pixelopolis_car.utils.LatencyHistogram;
+
+import org.json.JSONObject;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+/**
+ * The app's ApiCommunicator with every call timed as the car sees it: from the request being handed
+ * to the client to its callback running on the car's thread, so OkHttp's queueing and the wait for the
+ * car's next tick are part of it. Calls and callbacks both happen on the car's thread.
+ */
+final class TimedStationApi implements StationApi {
+    static final class CallStats {
+        final LongAdder calls = new LongAdder();
+        final LongAdder httpErrors = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LatencyHistogram latency;
+
+        CallStats(double durationSeconds) {
+            latency = LoadReport.newLatencyHistogram(durationSeconds);
+        }
+    }
+
+    private final ApiCommunicator api;
+    // shared by every car, keyed by endpoint
+    private final Map<String, CallStats> stats;
+    private final double durationSeconds;
+    private int inFlightCount = 0;
+    private int maxInFlightCount = 0;
+
+    TimedStationApi(ApiCommunicator api, Map<String, CallStats> stats, double durationSeconds) {
+        this.api = api;
+        this.stats = stats;
+        this.durationSeconds = durationSeconds;
+    }
+
+    // most requests this car had waiting for an answer at once
+    int getMaxInFlightCount() {
+        return maxInFlightCount;
+    }
+
+    void getConfig(Callback<String> callback) {
+        api.getConfig(timed("get_config", callback));
+    }
+
+    void getAllNodeData(Callback<String> callback) {
+        api.getAllNodeData(timed("get_all_node_data", callback));
+    }
+
+    void connectCar(Callback<String> callback) {
+        api.connectCar(timed("connect_car", callback));
+    }
+
+    void waitForConnectStation(Callback<String> callback) {
+        api.waitForConnectStation(timed("wait_for_connect_station", callback));
+    }
+
+    @Override
+    public void waitForStart(Callback<String> callback) {
+        api.waitForStart(timed("wait_for_start", callback));
+    }
+
+    @Override
+    public void alive(String appStatus, int batteryPercentage, WarningStatus warning, ErrorStatus error, JSONObject diagnostics, Callback<String> callback) {
+        api.alive(appStatus, batteryPercentage, warning, error, diagnostics, timed("alive", callback));
+    }
+
+    @Override
+    public void requestRouteToRandomDestination(int currentCarLocation, List<Integer> obstacleNodeIds, Callback<String> callback) {
+        api.requestRouteToRandomDestination(currentCarLocation, obstacleNodeIds, timed("request_route_to_random_destination", callback));
+    }
+
+    @Override
+    public void requestRouteToDestination(int currentCarLocation, int destinationNodeId, int destinationPathId, List<Integer> obstacleNodeIds, Callback<String> callback) {
+        api.requestRouteToDestination(currentCarLocation, destinationNodeId, destinationPathId, obstacleNodeIds, timed("request_route_to_destination", callback));
+    }
+
+    @Override
+    public void waitForPlaceSelection(Callback<String> callback) {
+        api.waitForPlaceSelection(timed("wait_for_place_selection", callback));
+    }
+
+    @Override
+    public void waitForCancelPlace(Callback<String> callback) {
+        api.waitForCancelPlace(timed("wait_for_cancel_place", callback));
+    }
+
+    @Override
+    public void arriveAtNode(int nodeId, Callback<String> callback) {
+        api.arriveAtNode(nodeId, timed("arrive_at_node", callback));
+    }
+
+    @Override
+    public void arriveWrongNode(int nodeId, String objectClass, Callback<String> callback) {
+        api.arriveWrongNode(nodeId, objectClass, timed("arrive_wrong_node", callback));
+    }
+
+    @Override
+    public void waitForTraffic(int nodeId, Callback<String> callback) {
+        api.waitForTraffic(nodeId, timed("wait_for_traffic", callback));
+    }
+
+    @Override
+    public void finishAutoTurnCommand(int nodeId, Callback<String> callback) {
+        api.finishAutoTurnCommand(nodeId, timed("finish_auto_turn_command", callback));
+    }
+
+    @Override
+    public void arriveAtDestination(int destinationNodeId, Callback<String> callback) {
+        api.arriveAtDestination(destinationNodeId, timed("arrive_at_destination", callback));
+    }
+
+    @Override
+    public void waitForStationDisconnect(Callback<String> callback) {
+        api.waitForStationDisconnect(timed("wait_for_station_disconnect", callback));
+    }
+
+    @Override
+    public void disconnectCar(Callback<String> callback) {
+        api.disconnectCar(timed("disconnect_car", callback));
+    }
+
+    @Override
+    public void videoStatus(Callback<String> callback) {
+        api.videoStatus(timed("video_status", callback));
+    }
+
+    private Callback<String> timed(String endpoint, Callback<String> callback) {
+        CallStats callStats = stats.computeIfAbsent(endpoint, name -> new CallStats(durationSeconds));
+        callStats.calls.increment();
+        inFlightCount++;
+        maxInFlightCount = Math.max(maxInFlightCount, inFlightCount);
+        long startNanos = System.nanoTime();
+        return new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                finish(callStats, startNanos);
+                if (!response.isSuccessful())
+                    callStats.httpErrors.increment();
+                callback.onResponse(call, response);
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                finish(callStats, startNanos);
+                callStats.failures.increment();
+                callback.onFailure(call, t);
+            }
+        };
+    }
+
+    private void finish(CallStats callStats, long startNanos) {
+        inFlightCount--;
+        long now = System.nanoTime();
+        callStats.latency.record(now - startNanos, now);
+    }
+}
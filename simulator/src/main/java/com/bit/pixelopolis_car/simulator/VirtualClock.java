@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import java.util.PriorityQueue;
+
+/**
+ * Virtual time for one simulated car. Everything that would wait on the real clock, station
+ * responses included, is scheduled here and runs when the clock passes its due time.
+ */
+final class VirtualClock {
+    private static final class Event implements Comparable<Event> {
+        final long dueNanos;
+        final long sequence;
+        final Runnable action;
+
+        Event(long dueNanos, long sequence, Runnable action) {
+            this.dueNanos = dueNanos;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (dueNanos != other.dueNanos)
+                return Long.compare(dueNanos, other.dueNanos);
+            // same due time runs in the order it was scheduled
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long nowNanos;
+    private long sequence = 0;
+
+    VirtualClock(long startNanos) {
+        nowNanos = startNanos;
+    }
+
+    long nanoTime() {
+        return nowNanos;
+    }
+
+    void schedule(long delayNanos, Runnable action) {
+        events.add(new Event(nowNanos + Math.max(0, delayNanos), sequence++, action));
+    }
+
+    void advance(long nanos) {
+        nowNanos += nanos;
+    }
+
+    // runs everything due by now, events scheduled while running that are already due run too
+    int runDue() {
+        int count = 0;
+        while (!events.isEmpty() && events.peek().dueNanos <= nowNanos) {
+            events.poll().action.run();
+            count++;
+        }
+        return count;
+    }
+}
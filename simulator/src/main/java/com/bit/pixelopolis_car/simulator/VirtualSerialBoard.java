@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.enums.CMD;
+import com.bit.pixelopolis_car.services.Drivetrain;
+import com.bit.pixelopolis_car.services.NavigationController;
+import com.bit.pixelopolis_car.services.config.CommandTime;
+import com.bit.pixelopolis_car.services.serial.MotorCommandEncoder;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Stands in for the wheels and the controller board. Motor commands are framed with the app's
+ * {@link MotorCommandEncoder} at the rate WheelController sends them, and the board answers with
+ * battery and IR telemetry lines the way the real one does.
+ */
+final class VirtualSerialBoard implements Drivetrain {
+    // WheelController's loop period
+    private static final long COMMAND_INTERVAL_NANOS = 40000000L;
+    private static final long BATTERY_INTERVAL_NANOS = 1000000000L;
+    private static final long IR_SENSOR_INTERVAL_NANOS = 50000000L;
+    private static final int IR_SENSOR_VALUE = 300;
+    private static final int DEFAULT_WHEEL_SPEED = 195;
+    private static final int SLOW_WHEEL_SPEED = 65;
+    // what WheelController works out for a 35 degree turn in place at the slow speed
+    private static final int TURN_IN_PLACE_MILLIS = 780;
+
+    enum Mode {
+        PARKED,
+        LANE_KEEPING,
+        SCRIPT
+    }
+
+    interface ScriptListener {
+        void onScript(CMD command);
+    }
+
+    private final SimulatedBattery battery;
+    private final CommandTime commandTime;
+    private final byte[] command = new byte[MotorCommandEncoder.COMMAND_LENGTH];
+    private NavigationController car;
+    private ScriptListener scriptListener;
+    private Mode mode = Mode.PARKED;
+    private CMD scriptCommand = CMD.DO_NOTHING;
+    private float speedScale = 1.0f;
+    private long nextCommandNanos = 0;
+    private long nextBatteryNanos = 0;
+    private long nextIrSensorNanos = 0;
+    private long commandCount = 0;
+    private long txBytes = 0;
+    private long rxBytes = 0;
+    private long parkedDuringScriptCount = 0;
+
+    VirtualSerialBoard(SimulatedBattery battery, CommandTime commandTime) {
+        this.battery = battery;
+        this.commandTime = commandTime;
+    }
+
+    void attach(NavigationController car, ScriptListener scriptListener) {
+        this.car = car;
+        this.scriptListener = scriptListener;
+    }
+
+    @Override
+    public void driveInLaneKeepingMode() {
+        mode = Mode.LANE_KEEPING;
+    }
+
+    @Override
+    public void driveInScriptMode(CMD mode) {
+        this.mode = Mode.SCRIPT;
+        scriptCommand = mode;
+        if (scriptListener != null)
+            scriptListener.onScript(mode);
+    }
+
+    @Override
+    public void park() {
+        if (mode == Mode.SCRIPT)
+            parkedDuringScriptCount++;
+        mode = Mode.PARKED;
+    }
+
+    @Override
+    public int getScriptDuration(CMD mode) {
+        switch (mode) {
+            case GO_BACKWARD:
+            case GO_FORWARD:
+                return commandTime.forward;
+            case TURN_LEFT:
+            case TURN_RIGHT:
+                return commandTime.turning;
+            case SHARP_TURN_LEFT:
+            case SHARP_TURN_RIGHT:
+            case FIX_HITTING_WALL_TURN_LEFT:
+                return TURN_IN_PLACE_MILLIS;
+            default:
+                return 0;
+        }
+    }
+
+    @Override
+    public void setSpeedScale(float speedScale) {
+        this.speedScale = speedScale;
+    }
+
+    Mode getMode() {
+        return mode;
+    }
+
+    float getSpeedScale() {
+        return speedScale;
+    }
+
+    void update(long nowNanos, double elapsedSeconds) {
+        battery.drain(elapsedSeconds, mode == Mode.PARKED ? 0.05 : mode == Mode.LANE_KEEPING ? speedScale : 0.5);
+
+        while (nowNanos >= nextCommandNanos) {
+            int left = getLeftSpeed();
+            int right = getRightSpeed();
+            txBytes += MotorCommandEncoder.encode(left, right, command, 0);
+            commandCount++;
+            nextCommandNanos += COMMAND_INTERVAL_NANOS;
+        }
+        if (nowNanos >= nextBatteryNanos) {
+            sendTelemetry('b', battery.getPercentage());
+            nextBatteryNanos = nowNanos + BATTERY_INTERVAL_NANOS;
+        }
+        if (nowNanos >= nextIrSensorNanos) {
+            sendTelemetry('r', IR_SENSOR_VALUE);
+            nextIrSensorNanos = nowNanos + IR_SENSOR_INTERVAL_NANOS;
+        }
+    }
+
+    long getCommandCount() {
+        return commandCount;
+    }
+
+    long getTxBytes() {
+        return txBytes;
+    }
+
+    long getRxBytes() {
+        return rxBytes;
+    }
+
+    long getParkedDuringScriptCount() {
+        return parkedDuringScriptCount;
+    }
+
+    private int getLeftSpeed() {
+        switch (mode) {
+            case LANE_KEEPING:
+                return Math.round(DEFAULT_WHEEL_SPEED * speedScale);
+            case SCRIPT:
+                switch (scriptCommand) {
+                    case TURN_LEFT:
+                        return SLOW_WHEEL_SPEED;
+                    case SHARP_TURN_LEFT:
+                    case FIX_HITTING_WALL_TURN_LEFT:
+                        return -SLOW_WHEEL_SPEED;
+                    case SHARP_TURN_RIGHT:
+                        return SLOW_WHEEL_SPEED;
+                    case GO_BACKWARD:
+                        return -DEFAULT_WHEEL_SPEED;
+                    default:
+                        return DEFAULT_WHEEL_SPEED;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    private int getRightSpeed() {
+        switch (mode) {
+            case LANE_KEEPING:
+                return Math.round(DEFAULT_WHEEL_SPEED * speedScale);
+            case SCRIPT:
+                switch (scriptCommand) {
+                    case TURN_RIGHT:
+                        return SLOW_WHEEL_SPEED;
+                    case SHARP_TURN_RIGHT:
+                        return -SLOW_WHEEL_SPEED;
+                    case SHARP_TURN_LEFT:
+                    case FIX_HITTING_WALL_TURN_LEFT:
+                        return SLOW_WHEEL_SPEED;
+                    case GO_BACKWARD:
+                        return -DEFAULT_WHEEL_SPEED;
+                    default:
+                        return DEFAULT_WHEEL_SPEED;
+                }
+            default:
+                return 0;
+        }
+    }
+
+    private void sendTelemetry(char channel, int value) {
+        byte[] line = (channel + Integer.toString(value)).getBytes(StandardCharsets.US_ASCII);
+        // the serial thread hands lines over without the '\n'
+        rxBytes += line.length + 1;
+        if (car != null)
+            car.receiveSerialMessage(line, 0, line.length);
+    }
+}
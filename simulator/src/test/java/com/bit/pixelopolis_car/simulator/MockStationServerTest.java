@@ -0,0 +1,126 @@
+package com.bit.pixelopolis_car.simulator;
+
+import com.bit.pixelopolis_car.services.api.ApiCommunicator;
+import com.bit.pixelopolis_car.services.config.Config;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+
+import static org.junit.Assert.*;
+
+public class MockStationServerTest {
+
+    private MockStationServer server;
+
+    private static SimulationSettings settings() {
+        SimulationSettings settings = new SimulationSettings();
+        settings.stationLatencyMillis = 0;
+        settings.stationJitterMillis = 0;
+        settings.serverThreads = 2;
+        return settings;
+    }
+
+    private ApiCommunicator start(SimulationSettings settings) throws Exception {
+        CityMap map = new CityMap(settings.columns, settings.rows, settings.landmarkWidth, settings.landmarkHeight, settings.landmarkConfidence);
+        Simulator.configure(settings, map, Simulator.SPAWN_NODE_ID);
+        server = new MockStationServer(map, Config.getInstance(), settings);
+        server.start();
+        ApiCommunicator api = new ApiCommunicator();
+        api.initialRetrofit("http://127.0.0.1:" + server.getPort(), "device", "car-1", "127.0.0.1", Runnable::run);
+        return api;
+    }
+
+    @After
+    public void stop() {
+        if (server != null)
+            server.stop();
+    }
+
+    // the response, or the failure's exception
+    private static Object call(Consumer<Callback<String>> request) throws Exception {
+        CompletableFuture<Object> result = new CompletableFuture<>();
+        request.accept(new Callback<String>() {
+            @Override
+            public void onResponse(Call<String> call, Response<String> response) {
+                result.complete(response);
+            }
+
+            @Override
+            public void onFailure(Call<String> call, Throwable t) {
+                result.complete(t);
+            }
+        });
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void servesTheSetupRequestsAndCountsThem() throws Exception {
+        SimulationSettings settings = settings();
+        ApiCommunicator api = start(settings);
+
+        Response<?> config = (Response<?>) call(api::getConfig);
+        JSONObject configObject = new JSONObject((String) config.body()).getJSONArray("config").getJSONObject(0);
+        assertEquals(settings.turnMillis, configObject.getJSONObject("command_time").getInt("turning"));
+
+        Response<?> nodes = (Response<?>) call(api::getAllNodeData);
+        assertEquals(settings.columns * settings.rows, new JSONObject((String) nodes.body()).getJSONArray("node_data").length());
+
+        Response<?> connected = (Response<?>) call(api::connectCar);
+        assertTrue(new JSONObject((String) connected.body()).getBoolean("success"));
+        Response<?> route = (Response<?>) call(callback -> api.requestRouteToRandomDestination(1, null, callback));
+        assertTrue(new JSONObject((String) route.body()).getJSONArray("route_path").length() > 0);
+
+        assertEquals(1, server.getCarCount());
+        assertEquals(1, server.getStats().get("get_config").requests.sum());
+        assertEquals(1, server.getStats().get("request_route_to_random_destination").requests.sum());
+        assertTrue(server.getStats().get("connect_car").bytesIn.sum() > 0);
+        assertEquals(0, server.getStats().get("alive").requests.sum());
+    }
+
+    @Test
+    public void injectsServerErrors() throws Exception {
+        SimulationSettings settings = settings();
+        settings.stationErrorRate = 1;
+        ApiCommunicator api = start(settings);
+
+        Response<?> response = (Response<?>) call(api::waitForStart);
+
+        assertEquals(500, response.code());
+        assertEquals(1, server.getStats().get("wait_for_start").serverErrors.sum());
+    }
+
+    @Test
+    public void injectsDroppedConnections() throws Exception {
+        SimulationSettings settings = settings();
+        settings.stationFailureRate = 1;
+        ApiCommunicator api = start(settings);
+
+        assertTrue(call(api::waitForPlaceSelection) instanceof Throwable);
+        assertTrue(server.getStats().get("wait_for_place_selection").dropped.sum() >= 1);
+    }
+
+    @Test
+    public void carsDriveOverHttp() throws Exception {
+        SimulationSettings settings = settings();
+        settings.cars = 3;
+        settings.durationSeconds = 5;
+        settings.stationLatencyMillis = 5;
+
+        LoadReport report = new LoadDriver(settings).run();
+
+        assertEquals(3, report.connectedCarCount);
+        assertTrue(report.getRequestCount() > 0);
+        assertEquals(0, report.getCallFailureCount());
+        // the polls the control loop repeats every tick wait for their answer
+        assertTrue(report.maxInFlightCount < 10);
+    }
+}
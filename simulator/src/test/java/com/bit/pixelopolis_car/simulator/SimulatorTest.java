@@ -0,0 +1,61 @@
+package com.bit.pixelopolis_car.simulator;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SimulatorTest {
+
+    private static SimulationSettings settings(int journeys) {
+        SimulationSettings settings = new SimulationSettings();
+        settings.journeys = journeys;
+        settings.seed = 7;
+        return settings;
+    }
+
+    @Test
+    public void cleanVisionReachesEveryPlace() {
+        SimulationSettings settings = settings(20);
+        settings.missRate = 0;
+        settings.confusionRate = 0;
+        settings.misturnRate = 0;
+        settings.otherCarsPerMinute = 0;
+
+        SimulationReport report = new Simulator(settings).run();
+
+        assertFalse(report.stalled);
+        assertEquals(20, report.getJourneyCount());
+        assertEquals(0, report.misturnCount);
+        assertEquals(0, report.confusedApproachCount);
+        assertTrue(report.journeyNanos.size() >= 18);
+        // a 4 x 4 city is crossed in well under a minute
+        assertTrue(report.getJourneySeconds(50) > 5);
+        assertTrue(report.getJourneySeconds(50) < 60);
+        assertTrue(report.requestCounts.get("arrive_at_destination") >= report.journeyNanos.size());
+        assertTrue(report.serialCommandCount > 0);
+    }
+
+    @Test
+    public void misturnsGetTheCarLost() {
+        SimulationSettings settings = settings(20);
+        settings.misturnRate = 0.5;
+
+        SimulationReport report = new Simulator(settings).run();
+
+        assertFalse(report.stalled);
+        assertTrue(report.misturnCount > 0);
+        assertTrue(report.lostCount > 0);
+        assertTrue(report.getLostRate() > 0);
+    }
+
+    @Test
+    public void sameSeedSameRun() {
+        SimulationReport first = new Simulator(settings(10)).run();
+        SimulationReport second = new Simulator(settings(10)).run();
+
+        assertEquals(first.journeyNanos, second.journeyNanos);
+        assertEquals(first.virtualNanos, second.virtualNanos);
+        assertEquals(first.lostCount, second.lostCount);
+        assertEquals(first.requestCounts, second.requestCounts);
+    }
+}